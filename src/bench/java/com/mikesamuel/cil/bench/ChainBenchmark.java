@@ -0,0 +1,141 @@
+package com.mikesamuel.cil.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+import com.mikesamuel.cil.ast.j8.J8BaseNode;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.ParseState;
+
+/**
+ * Parses and unparses long chains of left-associative operators which the
+ * parser handles by growing a left-recursive seed one operand at a time.
+ * Per-operand costs should not depend on the length of the chain, so times
+ * should scale linearly with the count of operands.
+ * <p>
+ * The trees for these chains are as deep as the chains are long, so each
+ * operation runs on a fresh thread with a stack large enough for the
+ * longest chain.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ChainBenchmark {
+
+  /** Stack size for threads that process the longest chain. */
+  private static final long STACK_BYTES = 1L << 30;
+
+  /** A chain of operators, and its parse tree. */
+  @State(Scope.Benchmark)
+  public static class Chain {
+    /** The count of operands in the chain. */
+    @Param({ "1000", "10000", "100000" })
+    public int nOperands;
+
+    /**
+     * {@code binary} for a {@linkplain Corpus#binaryChain binary operator
+     * chain} or {@code calls} for a
+     * {@linkplain Corpus#callChain method call chain}.
+     */
+    @Param({ "binary", "calls" })
+    public String kind;
+
+    String code;
+    J8BaseNode root;
+
+    /** Generates the code and parses it to a tree. */
+    @Setup
+    public void generate() {
+      switch (kind) {
+        case "binary":
+          code = Corpus.binaryChain(nOperands);
+          break;
+        case "calls":
+          code = Corpus.callChain(nOperands);
+          break;
+        default:
+          throw new IllegalArgumentException(kind);
+      }
+      root = onLargeStack(new Callable<J8BaseNode>() {
+        @Override
+        public J8BaseNode call() {
+          Input input = input();
+          return Pipeline.buildTree(
+              input, Pipeline.parse(Pipeline.J8_COMPILATION_UNIT, input));
+        }
+      });
+    }
+
+    Input input() {
+      return Input.builder().source("ChainBenchmark").code(code).build();
+    }
+  }
+
+  /** Parses the chain. */
+  @Benchmark
+  public ParseState parse(final Chain c) {
+    return onLargeStack(new Callable<ParseState>() {
+      @Override
+      public ParseState call() {
+        return Pipeline.parse(Pipeline.J8_COMPILATION_UNIT, c.input());
+      }
+    });
+  }
+
+  /** Unparses the chain's tree to events. */
+  @Benchmark
+  public ImmutableList<Event> unparse(final Chain c) {
+    return onLargeStack(new Callable<ImmutableList<Event>>() {
+      @Override
+      public ImmutableList<Event> call() {
+        return Pipeline.unparse(c.root);
+      }
+    });
+  }
+
+  private static <T> T onLargeStack(final Callable<T> c) {
+    final Object[] result = new Object[1];
+    Thread t = new Thread(
+        null,
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              result[0] = c.call();
+            } catch (Exception | Error ex) {
+              result[0] = ex;
+            }
+          }
+        },
+        "ChainBenchmark", STACK_BYTES);
+    t.start();
+    try {
+      t.join();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ex);
+    }
+    if (result[0] instanceof Throwable) {
+      throw new IllegalStateException((Throwable) result[0]);
+    }
+    @SuppressWarnings("unchecked")
+    T value = (T) result[0];
+    return value;
+  }
+}
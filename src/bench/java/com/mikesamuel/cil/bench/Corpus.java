@@ -0,0 +1,336 @@
+package com.mikesamuel.cil.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.mikesamuel.cil.parser.Input;
+
+/**
+ * A named collection of sources that a benchmark processes per operation.
+ */
+final class Corpus {
+  /** The name of the corpus. */
+  final String name;
+  /** Whether the sources need template productions to parse. */
+  final boolean allowNonStandardProductions;
+  /** Source names. */
+  final ImmutableList<String> names;
+  /** Source code corresponding to names. */
+  final ImmutableList<String> codes;
+  /** The UTF-8 size of all the code in kilobytes. */
+  final double kilobytes;
+
+  /** The corpus of this project's own main sources. */
+  static final String SELF = "self";
+  /** A class whose statements and expressions nest deeply. */
+  static final String DEEP_NESTING = "deepNesting";
+  /** A class with a 10000 term binary operator chain. */
+  static final String BINARY_CHAIN = "binaryChain";
+  /** A class with a 2000 element array initializer. */
+  static final String ARRAY_INITIALIZER = "arrayInitializer";
+  /** A template that uses interpolations and directives throughout. */
+  static final String TEMPLATES = "templates";
+
+  /**
+   * Names a directory containing the sources for the {@link #SELF} corpus.
+   * Defaults to {@code src/main/java} relative to the working directory.
+   */
+  static final String SOURCE_DIRECTORY_PROPERTY = "cil.bench.sourceDirectory";
+
+  private Corpus(
+      String name, boolean allowNonStandardProductions,
+      ImmutableList<String> names, ImmutableList<String> codes) {
+    Preconditions.checkArgument(names.size() == codes.size());
+    this.name = name;
+    this.allowNonStandardProductions = allowNonStandardProductions;
+    this.names = names;
+    this.codes = codes;
+    long nBytes = 0;
+    for (String code : codes) {
+      nBytes += code.getBytes(Charsets.UTF_8).length;
+    }
+    this.kilobytes = nBytes / 1024d;
+  }
+
+  private static Corpus single(
+      String name, boolean allowNonStandardProductions, String code) {
+    return new Corpus(
+        name, allowNonStandardProductions,
+        ImmutableList.of(name + ".java"), ImmutableList.of(code));
+  }
+
+  /** The corpus with the given name. */
+  static Corpus named(String name) throws IOException {
+    switch (name) {
+      case SELF:
+        return self();
+      case DEEP_NESTING:
+        return single(name, false, deepNesting(64));
+      case BINARY_CHAIN:
+        return single(name, false, binaryChain(10000));
+      case ARRAY_INITIALIZER:
+        return single(name, false, arrayInitializer(2000));
+      case TEMPLATES:
+        return single(name, true, templates(200));
+      default:
+        throw new IllegalArgumentException(name);
+    }
+  }
+
+  /**
+   * Fresh inputs for each source.
+   * Inputs hold the parser's memo table, so each parse needs a fresh one.
+   */
+  ImmutableList<Input> inputs() {
+    ImmutableList.Builder<Input> b = ImmutableList.builder();
+    for (int i = 0, n = names.size(); i < n; ++i) {
+      b.add(Input.builder()
+          .source(names.get(i))
+          .code(codes.get(i))
+          .allowNonStandardProductions(allowNonStandardProductions)
+          .build());
+    }
+    return b.build();
+  }
+
+  private static Corpus self() throws IOException {
+    File dir = new File(
+        System.getProperty(SOURCE_DIRECTORY_PROPERTY, "src/main/java"));
+    Preconditions.checkState(dir.isDirectory(), dir);
+    List<File> sources = Lists.newArrayList();
+    findJavaSources(dir, sources);
+    Collections.sort(sources);
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    ImmutableList.Builder<String> codes = ImmutableList.builder();
+    for (File f : sources) {
+      names.add(f.getPath());
+      codes.add(Files.toString(f, Charsets.UTF_8));
+    }
+    return new Corpus(SELF, false, names.build(), codes.build());
+  }
+
+  private static void findJavaSources(File dir, List<File> out) {
+    File[] children = dir.listFiles();
+    if (children == null) { return; }
+    for (File f : children) {
+      if (f.isDirectory()) {
+        findJavaSources(f, out);
+      } else if (f.getName().endsWith(".java")) {
+        out.add(f);
+      }
+    }
+  }
+
+  /*
+   * The synthetic sources below stick to constructs that the minimal grammar
+   * also parses so that they can be used to benchmark it too.
+   */
+
+  private static StringBuilder startClass(String className) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("package bench;\n\n")
+        .append("class ").append(className)
+        .append(" extends Object {\n")
+        .append("  public ").append(className).append("() {\n")
+        .append("    super();\n")
+        .append("  }\n");
+    return sb;
+  }
+
+  private static void indent(StringBuilder sb, int depth) {
+    for (int i = 0; i < depth; ++i) {
+      sb.append("  ");
+    }
+  }
+
+  /**
+   * Nested if statements around a deeply nested right-associated
+   * parenthesized expression.
+   */
+  static String deepNesting(int depth) {
+    StringBuilder sb = startClass("DeepNesting");
+    sb.append("  int f(int x) {\n")
+        .append("    int y = x;\n");
+    for (int i = 0; i < depth; ++i) {
+      indent(sb, i + 2);
+      sb.append("if (x > ").append(i).append(") {\n");
+    }
+    indent(sb, depth + 2);
+    sb.append("return ");
+    for (int i = 0; i < depth; ++i) {
+      sb.append("(x - ");
+    }
+    sb.append('y');
+    for (int i = 0; i < depth; ++i) {
+      sb.append(')');
+    }
+    sb.append(";\n");
+    for (int i = depth; --i >= 0;) {
+      indent(sb, i + 2);
+      sb.append("} else {\n");
+      indent(sb, i + 2);
+      sb.append("}\n");
+    }
+    sb.append("    return y;\n")
+        .append("  }\n")
+        .append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * Blocks nested depth deep.
+   * The parser takes time quadratic in the depth of parenthesized
+   * expressions like those in {@link #deepNesting}, so this isolates the
+   * cost of nesting from that of left-recursion.
+   */
+  static String nestedBlocks(int depth) {
+    StringBuilder sb = startClass("NestedBlocks");
+    sb.append("  int f(int x) {\n");
+    for (int i = 0; i < depth; ++i) {
+      sb.append(i % 32 == 0 ? "\n    " : "").append('{');
+    }
+    sb.append("\n    x++;\n    ");
+    for (int i = 0; i < depth; ++i) {
+      sb.append('}').append(i % 32 == 31 ? "\n    " : "");
+    }
+    sb.append("\n    return x;\n")
+        .append("  }\n")
+        .append("}\n");
+    return sb.toString();
+  }
+
+  private static final String[] BINARY_OPERATORS = {
+    "+", "*", "-", "/", "|", "&", "^", "%", "<<", ">>",
+  };
+
+  /** A single expression with nTerms operands of mixed precedence. */
+  static String binaryChain(int nTerms) {
+    StringBuilder sb = startClass("BinaryChain");
+    sb.append("  int f(int x) {\n")
+        .append("    return x");
+    for (int i = 1; i < nTerms; ++i) {
+      sb.append(i % 8 == 0 ? "\n        " : " ")
+          .append(BINARY_OPERATORS[i % BINARY_OPERATORS.length])
+          .append(' ')
+          .append((i & 1) == 0 ? "x" : Integer.toString(i));
+    }
+    sb.append(";\n")
+        .append("  }\n")
+        .append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * A single expression that makes nCalls chained method calls like those
+   * that generated code uses to build strings.
+   */
+  static String callChain(int nCalls) {
+    StringBuilder sb = startClass("CallChain");
+    sb.append("  String f(StringBuilder sb, int x) {\n")
+        .append("    return sb");
+    for (int i = 0; i < nCalls; ++i) {
+      sb.append(i % 4 == 0 ? "\n        " : "")
+          .append(".append(")
+          .append((i & 1) == 0 ? "x" : Integer.toString(i))
+          .append(')');
+    }
+    sb.append(".toString();\n")
+        .append("  }\n")
+        .append("}\n");
+    return sb.toString();
+  }
+
+  /** A constant table with nElements integer elements. */
+  static String arrayInitializer(int nElements) {
+    StringBuilder sb = startClass("ArrayInitializer");
+    sb.append("  static final int[] TABLE = {");
+    for (int i = 0; i < nElements; ++i) {
+      sb.append(i % 16 == 0 ? "\n    " : " ").append(i).append(',');
+    }
+    sb.append("\n  };\n")
+        .append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * A call with nArguments arguments, each of which is a call, that does not
+   * fit on one line.
+   */
+  static String argumentList(int nArguments) {
+    StringBuilder sb = startClass("ArgumentList");
+    sb.append("  Object f(int x) {\n")
+        .append("    return f(");
+    for (int i = 0; i < nArguments; ++i) {
+      if (i != 0) {
+        sb.append(i % 4 == 0 ? ",\n        " : ", ");
+      }
+      sb.append("g(").append(i).append(", x)");
+    }
+    sb.append(");\n")
+        .append("  }\n")
+        .append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * Array initializers nested depth deep with a few elements at each level
+   * so that no level fits on one line.
+   */
+  static String nestedInitializers(int depth) {
+    StringBuilder sb = startClass("NestedInitializers");
+    sb.append("  static final Object[] TREE = ");
+    for (int i = 0; i < depth; ++i) {
+      sb.append(i % 8 == 0 ? "\n    " : "")
+          .append("{ ").append(i).append(", ").append(i + 1).append(", ");
+    }
+    sb.append("null");
+    for (int i = 0; i < depth; ++i) {
+      sb.append(" }").append(i % 8 == 7 ? "\n    " : "");
+    }
+    sb.append(";\n")
+        .append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * A template with nMethods methods each of which uses interpolations,
+   * loops, conditionals and template calls.
+   */
+  static String templates(int nMethods) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("package bench;\n\n")
+        .append("import static com.mikesamuel.cil.HereBe._TEMPLATES_;\n\n")
+        .append("%%template twice(e) : Expression {\n")
+        .append("  (%e) + (%e)\n")
+        .append("}\n\n")
+        .append("class Templates {\n");
+    for (int i = 0; i < nMethods; ++i) {
+      sb.append("  (%returnType) f").append(i).append("((%type) x) {\n")
+          .append("    (%type) y = (%init) + x;\n")
+          .append("    %%for (step : steps) {\n")
+          .append("      y = y * (%step.factor) + (%twice(x));\n")
+          .append("    %%}\n")
+          .append("    %%if (debug) {\n")
+          .append("      check((%y), (%step.name));\n")
+          .append("    %%}\n")
+          .append("    switch (y) {\n")
+          .append("      %%for (c : cases) {\n")
+          .append("        case (%c.value):\n")
+          .append("          {%s for (s : c.stmts)}\n")
+          .append("          break;\n")
+          .append("      %%}\n")
+          .append("    }\n")
+          .append("    return (%convert(y));\n")
+          .append("  }\n");
+    }
+    sb.append("}\n");
+    return sb.toString();
+  }
+}
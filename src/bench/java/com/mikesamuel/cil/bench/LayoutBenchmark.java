@@ -0,0 +1,99 @@
+package com.mikesamuel.cil.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mikesamuel.cil.ast.NodeVariant;
+import com.mikesamuel.cil.format.FormattedSource;
+import com.mikesamuel.cil.format.Formatter;
+import com.mikesamuel.cil.format.java.Java8Formatters;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.SList;
+import com.mikesamuel.cil.parser.Unparse;
+
+/**
+ * Compares the layouts that {@link Java8Formatters} can create on inputs
+ * whose blocks do not fit on one line.
+ * {@link com.mikesamuel.cil.format.LinearGrossStructurer} should take time
+ * linear in the size of the input.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class LayoutBenchmark {
+
+  /** Verified unparsed output and how to lay it out. */
+  @State(Scope.Benchmark)
+  public static class Laid {
+    /**
+     * {@code arguments} for a {@linkplain Corpus#argumentList long argument
+     * list} or {@code initializers} for
+     * {@linkplain Corpus#nestedInitializers nested initializers}.
+     */
+    @Param({ "arguments", "initializers" })
+    public String kind;
+
+    /** The count of arguments or the depth of the initializers. */
+    @Param({ "100", "1000", "3000" })
+    public int size;
+
+    /**
+     * {@code cStyle} for {@link Java8Formatters#createFormatter} or
+     * {@code linear} for {@link Java8Formatters#createLinearFormatter}.
+     */
+    @Param({ "cStyle", "linear" })
+    public String layout;
+
+    Unparse.Verified verified;
+
+    /** Generates the code, and parses and unparses it. */
+    @Setup
+    public void unparse() {
+      String code;
+      switch (kind) {
+        case "arguments":
+          code = Corpus.argumentList(size);
+          break;
+        case "initializers":
+          code = Corpus.nestedInitializers(size);
+          break;
+        default:
+          throw new IllegalArgumentException(kind);
+      }
+      Input input = Input.builder().source("LayoutBenchmark").code(code)
+          .build();
+      verified = Pipeline.verify(Pipeline.unparse(Pipeline.buildTree(
+          input, Pipeline.parse(Pipeline.J8_COMPILATION_UNIT, input))));
+    }
+
+    Formatter<SList<NodeVariant<?, ?>>> createFormatter() {
+      switch (layout) {
+        case "cStyle":
+          return Java8Formatters.createFormatter();
+        case "linear":
+          return Java8Formatters.createLinearFormatter();
+        default:
+          throw new IllegalArgumentException(layout);
+      }
+    }
+  }
+
+  /** Lays out the code. */
+  @Benchmark
+  public FormattedSource format(Laid l) {
+    return Unparse.format(l.verified, l.createFormatter());
+  }
+}
@@ -0,0 +1,86 @@
+package com.mikesamuel.cil.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.ParseState;
+
+/**
+ * Compares parsing deeply nested code by recursing on one thread's stack
+ * against parsing it on {@linkplain Input.Builder#stackSegments stack
+ * segments}.
+ * <p>
+ * Each parse runs on a fresh thread.  Recursive parses get a thread whose
+ * stack is large enough for the deepest input, and segmented parses get a
+ * thread with the default stack size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class NestingBenchmark {
+
+  /** Stack size for recursive parses of the deepest input. */
+  private static final long RECURSIVE_STACK_BYTES = 1L << 30;
+
+  /** Nested code and how to parse it. */
+  @State(Scope.Benchmark)
+  public static class Nesting {
+    /** How deeply {@linkplain Corpus#nestedBlocks blocks} nest. */
+    @Param({ "100", "1000", "10000", "100000" })
+    public int depth;
+
+    /** True to parse on stack segments. */
+    @Param({ "false", "true" })
+    public boolean stackSegments;
+
+    String code;
+
+    /** Generates the code. */
+    @Setup
+    public void generate() {
+      code = Corpus.nestedBlocks(depth);
+    }
+  }
+
+  /** Parses the nested code. */
+  @Benchmark
+  public ParseState parse(final Nesting n) throws InterruptedException {
+    final ParseState[] result = new ParseState[1];
+    Thread t = new Thread(
+        null,
+        new Runnable() {
+          @Override
+          public void run() {
+            Input input = Input.builder()
+                .source("NestingBenchmark")
+                .code(n.code)
+                .stackSegments(n.stackSegments)
+                .build();
+            result[0] = Pipeline.parse(Pipeline.J8_COMPILATION_UNIT, input);
+          }
+        },
+        "NestingBenchmark",
+        // Zero means the default stack size.
+        n.stackSegments ? 0 : RECURSIVE_STACK_BYTES);
+    t.start();
+    t.join();
+    if (result[0] == null) {
+      throw new IllegalStateException("Parse failed");
+    }
+    return result[0];
+  }
+}
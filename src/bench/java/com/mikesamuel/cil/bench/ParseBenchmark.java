@@ -0,0 +1,89 @@
+package com.mikesamuel.cil.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.mikesamuel.cil.parser.Input;
+
+/**
+ * Parses each source in a corpus as a compilation unit.
+ * One operation parses the whole corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ParseBenchmark {
+
+  /** Corpora for the Java 8 grammar. */
+  @State(Scope.Benchmark)
+  public static class J8Sources {
+    /** The {@linkplain Corpus#named name} of the corpus. */
+    @Param({
+      Corpus.SELF, Corpus.DEEP_NESTING, Corpus.BINARY_CHAIN,
+      Corpus.ARRAY_INITIALIZER, Corpus.TEMPLATES,
+    })
+    public String corpus;
+
+    Corpus sources;
+
+    /** Loads the corpus. */
+    @Setup
+    public void load() throws IOException {
+      sources = Corpus.named(corpus);
+    }
+  }
+
+  /**
+   * Corpora for the minimal grammar.
+   * Only the synthetic ones stick to the minimal subset of Java, and the
+   * binary chain is left out since the minimal grammar takes minutes to
+   * parse it.
+   */
+  @State(Scope.Benchmark)
+  public static class JminSources {
+    /** The {@linkplain Corpus#named name} of the corpus. */
+    @Param({ Corpus.DEEP_NESTING, Corpus.ARRAY_INITIALIZER })
+    public String corpus;
+
+    Corpus sources;
+
+    /** Loads the corpus. */
+    @Setup
+    public void load() throws IOException {
+      sources = Corpus.named(corpus);
+    }
+  }
+
+  /** Parses with the Java 8 grammar. */
+  @Benchmark
+  public void parseJ8(J8Sources s, Throughput t, Blackhole bh) {
+    for (Input input : s.sources.inputs()) {
+      bh.consume(Pipeline.parse(Pipeline.J8_COMPILATION_UNIT, input));
+    }
+    t.kilobytes += s.sources.kilobytes;
+  }
+
+  /** Parses with the minimal grammar. */
+  @Benchmark
+  public void parseJmin(JminSources s, Throughput t, Blackhole bh) {
+    for (Input input : s.sources.inputs()) {
+      bh.consume(Pipeline.parse(Pipeline.JMIN_COMPILATION_UNIT, input));
+    }
+    t.kilobytes += s.sources.kilobytes;
+  }
+}
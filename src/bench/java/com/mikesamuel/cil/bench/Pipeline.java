@@ -0,0 +1,89 @@
+package com.mikesamuel.cil.bench;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.mikesamuel.cil.ast.BaseNode;
+import com.mikesamuel.cil.ast.Trees;
+import com.mikesamuel.cil.ast.j8.J8BaseNode;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.ast.jmin.JminNodeType;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.FarthestFailure;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.LeftRecursion;
+import com.mikesamuel.cil.parser.ParSer;
+import com.mikesamuel.cil.parser.ParseResult;
+import com.mikesamuel.cil.parser.ParseState;
+import com.mikesamuel.cil.parser.SList;
+import com.mikesamuel.cil.parser.SerialErrorReceiver;
+import com.mikesamuel.cil.parser.SerialState;
+import com.mikesamuel.cil.parser.Unparse;
+import com.mikesamuel.cil.ptree.PTree;
+
+/**
+ * The stages of the parse/build/unparse pipeline that benchmarks measure.
+ * Each stage fails loudly so that a benchmark never quietly measures a
+ * failing parse.
+ */
+final class Pipeline {
+  private Pipeline() {
+    // static API
+  }
+
+  static final ParSer J8_COMPILATION_UNIT =
+      PTree.complete(J8NodeType.CompilationUnit).getParSer();
+
+  static final ParSer JMIN_COMPILATION_UNIT =
+      PTree.complete(JminNodeType.CompilationUnit).getParSer();
+
+  private static final Trees<J8BaseNode> J8_TREES =
+      Trees.forGrammar(J8NodeType.GRAMMAR);
+
+  /** The state after parsing all of input. */
+  static ParseState parse(ParSer parSer, Input input) {
+    FarthestFailure err = new FarthestFailure();
+    ParseResult result = parSer.parse(
+        new ParseState(input), new LeftRecursion(), err);
+    if (result.synopsis != ParseResult.Synopsis.SUCCESS) {
+      throw new IllegalStateException(
+          input.getSourcePosition(Math.max(0, err.getIndex()))
+          + ": " + err.getMessage());
+    }
+    return result.next();
+  }
+
+  /** The Java 8 parse tree for a successful parse of input. */
+  static J8BaseNode buildTree(Input input, ParseState parsed) {
+    return J8_TREES.of(input, parsed.output);
+  }
+
+  /**
+   * Like {@link #buildTree} but by copying the output into forward order
+   * and building from that.
+   */
+  static J8BaseNode buildTreeFromEvents(Input input, ParseState parsed) {
+    return J8_TREES.of(input, SList.forwardIterable(parsed.output));
+  }
+
+  /** The unverified events for a tree. */
+  static ImmutableList<Event> unparse(BaseNode<?, ?, ?> root) {
+    SerialState beforeRoot = new SerialState(SList.forwardIterable(
+        Trees.startUnparse(null, root, null)));
+    Optional<SerialState> afterRoot = J8_COMPILATION_UNIT.unparse(
+        beforeRoot, SerialErrorReceiver.DEV_NULL);
+    if (!afterRoot.isPresent()) {
+      throw new IllegalStateException("Failed to unparse " + root);
+    }
+    return ImmutableList.copyOf(
+        SList.forwardIterable(afterRoot.get().output));
+  }
+
+  /** Verifies unparsed events. */
+  static Unparse.Verified verify(Iterable<? extends Event> unverified) {
+    try {
+      return Unparse.verify(unverified);
+    } catch (Unparse.UnparseVerificationException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.mikesamuel.cil.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the source processed so that JMH reports KB/s alongside ops/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+  /** Kilobytes of source processed in the current iteration. */
+  public double kilobytes;
+
+  /** Called by JMH which does not reset auxiliary counters itself. */
+  @Setup(Level.Iteration)
+  public void reset() {
+    kilobytes = 0;
+  }
+}
@@ -0,0 +1,86 @@
+package com.mikesamuel.cil.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.ParseState;
+
+/**
+ * Builds parse trees from the events produced by parsing each source in a
+ * corpus.  One operation builds trees for the whole corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class TreeBuildingBenchmark {
+
+  /** The outputs of parsing a corpus. */
+  @State(Scope.Benchmark)
+  public static class Parsed {
+    /** The {@linkplain Corpus#named name} of the corpus. */
+    @Param({
+      Corpus.SELF, Corpus.DEEP_NESTING, Corpus.BINARY_CHAIN,
+      Corpus.ARRAY_INITIALIZER, Corpus.TEMPLATES,
+    })
+    public String corpus;
+
+    Corpus sources;
+    ImmutableList<Input> inputs;
+    ImmutableList<ParseState> parsed;
+
+    /** Parses the corpus. */
+    @Setup
+    public void parse() throws IOException {
+      sources = Corpus.named(corpus);
+      inputs = sources.inputs();
+      ImmutableList.Builder<ParseState> b = ImmutableList.builder();
+      for (Input input : inputs) {
+        b.add(Pipeline.parse(Pipeline.J8_COMPILATION_UNIT, input));
+      }
+      parsed = b.build();
+    }
+  }
+
+  /**
+   * Builds trees by walking the parser's output backwards via
+   * {@link com.mikesamuel.cil.ast.Trees#of(Input,
+   * com.mikesamuel.cil.parser.SList)}.
+   */
+  @Benchmark
+  public void buildTrees(Parsed p, Throughput t, Blackhole bh) {
+    for (int i = 0, n = p.inputs.size(); i < n; ++i) {
+      bh.consume(Pipeline.buildTree(p.inputs.get(i), p.parsed.get(i)));
+    }
+    t.kilobytes += p.sources.kilobytes;
+  }
+
+  /**
+   * Builds trees from the parser's output copied into forward order via
+   * {@link com.mikesamuel.cil.ast.Trees#of(Input, Iterable)}.
+   */
+  @Benchmark
+  public void buildTreesFromEvents(Parsed p, Throughput t, Blackhole bh) {
+    for (int i = 0, n = p.inputs.size(); i < n; ++i) {
+      bh.consume(
+          Pipeline.buildTreeFromEvents(p.inputs.get(i), p.parsed.get(i)));
+    }
+    t.kilobytes += p.sources.kilobytes;
+  }
+}
@@ -0,0 +1,83 @@
+package com.mikesamuel.cil.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.Unparse;
+
+/**
+ * Verifies and formats the unparsed form of the trees for each source in a
+ * corpus.  One operation processes the whole corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class UnparseBenchmark {
+
+  /** The unparsed and verified forms of a corpus's trees. */
+  @State(Scope.Benchmark)
+  public static class Unparsed {
+    /** The {@linkplain Corpus#named name} of the corpus. */
+    @Param({
+      Corpus.SELF, Corpus.DEEP_NESTING, Corpus.BINARY_CHAIN,
+      Corpus.ARRAY_INITIALIZER, Corpus.TEMPLATES,
+    })
+    public String corpus;
+
+    Corpus sources;
+    ImmutableList<ImmutableList<Event>> unverified;
+    ImmutableList<Unparse.Verified> verified;
+
+    /** Parses, builds trees for, and unparses the corpus. */
+    @Setup
+    public void unparse() throws IOException {
+      sources = Corpus.named(corpus);
+      ImmutableList.Builder<ImmutableList<Event>> ub = ImmutableList.builder();
+      ImmutableList.Builder<Unparse.Verified> vb = ImmutableList.builder();
+      for (Input input : sources.inputs()) {
+        ImmutableList<Event> events = Pipeline.unparse(Pipeline.buildTree(
+            input, Pipeline.parse(Pipeline.J8_COMPILATION_UNIT, input)));
+        ub.add(events);
+        vb.add(Pipeline.verify(events));
+      }
+      unverified = ub.build();
+      verified = vb.build();
+    }
+  }
+
+  /** Checks token boundaries via {@link Unparse#verify}. */
+  @Benchmark
+  public void verify(Unparsed u, Throughput t, Blackhole bh) {
+    for (ImmutableList<Event> events : u.unverified) {
+      bh.consume(Pipeline.verify(events));
+    }
+    t.kilobytes += u.sources.kilobytes;
+  }
+
+  /** Lays out source code via {@link Unparse#format}. */
+  @Benchmark
+  public void format(Unparsed u, Throughput t, Blackhole bh) {
+    for (Unparse.Verified v : u.verified) {
+      bh.consume(Unparse.format(v));
+    }
+    t.kilobytes += u.sources.kilobytes;
+  }
+}
@@ -0,0 +1,9 @@
+/**
+ * JMH benchmarks for parsing, tree building, unparsing and layout.
+ * <p>
+ * Run them via <code>mvn -P benchmarks -DskipTests verify</code> which
+ * reports ops/s, KB/s of source processed, and allocation rates from the GC
+ * profiler.  Pass <code>-Dbenchmarks=<i>regex</i></code> to run a subset.
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package com.mikesamuel.cil.bench;
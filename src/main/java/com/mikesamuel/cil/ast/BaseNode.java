@@ -12,6 +12,7 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.mikesamuel.cil.ast.meta.MetadataBridge;
+import com.mikesamuel.cil.parser.LineStarts;
 import com.mikesamuel.cil.parser.SourcePosition;
 
 /**
@@ -43,7 +44,19 @@ public abstract class BaseNode<
     NODE_VARIANT extends NodeVariant<BASE_NODE, NODE_TYPE>>
 implements NodeI<BASE_NODE, NODE_TYPE, NODE_VARIANT> {
   private NODE_VARIANT variant;
-  private @Nullable SourcePosition sourcePosition;
+  /**
+   * The line structure of the file containing the node, which is shared by
+   * all nodes parsed from that file, or null if the node has no position.
+   * <p>
+   * A position is packed into a pair of character offsets into the file and
+   * only materialized as a {@link SourcePosition} when asked for, since most
+   * are never read except to report an error.
+   */
+  private @Nullable LineStarts lineStarts;
+  /** Only meaningful when lineStarts is non-null. */
+  private int startCharInFile;
+  /** Only meaningful when lineStarts is non-null. */
+  private int endCharInFile;
 
   protected BaseNode(NODE_VARIANT variant) {
     setVariant(variant);
@@ -80,15 +93,25 @@ implements NodeI<BASE_NODE, NODE_TYPE, NODE_VARIANT> {
   /** The source position.  Non-normative. */
   @Override
   public final @Nullable SourcePosition getSourcePosition() {
-    return sourcePosition;
+    return lineStarts != null
+        ? new SourcePosition(lineStarts, startCharInFile, endCharInFile)
+        : null;
   }
 
   /**
    * @see #getSourcePosition()
    */
   @Override
-  public final void setSourcePosition(SourcePosition newSourcePosition) {
-    this.sourcePosition = newSourcePosition;
+  public final void setSourcePosition(
+      @Nullable SourcePosition newSourcePosition) {
+    if (newSourcePosition != null) {
+      this.lineStarts = Preconditions.checkNotNull(
+          newSourcePosition.getLineStarts());
+      this.startCharInFile = newSourcePosition.startCharInFile();
+      this.endCharInFile = newSourcePosition.endCharInFile();
+    } else {
+      this.lineStarts = null;
+    }
   }
 
   /** Copies all parse and mixin metadata from the given node. */
@@ -75,7 +75,12 @@ extends NodeI<BASE_NODE, NODE_TYPE, NODE_VARIANT> {
   /** A mutable list of children. */
   public static final
   class MutableChildList<BASE_NODE extends BaseNode<BASE_NODE, ?, ?>> {
-    private final List<BASE_NODE> children = Lists.newArrayList();
+    /**
+     * Initially without capacity since constructors
+     * {@linkplain #replaceChildren replace} the children with a list whose
+     * size is known, and most nodes have only one child.
+     */
+    private final List<BASE_NODE> children = Lists.newArrayListWithCapacity(0);
 
     /** The count of children in the list. */
     public final int getNChildren() {
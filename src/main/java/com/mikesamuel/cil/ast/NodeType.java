@@ -33,6 +33,21 @@ extends ParSerable, Comparable<SELF> {
    */
   boolean isIdentifierWrapper();
 
+  /**
+   * True if the production might be reached from itself without consuming
+   * input, so parsing it requires left-recursion bookkeeping.
+   */
+  boolean isLeftRecursive();
+
+  /**
+   * True if the production is a commit point: once the parser has parsed it,
+   * and it is not nested too deeply in other commit points, the parser will
+   * not need memoized results for earlier input.
+   *
+   * @see com.mikesamuel.cil.parser.RatPack#commit
+   */
+  boolean isCommitPoint();
+
   /** Automatically provided for {@link Enum} classes. */
   String name();
 
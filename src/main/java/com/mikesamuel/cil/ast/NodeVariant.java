@@ -5,6 +5,9 @@ import javax.annotation.Nullable;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.Expectation;
+import com.mikesamuel.cil.parser.Lookahead1;
+import com.mikesamuel.cil.parser.ParSer;
 import com.mikesamuel.cil.parser.ParSerable;
 import com.mikesamuel.cil.parser.SList;
 
@@ -18,7 +21,7 @@ import com.mikesamuel.cil.parser.SList;
 public interface NodeVariant<
     BASE_NODE extends BaseNode<BASE_NODE, NODE_TYPE, ?>,
     NODE_TYPE extends Enum<NODE_TYPE> & NodeType<BASE_NODE, NODE_TYPE>>
-extends ParSerable {
+extends ParSerable, Expectation {
   /**
    * Such that <code>
    * {@link #getNodeType()}.{@link NodeType#getVariantType() getVariantType()}
@@ -53,6 +56,18 @@ extends ParSerable {
       Iterable<? extends BASE_NODE> children);
   // TODO: maybe have two variants of NodeVariant for leaf/inner
 
+  /**
+   * A parser for this variant's body that parses the same language and
+   * produces the same events as {@link #getParSer()}.
+   * <p>
+   * Grammars generated with compiled parsers override this to return a
+   * parser whose {@link ParSer#parse parse} method is straight-line code
+   * instead of a walk over a tree of parsers.
+   */
+  default ParSer getCompiledParSer() {
+    return getParSer();
+  }
+
   /**
    * True iff the variant is anonymous meaning that the tree builder should
    * ignore push/pop events corresponding to it and not create an AST node.
@@ -68,6 +83,15 @@ extends ParSerable {
     return Predicates.alwaysTrue();
   }
 
+  /**
+   * The characters that can start a match of this variant, or null if the
+   * variant might match the empty string or its first character is not known
+   * statically.
+   */
+  default @Nullable Lookahead1 getLookahead1() {
+    return null;
+  }
+
   /**
    * True if the content has no semantic value.
    */
@@ -96,4 +120,13 @@ extends ParSerable {
   default boolean isTemplateEnd() {
     return false;
   }
+
+  /**
+   * The variant's {@link #toString string form} since a variant is expected
+   * when unparsing a node with that variant.
+   */
+  @Override
+  default String getDescription() {
+    return toString();
+  }
 }
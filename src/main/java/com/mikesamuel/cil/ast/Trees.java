@@ -2,11 +2,13 @@ package com.mikesamuel.cil.ast;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 import javax.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.mikesamuel.cil.ast.j8.Java8Comments;
 import com.mikesamuel.cil.event.Event;
 import com.mikesamuel.cil.parser.Ignorables;
@@ -34,10 +36,199 @@ public final class Trees<BASE_NODE extends BaseNode<BASE_NODE, ?, ?>> {
   }
 
   /**
+   * Like {@link #of(Input, Iterable)} but walks the parser's output from the
+   * last event back to the first instead of copying it into forward order,
+   * and keeps track of open nodes on an explicit stack instead of recursing
+   * so that very deep trees do not overflow the stack.
+   *
    * @see #of(Input, Iterable)
    */
-  public BASE_NODE of(Input input, SList<Event> events) {
-    return of(input, SList.forwardIterable(events));
+  public BASE_NODE of(Input input, @Nullable SList<Event> events) {
+    List<OpenNode> open = Lists.newArrayList();
+    // Built nodes that have not yet been added to a parent.
+    // Since events are visited last to first, the children of an open node
+    // appear here in reverse order starting at its firstChild.
+    List<BASE_NODE> built = Lists.newArrayList();
+    OpenNode root = new OpenNode(0);
+    OpenNode top = root;
+    // Iterating avoids materializing the cells of slices of output that the
+    // parser replayed from its memo table.
+    for (Event e : SList.reverseIterable(events)) {
+      switch (e.getKind()) {
+        case POP:
+          open.add(top);
+          top = new OpenNode(built.size());
+          break;
+        case PUSH: {
+          if (top == root) {
+            throw new IllegalArgumentException("No pop corresponding to " + e);
+          }
+          OpenNode nodeContent = top;
+          top = open.remove(open.size() - 1);
+          NodeVariant<BASE_NODE, ?> pushVariant = g.cast(e.getNodeVariant());
+          nodeContent.resolveContent(pushVariant);
+          List<BASE_NODE> children = built.subList(
+              nodeContent.firstChild, built.size());
+          if (nodeContent.content != null && nodeContent.hasChildren) {
+            throw new IllegalArgumentException(
+                "Both children and content appear");
+          }
+          if (pushVariant.isAnon()) {
+            // Leave the only child in place for the parent.
+            Preconditions.checkState(children.size() == 1);
+          } else {
+            BASE_NODE nodeBuilt;
+            if (nodeContent.content != null) {
+              nodeBuilt = g.cast(pushVariant.buildNode(nodeContent.content));
+              nodeBuilt.setSourcePosition(nodeContent.contentPosition);
+            } else {
+              // Copied once into a list of the right size.
+              nodeBuilt = g.cast(pushVariant.buildNode(
+                  ImmutableList.copyOf(Lists.reverse(children))));
+              if (nodeContent.startPosition != null) {
+                nodeBuilt.setSourcePosition(SourcePosition.spanning(
+                    nodeContent.startPosition, nodeContent.lastPosition));
+              }
+            }
+            children.clear();
+            built.add(nodeBuilt);
+          }
+          top.hasChildren = true;
+          if (nodeContent.startPosition != null) {
+            top.startPosition = nodeContent.startPosition;
+          }
+          if (top.lastPosition == null) {
+            top.lastPosition = nodeContent.lastPosition;
+          }
+          break;
+        }
+        case CONTENT: {
+          SourcePosition pos = makeSourcePosition(
+              e.getContentIndex(), e.nCharsConsumed(), input);
+          top.addContent(e, true, pos);
+          break;
+        }
+        case TOKEN: {
+          SourcePosition pos = makeSourcePosition(
+              e.getContentIndex(), e.nCharsConsumed(), input);
+          if (pos != null) {
+            top.updatePosition(pos);
+          }
+          break;
+        }
+        case IGNORABLE: {
+          SourcePosition pos = makeSourcePosition(
+              e.getContentIndex(), e.getContent().length(), input);
+          top.addContent(e, false, pos);
+          break;
+        }
+        case DELAYED_CHECK:
+        case LR_END:
+        case LR_START:
+        case POSITION_MARK:
+          throw new IllegalArgumentException("Unexpected event " + e);
+      }
+    }
+
+    if (top != root) {
+      throw new IllegalArgumentException("Saw orphaned pop");
+    }
+    root.resolveContent(null);
+    if (root.content != null) {
+      throw new IllegalArgumentException(
+          "Content outside root: `" + root.content + "`");
+    }
+
+    @SuppressWarnings("synthetic-access")
+    Tier<BASE_NODE> rootTier = new Tier<>();
+    rootTier.nodes = ImmutableList.copyOf(Lists.reverse(built));
+    return coalesce(rootTier, input);
+  }
+
+  /**
+   * The content of a node whose pop has been seen by {@link #of(Input, SList)}
+   * but whose push has not.
+   * Events are visited last to first, so the last position is the first one
+   * seen, and the start position is the last one seen.
+   */
+  private static final class OpenNode {
+    /** Index of the node's first child in the list of built nodes. */
+    final int firstChild;
+    boolean hasChildren;
+    @Nullable SourcePosition startPosition;
+    @Nullable SourcePosition lastPosition;
+    /**
+     * The last content event or, if the node turns out to be ignorable, the
+     * last content or ignorable event.  Resolved once the push is seen.
+     */
+    @Nullable String content;
+    @Nullable SourcePosition contentPosition;
+
+    // The node's variant is not known until its push is seen, so keep
+    // enough to tell whether an ignorable variant's comment is its content.
+    private @Nullable Event lastContent;
+    private @Nullable SourcePosition lastContentPosition;
+    private int nContent;
+    private @Nullable Event lastIgnorable;
+    private @Nullable SourcePosition lastIgnorablePosition;
+    private int nIgnorable;
+    private boolean lastIsContent;
+    private boolean firstIsContent;
+
+    OpenNode(int firstChild) {
+      this.firstChild = firstChild;
+    }
+
+    void updatePosition(SourcePosition pos) {
+      startPosition = pos.start();
+      if (lastPosition == null) {
+        lastPosition = pos.end();
+      }
+    }
+
+    void addContent(Event e, boolean isContent, @Nullable SourcePosition pos) {
+      if (isContent) {
+        if (nContent++ == 0) {
+          lastContent = e;
+          lastContentPosition = pos;
+        }
+      } else {
+        if (nIgnorable++ == 0) {
+          lastIgnorable = e;
+          lastIgnorablePosition = pos;
+        }
+      }
+      if (nContent + nIgnorable == 1) {
+        lastIsContent = isContent;
+      }
+      firstIsContent = isContent;
+      if (pos != null) {
+        updatePosition(pos);
+      }
+    }
+
+    /** @param variant null for the root. */
+    void resolveContent(@Nullable NodeVariant<?, ?> variant) {
+      boolean ignorablesAreContent = variant != null && variant.isIgnorable();
+      Event duplicate = null;
+      if (nContent >= 2
+          || (ignorablesAreContent && nContent == 1 && nIgnorable != 0
+              && !firstIsContent)) {
+        duplicate = lastContent;
+      }
+      if (duplicate != null) {
+        throw new IllegalArgumentException(
+            "Duplicate content `" + duplicate.getContent() + "`");
+      }
+      if (ignorablesAreContent && nIgnorable != 0
+          && !(nContent != 0 && lastIsContent)) {
+        content = lastIgnorable.getContent();
+        contentPosition = lastIgnorablePosition;
+      } else if (nContent != 0) {
+        content = lastContent.getContent();
+        contentPosition = lastContentPosition;
+      }
+    }
   }
 
   /**
@@ -94,6 +285,108 @@ public final class Trees<BASE_NODE extends BaseNode<BASE_NODE, ?, ?>> {
     return of(state.input, state.output);
   }
 
+  /**
+   * Replaces subtrees of current with the corresponding subtrees of previous
+   * where they are equal, span the same source positions, and end at or
+   * before limit.
+   * This lets a tree parsed from an {@linkplain Input#edit edited} input
+   * share the nodes, and any metadata attached to them, from the part of the
+   * tree parsed before the edit that the edit did not touch.
+   * <p>
+   * Nodes are mutable and have no parent pointers, so a shared node is only
+   * safe to mutate if previous is no longer used.
+   *
+   * @param limit an index into the source code.
+   *     Subtrees of previous that end after it are not shared.
+   *     See {@link Input#getUnchangedPrefixLength}.
+   * @return previous if it is equivalent to current, otherwise current
+   *     possibly with some descendants replaced.
+   */
+  public static <BASE_NODE extends BaseNode<BASE_NODE, ?, ?>>
+  BASE_NODE shareUnchanged(
+      BASE_NODE previous, BASE_NODE current, int limit) {
+    // Walk with an explicit stack since trees like those for long operator
+    // chains are deep enough to overflow the call stack.
+    SharingNode<BASE_NODE> top = SharingNode.of(previous, current, limit);
+    if (top == null) {
+      return current;
+    }
+    List<SharingNode<BASE_NODE>> stack = Lists.newArrayList();
+    while (true) {
+      if (top.nextChild < top.nChildrenToCompare) {
+        int i = top.nextChild++;
+        SharingNode<BASE_NODE> child = SharingNode.of(
+            top.previous.getChild(i), top.current.getChild(i), limit);
+        if (child != null) {
+          stack.add(top);
+          top = child;
+        } else {
+          top.same = false;
+        }
+        continue;
+      }
+      BASE_NODE shared = top.same ? top.previous : top.current;
+      if (stack.isEmpty()) {
+        return shared;
+      }
+      SharingNode<BASE_NODE> parent = stack.remove(stack.size() - 1);
+      if (shared != top.current) {
+        @SuppressWarnings("unchecked")  // By convention.
+        InnerNode<BASE_NODE, ?, ?> inode =
+            (InnerNode<BASE_NODE, ?, ?>) parent.current;
+        inode.replace(parent.nextChild - 1, shared);
+      } else {
+        parent.same = false;
+      }
+      top = parent;
+    }
+  }
+
+  /** A node that {@link #shareUnchanged} is comparing children of. */
+  private static final class SharingNode<
+      BASE_NODE extends BaseNode<BASE_NODE, ?, ?>> {
+    final BASE_NODE previous;
+    final BASE_NODE current;
+    final int nChildrenToCompare;
+    /** The index of the next child pair to compare. */
+    int nextChild;
+    /** True if previous can stand in for current. */
+    boolean same;
+
+    private SharingNode(
+        BASE_NODE previous, BASE_NODE current, int nChildrenToCompare,
+        boolean same) {
+      this.previous = previous;
+      this.current = current;
+      this.nChildrenToCompare = nChildrenToCompare;
+      this.same = same;
+    }
+
+    /**
+     * Null if no part of previous can be shared with current so current
+     * stands as is.
+     */
+    static @Nullable <BASE_NODE extends BaseNode<BASE_NODE, ?, ?>>
+    SharingNode<BASE_NODE> of(
+        BASE_NODE previous, BASE_NODE current, int limit) {
+      SourcePosition previousPos = previous.getSourcePosition();
+      if (previous.getVariant() != current.getVariant()
+          || previousPos == null || previousPos.startCharInFile() > limit) {
+        return null;
+      }
+      boolean same = previousPos.endCharInFile() <= limit
+          && previousPos.equals(current.getSourcePosition())
+          && Objects.equals(previous.getValue(), current.getValue());
+      int n = current.getNChildren();
+      int previousN = previous.getNChildren();
+      if (n != previousN) {
+        same = false;
+      }
+      return new SharingNode<>(
+          previous, current, Math.min(n, previousN), same);
+    }
+  }
+
   private Tier<BASE_NODE> buildTier(
       @Nullable NodeVariant<BASE_NODE, ?> variant,
       Input input, Iterator<? extends Event> events) {
@@ -243,69 +536,85 @@ public final class Trees<BASE_NODE extends BaseNode<BASE_NODE, ?, ?>> {
   public static SList<Event> startUnparse(
       @Nullable SList<Event> beforeNode, BaseNode<?, ?, ?> node,
       @Nullable Decorator decorator) {
+    StartUnparser u = new StartUnparser(beforeNode, decorator);
+    u.unparse(node);
+    return u.out;
+  }
 
+  private static final class StartUnparser {
+    final @Nullable Decorator decorator;
+    SList<Event> out;
+    /**
+     * The last position mark on out if no event consumes characters after it.
+     * Tracked as events are appended because the left spine of a long
+     * operator chain is a long run of pushes that all start at the same
+     * position, and looking back over them for the last mark each time
+     * would take time quadratic in the length of the chain.
+     */
+    @Nullable SourcePosition lastMark;
 
-    String value = node.getValue();
-    List<? extends BaseNode<?, ?, ?>> children = node.getChildren();
-
-    SourcePosition pos = node.getSourcePosition();
-    SList<Event> beforeContent = maybeAppendPos(
-        beforeNode, pos != null ? pos.start() : null);
-
-    String decoration = decorator != null ? decorator.decorate(node) : null;
-    if (decoration != null) {
-      beforeContent = SList.append(
-          beforeContent, Event.ignorable(decoration, -1));
+    StartUnparser(@Nullable SList<Event> out, @Nullable Decorator decorator) {
+      this.out = out;
+      this.decorator = decorator;
+      for (SList<Event> c = out; c != null; c = c.prev()) {
+        Event e = c.x;
+        if (e.nCharsConsumed() != 0) {
+          break;
+        } else if (e.getKind() == Event.Kind.POSITION_MARK) {
+          lastMark = e.getSourcePosition();
+          break;
+        }
+      }
     }
 
-    NodeVariant<?, ?> variant = node.getVariant();
-    beforeContent = SList.append(
-        beforeContent, Event.push(node.getVariant()));
-
-    SList<Event> afterContent;
-    if (value != null) {
-      Preconditions.checkState(children.isEmpty());
-      int startIndex = pos != null ? pos.startCharInFile() : -1;
-      afterContent = SList.append(
-          beforeContent,
-          variant.isIgnorable()
-          ? Event.ignorable(value, startIndex)
-          : Event.content(value, startIndex));
-    } else {
-      afterContent = beforeContent;
-      for (BaseNode<?, ?, ?> child : children) {
-        SList<Event> afterChild = startUnparse(afterContent, child, decorator);
-        afterContent = afterChild;
+    void append(Event e) {
+      out = SList.append(out, e);
+      if (e.getKind() == Event.Kind.POSITION_MARK) {
+        lastMark = e.getSourcePosition();
+      } else if (e.nCharsConsumed() != 0) {
+        lastMark = null;
       }
     }
 
-    SList<Event> afterNode = SList.append(afterContent, Event.pop());
-    if (pos != null) {
-      afterNode = maybeAppendPos(afterNode, pos.end());
+    void maybeAppendPos(@Nullable SourcePosition pos) {
+      if (pos != null && !pos.equals(lastMark)) {
+        append(Event.positionMark(pos));
+      }
     }
 
-    return afterNode;
-  }
+    void unparse(BaseNode<?, ?, ?> node) {
+      String value = node.getValue();
+      List<? extends BaseNode<?, ?, ?>> children = node.getChildren();
 
-  private static SList<Event> maybeAppendPos(
-      SList<Event> beforePos, SourcePosition pos) {
-    if (pos != null) {
-      SourcePosition last = null;
-      for (SList<Event> c = beforePos; c != null; c = c.prev) {
-        Event e = c.x;
-        if (e.nCharsConsumed() != 0) {
-          break;
-        } else if (e.getKind() == Event.Kind.POSITION_MARK) {
-          last = e.getSourcePosition();
-          break;
+      SourcePosition pos = node.getSourcePosition();
+      maybeAppendPos(pos != null ? pos.start() : null);
+
+      String decoration = decorator != null ? decorator.decorate(node) : null;
+      if (decoration != null) {
+        append(Event.ignorable(decoration, -1));
+      }
+
+      NodeVariant<?, ?> variant = node.getVariant();
+      append(Event.push(node.getVariant()));
+
+      if (value != null) {
+        Preconditions.checkState(children.isEmpty());
+        int startIndex = pos != null ? pos.startCharInFile() : -1;
+        append(
+            variant.isIgnorable()
+            ? Event.ignorable(value, startIndex)
+            : Event.content(value, startIndex));
+      } else {
+        for (BaseNode<?, ?, ?> child : children) {
+          unparse(child);
         }
       }
-      if (last == null || !pos.equals(last)) {
-        return SList.append(
-            beforePos, Event.positionMark(pos));
+
+      append(Event.pop());
+      if (pos != null) {
+        maybeAppendPos(pos.end());
       }
     }
-    return beforePos;
   }
 
 
@@ -153,20 +153,23 @@ final class GrammarImpl implements Grammar<J8BaseNode, J8NodeType> {
     if (state.input.allowNonStandardProductions) {
       CharSequence content = state.input.content();
       int index = state.index;
-      // Recognize template part prefixes "(%", "{%"
-      if (index + 1 < content.length()
-          && '%' == content.charAt(index + 1)) {
+      // Recognize template part prefixes "(%", "{%".
+      // Read each character before checking for the next so that editable
+      // inputs track the content examined.
+      int n = content.length();
+      if (index < n) {
         char c0 = content.charAt(index);
-        return c0 == '(' || c0 == '{';
+        return (c0 == '(' || c0 == '{')
+            && index + 1 < n && '%' == content.charAt(index + 1);
       }
     }
     return false;
   }
 
   private static SList<Event> stepBack(SList<Event> start) {
-    SList<Event> ls = start.prev;
+    SList<Event> ls = start.prev();
     while (ls != null && ls.x.getKind() == Event.Kind.POSITION_MARK) {
-      ls = ls.prev;
+      ls = ls.prev();
     }
     return ls;
   }
@@ -181,7 +184,7 @@ final class GrammarImpl implements Grammar<J8BaseNode, J8NodeType> {
         case POSITION_MARK:
         case PUSH:
         case TOKEN:
-          ls = ls.prev;
+          ls = ls.prev();
           continue;
         default:
           break;
@@ -281,9 +284,9 @@ final class GrammarImpl implements Grammar<J8BaseNode, J8NodeType> {
       CharSequence content = state.input.content();
       int index = state.index;
       // Recognize template part prefix "%%"
-      if (index + 1 < content.length()
-          && '%' == content.charAt(index)
-          && '%' == content.charAt(index + 1)) {
+      int n = content.length();
+      if (index < n && '%' == content.charAt(index)
+          && index + 1 < n && '%' == content.charAt(index + 1)) {
         return true;
       }
     }
@@ -164,7 +164,7 @@ public final class Intermediates {
     }
     J8BaseNode result = inner;
     for (SList<IntermediateGraphNode> path = pathOpt.get();
-         path != null; path = path.prev) {
+         path != null; path = path.prev()) {
       IntermediateGraphNode g = path.x;
       if (!g.via.isAnon()) {
         result = g.via.buildNode(ImmutableList.of(result));
@@ -0,0 +1,160 @@
+package com.mikesamuel.cil.ast.j8;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.mikesamuel.cil.ast.Trees;
+import com.mikesamuel.cil.parser.FarthestFailure;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.LeftRecursion;
+import com.mikesamuel.cil.parser.ParSer;
+import com.mikesamuel.cil.parser.ParseResult;
+import com.mikesamuel.cil.parser.ParseState;
+import com.mikesamuel.cil.ptree.PTree;
+import com.mikesamuel.cil.util.LogUtils;
+
+/**
+ * Parses compilation units, possibly many at a time.
+ * <p>
+ * The grammar is a graph of immutable {@link ParSer}s that keep no state
+ * between calls, so one grammar is shared by all threads.
+ * All the mutable state of a parse lives in the {@link Input}, which holds
+ * the memo table, and in per-parse objects like {@link LeftRecursion} and
+ * {@link ParseState}, so an input may be parsed by only one thread at a time.
+ */
+public final class J8Parser {
+  private final ExecutorService executor;
+  private final Logger logger;
+
+  private static final ParSer COMPILATION_UNIT =
+      PTree.complete(J8NodeType.CompilationUnit).getParSer();
+
+  /**
+   * @param executor runs parses in {@link #parseAll}.
+   * @param logger receives parse errors.
+   */
+  public J8Parser(ExecutorService executor, Logger logger) {
+    this.executor = Preconditions.checkNotNull(executor);
+    this.logger = Preconditions.checkNotNull(logger);
+  }
+
+  /**
+   * A parser that runs parses in {@link #parseAll} on the common fork-join
+   * pool.
+   */
+  public J8Parser(Logger logger) {
+    this(ForkJoinPool.commonPool(), logger);
+  }
+
+  /**
+   * Parses a compilation unit on the current thread.
+   *
+   * @param input may not {@linkplain Input#allowNonStandardProductions allow}
+   *     template productions.  Templates need post-processing, so use
+   *     {@link com.mikesamuel.cil.template.TemplateBundle} for those.
+   * @return absent if parsing failed, in which case the error has been logged.
+   */
+  public Optional<J8FileNode> parse(Input input) {
+    Preconditions.checkArgument(!input.allowNonStandardProductions);
+
+    FarthestFailure err = new FarthestFailure();
+    ParseResult result = COMPILATION_UNIT.parse(
+        new ParseState(input), new LeftRecursion(), err);
+    switch (result.synopsis) {
+      case SUCCESS:
+        return Optional.of((J8FileNode) Trees.forGrammar(J8NodeType.GRAMMAR)
+            .of(input, result.next().output));
+      case FAILURE:
+        String message = err.getMessage();
+        if (message == null) {
+          message = "Failed to parse compilation unit";
+        }
+        LogUtils.log(
+            logger, Level.SEVERE,
+            input.getSourcePosition(Math.max(0, err.getIndex())),
+            message, null);
+        return Optional.absent();
+    }
+    throw new AssertionError(result.synopsis);
+  }
+
+  /**
+   * Parses a compilation unit from an input {@linkplain Input#edit edited}
+   * from the one that previous was parsed from.
+   * Parsing reuses memoized results from before the edit, and the result
+   * {@linkplain Trees#shareUnchanged shares} nodes with previous where the
+   * edit did not change them.
+   *
+   * @param edited the result of {@link Input#edit}.
+   * @param previous the result of parsing the input edited was derived from.
+   * @return absent if parsing failed, in which case the error has been logged.
+   */
+  public Optional<J8FileNode> reparse(Input edited, J8FileNode previous) {
+    Optional<J8FileNode> current = parse(edited);
+    if (!current.isPresent()) {
+      return current;
+    }
+    return Optional.of((J8FileNode) Trees.shareUnchanged(
+        (J8BaseNode) previous, (J8BaseNode) current.get(),
+        edited.getUnchangedPrefixLength()));
+  }
+
+  /**
+   * Parses each input as a compilation unit in parallel on this parser's
+   * executor.
+   *
+   * @param inputs distinct inputs.
+   * @return a list with the {@link #parse result} for each input in order.
+   * @throws InterruptedException if interrupted while waiting for parses to
+   *     finish, in which case unfinished parses are cancelled.
+   */
+  public ImmutableList<Optional<J8FileNode>> parseAll(
+      Iterable<? extends Input> inputs)
+  throws InterruptedException {
+    List<Future<Optional<J8FileNode>>> futures = Lists.newArrayList();
+    boolean done = false;
+    try {
+      for (final Input input : inputs) {
+        futures.add(executor.submit(new Callable<Optional<J8FileNode>>() {
+          @Override
+          public Optional<J8FileNode> call() {
+            return parse(input);
+          }
+        }));
+      }
+      ImmutableList.Builder<Optional<J8FileNode>> results =
+          ImmutableList.builder();
+      for (Future<Optional<J8FileNode>> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new AssertionError(ex);  // parse throws no checked exceptions
+        }
+      }
+      done = true;
+      return results.build();
+    } finally {
+      if (!done) {
+        for (Future<?> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+}
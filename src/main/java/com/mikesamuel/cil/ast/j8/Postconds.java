@@ -41,7 +41,7 @@ public final class Postconds {
       }
       int popDepth = 0;
       event_loop:
-      for (SList<Event> c = output; c != null; c = c.prev) {
+      for (SList<Event> c = output; c != null; c = c.prev()) {
         Event e = c.x;
         switch (e.getKind()) {
           case POP:
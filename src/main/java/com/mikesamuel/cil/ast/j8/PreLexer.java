@@ -0,0 +1,178 @@
+package com.mikesamuel.cil.ast.j8;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.TokenScanner;
+import com.mikesamuel.cil.parser.TokenTable;
+
+/**
+ * Breaks an input into maximal tokens once, ahead of parsing, so that
+ * terminals can be matched by consulting a {@link TokenTable} instead of
+ * re-examining characters.
+ * <p>
+ * Where tokens could merge, the longest match wins, so {@code a >>= b}
+ * has one token {@code >>=}.  The parser still finds shorter tokens like the
+ * {@code >} in {@code List<List<T>>} by looking at characters since those do
+ * not start on token boundaries.
+ */
+public final class PreLexer {
+
+  private PreLexer() {
+    // Provides static API
+  }
+
+  /**
+   * The texts of tokens that get {@linkplain TokenTable#textId ids}.
+   * An id is an index into this list.
+   */
+  private static final ImmutableList<String> VOCABULARY =
+      ImmutableList.<String>builder()
+      .addAll(TokenStrings.RESERVED)
+      .addAll(TokenStrings.PUNCTUATION)
+      .build();
+
+  private static final ImmutableMap<String, Integer> TEXT_IDS;
+  private static final int MAX_WORD_LENGTH;
+  static {
+    ImmutableMap.Builder<String, Integer> b = ImmutableMap.builder();
+    for (int i = 0, n = VOCABULARY.size(); i < n; ++i) {
+      b.put(VOCABULARY.get(i), i);
+    }
+    TEXT_IDS = b.build();
+
+    int maxWordLength = 0;
+    for (String word : TokenStrings.RESERVED) {
+      maxWordLength = Math.max(maxWordLength, word.length());
+    }
+    MAX_WORD_LENGTH = maxWordLength;
+  }
+
+  private static final Comparator<String> LONGEST_FIRST =
+      new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+          return b.length() - a.length();
+        }
+      };
+
+  /** ASCII punctuation grouped by first character, longest first. */
+  private static final String[][] PUNCTUATION_BY_FIRST_CHAR =
+      new String[0x80][];
+  static {
+    for (String punc : TokenStrings.PUNCTUATION) {
+      char ch = punc.charAt(0);
+      String[] group = PUNCTUATION_BY_FIRST_CHAR[ch];
+      if (group == null) {
+        group = new String[] { punc };
+      } else {
+        group = Arrays.copyOf(group, group.length + 1);
+        group[group.length - 1] = punc;
+      }
+      PUNCTUATION_BY_FIRST_CHAR[ch] = group;
+    }
+    for (String[] group : PUNCTUATION_BY_FIRST_CHAR) {
+      if (group != null) {
+        Arrays.sort(group, LONGEST_FIRST);
+      }
+    }
+  }
+
+  /**
+   * The id that a {@link TokenTable} produced by {@link #lex} uses for tokens
+   * with the given text, or {@link TokenTable#NO_TEXT_ID} if the text is not
+   * a keyword, boolean or null literal, or punctuation string.
+   */
+  public static int textId(String text) {
+    Integer id = TEXT_IDS.get(text);
+    return id != null ? id : TokenTable.NO_TEXT_ID;
+  }
+
+  /**
+   * Pre-lexes Java inputs when passed to
+   * {@link com.mikesamuel.cil.parser.Input.Builder#preLex}.
+   */
+  public static final TokenTable.Lexer LEXER = new TokenTable.Lexer() {
+    @Override
+    public TokenTable lex(Input input) {
+      return PreLexer.lex(input);
+    }
+  };
+
+  /** Breaks the input's content into tokens. */
+  public static TokenTable lex(Input input) {
+    CharSequence content = input.content();
+    int n = content.length();
+    TokenTable.Builder b = TokenTable.builder(n);
+    int i = input.indexAfterIgnorables(0);
+    while (i < n) {
+      char ch = content.charAt(i);
+      TokenScanner scannedBy = null;
+      int textId = TokenTable.NO_TEXT_ID;
+      int end = TokenScanners.IDENTIFIER_CHARS.scan(content, i);
+      if (end >= 0) {
+        if (end - i <= MAX_WORD_LENGTH) {
+          textId = textId(input.getInterner().intern(content, i, end));
+        }
+        // Identifiers are common, so record the scanner that excludes
+        // keywords.
+        scannedBy = textId == TokenTable.NO_TEXT_ID
+            ? TokenScanners.IDENTIFIER
+            : TokenScanners.IDENTIFIER_CHARS;
+      } else if (('0' <= ch && ch <= '9')
+                 || (ch == '.' && i + 1 < n
+                     && '0' <= content.charAt(i + 1)
+                     && content.charAt(i + 1) <= '9')) {
+        int floatEnd = TokenScanners.FLOATING_POINT_LITERAL.scan(content, i);
+        int intEnd = TokenScanners.INTEGER_LITERAL.scan(content, i);
+        if (floatEnd > intEnd) {
+          end = floatEnd;
+          scannedBy = TokenScanners.FLOATING_POINT_LITERAL;
+        } else if (intEnd >= 0) {
+          end = intEnd;
+          scannedBy = TokenScanners.INTEGER_LITERAL;
+        }
+      } else if (ch == '"') {
+        end = TokenScanners.STRING_LITERAL.scan(content, i);
+        if (end >= 0) {
+          scannedBy = TokenScanners.STRING_LITERAL;
+        }
+      } else if (ch == '\'') {
+        end = TokenScanners.CHARACTER_LITERAL.scan(content, i);
+        if (end >= 0) {
+          scannedBy = TokenScanners.CHARACTER_LITERAL;
+        }
+      }
+      if (end < 0 && ch < 0x80 && PUNCTUATION_BY_FIRST_CHAR[ch] != null) {
+        for (String punc : PUNCTUATION_BY_FIRST_CHAR[ch]) {
+          int puncEnd = i + punc.length();
+          if (puncEnd <= n && regionMatches(content, i, punc)) {
+            end = puncEnd;
+            textId = TEXT_IDS.get(punc);
+            break;
+          }
+        }
+      }
+      if (end < 0) {
+        // Something that the parser will probably reject.
+        end = i + Character.charCount(Character.codePointAt(content, i));
+      }
+      b.add(i, end, scannedBy, textId);
+      i = input.indexAfterIgnorables(end);
+    }
+    return b.build(i);
+  }
+
+  private static boolean regionMatches(
+      CharSequence content, int start, String s) {
+    for (int j = 0, n = s.length(); j < n; ++j) {
+      if (content.charAt(start + j) != s.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,430 @@
+package com.mikesamuel.cil.ast.j8;
+
+import com.mikesamuel.cil.parser.TokenScanner;
+
+/**
+ * Hand-coded recognizers for the lexical productions in {@link Tokens}.
+ * <p>
+ * Each finds the same token as the corresponding regular expression in
+ * {@link Tokens} when that expression is matched at the start of a region.
+ */
+final class TokenScanners {
+
+  private TokenScanners() {
+    // Provides static API
+  }
+
+  /** Bits for ASCII chars that can start a Java identifier. */
+  private static final long[] ASCII_IDENT_START = new long[2];
+  /** Bits for ASCII chars that can appear in a Java identifier. */
+  private static final long[] ASCII_IDENT_PART = new long[2];
+  static {
+    for (char c = 0; c < 0x80; ++c) {
+      if (Character.isJavaIdentifierStart(c)) {
+        ASCII_IDENT_START[c >> 6] |= 1L << c;
+      }
+      if (Character.isJavaIdentifierPart(c)) {
+        ASCII_IDENT_PART[c >> 6] |= 1L << c;
+      }
+    }
+  }
+
+  /** Keywords, boolean and null literals grouped by length. */
+  private static final String[][] KEYWORDS_BY_LENGTH;
+  static {
+    int maxLength = 0;
+    for (String word : TokenStrings.RESERVED) {
+      maxLength = Math.max(maxLength, word.length());
+    }
+    int[] counts = new int[maxLength + 1];
+    for (String word : TokenStrings.RESERVED) {
+      ++counts[word.length()];
+    }
+    KEYWORDS_BY_LENGTH = new String[maxLength + 1][];
+    for (int i = 0; i <= maxLength; ++i) {
+      KEYWORDS_BY_LENGTH[i] = new String[counts[i]];
+      counts[i] = 0;
+    }
+    for (String word : TokenStrings.RESERVED) {
+      int n = word.length();
+      KEYWORDS_BY_LENGTH[n][counts[n]++] = word;
+    }
+  }
+
+  /** Section 3.8 */
+  static final TokenScanner IDENTIFIER_CHARS = new TokenScanner() {
+    @Override
+    public int scan(CharSequence content, int start) {
+      return scanIdentifierChars(content, start);
+    }
+  };
+
+  /** Section 3.8 */
+  static final TokenScanner IDENTIFIER = new TokenScanner() {
+    @Override
+    public int scan(CharSequence content, int start) {
+      int end = scanIdentifierChars(content, start);
+      if (end >= 0 && isKeyword(content, start, end)) {
+        return -1;
+      }
+      return end;
+    }
+  };
+
+  /** 3.10.1 */
+  static final TokenScanner INTEGER_LITERAL = new TokenScanner() {
+    @Override
+    public int scan(CharSequence content, int start) {
+      // Every character in an integer literal is an identifier part, and
+      // the literal may not be followed by one, so the literal must span the
+      // whole run of identifier parts.
+      int end = scanIdentifierParts(content, start);
+      if (end == start) {
+        return -1;
+      }
+      int bodyEnd = end;
+      char last = content.charAt(end - 1);
+      if (last == 'L' || last == 'l') {
+        --bodyEnd;
+      }
+      if (bodyEnd == start) {
+        return -1;
+      }
+      char c0 = content.charAt(start);
+      boolean ok;
+      if (bodyEnd == start + 1) {
+        ok = '0' <= c0 && c0 <= '9';
+      } else if (c0 != '0') {
+        // DecimalNumeral may have underscores after the first digit.
+        ok = '1' <= c0 && c0 <= '9'
+            && runEnd(content, start + 1, bodyEnd, DIGIT) == bodyEnd;
+      } else {
+        char c1 = content.charAt(start + 1);
+        if (c1 == 'x' || c1 == 'X') {
+          ok = digitsEnd(content, start + 2, bodyEnd, HEX_DIGIT) == bodyEnd;
+        } else if (c1 == 'b' || c1 == 'B') {
+          ok = digitsEnd(content, start + 2, bodyEnd, BINARY_DIGIT)
+              == bodyEnd;
+        } else {
+          // OctalNumeral may have underscores right after the 0.
+          ok = runEnd(content, start + 1, bodyEnd, OCTAL_DIGIT) == bodyEnd;
+        }
+      }
+      return ok ? end : -1;
+    }
+  };
+
+  /** 3.10.2 */
+  static final TokenScanner FLOATING_POINT_LITERAL = new TokenScanner() {
+    @Override
+    public int scan(CharSequence content, int start) {
+      int n = content.length();
+      if (start >= n) { return -1; }
+      int i = start;
+      char c0 = content.charAt(i);
+      if (c0 == '0' && i + 1 < n
+          && (content.charAt(i + 1) | 0x20) == 'x') {
+        // HexadecimalFloatingPointLiteral
+        i += 2;
+        int afterDigits = digitsEnd(content, i, n, HEX_DIGIT);
+        boolean sawDigits = afterDigits >= 0;
+        if (sawDigits) {
+          i = afterDigits;
+        }
+        if (i < n && content.charAt(i) == '.') {
+          ++i;
+          afterDigits = digitsEnd(content, i, n, HEX_DIGIT);
+          if (afterDigits >= 0) {
+            i = afterDigits;
+          } else if (!sawDigits) {
+            return -1;
+          }
+        } else if (!sawDigits) {
+          return -1;
+        }
+        if (i < n && (content.charAt(i) | 0x20) == 'p') {
+          i = signedIntegerEnd(content, i + 1, n);
+          if (i >= 0) {
+            i = optSuffixEnd(content, i, n);
+          }
+        } else {
+          return -1;
+        }
+      } else if (c0 == '.') {
+        // . Digits ExponentPartopt FloatTypeSuffixopt
+        i = digitsEnd(content, i + 1, n, DIGIT);
+        if (i >= 0) {
+          i = optExponentAndSuffixEnd(content, i, n);
+        }
+      } else {
+        i = digitsEnd(content, i, n, DIGIT);
+        if (i < 0) { return -1; }
+        char c = i < n ? content.charAt(i) : '\0';
+        if (c == '.') {
+          // Digits . Digitsopt ExponentPartopt FloatTypeSuffixopt
+          ++i;
+          int afterDigits = digitsEnd(content, i, n, DIGIT);
+          if (afterDigits >= 0) {
+            i = afterDigits;
+          }
+          i = optExponentAndSuffixEnd(content, i, n);
+        } else if ((c | 0x20) == 'e') {
+          // Digits ExponentPart FloatTypeSuffixopt
+          i = optExponentAndSuffixEnd(content, i, n);
+        } else if (isFloatTypeSuffix(c)) {
+          // Digits ExponentPartopt FloatTypeSuffix
+          ++i;
+        } else {
+          return -1;
+        }
+      }
+      if (i < 0 || isIdentifierPartAt(content, i, n)) {
+        return -1;
+      }
+      return i;
+    }
+  };
+
+  /** 3.10.5 */
+  static final TokenScanner STRING_LITERAL = new TokenScanner() {
+    @Override
+    public int scan(CharSequence content, int start) {
+      int n = content.length();
+      if (start >= n || content.charAt(start) != '"') { return -1; }
+      int i = start + 1;
+      while (i < n) {
+        char c = content.charAt(i);
+        if (c == '"') {
+          return i + 1;
+        }
+        i = c == '\'' ? i + 1 : charEnd(content, i, n);
+        if (i < 0) { break; }
+      }
+      return -1;
+    }
+  };
+
+  /** Section 3.10.4. */
+  static final TokenScanner CHARACTER_LITERAL = new TokenScanner() {
+    @Override
+    public int scan(CharSequence content, int start) {
+      int n = content.length();
+      if (start >= n || content.charAt(start) != '\'') { return -1; }
+      int i = start + 1;
+      if (i == n) { return -1; }
+      char c = content.charAt(i);
+      if (c == '"') {
+        ++i;
+      } else if (c == '\'') {
+        return -1;
+      } else {
+        i = charEnd(content, i, n);
+      }
+      if (i >= 0 && i < n && content.charAt(i) == '\'') {
+        return i + 1;
+      }
+      return -1;
+    }
+  };
+
+  private static int scanIdentifierChars(CharSequence content, int start) {
+    int n = content.length();
+    if (start >= n) { return -1; }
+    char c = content.charAt(start);
+    int i;
+    if (c < 0x80) {
+      if ((ASCII_IDENT_START[c >> 6] & (1L << c)) == 0) { return -1; }
+      i = start + 1;
+    } else {
+      int cp = Character.codePointAt(content, start);
+      if (!Character.isJavaIdentifierStart(cp)) { return -1; }
+      i = start + Character.charCount(cp);
+    }
+    return scanIdentifierParts(content, i);
+  }
+
+  private static int scanIdentifierParts(CharSequence content, int start) {
+    int n = content.length();
+    int i = start;
+    while (i < n) {
+      char c = content.charAt(i);
+      if (c < 0x80) {
+        if ((ASCII_IDENT_PART[c >> 6] & (1L << c)) == 0) { break; }
+        ++i;
+      } else {
+        int cp = Character.codePointAt(content, i);
+        if (!Character.isJavaIdentifierPart(cp)) { break; }
+        i += Character.charCount(cp);
+      }
+    }
+    return i;
+  }
+
+  private static boolean isIdentifierPartAt(
+      CharSequence content, int i, int n) {
+    if (i == n) { return false; }
+    char c = content.charAt(i);
+    if (c < 0x80) {
+      return (ASCII_IDENT_PART[c >> 6] & (1L << c)) != 0;
+    }
+    return Character.isJavaIdentifierPart(Character.codePointAt(content, i));
+  }
+
+  private static boolean isKeyword(CharSequence content, int start, int end) {
+    int len = end - start;
+    if (len >= KEYWORDS_BY_LENGTH.length) { return false; }
+    keyword_loop:
+    for (String keyword : KEYWORDS_BY_LENGTH[len]) {
+      for (int i = 0; i < len; ++i) {
+        if (keyword.charAt(i) != content.charAt(start + i)) {
+          continue keyword_loop;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static final int DIGIT = 10;
+  private static final int HEX_DIGIT = 16;
+  private static final int BINARY_DIGIT = 2;
+  private static final int OCTAL_DIGIT = 8;
+
+  private static boolean isDigit(char c, int radix) {
+    switch (radix) {
+      case BINARY_DIGIT: return c == '0' || c == '1';
+      case OCTAL_DIGIT:  return '0' <= c && c <= '7';
+      case DIGIT:        return '0' <= c && c <= '9';
+      case HEX_DIGIT:
+        char lc = (char) (c | 0x20);
+        return ('0' <= c && c <= '9') || ('a' <= lc && lc <= 'f');
+      default:
+        throw new AssertionError(radix);
+    }
+  }
+
+  /**
+   * The end of the run of digits and underscores starting at start if that
+   * run ends with a digit, or -1 otherwise.
+   * The run may start with underscores.
+   */
+  private static int runEnd(
+      CharSequence content, int start, int n, int radix) {
+    int i = start;
+    boolean lastWasDigit = false;
+    for (; i < n; ++i) {
+      char c = content.charAt(i);
+      if (c == '_') {
+        lastWasDigit = false;
+      } else if (isDigit(c, radix)) {
+        lastWasDigit = true;
+      } else {
+        break;
+      }
+    }
+    return lastWasDigit ? i : -1;
+  }
+
+  /**
+   * The end of the Digits, HexDigits, etc. starting at start or -1 if there
+   * are none.
+   * <p>
+   * Since the production is followed by non-digits, a run of digits that ends
+   * with underscores cannot be matched.
+   */
+  private static int digitsEnd(
+      CharSequence content, int start, int n, int radix) {
+    if (start >= n || !isDigit(content.charAt(start), radix)) { return -1; }
+    return runEnd(content, start, n, radix);
+  }
+
+  /** The end of a Signopt Digits or -1. */
+  private static int signedIntegerEnd(CharSequence content, int start, int n) {
+    int i = start;
+    if (i < n) {
+      char c = content.charAt(i);
+      if (c == '+' || c == '-') { ++i; }
+    }
+    return digitsEnd(content, i, n, DIGIT);
+  }
+
+  /** The end of FloatTypeSuffixopt. */
+  private static int optSuffixEnd(CharSequence content, int start, int n) {
+    if (start < n && isFloatTypeSuffix(content.charAt(start))) {
+      return start + 1;
+    }
+    return start;
+  }
+
+  /**
+   * The end of ExponentPartopt FloatTypeSuffixopt or -1 if there is an
+   * exponent indicator that does not start a valid exponent.
+   */
+  private static int optExponentAndSuffixEnd(
+      CharSequence content, int start, int n) {
+    if (start < n) {
+      char c = content.charAt(start);
+      if ((c | 0x20) == 'e') {
+        int end = signedIntegerEnd(content, start + 1, n);
+        return end >= 0 ? optSuffixEnd(content, end, n) : -1;
+      }
+    }
+    return optSuffixEnd(content, start, n);
+  }
+
+  private static boolean isFloatTypeSuffix(char c) {
+    switch (c) {
+      case 'D': case 'd': case 'F': case 'f':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * The end of a single StringCharacter or EscapeSequence in a quoted string
+   * or character literal or -1 if there is none.
+   */
+  private static int charEnd(CharSequence content, int start, int n) {
+    char c = content.charAt(start);
+    switch (c) {
+      case '\r': case '\n': case '"': case '\'':
+        return -1;
+      case '\\':
+        break;
+      default:
+        if (Character.isHighSurrogate(c) && start + 1 < n
+            && Character.isLowSurrogate(content.charAt(start + 1))) {
+          return start + 2;
+        }
+        return start + 1;
+    }
+    int i = start + 1;
+    if (i == n) { return -1; }
+    char e = content.charAt(i);
+    switch (e) {
+      case 'n': case 't': case 'b': case 'f': case 'r':
+      case '"': case '\'': case '\\':
+        return i + 1;
+      case '0': case '1': case '2': case '3':
+        // [0-3][0-7]{0,2}
+        ++i;
+        if (i < n && isDigit(content.charAt(i), OCTAL_DIGIT)) {
+          ++i;
+          if (i < n && isDigit(content.charAt(i), OCTAL_DIGIT)) {
+            ++i;
+          }
+        }
+        return i;
+      case '4': case '5': case '6': case '7':
+        // [4-7][0-7]?
+        ++i;
+        if (i < n && isDigit(content.charAt(i), OCTAL_DIGIT)) {
+          ++i;
+        }
+        return i;
+      default:
+        return -1;
+    }
+  }
+}
@@ -10,7 +10,6 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Lists;
 import com.mikesamuel.cil.ast.NodeType;
@@ -23,6 +22,7 @@ import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.MatchErrorReceiver;
 import com.mikesamuel.cil.parser.MatchState;
 import com.mikesamuel.cil.parser.ParSer;
+import com.mikesamuel.cil.parser.NodeTypeSet;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
 import com.mikesamuel.cil.parser.ParseResult;
 import com.mikesamuel.cil.parser.ParseState;
@@ -207,7 +207,8 @@ public final class Tokens {
   /** Matches a {@code '.'} style character literal. Section 3.10.4. */
   public static final ParSer CHARACTER_LITERAL = PTree.patternMatch(
       "'(?:\"|" + CHAR_NO_QUOTES + ")'",
-      "'.'");
+      "'.'",
+      TokenScanners.CHARACTER_LITERAL);
 
   /** 3.10.2 */
   public static final ParSer FLOATING_POINT_LITERAL;
@@ -412,7 +413,8 @@ public final class Tokens {
 
     FLOATING_POINT_LITERAL = PTree.patternMatch(
         floatingPointLiteral + numMergeConflict,
-        "0.123"
+        "0.123",
+        TokenScanners.FLOATING_POINT_LITERAL
         );
 
     // IntegerTypeSuffix: one of
@@ -450,7 +452,8 @@ public final class Tokens {
 
     INTEGER_LITERAL = PTree.patternMatch(
         integerLiteral + numMergeConflict,
-        "123");
+        "123",
+        TokenScanners.INTEGER_LITERAL);
   }
 
   private static final String JAVA_IDENTIFIER_PART =
@@ -528,17 +531,20 @@ public final class Tokens {
       "(?!(?:" + KEYWORD_OR_BOOLEAN_OR_NULL + ")"
       + "(?!" + JAVA_IDENTIFIER_PART + "))"
       + IDENTIFIER_CHARS_RE,
-      "ident");
+      "ident",
+      TokenScanners.IDENTIFIER);
 
   /** Section 3.8 */
   public static final ParSer IDENTIFIER_CHARS = PTree.patternMatch(
       IDENTIFIER_CHARS_RE,
-      "ident");
+      "ident",
+      TokenScanners.IDENTIFIER_CHARS);
 
   /** 3.10.5 */
   public static final ParSer STRING_LITERAL = PTree.patternMatch(
       "\"(?:'|" + CHAR_NO_QUOTES + ")*\"",
-      "\"...\"");
+      "\"...\"",
+      TokenScanners.STRING_LITERAL);
 
   /**
    * Looks back to find JavaDoc comments on the input.
@@ -577,9 +583,12 @@ public final class Tokens {
       // Lookback on the queue for the last token parsed.
       // The end of that token to the current index are ignorable tokens.
       // Scan those for Javadoc comments.
+      // Where the last token ended depends on content before it, so edits
+      // anywhere before this may change the result.
+      state.input.noteExaminedStart(state.index);
 
       int lastTokenEnd = 0;
-      for (SList<Event> c = state.output; c != null; c = c.prev) {
+      for (SList<Event> c = state.output; c != null; c = c.prev()) {
         Event e = c.x;
         int nc = e.nCharsConsumed();
         if (nc != 0) {
@@ -617,7 +626,7 @@ public final class Tokens {
                       r.rightmostJavadocCommentIndex)),
               // We looked back, we did not write back.
               ParseResult.NO_WRITE_BACK_RESTRICTION,
-              ImmutableList.of());
+              NodeTypeSet.EMPTY);
         }
       }
 
@@ -759,7 +768,7 @@ public final class Tokens {
         ParseState state, LeftRecursion lr, ParseErrorReceiver err) {
       // TemplateBody is highly context dependent, so do special handling here.
       Optional<NodeType<?, ?>> nodeTypeHint =
-          GrammarImpl.lookbackForNodeTypeHint(state.output.prev.prev);
+          GrammarImpl.lookbackForNodeTypeHint(state.output.prev().prev());
       if (nodeTypeHint.isPresent()) {
         NodeType<?, ?> bodyType = nodeTypeHint.get();
         if (bodyType != J8NodeType.TemplateBody) {  // No inf. recurse
@@ -773,7 +782,7 @@ public final class Tokens {
     public Optional<SerialState> unparse(
         SerialState state, SerialErrorReceiver err) {
       Optional<NodeType<?, ?>> nodeTypeHint =
-          GrammarImpl.lookbackForNodeTypeHint(state.output.prev.prev);
+          GrammarImpl.lookbackForNodeTypeHint(state.output.prev().prev());
       if (nodeTypeHint.isPresent()) {
         return nodeTypeHint.get().getParSer().unparse(state, err);
       }
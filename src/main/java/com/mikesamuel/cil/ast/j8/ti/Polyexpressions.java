@@ -51,10 +51,10 @@ public final class Polyexpressions {
           expr.firstChildWithType(
               UnqualifiedClassInstanceCreationExpressionNode.class);
       return ctorCall != null
-          && inAssignmentOrInvocationContext(pathFromRoot.prev)
+          && inAssignmentOrInvocationContext(pathFromRoot.prev())
           && hasDiamond(ctorCall);
     } else if (v == PrimaryNode.Variant.MethodInvocation) {
-      return inAssignmentOrInvocationContext(pathFromRoot.prev)
+      return inAssignmentOrInvocationContext(pathFromRoot.prev())
           && returnTypeUsesMethodTypeParameter((PrimaryNode) expr);
     } else if (v == PrimaryNode.Variant.MethodReference) {
       // TODO
@@ -122,7 +122,7 @@ public final class Polyexpressions {
   static boolean inAssignmentOrInvocationContext(SList<Parent> pathFromRoot) {
     SList<Parent> expressionAncestorList = pathFromRoot;
     for (; expressionAncestorList != null;
-         expressionAncestorList = expressionAncestorList.prev) {
+         expressionAncestorList = expressionAncestorList.prev()) {
       if (!IGNORABLE_EXPRESSION_VARIANTS.contains(
               expressionAncestorList.x.parent.getVariant())) {
         break;
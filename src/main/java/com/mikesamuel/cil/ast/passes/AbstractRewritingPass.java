@@ -106,8 +106,8 @@ extends AbstractPass<ImmutableList<J8FileNode>> {
    *   {@code pathFromRoot.x.parent.getChildren()
    *    .get(pathFromRoot.x.indexInParent)}
    *   when node is not itself the root, and that the transitive relationship
-   *   {@code ls.prev == null
-   *     || ls.prev.x.parent.getChildren().get(ls.x.indexInParent)
+   *   {@code ls.prev() == null
+   *     || ls.prev().x.parent.getChildren().get(ls.x.indexInParent)
    *         == ls.x.parent}
    *   holds for all {@code ls} in the chain.
    * @return {@link ProcessingStatus#BREAK} to skip processing children and
@@ -132,8 +132,8 @@ extends AbstractPass<ImmutableList<J8FileNode>> {
    *   {@code pathFromRoot.x.parent.getChildren()
    *    .get(pathFromRoot.x.indexInParent)}
    *   when node is not itself the root, and that the transitive relationship
-   *   {@code ls.prev == null
-   *     || ls.prev.x.parent.getChildren().get(ls.x.indexInParent)
+   *   {@code ls.prev() == null
+   *     || ls.prev().x.parent.getChildren().get(ls.x.indexInParent)
    *         == ls.x.parent}
    *   holds for all {@code ls} in the chain.
    * @return {@link ProcessingStatus#BREAK} or
@@ -263,7 +263,7 @@ final class AmbiguousNames {
             Optional<TypeInfo> ti = qualifiedNameResolver.resolve(canonName);
             if (ti.isPresent()) {
               Name nameWithMembers = canonName;
-              for (; unrolled != null; unrolled = unrolled.prev) {
+              for (; unrolled != null; unrolled = unrolled.prev()) {
                 nameWithMembers = unrolled.x.reparent(nameWithMembers);
               }
               return Optional.of(new MaximalMatch(ti.get(), nameWithMembers));
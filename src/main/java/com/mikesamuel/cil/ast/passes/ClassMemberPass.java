@@ -85,9 +85,9 @@ final class ClassMemberPass extends AbstractPass<Void> {
              && ancestors.x ==
              ClassOrInterfaceTypeToInstantiateNode.Variant
              .ClassOrInterfaceTypeDiamond
-             && ancestors.prev != null
-             && ancestors.prev.prev != null
-             && ancestors.prev.prev.x ==
+             && ancestors.prev() != null
+             && ancestors.prev().prev() != null
+             && ancestors.prev().prev().x ==
              // TODO: Rethink inner class creation in the grammer.
              // ClassOrInterfaceTypeToInstantiate delegates to
              // ClassOrInterfaceType which is a WholeType which is awkward.
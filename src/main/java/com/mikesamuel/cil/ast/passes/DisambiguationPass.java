@@ -179,10 +179,10 @@ final class DisambiguationPass extends AbstractRewritingPass {
               case ClassOrInterfaceTypeToInstantiate:
                 // We skip the type "Inner" in (outer.new Inner(...))
                 // since it is not a complete type.
-                if (pathFromRoot.prev != null && pathFromRoot.prev.prev != null
-                    && (pathFromRoot.prev.x.parent.getNodeType()
+                if (pathFromRoot.prev() != null && pathFromRoot.prev().prev() != null
+                    && (pathFromRoot.prev().x.parent.getNodeType()
                        == J8NodeType.UnqualifiedClassInstanceCreationExpression)
-                    && (pathFromRoot.prev.prev.x.parent.getVariant()
+                    && (pathFromRoot.prev().prev().x.parent.getVariant()
                        == PrimaryNode.Variant.InnerClassCreation)) {
                   isPartial = true;
                 }
@@ -317,9 +317,9 @@ final class DisambiguationPass extends AbstractRewritingPass {
 
         ClassOrInterfaceTypeNode b = (ClassOrInterfaceTypeNode) parent;
         if (pathFromRoot != null
-            && pathFromRoot.prev != null
-            && pathFromRoot.prev.prev != null
-            && pathFromRoot.prev.prev.x.parent.getVariant()
+            && pathFromRoot.prev() != null
+            && pathFromRoot.prev().prev() != null
+            && pathFromRoot.prev().prev().x.parent.getVariant()
                == PrimaryNode.Variant.InnerClassCreation) {
           // Special case (expression.new ClassOrInterfaceTypeToInstantiate)
           // because we need to type expression before we can resolve the
@@ -475,7 +475,7 @@ final class DisambiguationPass extends AbstractRewritingPass {
   private static Optional<Name> expressionNameOf(
       @Nullable SList<Parent> pathFromRoot, String ident) {
     DeclarationPositionMarker marker = DeclarationPositionMarker.LATEST;
-    for (SList<Parent> anc = pathFromRoot; anc != null; anc = anc.prev) {
+    for (SList<Parent> anc = pathFromRoot; anc != null; anc = anc.prev()) {
       if (anc.x.parent instanceof J8ExpressionNameScope) {
         ExpressionNameResolver r = ((J8ExpressionNameScope) anc.x.parent)
             .getExpressionNameResolver();
@@ -524,7 +524,7 @@ final class DisambiguationPass extends AbstractRewritingPass {
     // Else, try and match a maximal strict prefix of the identifiers as a type
     // name.
     TypeNameResolver canonResolver = null;
-    for (SList<Parent> anc = pathFromRoot; anc != null; anc = anc.prev) {
+    for (SList<Parent> anc = pathFromRoot; anc != null; anc = anc.prev()) {
       if (anc.x.parent instanceof J8TypeScope) {
         J8TypeScope ts = (J8TypeScope) anc.x.parent;
         canonResolver = ts.getTypeNameResolver();
@@ -552,7 +552,7 @@ final class DisambiguationPass extends AbstractRewritingPass {
             d.idents.subList(0, d.idents.size() - nStripped),
             canonName));
 
-        for (; stripped != null; stripped = stripped.prev, --nStripped) {
+        for (; stripped != null; stripped = stripped.prev(), --nStripped) {
           Preconditions.checkState(stripped.x.variant == 0);
           IdentifierEtc ietc = d.idents.get(d.idents.size() - nStripped);
           ds.add(new Decomposed(
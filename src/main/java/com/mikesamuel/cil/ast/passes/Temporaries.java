@@ -196,8 +196,8 @@ public final class Temporaries {
             groupedByScope.put(scope, sameScope = new ArrayList<>());
           }
           sameScope.add(t);
-        } else if (scope.prev != null) {
-          scope = scope.prev;
+        } else if (scope.prev() != null) {
+          scope = scope.prev();
           continue;
         } else {
           LogUtils.log(
@@ -225,8 +225,8 @@ public final class Temporaries {
       TypeSpecification declType = ((FieldInfo) mi0).getValueType();
       VariableDeclaratorListNode decls = scopeNode.firstChildWithType(
           VariableDeclaratorListNode.class);
-      SList<Parent> pscope = scope.prev;
-      SList<Parent> gpscope = pscope != null ? pscope.prev : null;
+      SList<Parent> pscope = scope.prev();
+      SList<Parent> gpscope = pscope != null ? pscope.prev() : null;
       if (decls == null || pscope == null || gpscope == null) {
         return false;
       }
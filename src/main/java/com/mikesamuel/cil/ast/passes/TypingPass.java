@@ -240,7 +240,7 @@ final class TypingPass extends AbstractRewritingPass {
       VariableDeclaratorIdNode id = (VariableDeclaratorIdNode) node;
       Name name = id.getDeclaredExpressionName();
       if (name != null && name.type == Name.Type.LOCAL) {
-        for (SList<Parent> p = pathFromRoot; p != null; p = p.prev) {
+        for (SList<Parent> p = pathFromRoot; p != null; p = p.prev()) {
           J8BaseNode anc = p.x.parent;
           if (anc instanceof J8LocalDeclaration) {
             J8LocalDeclaration localDecl = (J8LocalDeclaration) anc;
@@ -669,7 +669,7 @@ final class TypingPass extends AbstractRewritingPass {
                   }
 
                   TypeSpecification fullInnerTypeSpec = outerSpec;
-                  for (SList<Name> nm = names; nm != null; nm = nm.prev) {
+                  for (SList<Name> nm = names; nm != null; nm = nm.prev()) {
                     TypeArgumentListNode typeArguments =
                         argumentsPerInnerName.get(nm.x);
                     ImmutableList<TypeSpecification.TypeBinding> bindings =
@@ -1402,7 +1402,7 @@ final class TypingPass extends AbstractRewritingPass {
           while (pathToSwitchStmt != null &&
                  BETWEEN_SWITCH_AND_CASE.contains(
                      pathToSwitchStmt.x.parent.getNodeType())) {
-            pathToSwitchStmt = pathToSwitchStmt.prev;
+            pathToSwitchStmt = pathToSwitchStmt.prev();
           }
           if (pathToSwitchStmt != null
               && pathToSwitchStmt.x.parent.getNodeType()
@@ -1457,7 +1457,7 @@ final class TypingPass extends AbstractRewritingPass {
 
       SList<Parent> path = pathFromRoot;
       int nDims = 0;
-      for (; path != null; path = path.prev) {
+      for (; path != null; path = path.prev()) {
         J8NodeType nt = path.x.parent.getNodeType();
         switch (nt) {
           case VariableDeclarator:
@@ -2151,7 +2151,7 @@ final class TypingPass extends AbstractRewritingPass {
   private @Nullable StaticType getPolyExprTypeFromContext(
       SList<Parent> pathFromRoot) {
     SList<Parent> anc;
-    for (anc = pathFromRoot; anc != null; anc = anc.prev) {
+    for (anc = pathFromRoot; anc != null; anc = anc.prev()) {
       J8NodeVariant v = anc.x.parent.getVariant();
       if (v.getDelegate() != null) {
         continue;
@@ -2224,7 +2224,7 @@ final class TypingPass extends AbstractRewritingPass {
       // TODO
       return null;
     } else if (node instanceof ArrayInitializerNode) {
-      StaticType arrayType = getPolyExprTypeFromContext(anc.prev);
+      StaticType arrayType = getPolyExprTypeFromContext(anc.prev());
       if (arrayType == null) {
         error(node, "Missing type for array initializer");
         return StaticType.ERROR_TYPE;
@@ -143,14 +143,14 @@ final class FlattenNamesMiniPass {
       }
       BName anonymousTypeImplementationClass = null;
       if (nt == J8NodeType.ClassOrInterfaceType
-          && pathFromRoot != null && pathFromRoot.prev != null
+          && pathFromRoot != null && pathFromRoot.prev() != null
           && pathFromRoot.x.parent
             instanceof ClassOrInterfaceTypeToInstantiateNode
-          && pathFromRoot.prev.x.parent
+          && pathFromRoot.prev().x.parent
             instanceof UnqualifiedClassInstanceCreationExpressionNode) {
         UnqualifiedClassInstanceCreationExpressionNode newCall =
             (UnqualifiedClassInstanceCreationExpressionNode)
-            pathFromRoot.prev.x.parent;
+            pathFromRoot.prev().x.parent;
         // Fixup anonymous class declarations.
         ClassOrInterfaceTypeNode cit = (ClassOrInterfaceTypeNode) node;
         TypeInfo dti = newCall.getDeclaredTypeInfo();
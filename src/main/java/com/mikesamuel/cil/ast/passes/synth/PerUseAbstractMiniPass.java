@@ -100,12 +100,12 @@ abstract class PerUseAbstractMiniPass {
               cudt, node, pathFromRoot, name, UseType.INVOKE_OF_PRIVATE);
         } else {
           SList<Parent> p = pathFromRoot;
-          SList<Parent> gp = p != null ? p.prev : null;
+          SList<Parent> gp = p != null ? p.prev() : null;
           EnumSet<UseType> types = EnumSet.of(UseType.READ_OF_PRIVATE);
           if (gp != null
               && gp.x.parent.getNodeType() == J8NodeType.LeftHandSide) {
             types.add(UseType.WRITE_OF_PRIVATE);
-            SList<Parent> ggp = gp.prev;
+            SList<Parent> ggp = gp.prev();
             if (ggp != null && ggp.x.parent instanceof AssignmentNode) {
               // If it's a combo assignment, we still need to read the value
               // first.
@@ -111,7 +111,7 @@ final class RewriteUsesMiniPass extends PerUseAbstractMiniPass {
       }
       if (u.node instanceof FieldNameNode
           && u.pathFromRoot != null
-          && u.pathFromRoot.prev != null) {
+          && u.pathFromRoot.prev() != null) {
         J8BaseNode parent = u.pathFromRoot.x.parent;
         J8NodeVariant parentv = parent.getVariant();
         J8BaseInnerNode replacement = null;
@@ -131,7 +131,7 @@ final class RewriteUsesMiniPass extends PerUseAbstractMiniPass {
                       acc.allocatedName)));
         }
         if (replacement != null) {
-          SList<Parent> gp = Preconditions.checkNotNull(u.pathFromRoot.prev);
+          SList<Parent> gp = Preconditions.checkNotNull(u.pathFromRoot.prev());
           gp.x.parent.replace(gp.x.indexInParent, replacement);
           return true;
         }
@@ -220,12 +220,12 @@ final class RewriteUsesMiniPass extends PerUseAbstractMiniPass {
     }
     if (container == null) { return false; }
 
-    anc = anc.prev;
+    anc = anc.prev();
     if (anc == null || anc.x.parent.getNodeType() != J8NodeType.LeftHandSide) {
       return false;
     }
 
-    anc = anc.prev;
+    anc = anc.prev();
     if (anc == null) { return false; }
 
     StaticType readAccessorResultType = readAccessor != null
@@ -316,7 +316,7 @@ final class RewriteUsesMiniPass extends PerUseAbstractMiniPass {
     writeCall.setStaticType(
         c.typePool.type(writeAccessor.resultType, u.node, c.logger));
 
-    anc = anc.prev;
+    anc = anc.prev();
     if (anc == null) { return false; }
     J8NodeVariant ancV = anc.x.parent.getVariant();
     J8NodeType ancT = ancV.getNodeType();
@@ -332,7 +332,7 @@ final class RewriteUsesMiniPass extends PerUseAbstractMiniPass {
     } else if (ancT == J8NodeType.UnaryExpression
         && (ancV == UnaryExpressionNode.Variant.PostExpression
            || ancV == UnaryExpressionNode.Variant.PreExpression)) {
-      SList<Parent> ancp = anc.prev;
+      SList<Parent> ancp = anc.prev();
       if (ancp == null) { return false; }
       ancp.x.parent.replace(
           ancp.x.indexInParent,
@@ -446,7 +446,7 @@ final class RewriteUsesMiniPass extends PerUseAbstractMiniPass {
       this.ts = Sets.immutableEnumSet(ts);
 
       int d = 0;
-      for (SList<Parent> anc = pathFromRoot; anc != null; anc = anc.prev) {
+      for (SList<Parent> anc = pathFromRoot; anc != null; anc = anc.prev()) {
         ++d;
       }
       this.depth = d;
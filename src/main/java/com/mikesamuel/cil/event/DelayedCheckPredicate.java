@@ -10,4 +10,13 @@ import com.mikesamuel.cil.parser.Unparse;
 public interface DelayedCheckPredicate {
   /** The problem with the suffix if any. */
   Optional<String> problem(Unparse.Suffix suffix);
+
+  /**
+   * True if the suffix is known to pass this check without running it.
+   * This should be much cheaper than {@link #problem} and may return false
+   * whenever it is not sure.
+   */
+  default boolean isTriviallySatisfiedBy(Unparse.Suffix suffix) {
+    return false;
+  }
 }
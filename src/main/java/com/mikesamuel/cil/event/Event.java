@@ -161,6 +161,16 @@ public abstract class Event {
     return -1;
   }
 
+  /**
+   * An event like this but whose {@linkplain #getContentIndex content index}
+   * is delta more.
+   * This is used to reuse events from parsing one input for another that
+   * contains the same content at a different index.
+   */
+  public Event withContentIndexShiftedBy(int delta) {
+    return this;
+  }
+
   /** For {@link Kind#POSITION_MARK} */
   public SourcePosition getSourcePosition() {
     throw new UnsupportedOperationException(getKind().name());
@@ -310,6 +320,11 @@ public abstract class Event {
       return index;
     }
 
+    @Override
+    public Content withContentIndexShiftedBy(int delta) {
+      return delta == 0 ? this : new Content(content, index + delta);
+    }
+
     @Override
     public int hashCode() {
       final int prime = 31;
@@ -375,6 +390,11 @@ public abstract class Event {
       return index;
     }
 
+    @Override
+    public Token withContentIndexShiftedBy(int delta) {
+      return delta == 0 ? this : new Token(content, index + delta);
+    }
+
     @Override
     public int hashCode() {
       final int prime = 31;
@@ -435,6 +455,11 @@ public abstract class Event {
       return index;
     }
 
+    @Override
+    public Ignorable withContentIndexShiftedBy(int delta) {
+      return delta == 0 ? this : new Ignorable(ignorableContent, index + delta);
+    }
+
     @Override
     public Kind getKind() {
       return Kind.IGNORABLE;
@@ -533,6 +558,11 @@ public abstract class Event {
       return index;
     }
 
+    @Override
+    public LREnd withContentIndexShiftedBy(int delta) {
+      return delta == 0 ? this : new LREnd(nodeType, index + delta);
+    }
+
     @Override
     public String toString() {
       return "(LREnd " + nodeType + ")";
@@ -0,0 +1,58 @@
+package com.mikesamuel.cil.format;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A token sink that writes tokens to an {@link Appendable} as they arrive.
+ * <p>
+ * Since token sinks do not throw checked exceptions, failures to write are
+ * rethrown as {@link UncheckedIOException}s.
+ */
+public class AppendableTokenSink extends AbstractTokenSink {
+  private final Appendable out;
+  private int charInFile;
+
+  /** */
+  public AppendableTokenSink(Appendable out) {
+    this.out = out;
+  }
+
+  /**
+   * Called before each token is written.
+   *
+   * @param content the token before any {@link MultilineAdjust adjustment}.
+   * @param startIndex the index in the output of the token's first character.
+   */
+  protected void tokenStarting(String content, int startIndex) {
+    // Does nothing by default.
+  }
+
+  @Override
+  protected void appendTokenContent(String content, String adjustedContent) {
+    tokenStarting(content, charInFile);
+    try {
+      out.append(adjustedContent);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    charInFile += adjustedContent.length();
+  }
+
+  @Override
+  protected void appendSpaceChars(char ch, int count) {
+    try {
+      for (int i = 0; i < count; ++i) {
+        out.append(ch);
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    charInFile += count;
+  }
+
+  @Override
+  public int charInFile() {
+    return charInFile;
+  }
+}
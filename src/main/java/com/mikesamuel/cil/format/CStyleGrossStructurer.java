@@ -2,6 +2,8 @@ package com.mikesamuel.cil.format;
 
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -73,6 +75,253 @@ public class CStyleGrossStructurer<C> implements Layout<C> {
     return root;
   }
 
+  /**
+   * Writes each top-level chunk of tokens, like a type declaration, as soon as
+   * the token after it arrives when sink is an {@link AbstractTokenSink}.
+   * <p>
+   * A chunk's layout depends only on its own tokens, the state of the sink
+   * before it, the token after it, and the orientation of the root block.
+   * The root is laid out on one line only if the whole output fits on one
+   * line, so chunks are held until some prefix does not.
+   */
+  @Override
+  public TokenStream<C> stream(TokenSink sink, int softColumnLimit) {
+    if (sink instanceof AbstractTokenSink) {
+      return new ChunkingTokenStream((AbstractTokenSink) sink, softColumnLimit);
+    }
+    return com.mikesamuel.cil.format.Layout.super.stream(
+        sink, softColumnLimit);
+  }
+
+  private final class ChunkingTokenStream implements TokenStream<C> {
+    private final AbstractTokenSink sink;
+    private final int softColumnLimit;
+    /** Structure for tokens since the end of the last chunk written. */
+    private List<Layout.AbstractGrossStructure> structure =
+        Lists.newArrayList();
+    private Formatter.DecoratedToken<C> last;
+    private Layout.Break lastBreak;
+    /** Bracket depth at the end of structure. */
+    private int depth;
+    /** True if structure ends at a top-level boundary. */
+    private boolean atChunkEnd;
+    /**
+     * Chunks held while all the tokens so far fit on one line, or null once
+     * the root is known to be multiline.
+     */
+    private List<Layout.BlockGrossStructure> oneLineChunks =
+        Lists.newArrayList();
+    /** The state of the sink after writing oneLineChunks on one line. */
+    private final Layout.PositioningTokenSink oneLineSink;
+
+    @SuppressWarnings("synthetic-access")
+    ChunkingTokenStream(AbstractTokenSink sink, int softColumnLimit) {
+      this.sink = sink;
+      this.softColumnLimit = softColumnLimit;
+      this.oneLineSink = new Layout.PositioningTokenSink();
+      this.oneLineSink.resetTo(sink);
+    }
+
+    @Override
+    public void token(Formatter.DecoratedToken<C> token) {
+      Layout.Break breakBeforeToken = null;
+      if (last != null) {
+        breakBeforeToken = new Layout.Break(
+            tokenBreaker.breakBetween(
+                last.content, last.context, token.content, token.context),
+            tokenBreaker.lineBetween(
+                last.content, last.context, token.content, token.context));
+        if (lastBreak != null) {
+          lastBreak.nextBreak = breakBeforeToken;
+        }
+        lastBreak = breakBeforeToken;
+      }
+      Layout.OneToken oneToken = new Layout.OneToken(token.content);
+      if (lastBreak != null) {
+        lastBreak.nextToken = oneToken;
+      }
+      last = token;
+
+      // The break and token are the lookahead for any chunk that ended at the
+      // last token.
+      if (atChunkEnd) {
+        flushChunk();
+      }
+      if (breakBeforeToken != null) {
+        structure.add(breakBeforeToken);
+      }
+      structure.add(oneToken);
+
+      // Track depth the same way nest does.
+      switch (bracketChar(token.content)) {
+        case '(': case '[': case '{':
+          ++depth;
+          break;
+        case '}': case ']': case ')':
+          if (depth != 0) {
+            --depth;
+            atChunkEnd = depth == 0;
+          }
+          break;
+        case ';':
+          atChunkEnd = depth == 0;
+          break;
+        default:
+          break;
+      }
+    }
+
+    @Override
+    public void finish() {
+      flushChunk();
+      if (oneLineChunks != null) {
+        for (Layout.BlockGrossStructure chunk : oneLineChunks) {
+          chunk.appendTokens(sink, softColumnLimit);
+        }
+        oneLineChunks = null;
+      }
+    }
+
+    @SuppressWarnings("synthetic-access")
+    private void flushChunk() {
+      atChunkEnd = false;
+      if (structure.isEmpty()) {
+        return;
+      }
+      Layout.BlockGrossStructure chunk = Layout.nest(structure);
+      structure = Lists.newArrayList();
+      if (oneLineChunks != null) {
+        Layout.PositioningTokenSink pts = new Layout.PositioningTokenSink();
+        pts.resetTo(oneLineSink);
+        try {
+          chunk.appendTokens(pts, softColumnLimit);
+          oneLineSink.resetTo(pts);
+          oneLineChunks.add(chunk);
+          return;
+        } catch (@SuppressWarnings("unused") OneLineFailure f) {
+          // The root is multiline so write the held chunks.
+          // The failure left chunk's blocks oriented as layout's first pass
+          // would.
+          List<Layout.BlockGrossStructure> held = oneLineChunks;
+          oneLineChunks = null;
+          for (Layout.BlockGrossStructure heldChunk : held) {
+            writeMultiline(heldChunk);
+          }
+        }
+      }
+      writeMultiline(chunk);
+    }
+
+    private void writeMultiline(Layout.BlockGrossStructure chunk) {
+      chunk.setOrientation(Orientation.MULTILINE);
+      Layout.optimize(chunk, sink, softColumnLimit);
+      chunk.appendTokens(sink, softColumnLimit);
+    }
+  }
+
+  /**
+   * Appends the white-space for a break before nextToken.
+   *
+   * @param multiline false if the break is in a block that is laid out on
+   *     one line.
+   * @param nextToken the token after the break if known.
+   * @param afterNextSpace the space break after nextToken if tokenAfterNext
+   *     is not null.
+   * @param afterNextLine the line break after nextToken if tokenAfterNext is
+   *     not null.
+   * @param tokenAfterNext the token after nextToken if known.
+   */
+  static void appendBreak(
+      TokenSink sink, int softColumnLimit, boolean multiline,
+      TokenBreak space, TokenBreak line, @Nullable String nextToken,
+      @Nullable TokenBreak afterNextSpace, @Nullable TokenBreak afterNextLine,
+      @Nullable String tokenAfterNext) {
+    if (multiline) {
+      switch (line) {
+        case MAY:
+          if (sink.atStartOfLine()) {
+            // We don't skip to the next line before writing at least one
+            // line.
+            break;
+          }
+          int columnAfterLookahead = sink.column();
+          if (nextToken != null) {
+            switch (space) {
+              case MUST:
+              case SHOULD:
+                ++columnAfterLookahead;
+                break;
+              case MAY:
+              case SHOULD_NOT:
+                break;
+            }
+            // TODO: Here and below, we assume that the token contains no
+            // embedded newlines.  If it does, we should take that into
+            // account.
+            // TODO: Add a hint to decorated token so that we know whether
+            // subsequent lines of a multiline token need to be indented,
+            // like Javadoc comment tokens.
+            columnAfterLookahead += nextToken.length();
+            if (tokenAfterNext != null) {
+              // See if we want to treat this as a preferred break point
+              // based on one break lookahead so that we break like
+              //   a, b, c,
+              //   d, e, f,
+              // instead of
+              //   a, b, c, d
+              //   , e, f,
+              boolean needToAccountForNextToken = false;
+              switch (afterNextLine) {
+                case MAY:
+                  needToAccountForNextToken = true;
+                  break;
+                case MUST:
+                case SHOULD:
+                  break;
+                case SHOULD_NOT:
+                  needToAccountForNextToken = true;
+                  switch (afterNextSpace) {
+                    case MUST:
+                    case SHOULD:
+                      ++columnAfterLookahead;
+                      break;
+                    case MAY:
+                    case SHOULD_NOT:
+                      break;
+                  }
+                  break;
+              }
+              if (needToAccountForNextToken) {
+                columnAfterLookahead += tokenAfterNext.length();
+              }
+            }
+          }
+
+          if (columnAfterLookahead > softColumnLimit) {
+            sink.newline();
+            return;
+          }
+          break;
+        case MUST:
+        case SHOULD:
+          sink.newline();
+          return;
+        case SHOULD_NOT:
+          break;
+      }
+    }
+    switch (space) {
+      case MAY:
+      case SHOULD_NOT:
+        return;
+      case MUST:
+      case SHOULD:
+        sink.space();
+        return;
+    }
+    throw new AssertionError(space);
+  }
+
   enum Orientation {
     ONE_LINE,
     MULTILINE,
@@ -92,7 +341,6 @@ public class CStyleGrossStructurer<C> implements Layout<C> {
       return new BlockGrossStructure(0, children.build());
     }
 
-    @SuppressWarnings("synthetic-access")
     private static int nest(
         List<AbstractGrossStructure> gs, int left, int right,
         ImmutableList.Builder<AbstractGrossStructure> children) {
@@ -100,15 +348,7 @@ public class CStyleGrossStructurer<C> implements Layout<C> {
         AbstractGrossStructure g = gs.get(i);
         if (g instanceof OneToken) {
           OneToken t = (OneToken) g;
-          // Try to find a bracket as the first character which works for all
-          // standard brackets, and some nonstandard tokens: "(%", "{%"
-          char ch = t.content.charAt(0);
-          if (ch >= BRACKET_CHARS.length || !BRACKET_CHARS[ch]) {
-            // Failover in the case of nonstandard tokens that include
-            // "%%{", "%%}".
-            int n =  t.content.length();
-            ch = t.content.charAt(n - 1);
-          }
+          char ch = bracketChar(t.content);
           switch (ch) {
             case '(': case '[': case '{':
               int indent = ch == '(' ? 4 : 2;
@@ -147,9 +387,24 @@ public class CStyleGrossStructurer<C> implements Layout<C> {
         BlockGrossStructure block = blocks.get(i);
         block.setOrientation(Orientation.ONE_LINE);
       }
+      optimize(root, null, softColumnLimit);
+    }
 
+    /**
+     * Like {@link #optimize(BlockGrossStructure, int)} but starts from the
+     * blocks' current orientations instead of trying ONE_LINE for all.
+     *
+     * @param start if not null, the state of the sink to which root will be
+     *     appended.
+     */
+    static void optimize(
+        BlockGrossStructure root, @Nullable AbstractTokenSink start,
+        int softColumnLimit) {
       while (true) {
         PositioningTokenSink pts = new PositioningTokenSink();
+        if (start != null) {
+          pts.resetTo(start);
+        }
         try {
           root.appendTokens(pts, softColumnLimit);
         } catch (@SuppressWarnings("unused") OneLineFailure f) {
@@ -157,6 +412,8 @@ public class CStyleGrossStructurer<C> implements Layout<C> {
         }
 
         if (DEBUG) {
+          List<BlockGrossStructure> blocks = Lists.newArrayList();
+          root.addAllBlocks(blocks);
           System.err.println(
               "Orientations: "
               + Iterables.transform(
@@ -200,92 +457,15 @@ public class CStyleGrossStructurer<C> implements Layout<C> {
 
       @Override
       public void appendTokens(TokenSink sink, int softColumnLimit) {
-        Orientation orientation = getOrientation();
-        if (orientation != Orientation.ONE_LINE) {
-          switch (line) {
-            case MAY:
-              if (sink.atStartOfLine()) {
-                // We don't skip to the next line before writing at least one
-                // line.
-                break;
-              }
-              int columnAfterLookahead = sink.column();
-              if (nextToken != null) {
-                switch (space) {
-                  case MUST:
-                  case SHOULD:
-                    ++columnAfterLookahead;
-                    break;
-                  case MAY:
-                  case SHOULD_NOT:
-                    break;
-                }
-                // TODO: Here and below, we assume that the token contains no
-                // embedded newlines.  If it does, we should take that into
-                // account.
-                // TODO: Add a hint to decorated token so that we know whether
-                // subsequent lines of a multiline token need to be indented,
-                // like Javadoc comment tokens.
-                columnAfterLookahead += nextToken.content.length();
-                if (nextBreak != null && nextBreak.nextToken != null) {
-                  // See if we want to treat this as a preferred break point
-                  // based on one break lookahead so that we break like
-                  //   a, b, c,
-                  //   d, e, f,
-                  // instead of
-                  //   a, b, c, d
-                  //   , e, f,
-                  boolean needToAccountForNextToken = false;
-                  switch (nextBreak.line) {
-                    case MAY:
-                      needToAccountForNextToken = true;
-                      break;
-                    case MUST:
-                    case SHOULD:
-                      break;
-                    case SHOULD_NOT:
-                      needToAccountForNextToken = true;
-                      switch (nextBreak.space) {
-                        case MUST:
-                        case SHOULD:
-                          ++columnAfterLookahead;
-                          break;
-                        case MAY:
-                        case SHOULD_NOT:
-                          break;
-                      }
-                      break;
-                  }
-                  if (needToAccountForNextToken) {
-                    columnAfterLookahead +=
-                        nextBreak.nextToken.content.length();
-                  }
-                }
-              }
-
-              if (columnAfterLookahead > softColumnLimit) {
-                sink.newline();
-                return;
-              }
-              break;
-            case MUST:
-            case SHOULD:
-              sink.newline();
-              return;
-            case SHOULD_NOT:
-              break;
-          }
-        }
-        switch (space) {
-          case MAY:
-          case SHOULD_NOT:
-            return;
-          case MUST:
-          case SHOULD:
-            sink.space();
-            return;
-        }
-        throw new AssertionError(space);
+        boolean hasTokenAfterNext = nextToken != null
+            && nextBreak != null && nextBreak.nextToken != null;
+        appendBreak(
+            sink, softColumnLimit,
+            getOrientation() != Orientation.ONE_LINE, space, line,
+            nextToken != null ? nextToken.content : null,
+            hasTokenAfterNext ? nextBreak.space : null,
+            hasTokenAfterNext ? nextBreak.line : null,
+            hasTokenAfterNext ? nextBreak.nextToken.content : null);
       }
 
       @Override
@@ -466,6 +646,23 @@ public class CStyleGrossStructurer<C> implements Layout<C> {
     }
   }
 
+  /**
+   * The character that determines whether a token opens or closes a bracketed
+   * block.
+   */
+  static char bracketChar(String content) {
+    // Try to find a bracket as the first character which works for all
+    // standard brackets, and some nonstandard tokens: "(%", "{%"
+    char ch = content.charAt(0);
+    if (ch >= BRACKET_CHARS.length || !BRACKET_CHARS[ch]) {
+      // Failover in the case of nonstandard tokens that include
+      // "%%{", "%%}".
+      int n =  content.length();
+      ch = content.charAt(n - 1);
+    }
+    return ch;
+  }
+
   private static boolean[] BRACKET_CHARS = new boolean[128];
   static {
     BRACKET_CHARS['('] = BRACKET_CHARS['['] = BRACKET_CHARS['{']
@@ -1,5 +1,7 @@
 package com.mikesamuel.cil.format;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -16,6 +18,13 @@ public class Formatter<C> {
   public final Layout<C> layout;
   private final ImmutableList.Builder<DecoratedToken<C>> tokens =
       ImmutableList.builder();
+  /** Non-null when {@linkplain #streamTo streaming}. */
+  private @Nullable Layout.TokenStream<C> stream;
+  /**
+   * Tokens given to {@link #stream} but not yet written so that we can
+   * relate positions in the output to their source positions.
+   */
+  private final Deque<DecoratedToken<C>> unwritten = new ArrayDeque<>();
   private SourcePosition sourcePosition;
   private C context;
   private int softColumnLimit = 80;
@@ -30,7 +39,14 @@ public class Formatter<C> {
    * token stream.
    */
   public void token(String tok) {
-    tokens.add(new DecoratedToken<>(tok, this.sourcePosition, this.context));
+    DecoratedToken<C> token = new DecoratedToken<>(
+        tok, this.sourcePosition, this.context);
+    if (stream != null) {
+      unwritten.add(token);
+      stream.token(token);
+    } else {
+      tokens.add(token);
+    }
   }
 
   /**
@@ -71,6 +87,7 @@ public class Formatter<C> {
    * formatting commands.
    */
   public FormattedSource format() {
+    Preconditions.checkState(stream == null, "streaming");
     StringBuilderTokenSink sink = new StringBuilderTokenSink();
     ImmutableList<DecoratedToken<C>> tokenList = tokens.build();
     GrossStructure root = layout.layout(tokenList, softColumnLimit);
@@ -105,6 +122,45 @@ public class Formatter<C> {
     return new FormattedSource(code, positionMapping);
   }
 
+  /**
+   * Causes tokens specified after this call to be laid out and written to out
+   * as soon as the layout allows, instead of collected for {@link #format}.
+   * This lets large outputs be written without holding all of their tokens
+   * or the whole formatted code in memory.
+   * Call {@link #finish} after the last token.
+   * <p>
+   * Failures to write to out are rethrown as
+   * {@link java.io.UncheckedIOException}s.
+   *
+   * @param positions if not null, receives the position mapping for tokens
+   *     that have source positions as they are written.
+   */
+  public void streamTo(
+      Appendable out, @Nullable final PositionMapping.Receiver positions) {
+    Preconditions.checkState(stream == null);
+    AppendableTokenSink sink = new AppendableTokenSink(out) {
+      @Override
+      protected void tokenStarting(String content, int startIndex) {
+        DecoratedToken<C> tok = unwritten.removeFirst();
+        if (positions != null && tok.pos != null) {
+          positions.entry(new PositionMapping.Entry(
+              tok.pos, startIndex, startIndex + tok.content.length()));
+        }
+      }
+    };
+    stream = layout.stream(sink, softColumnLimit);
+  }
+
+  /**
+   * Writes any tokens buffered since {@link #streamTo} and stops streaming.
+   */
+  public void finish() {
+    Preconditions.checkState(stream != null);
+    stream.finish();
+    stream = null;
+    Preconditions.checkState(unwritten.isEmpty());
+  }
+
   /**
    * A non-whitespace lexical token with position and context information.
    */
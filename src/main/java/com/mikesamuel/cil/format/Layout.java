@@ -1,5 +1,9 @@
 package com.mikesamuel.cil.format;
 
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
 /**
  * Given a sequence of tokens, arranges them out.
  */
@@ -11,4 +15,42 @@ public interface Layout<C> {
   GrossStructure layout(
       Iterable<? extends Formatter.DecoratedToken<C>> tokens,
       int softColumnLimit);
+
+  /**
+   * Lays out tokens as they arrive and writes them to sink.
+   * <p>
+   * The default implementation buffers all the tokens until the stream is
+   * {@linkplain TokenStream#finish finished}, but layouts that can decide how
+   * to arrange a prefix of the tokens without seeing the rest should write
+   * that prefix to sink as soon as they can.
+   * Either way, the output should be the same as that of
+   * {@link #layout}.
+   */
+  default TokenStream<C> stream(
+      final TokenSink sink, final int softColumnLimit) {
+    return new TokenStream<C>() {
+      private final List<Formatter.DecoratedToken<C>> tokens =
+          Lists.newArrayList();
+
+      @Override
+      public void token(Formatter.DecoratedToken<C> token) {
+        tokens.add(token);
+      }
+
+      @Override
+      public void finish() {
+        layout(tokens, softColumnLimit).appendTokens(sink, softColumnLimit);
+        tokens.clear();
+      }
+    };
+  }
+
+  /** Receives tokens in order to lay out. */
+  public interface TokenStream<C> {
+    /** Specifies a token that follows all previously specified tokens. */
+    void token(Formatter.DecoratedToken<C> token);
+
+    /** Called after the last token to write any buffered tokens. */
+    void finish();
+  }
 }
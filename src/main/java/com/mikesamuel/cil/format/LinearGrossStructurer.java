@@ -0,0 +1,378 @@
+package com.mikesamuel.cil.format;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import com.mikesamuel.cil.ast.j8.Tokens;
+
+/**
+ * A gross structure handler for the same bracketed blocks as
+ * {@link CStyleGrossStructurer} that takes time linear in the count of
+ * tokens.
+ * <p>
+ * {@link CStyleGrossStructurer} tries to fit each block on one line and
+ * starts over each time one does not fit, so long argument lists and deeply
+ * nested initializers take time quadratic or worse in their size.
+ * This instead follows Oppen and Wadler: it computes the width of each block
+ * laid out on one line in one pass, and in a second pass puts each block on
+ * one line if its width fits in what remains of the line and breaks it
+ * otherwise.
+ * Breaks in broken blocks are laid out the same way in both, and a block
+ * that contains a line break that the {@link TokenBreaker} says
+ * {@link TokenBreak#MUST} happen or a token that spans lines is always
+ * broken.
+ * <p>
+ * Unlike {@link CStyleGrossStructurer}, a block that does not fit where an
+ * attempt to fit its parent on one line failed may still be put on one line
+ * once its parent is broken.
+ */
+public class LinearGrossStructurer<C> implements Layout<C> {
+
+  final TokenBreaker<C> tokenBreaker;
+
+  /** */
+  public LinearGrossStructurer(TokenBreaker<C> tokenBreaker) {
+    this.tokenBreaker = tokenBreaker;
+  }
+
+  @Override
+  public GrossStructure layout(
+      Iterable<? extends Formatter.DecoratedToken<C>> tokens,
+      int softColumnLimit) {
+    final Doc<C> doc = new Doc<>(tokenBreaker);
+    for (Formatter.DecoratedToken<C> token : tokens) {
+      doc.add(token);
+    }
+    return new GrossStructure() {
+      @Override
+      public void appendTokens(TokenSink sink, int limit) {
+        doc.write(
+            sink, limit, 0, doc.size(), !doc.fits(sink.column(), limit));
+      }
+    };
+  }
+
+  /**
+   * Writes tokens in top-level chunks, like type declarations, as soon as
+   * the token after a chunk arrives and the output is known not to fit on
+   * one line.
+   */
+  @Override
+  public TokenStream<C> stream(
+      final TokenSink sink, final int softColumnLimit) {
+    final Doc<C> doc = new Doc<>(tokenBreaker);
+    final int startColumn = sink.column();
+    return new TokenStream<C>() {
+      /** The index of the first token not yet written. */
+      private int unwritten;
+      private boolean rootBroken;
+
+      @Override
+      public void token(Formatter.DecoratedToken<C> token) {
+        doc.add(token);
+        int n = doc.size();
+        if (!rootBroken) {
+          rootBroken = !doc.fits(startColumn, softColumnLimit);
+        }
+        int chunkEnd = doc.chunkEnd();
+        // Wait for the token after the chunk since breaks look ahead.
+        if (rootBroken && unwritten < chunkEnd && chunkEnd < n) {
+          doc.write(sink, softColumnLimit, unwritten, chunkEnd, true);
+          // Keep the last written token so that the break before the next
+          // token can be computed.
+          doc.discardBefore(chunkEnd - 1);
+          unwritten = 1;
+        }
+      }
+
+      @Override
+      public void finish() {
+        int n = doc.size();
+        if (unwritten < n) {
+          if (!rootBroken) {
+            rootBroken = !doc.fits(startColumn, softColumnLimit);
+          }
+          doc.write(sink, softColumnLimit, unwritten, n, rootBroken);
+        }
+        doc.discardBefore(n);
+        unwritten = 0;
+      }
+    };
+  }
+
+  /**
+   * Tokens, the breaks between them, and enough information about the blocks
+   * that contain them to find the width of any block in constant time.
+   * <p>
+   * Tokens are indexed from 0, and the break before token i is break i.
+   */
+  private static final class Doc<C> {
+    private final TokenBreaker<C> tokenBreaker;
+    private Formatter.DecoratedToken<C> last;
+    private int n;
+    private String[] content = new String[16];
+    private TokenBreak[] space = new TokenBreak[16];
+    private TokenBreak[] line = new TokenBreak[16];
+    /**
+     * For a token that opens a block, the index of the token that closes it
+     * or {@link #UNCLOSED}.  -1 for other tokens.
+     */
+    private int[] close = new int[16];
+    /**
+     * The width of all tokens and breaks through token i when laid out on
+     * one line.
+     * Only differences are meaningful.
+     */
+    private long[] width = new long[16];
+    /**
+     * The count through token i of tokens that span lines and breaks that
+     * must be line breaks.
+     * Only differences are meaningful.
+     */
+    private int[] hard = new int[16];
+    /** Indices of tokens that open blocks that are not yet closed. */
+    private int[] open = new int[16];
+    private int depth;
+    /** The index past the last token that ended a top-level chunk. */
+    private int chunkEnd;
+
+    private static final int UNCLOSED = Integer.MAX_VALUE;
+
+    Doc(TokenBreaker<C> tokenBreaker) {
+      this.tokenBreaker = tokenBreaker;
+    }
+
+    int size() {
+      return n;
+    }
+
+    int chunkEnd() {
+      return chunkEnd;
+    }
+
+    void add(Formatter.DecoratedToken<C> token) {
+      if (n == content.length) {
+        int cap = n * 2;
+        content = Arrays.copyOf(content, cap);
+        space = Arrays.copyOf(space, cap);
+        line = Arrays.copyOf(line, cap);
+        close = Arrays.copyOf(close, cap);
+        width = Arrays.copyOf(width, cap);
+        hard = Arrays.copyOf(hard, cap);
+      }
+      int i = n++;
+      String tok = token.content;
+      long w = 0;
+      int h = 0;
+      if (i != 0) {
+        w = width[i - 1];
+        h = hard[i - 1];
+      }
+      if (last != null) {
+        TokenBreak sp = tokenBreaker.breakBetween(
+            last.content, last.context, tok, token.context);
+        TokenBreak ln = tokenBreaker.lineBetween(
+            last.content, last.context, tok, token.context);
+        space[i] = sp;
+        line[i] = ln;
+        w += spaceWidth(sp);
+        if (ln == TokenBreak.MUST) {
+          ++h;
+        }
+      }
+      if (spansLines(tok)) {
+        ++h;
+      } else {
+        w += tok.length();
+      }
+      content[i] = tok;
+      width[i] = w;
+      hard[i] = h;
+      close[i] = -1;
+      last = token;
+
+      switch (CStyleGrossStructurer.bracketChar(tok)) {
+        case '(': case '[': case '{':
+          if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+          }
+          open[depth++] = i;
+          close[i] = UNCLOSED;
+          break;
+        case '}': case ']': case ')':
+          // Like CStyleGrossStructurer, any close bracket closes the
+          // innermost block, and one outside all blocks is just a token.
+          if (depth != 0) {
+            close[open[--depth]] = i;
+            if (depth == 0) {
+              chunkEnd = i + 1;
+            }
+          }
+          break;
+        case ';':
+          if (depth == 0) {
+            chunkEnd = i + 1;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    /**
+     * True if all the tokens fit on one line after the given column.
+     */
+    boolean fits(int column, int softColumnLimit) {
+      return n == 0
+          || hard[n - 1] == 0 && column + width[n - 1] <= softColumnLimit;
+    }
+
+    /**
+     * Forgets the tokens before index start so that the token at start is
+     * at index 0.
+     */
+    void discardBefore(int start) {
+      Preconditions.checkPositionIndex(start, n);
+      int count = n - start;
+      System.arraycopy(content, start, content, 0, count);
+      System.arraycopy(space, start, space, 0, count);
+      System.arraycopy(line, start, line, 0, count);
+      System.arraycopy(close, start, close, 0, count);
+      System.arraycopy(width, start, width, 0, count);
+      System.arraycopy(hard, start, hard, 0, count);
+      for (int i = 0; i < count; ++i) {
+        if (close[i] >= 0 && close[i] != UNCLOSED) {
+          close[i] -= start;
+        }
+      }
+      for (int i = 0; i < depth; ++i) {
+        open[i] -= start;
+      }
+      Arrays.fill(content, count, n, null);
+      n = count;
+      chunkEnd = Math.max(0, chunkEnd - start);
+    }
+
+    /**
+     * Writes the tokens in [left, right) and the breaks before them other
+     * than any before token 0.
+     * Blocks that start in [left, right) must end there too unless right is
+     * the end of all tokens.
+     *
+     * @param rootBroken true if the top level is broken.
+     */
+    void write(
+        TokenSink sink, int softColumnLimit, int left, int right,
+        boolean rootBroken) {
+      // Stacks of the blocks containing the current token.
+      int[] closeStack = new int[16];
+      boolean[] brokenStack = new boolean[16];
+      int[] indentStack = new int[16];
+      int top = 0;
+      boolean broken = rootBroken;
+      int blockClose = UNCLOSED;
+
+      for (int i = left; i < right; ++i) {
+        if (i != 0) {
+          // The break before a close bracket is part of the block it closes.
+          appendBreak(sink, softColumnLimit, broken, i);
+          if (i == blockClose) {
+            --top;
+            if (indentStack[top] != 0) {
+              sink.dedent();
+            }
+            broken = brokenStack[top];
+            blockClose = closeStack[top];
+          }
+        }
+
+        String tok = content[i];
+        sink.prepareForToken();
+        TokenSink.MultilineAdjust adj = Tokens.isBlockComment(tok)
+            ? TokenSink.MultilineAdjust.INDENT
+            : TokenSink.MultilineAdjust.AS_IS;
+        sink.append(tok, adj);
+
+        int end = close[i];
+        if (end >= 0) {
+          // Enter a block.
+          if (top == closeStack.length) {
+            closeStack = Arrays.copyOf(closeStack, top * 2);
+            brokenStack = Arrays.copyOf(brokenStack, top * 2);
+            indentStack = Arrays.copyOf(indentStack, top * 2);
+          }
+          int indent = CStyleGrossStructurer.bracketChar(tok) == '(' ? 4 : 2;
+          closeStack[top] = blockClose;
+          brokenStack[top] = broken;
+          indentStack[top] = indent;
+          ++top;
+          if (broken) {
+            // The block contains the breaks up to and including the one
+            // before its close bracket.
+            long w;
+            int h;
+            if (end < n) {
+              w = width[end] - tokenWidth(end) - width[i];
+              h = hard[end] - tokenHard(end) - hard[i];
+            } else {
+              w = width[n - 1] - width[i];
+              h = hard[n - 1] - hard[i];
+            }
+            broken = h != 0 || sink.column() + w > softColumnLimit;
+          }
+          blockClose = end;
+          sink.indentBy(indent);
+        }
+      }
+
+      // Leave any unclosed blocks.
+      while (top != 0) {
+        --top;
+        if (indentStack[top] != 0) {
+          sink.dedent();
+        }
+      }
+    }
+
+    private void appendBreak(
+        TokenSink sink, int softColumnLimit, boolean broken, int i) {
+      boolean hasTokenAfterNext = i + 1 < n;
+      CStyleGrossStructurer.appendBreak(
+          sink, softColumnLimit, broken, space[i], line[i], content[i],
+          hasTokenAfterNext ? space[i + 1] : null,
+          hasTokenAfterNext ? line[i + 1] : null,
+          hasTokenAfterNext ? content[i + 1] : null);
+    }
+
+    private long tokenWidth(int i) {
+      String tok = content[i];
+      return spansLines(tok) ? 0 : tok.length();
+    }
+
+    private int tokenHard(int i) {
+      return spansLines(content[i]) ? 1 : 0;
+    }
+
+    private static int spaceWidth(TokenBreak sp) {
+      switch (sp) {
+        case MUST:
+        case SHOULD:
+          return 1;
+        case MAY:
+        case SHOULD_NOT:
+          return 0;
+      }
+      throw new AssertionError(sp);
+    }
+
+    private static boolean spansLines(String tok) {
+      for (int i = 0, n = tok.length(); i < n; ++i) {
+        char ch = tok.charAt(i);
+        if (ch == '\n' || ch == '\r') {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -23,6 +23,15 @@ public final class PositionMapping {
     this.entries = ImmutableList.copyOf(entries);
   }
 
+  /** Receives entries as formatted code is written. */
+  public interface Receiver {
+    /**
+     * Called with entries in the order in which their derived ranges are
+     * written.
+     */
+    void entry(Entry e);
+  }
+
   /**
    * A relationship between a contiguous sequence of characters in an input
    * and a contiguous sequence of characters in an output derived from it.
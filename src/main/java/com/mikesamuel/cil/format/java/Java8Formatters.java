@@ -4,6 +4,7 @@ import com.mikesamuel.cil.ast.NodeVariant;
 import com.mikesamuel.cil.event.Event;
 import com.mikesamuel.cil.format.CStyleGrossStructurer;
 import com.mikesamuel.cil.format.Formatter;
+import com.mikesamuel.cil.format.LinearGrossStructurer;
 import com.mikesamuel.cil.parser.SList;
 
 /**
@@ -24,4 +25,15 @@ public final class Java8Formatters {
     return new Formatter<>(new CStyleGrossStructurer<>(
         new Java8TokenBreaker()));
   }
+
+  /**
+   * A formatter for Java 8 whose layout takes time linear in the count of
+   * tokens.
+   *
+   * @see LinearGrossStructurer
+   */
+  public static Formatter<SList<NodeVariant<?, ?>>> createLinearFormatter() {
+    return new Formatter<>(new LinearGrossStructurer<>(
+        new Java8TokenBreaker()));
+  }
 }
@@ -203,8 +203,8 @@ implements TokenBreaker<SList<NodeVariant<?, ?>>> {
 
   private static boolean inPostfixOperatorContext(
       SList<NodeVariant<?, ?>> stack) {
-    if (stack == null || stack.prev == null) { return false; }
-    NodeType<?, ?> nt = stack.prev.x.getNodeType();
+    if (stack == null || stack.prev() == null) { return false; }
+    NodeType<?, ?> nt = stack.prev().x.getNodeType();
     return nt == J8NodeType.PostExpression
         || nt == JminNodeType.PostExpression;
   }
@@ -216,8 +216,8 @@ implements TokenBreaker<SList<NodeVariant<?, ?>>> {
     if (nt == J8NodeType.PrefixOperator || nt == JminNodeType.PrefixOperator) {
       return true;
     }
-    if (stack.prev != null) {
-      NodeType<?, ?> pnt = stack.prev.x.getNodeType();
+    if (stack.prev() != null) {
+      NodeType<?, ?> pnt = stack.prev().x.getNodeType();
       return pnt == J8NodeType.PreExpression
           || pnt == JminNodeType.PreExpression;
     }
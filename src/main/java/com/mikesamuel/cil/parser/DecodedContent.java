@@ -13,17 +13,23 @@ import com.google.common.collect.Lists;
  * Also maps indices back so that we can be accurate about source positions.
  */
 public final class DecodedContent implements CharSequence {
-  private final String underlying;
+  /** The encoded content. */
+  private final CharSequence underlying;
+  /** The content with escapes decoded.  Same as underlying if no escapes. */
+  private final CharSequence decoded;
   private final int[] indicesOfEscapedCharactersInDecoded;
 
   /**
    * @throws IllegalArgumentException if there is a '\\' 'u' not followed by
    *    4 hex digits.
    */
-  DecodedContent(String underlying) throws IllegalArgumentException {
+  DecodedContent(CharSequence underlying) throws IllegalArgumentException {
     this.underlying = underlying;
     int n = underlying.length();
     List<Integer> inDecoded = Lists.newArrayList();
+    // Allocated on the first escape.
+    StringBuilder sb = null;
+    int written = 0;  // Prefix of underlying already appended to sb.
     int delta = 0;
     for (int i = 0; i < n; ++i) {
       char ch = underlying.charAt(i);
@@ -31,7 +37,12 @@ public final class DecodedContent implements CharSequence {
         if (i + 1 < n && underlying.charAt(i + 1) == 'u') {
           inDecoded.add(i - delta);
           int decoded = decodeHex4(underlying, i + 2);
+          if (sb == null) {
+            sb = new StringBuilder(n);
+          }
+          sb.append(underlying, written, i).append((char) decoded);
           i += 5;  // skip over the escape sequence when combined with ++i above
+          written = i + 1;
           delta += 5;
           if (decoded == '\\') {
             // \u005cu005c encodes \u005c
@@ -43,15 +54,20 @@ public final class DecodedContent implements CharSequence {
         }
       }
     }
+    if (sb == null) {
+      this.decoded = underlying;
+    } else {
+      this.decoded = sb.append(underlying, written, n).toString();
+    }
     this.indicesOfEscapedCharactersInDecoded = toIntArray(inDecoded);
   }
 
 
-  private static int decodeHex4(String s, int i) {
+  private static int decodeHex4(CharSequence s, int i) {
     int n = s.length();
     if (i + 4 > n) {
       throw new IllegalArgumentException(
-          "Expected 4 hex digits not `" + s.substring(i) + "`");
+          "Expected 4 hex digits not `" + s.subSequence(i, n) + "`");
     }
     int decoded = 0;
     for (int j = i; j < i + 4; ++j) {
@@ -65,7 +81,8 @@ public final class DecodedContent implements CharSequence {
           value = ch + 10 - 'a';
         } else {
           throw new IllegalArgumentException(
-              "Expected 4 hex digits not `" + s.substring(i, i + 4) + "`");
+              "Expected 4 hex digits not `" + s.subSequence(i, i + 4)
+              + "`");
         }
       }
       decoded = (decoded << 4) | (value & 0xf);
@@ -76,30 +93,22 @@ public final class DecodedContent implements CharSequence {
 
   @Override
   public int length() {
-    return underlying.length() - indicesOfEscapedCharactersInDecoded.length * 5;
+    return decoded.length();
   }
 
 
   @Override
   public char charAt(int index) {
-    int k = Arrays.binarySearch(
-        this.indicesOfEscapedCharactersInDecoded, index);
-    char ch;
-    if (k < 0) {
-      int nEscapesBefore = ~k;
-      int indexInEncoded = index + 5 * nEscapesBefore;
-      ch = underlying.charAt(indexInEncoded);
-    } else {
-      int indexInEncoded = index + 5 * k;
-      ch = (char) decodeHex4(underlying, indexInEncoded + 2);
-    }
-    return ch;
+    return decoded.charAt(index);
   }
 
   /**
    * The index into the underlying content that corresponds to the given index.
    */
   public int indexInEncoded(int decodedIndex) {
+    if (indicesOfEscapedCharactersInDecoded.length == 0) {
+      return decodedIndex;
+    }
     int k = Arrays.binarySearch(
         this.indicesOfEscapedCharactersInDecoded, decodedIndex);
     if (k < 0) {
@@ -114,35 +123,13 @@ public final class DecodedContent implements CharSequence {
   }
 
   @Override
-  public CharSequence subSequence(final int start, final int end) {
-    return new CharSequence() {
-
-      @Override
-      public int length() {
-        return end - start;
-      }
-
-      @Override
-      public char charAt(int index) {
-        return DecodedContent.this.charAt(index + start);
-      }
-
-      @Override
-      public CharSequence subSequence(int subStart, int subEnd) {
-        return DecodedContent.this.subSequence(
-            start + subStart, start + subEnd);
-      }
-
-      @Override
-      public String toString() {
-        return new StringBuilder().append(this).toString();
-      }
-    };
+  public CharSequence subSequence(int start, int end) {
+    return decoded.subSequence(start, end);
   }
 
   @Override
   public String toString() {
-    return new StringBuilder().append(this).toString();
+    return decoded.toString();
   }
 
   private static final int[] ZERO_INTS = new int[0];
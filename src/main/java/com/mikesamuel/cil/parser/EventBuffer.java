@@ -0,0 +1,95 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.mikesamuel.cil.event.Event;
+
+/**
+ * A growable array of events that can be rolled back to a mark.
+ * <p>
+ * Parse outputs are {@link SList}s so that memoized parses can be shared
+ * between branches, but passes that walk an output backwards and rebuild
+ * part of it only need scratch space.
+ * Collecting events here instead of in a reversed {@link SList} allocates
+ * only when the buffer grows, and the events can be put back into the output
+ * in either order.
+ */
+public final class EventBuffer {
+  private Event[] events;
+  private int size;
+
+  /** An empty buffer. */
+  public EventBuffer() {
+    this.events = new Event[16];
+  }
+
+  /** The count of events in the buffer. */
+  public int size() {
+    return size;
+  }
+
+  /** The i-th event added. */
+  public Event get(int i) {
+    Preconditions.checkElementIndex(i, size);
+    return events[i];
+  }
+
+  /** Adds an event to the end. */
+  public void add(Event e) {
+    if (size == events.length) {
+      events = Arrays.copyOf(events, size * 2);
+    }
+    events[size++] = Preconditions.checkNotNull(e);
+  }
+
+  /**
+   * A mark which may be passed to {@link #truncate} to remove all events
+   * added after this call.
+   */
+  public int mark() {
+    return size;
+  }
+
+  /** Removes all events added since the given {@link #mark}. */
+  public void truncate(int mark) {
+    Preconditions.checkPositionIndex(mark, size);
+    Arrays.fill(events, mark, size, null);
+    size = mark;
+  }
+
+  /**
+   * The slist with all the elements of prev followed by the events between
+   * the given marks in the order they were added.
+   */
+  public @Nullable SList<Event> appendTo(
+      @Nullable SList<Event> prev, int start, int end) {
+    Preconditions.checkPositionIndexes(start, end, size);
+    SList<Event> out = prev;
+    for (int i = start; i < end; ++i) {
+      out = SList.append(out, events[i]);
+    }
+    return out;
+  }
+
+  /**
+   * The slist with all the elements of prev followed by the events between
+   * the given marks, most recently added first.
+   */
+  public @Nullable SList<Event> appendReversedTo(
+      @Nullable SList<Event> prev, int start, int end) {
+    Preconditions.checkPositionIndexes(start, end, size);
+    SList<Event> out = prev;
+    for (int i = end; --i >= start;) {
+      out = SList.append(out, events[i]);
+    }
+    return out;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.asList(events).subList(0, size).toString();
+  }
+}
@@ -0,0 +1,68 @@
+package com.mikesamuel.cil.parser;
+
+/**
+ * Content for an {@linkplain Input.Builder#editable editable} input that
+ * keeps track of the region of characters examined so that memoized parses
+ * can record which parts of the input they depend upon.
+ * <p>
+ * Reads of {@link #length} are tracked with a flag since the length does not
+ * belong to any one character.
+ * The parser only compares against the length the index of the next
+ * character it would read, and reads that character if there is one, so a
+ * production that read the length depends on where the input ends only if
+ * it examined content through the end.
+ */
+final class ExaminedContent implements CharSequence {
+  /** The content being tracked. */
+  final CharSequence content;
+  /** Inclusive lower bound of the region examined. */
+  int low;
+  /** Exclusive upper bound of the region examined. */
+  int high;
+  /** True if {@link #length} was read. */
+  boolean lengthRead;
+
+  ExaminedContent(CharSequence content) {
+    this.content = content;
+  }
+
+  /** Expands the examined region to include [left, right). */
+  void include(int left, int right) {
+    if (left < low) { low = left; }
+    if (right > high) { high = right; }
+  }
+
+  /** Expands the examined region to include an examined region. */
+  void include(long region) {
+    include(RatPack.examinedLow(region), RatPack.examinedHigh(region));
+    if (RatPack.examinedLength(region)) {
+      lengthRead = true;
+    }
+  }
+
+  @Override
+  public int length() {
+    lengthRead = true;
+    return content.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < low) { low = index; }
+    if (index >= high) { high = index + 1; }
+    return content.charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    include(start, end);
+    return content.subSequence(start, end);
+  }
+
+  @Override
+  public String toString() {
+    include(0, content.length());
+    lengthRead = true;
+    return content.toString();
+  }
+}
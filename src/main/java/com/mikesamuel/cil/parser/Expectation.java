@@ -0,0 +1,25 @@
+package com.mikesamuel.cil.parser;
+
+/**
+ * Something that a parser looked for but did not find, like a particular
+ * token.
+ * <p>
+ * Terminals fail to match many times as a parse backtracks, so they report
+ * {@linkplain ParseErrorReceiver#expected expectations} instead of strings
+ * and messages are only rendered for failures that are reported.
+ */
+public interface Expectation {
+
+  /**
+   * A short description of what was expected, like {@code `;`}, suitable for
+   * inclusion in a list of alternatives.
+   */
+  String getDescription();
+
+  /**
+   * A message explaining that this was not found at the given state.
+   */
+  default String toMessage(ParseState state) {
+    return "Expected " + getDescription();
+  }
+}
@@ -0,0 +1,90 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A parse error receiver that keeps only the failures at the greatest index
+ * since those are most likely indicative of the underlying cause when a
+ * parse as a whole fails.
+ * <p>
+ * Expectations at that index are collected so that the message can list all
+ * the tokens that would have allowed the parse to proceed.
+ */
+public final class FarthestFailure implements ParseErrorReceiver {
+  private @Nullable ParseState farthest;
+  private final Set<Expectation> expected = new LinkedHashSet<>();
+  private @Nullable String latestMessage;
+
+  @Override
+  public void error(ParseState state, String message) {
+    if (reachedFarthest(state)) {
+      latestMessage = message;
+    }
+  }
+
+  @Override
+  public void expected(ParseState state, Expectation expectation) {
+    if (reachedFarthest(state)) {
+      expected.add(expectation);
+    }
+  }
+
+  private boolean reachedFarthest(ParseState state) {
+    if (farthest != null) {
+      if (state.index < farthest.index) {
+        return false;
+      }
+      if (state.index == farthest.index) {
+        return true;
+      }
+    }
+    farthest = state;
+    expected.clear();
+    latestMessage = null;
+    return true;
+  }
+
+  /**
+   * The greatest index at which a failure was reported or -1 if there were
+   * none.
+   */
+  public int getIndex() {
+    return farthest != null ? farthest.index : -1;
+  }
+
+  /** The expectations not met at {@link #getIndex}. */
+  public ImmutableSet<Expectation> getExpected() {
+    return ImmutableSet.copyOf(expected);
+  }
+
+  /**
+   * A message describing the failures at {@link #getIndex} or null if there
+   * were none.
+   */
+  public @Nullable String getMessage() {
+    switch (expected.size()) {
+      case 0:
+        return latestMessage;
+      case 1:
+        return expected.iterator().next().toMessage(farthest);
+      default:
+        StringBuilder sb = new StringBuilder("Expected one of ");
+        String sep = "";
+        for (Expectation e : expected) {
+          sb.append(sep).append(e.getDescription());
+          sep = ", ";
+        }
+        return sb.toString();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "(FarthestFailure " + getIndex() + " " + getMessage() + ")";
+  }
+}
@@ -72,6 +72,50 @@ public final class Ignorables {
     return idx;
   }
 
+  /**
+   * The result of {@link #scanPastIgnorablesFrom} for every index.
+   *
+   * @return an array with one more element than content's length such that
+   *     the element at i is the index of the first character at or after i
+   *     that is not part of an ignorable token.
+   */
+  public static int[] indicesAfterIgnorables(CharSequence content) {
+    int n = content.length();
+    int[] after = new int[n + 1];
+    after[n] = n;
+    // The first line break at or after i + 2 or n if none.
+    int lineBreak = n;
+    // The first "*/" at or after i + 2 or -1 if none.
+    int commentClose = -1;
+    for (int i = n - 1; i >= 0; --i) {
+      int j = i + 2;
+      if (j < n) {
+        char chj = content.charAt(j);
+        if (chj == '\r' || chj == '\n') {
+          lineBreak = j;
+        } else if (chj == '*' && j + 1 < n && content.charAt(j + 1) == '/') {
+          commentClose = j;
+        }
+      }
+      char ch = content.charAt(i);
+      int afterI = i;
+      if (ch < 64) {
+        if ((SPACE_BITS & (1L << ch)) != 0) {
+          afterI = after[i + 1];
+        } else if (ch == '/' && i + 1 < n) {
+          char ch1 = content.charAt(i + 1);
+          if (ch1 == '/') {
+            afterI = after[lineBreak];
+          } else if (ch1 == '*' && commentClose >= 0) {
+            afterI = after[commentClose + 2];
+          }
+        }
+      }
+      after[i] = afterI;
+    }
+    return after;
+  }
+
 
   /**
    * Allows introspection over comment tokens.
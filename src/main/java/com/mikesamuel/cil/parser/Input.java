@@ -1,11 +1,23 @@
 package com.mikesamuel.cil.parser;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.CharSource;
 import com.mikesamuel.cil.ast.NodeType;
+import com.mikesamuel.cil.ast.NodeVariant;
 import com.mikesamuel.cil.event.Event;
 
 /**
@@ -28,6 +40,39 @@ public abstract class Input {
    */
   public final RatPack ratPack = new RatPack();
 
+  /** Set when the input is {@linkplain Builder#preLex pre-lexed}. */
+  private @Nullable TokenTable tokenTable;
+
+  /** Set when the input is built with {@link Builder#interpretGrammar}. */
+  private boolean interpretGrammar;
+
+  /** Set when the input is built with {@link Builder#stackSegments}. */
+  private @Nullable StackSegments stackSegments;
+
+  /** Interns the text of tokens parsed from the content. */
+  private TextInterner interner;
+
+  /**
+   * One more than the index after ignorables for each index into the content,
+   * or zero if not yet computed.
+   */
+  private @Nullable int[] indicesAfterIgnorables;
+
+  /**
+   * Set when the input is {@linkplain Builder#editable editable} to the
+   * content that tracks the region examined by the current production.
+   */
+  private @Nullable ExaminedContent examined;
+
+  /**
+   * Set when the input is {@linkplain Builder#editable editable} to a builder
+   * that builds a copy of this input.
+   */
+  private @Nullable Builder editBuilder;
+
+  /** See {@link #getUnchangedPrefixLength}. */
+  private int unchangedPrefixLength;
+
   /**
    * @param source diagnostic string describing the source of the content.
    */
@@ -36,13 +81,228 @@ public abstract class Input {
   }
 
 
+  /**
+   * True if variants should be parsed by walking their
+   * {@linkplain NodeVariant#getParSer() ptree} instead of using any
+   * {@linkplain NodeVariant#getCompiledParSer() compiled parser}.
+   */
+  public boolean interpretsGrammar() {
+    return interpretGrammar;
+  }
+
+  /**
+   * The segments of stack that the parser enters productions on, or null if
+   * it should recurse on the calling thread.
+   */
+  public @Nullable StackSegments getStackSegments() {
+    return stackSegments;
+  }
+
+  /**
+   * Interns the text of identifiers and literals parsed from the content.
+   * Shared with other inputs if it was {@linkplain Builder#interner shared}
+   * when the input was built.
+   */
+  public TextInterner getInterner() {
+    return interner;
+  }
+
+  /**
+   * True if the input was built {@linkplain Builder#editable editable}.
+   */
+  public boolean isEditable() {
+    return editBuilder != null;
+  }
+
+  /**
+   * Called by the parser when it starts parsing a production at index.
+   * For {@linkplain Builder#editable editable} inputs, this starts tracking
+   * the region of content examined by the production so that it can be
+   * {@linkplain RatPack#cacheSuccess memoized} along with the result.
+   *
+   * @return a token to pass to {@link #endExamining} when the production
+   *     is done.
+   */
+  public long startExamining(int index) {
+    ExaminedContent ec = examined;
+    if (ec == null) {
+      return RatPack.NOT_EXAMINED;
+    }
+    long outer = RatPack.examinedRegion(ec.low, ec.high, ec.lengthRead);
+    ec.low = ec.high = index;
+    ec.lengthRead = false;
+    return outer;
+  }
+
+  /**
+   * Called by the parser when it finishes a production.
+   *
+   * @param outer the result of the corresponding {@link #startExamining}.
+   * @return the region of content examined by the production, or
+   *     {@link RatPack#NOT_EXAMINED} if the input is not editable.
+   *     The enclosing production is deemed to have examined it too.
+   */
+  public long endExamining(long outer) {
+    ExaminedContent ec = examined;
+    if (ec == null) {
+      return RatPack.NOT_EXAMINED;
+    }
+    long region = RatPack.examinedRegion(ec.low, ec.high, ec.lengthRead);
+    ec.include(outer);
+    return region;
+  }
+
+  /**
+   * Called by the parser when it reuses a memoized result in lieu of
+   * examining content.
+   *
+   * @param region a region of content returned by {@link #endExamining}.
+   */
+  public void noteExamined(long region) {
+    ExaminedContent ec = examined;
+    if (ec != null && region != RatPack.NOT_EXAMINED) {
+      ec.include(region);
+    }
+  }
+
+  /**
+   * Called by the parser when a match depended on where content ends without
+   * necessarily reading every character up to the end, as when a regular
+   * expression {@linkplain java.util.regex.Matcher#hitEnd hit the end}.
+   *
+   * @param index the index at which the match started.
+   */
+  public void noteExaminedEnd(int index) {
+    ExaminedContent ec = examined;
+    if (ec != null) {
+      ec.include(index, ec.content.length());
+      ec.lengthRead = true;
+    }
+  }
+
+  /**
+   * Called by the parser when a match depended on the output parsed before
+   * it, as when it looks back at where the last token ended.
+   * How earlier content breaks into tokens can depend on any of it, for
+   * example on where a block comment starts, so the match is deemed to have
+   * examined all content before index.
+   *
+   * @param index the index at which the match started.
+   */
+  public void noteExaminedStart(int index) {
+    ExaminedContent ec = examined;
+    if (ec != null) {
+      ec.include(0, index);
+    }
+  }
+
+  /**
+   * An input like this one but with the given edit applied to the code, that
+   * reuses memoized parse results from this input's {@link #ratPack} for
+   * productions that did not examine the edited region.
+   * <p>
+   * Results for productions that precede the edit are reused as is.
+   * Results for productions that follow it are reused with their indices
+   * shifted, so parsing the returned input re-parses only productions that
+   * span the edit.
+   *
+   * @param offset index into the code of the first character removed.
+   *     This is an index into the code before any
+   *     <code>&#x5c;uXXXX</code> sequences are decoded.
+   * @param removedLength count of characters of code removed.
+   * @param inserted code inserted at offset.
+   * @throws IllegalStateException if this input is not
+   *     {@linkplain Builder#editable editable}.
+   */
+  public Input edit(int offset, int removedLength, CharSequence inserted) {
+    Preconditions.checkState(editBuilder != null, "Input is not editable");
+    CharSequence code = editBuilder.code;
+    int codeLength = code.length();
+    Preconditions.checkPositionIndexes(
+        offset, offset + removedLength, codeLength);
+
+    Builder b = editBuilder.copy();
+    b.code(new StringBuilder(codeLength - removedLength + inserted.length())
+        .append(code, 0, offset)
+        .append(inserted)
+        .append(code, offset + removedLength, codeLength));
+    Input edited = b.build();
+    edited.unchangedPrefixLength = offset;
+
+    // Find the damaged region in the decoded content since memoized results
+    // use indices into it.
+    CharSequence before = this.examined.content;
+    CharSequence after = edited.examined.content;
+    int beforeLength = before.length();
+    int afterLength = after.length();
+    int minLength = Math.min(beforeLength, afterLength);
+    int prefix = 0;
+    while (prefix < minLength
+           && before.charAt(prefix) == after.charAt(prefix)) {
+      ++prefix;
+    }
+    int suffix = 0;
+    while (suffix < minLength - prefix
+           && before.charAt(beforeLength - suffix - 1)
+              == after.charAt(afterLength - suffix - 1)) {
+      ++suffix;
+    }
+    edited.ratPack.reuseEntriesOutside(
+        ratPack, prefix, beforeLength - suffix, afterLength - beforeLength,
+        minLength);
+    return edited;
+  }
+
+  /**
+   * For an input created by {@link #edit}, the count of characters at the
+   * start of the code that are unchanged from the input it was edited from.
+   * Zero for other inputs.
+   */
+  public int getUnchangedPrefixLength() {
+    return unchangedPrefixLength;
+  }
+
   /**
    * The index after any ignorable tokens like spaces and comments.
    *
    * @param index the start of input or an index just past the end of a token.
    */
   public int indexAfterIgnorables(int index) {
-    return Ignorables.scanPastIgnorablesFrom(content(), index, null);
+    int[] table = indicesAfterIgnorables;
+    if (table == null) {
+      table = indicesAfterIgnorables = new int[content().length() + 1];
+    }
+    int cached = table[index];
+    if (cached != 0) {
+      int after = cached - 1;
+      if (examined != null) {
+        // Scanning past ignorables looks at up to two characters after them
+        // to recognize comment starts.
+        examined.include(index, Math.min(after + 2, table.length - 1));
+      }
+      return after;
+    }
+    int after = Ignorables.scanPastIgnorablesFrom(content(), index, null);
+    table[index] = after + 1;
+    // There are no ignorables at after, so we can answer for it too.
+    table[after] = after + 1;
+    return after;
+  }
+
+  private void computeAllIndicesAfterIgnorables() {
+    int[] table = Ignorables.indicesAfterIgnorables(content());
+    for (int i = 0, n = table.length; i < n; ++i) {
+      ++table[i];
+    }
+    indicesAfterIgnorables = table;
+  }
+
+  /**
+   * The tokens in the content if the input was
+   * {@linkplain Builder#preLex pre-lexed}.
+   */
+  public @Nullable TokenTable getTokenTable() {
+    return tokenTable;
   }
 
   /**
@@ -65,19 +325,26 @@ public abstract class Input {
     return new Builder();
   }
 
+  final ExaminedContent examinedContent(CharSequence content) {
+    ExaminedContent ec = new ExaminedContent(content);
+    this.examined = ec;
+    return ec;
+  }
+
 
   /** An input used to reapply the parser to already decoded fragments. */
   private static final class PredecodedInput extends Input {
-    private final String content;
+    private final CharSequence content;
     private final LineStarts lineStarts;
 
     @SuppressWarnings("synthetic-access")
     private PredecodedInput(
-        String source, String predecodedContent,
-        boolean allowNonStandardProductions) {
+        CharSequence predecodedContent, LineStarts lineStarts,
+        boolean allowNonStandardProductions, boolean editable) {
       super(allowNonStandardProductions);
-      this.content = predecodedContent;
-      this.lineStarts = new LineStarts(source, content);
+      this.content = editable
+          ? examinedContent(predecodedContent) : predecodedContent;
+      this.lineStarts = lineStarts;
     }
 
     @Override
@@ -99,7 +366,9 @@ public abstract class Input {
 
   /** An input that needs baskslash u decoding. */
   private static final class TextInput extends Input {
-    private final DecodedContent content;
+    private final DecodedContent decodedContent;
+    /** The decoded content or a wrapper that tracks examined regions. */
+    private final CharSequence content;
     /**
      * The line-level structure of the source file.
      */
@@ -107,14 +376,17 @@ public abstract class Input {
 
     /**
      * @param encodedContent the code to parse.
+     * @param lineStarts line starts in encodedContent.
      */
     @SuppressWarnings("synthetic-access")
     private TextInput(
-        String source, String encodedContent,
-        boolean allowNonStandardProductions) {
+        CharSequence encodedContent, LineStarts lineStarts,
+        boolean allowNonStandardProductions, boolean editable) {
       super(allowNonStandardProductions);
-      this.content = new DecodedContent(encodedContent);
-      this.lineStarts = new LineStarts(source, encodedContent);
+      this.decodedContent = new DecodedContent(encodedContent);
+      this.content = editable
+          ? examinedContent(decodedContent) : decodedContent;
+      this.lineStarts = lineStarts;
     }
 
     @Override
@@ -125,13 +397,13 @@ public abstract class Input {
     @Override
     public SourcePosition getSourcePosition(int left, int right) {
       return new SourcePosition(
-          lineStarts, content.indexInEncoded(left),
-          content.indexInEncoded(right));
+          lineStarts, decodedContent.indexInEncoded(left),
+          decodedContent.indexInEncoded(right));
     }
 
     @Override
     public SourcePosition getSourcePosition(int index) {
-      int indexInEncoded = content.indexInEncoded(index);
+      int indexInEncoded = decodedContent.indexInEncoded(index);
       return new SourcePosition(
           lineStarts, indexInEncoded, indexInEncoded);
     }
@@ -165,19 +437,49 @@ public abstract class Input {
   }
 
 
+  /** Bytes decoded at a time by {@link Builder#file}. */
+  private static final int DECODE_CHUNK_SIZE = 1 << 16;
+
   /**
    * A builder for inputs.
    */
   public static final class Builder {
     private String source = "unknown";
-    private String code = null;
+    private CharSequence code = null;
+    /** Line starts in code if computed while reading code. */
+    private int[] codeLineStarts = null;
     private ImmutableList<Event> events = null;
     private boolean allowNonStandardProductions = false;
     private boolean isAlreadyDecoded = false;
+    private @Nullable TokenTable.Lexer preLexer = null;
+    private boolean eagerlySkipIgnorables = false;
+    private boolean interpretGrammar = false;
+    private boolean stackSegments = false;
+    private @Nullable TextInterner interner = null;
+    private boolean editable = false;
+    private int memoBudget = Integer.MAX_VALUE;
 
     private Builder() {
     }
 
+    private Builder copy() {
+      Builder b = new Builder();
+      b.source = source;
+      b.code = code;
+      b.codeLineStarts = codeLineStarts;
+      b.events = events;
+      b.allowNonStandardProductions = allowNonStandardProductions;
+      b.isAlreadyDecoded = isAlreadyDecoded;
+      b.preLexer = preLexer;
+      b.eagerlySkipIgnorables = eagerlySkipIgnorables;
+      b.interpretGrammar = interpretGrammar;
+      b.stackSegments = stackSegments;
+      b.interner = interner;
+      b.editable = editable;
+      b.memoBudget = memoBudget;
+      return b;
+    }
+
     /**
      * Specifies the code content.  Not additive.
      * @param codeSource read immediately.
@@ -200,9 +502,90 @@ public abstract class Input {
           events == null,
           "At most one of code or events may be specified");
       this.code = codeChars.toString();
+      this.codeLineStarts = null;
       return this;
     }
 
+    /**
+     * Specifies the code content by memory-mapping the given file and
+     * decoding it.  Not additive.
+     * <p>
+     * Unlike {@link #code(CharSource)}, this holds only one copy of the code
+     * in the heap, which matters for very large sources.
+     *
+     * @throws IOException on failure to read from path.
+     * @throws IllegalStateException if {@link #events(Iterable)} have been
+     *     specified.
+     */
+    public Builder file(Path path, Charset encoding) throws IOException {
+      Preconditions.checkState(
+          events == null,
+          "At most one of code or events may be specified");
+      CharsetDecoder decoder = encoding.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      LineStarts.Scanner lineScanner;
+      CharBuffer chars;
+      try (FileChannel channel = FileChannel.open(
+              path, StandardOpenOption.READ)) {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException(path + " is too large");
+        }
+        MappedByteBuffer bytes = channel.map(
+            FileChannel.MapMode.READ_ONLY, 0, size);
+        int nBytes = (int) size;
+        chars = CharBuffer.allocate(
+            (int) Math.min(
+                Integer.MAX_VALUE,
+                (long) (nBytes * (double) decoder.averageCharsPerByte()) + 1));
+        lineScanner = new LineStarts.Scanner(nBytes / 32);
+        // A view of chars' backing array that does not move as chars fills.
+        CharBuffer scanned = CharBuffer.wrap(chars.array());
+        // Decode a chunk at a time so that we look for line breaks while the
+        // chunk is still in cache.
+        while (true) {
+          int limit = (int) Math.min(
+              nBytes, (long) bytes.position() + DECODE_CHUNK_SIZE);
+          bytes.limit(limit);
+          boolean endOfInput = limit == nBytes;
+          int before = chars.position();
+          CoderResult result = decoder.decode(bytes, chars, endOfInput);
+          lineScanner.scan(scanned, before, chars.position());
+          if (result.isOverflow()) {
+            chars = larger(chars);
+            scanned = CharBuffer.wrap(chars.array());
+          } else if (result.isError()) {
+            result.throwException();
+          } else if (endOfInput) {
+            break;
+          }
+        }
+        while (true) {
+          int before = chars.position();
+          CoderResult result = decoder.flush(chars);
+          lineScanner.scan(scanned, before, chars.position());
+          if (!result.isOverflow()) {
+            break;
+          }
+          chars = larger(chars);
+          scanned = CharBuffer.wrap(chars.array());
+        }
+      }
+      chars.flip();
+      this.code = chars.asReadOnlyBuffer();
+      this.codeLineStarts = lineScanner.finish();
+      return this;
+    }
+
+    private static CharBuffer larger(CharBuffer chars) {
+      CharBuffer larger = CharBuffer.allocate(
+          (int) Math.min(Integer.MAX_VALUE, chars.capacity() * 2L + 16));
+      chars.flip();
+      larger.put(chars);
+      return larger;
+    }
+
     /**
      * Specifies the content based on a series of events.
      * Not additive.
@@ -246,21 +629,141 @@ public abstract class Input {
       return this;
     }
 
+    /**
+     * Specifies a lexer that breaks the content into tokens once when the
+     * input is built so that the parser can match tokens by consulting a
+     * {@link TokenTable} instead of re-examining characters.
+     * <p>
+     * This is ignored when {@link #allowNonStandardProductions} since
+     * template directives do not lex like Java tokens.
+     *
+     * @param lexer null to not pre-lex which is the default.
+     */
+    public Builder preLex(@Nullable TokenTable.Lexer lexer) {
+      this.preLexer = lexer;
+      return this;
+    }
+
+    /**
+     * Calling with true computes the {@linkplain Input#indexAfterIgnorables
+     * index after ignorables} for every index when the input is built.
+     * By default, each is computed the first time it is needed.
+     */
+    public Builder eagerlySkipIgnorables(boolean eager) {
+      this.eagerlySkipIgnorables = eager;
+      return this;
+    }
+
+    /**
+     * Calling with true parses the input by walking each variant's ptree even
+     * when the grammar was generated with compiled parsers.
+     * The two produce the same events, so this is mostly useful for testing
+     * compiled parsers.
+     */
+    public Builder interpretGrammar(boolean interpret) {
+      this.interpretGrammar = interpret;
+      return this;
+    }
+
+    /**
+     * Calling with true parses the input on {@link StackSegments} so that the
+     * depth to which code may nest is limited by memory instead of by the
+     * calling thread's stack size.
+     * The parser produces the same events either way, but crossing from one
+     * segment to the next hands off between threads which costs a few
+     * microseconds, so this is best reserved for inputs like generated code
+     * that may nest deeply.
+     */
+    public Builder stackSegments(boolean segment) {
+      this.stackSegments = segment;
+      return this;
+    }
+
+    /**
+     * Specifies an interner to share with other inputs so that trees parsed
+     * from a batch of inputs share the text of identifiers and literals.
+     * By default, each input gets its own.
+     */
+    public Builder interner(TextInterner sharedInterner) {
+      this.interner = Preconditions.checkNotNull(sharedInterner);
+      return this;
+    }
+
+    /**
+     * Calling with true allows the built input to be {@link Input#edit edited}
+     * so that re-parsing after a small change to the code reuses most of the
+     * work done parsing it before.
+     * <p>
+     * Editable inputs keep track of the parts of the content that each
+     * memoized production examined which slows parsing somewhat.
+     * {@link #preLex} is ignored for editable inputs.
+     *
+     * @throws IllegalStateException on build if {@link #events(Iterable)}
+     *     have been specified.
+     */
+    public Builder editable(boolean newEditable) {
+      this.editable = newEditable;
+      return this;
+    }
+
+    /**
+     * Sets the maximum count of {@linkplain RatPack#setBudget memoized parse
+     * results} kept while parsing the input.
+     * By default, there is no limit though results are evicted once the
+     * parser passes {@linkplain NodeType#isCommitPoint commit points}
+     * unless the input is {@link #editable}.
+     * Parsing with too small a budget may redo a lot of work.
+     */
+    public Builder memoBudget(int maxEntries) {
+      Preconditions.checkArgument(maxEntries > 0);
+      this.memoBudget = maxEntries;
+      return this;
+    }
+
     /**
      * Returns the built input.
      */
     @SuppressWarnings("synthetic-access")
     public Input build() {
+      Input input;
       if (events != null) {
-        return new EventInput(events, allowNonStandardProductions);
+        Preconditions.checkState(!editable, "Event inputs are not editable");
+        input = new EventInput(events, allowNonStandardProductions);
+      } else {
+        CharSequence content = code != null ? code : "";
+        LineStarts lineStarts = codeLineStarts != null
+            ? new LineStarts(source, codeLineStarts)
+            : new LineStarts(source, content);
+        if (isAlreadyDecoded) {
+          input = new PredecodedInput(
+              content, lineStarts, allowNonStandardProductions, editable);
+        } else {
+          input = new TextInput(
+              content, lineStarts, allowNonStandardProductions, editable);
+        }
+      }
+      input.interpretGrammar = interpretGrammar;
+      if (stackSegments) {
+        input.stackSegments = new StackSegments();
+      }
+      input.interner = interner != null
+          ? interner : TextInterner.forOneInput();
+      if (editable) {
+        input.editBuilder = copy();
+        // Edited inputs share text with the input they were edited from.
+        input.editBuilder.interner = input.interner;
+        input.ratPack.setEvictsCommitted(false);
+      }
+      if (memoBudget != Integer.MAX_VALUE) {
+        input.ratPack.setBudget(memoBudget);
+      }
+      if (eagerlySkipIgnorables) {
+        input.computeAllIndicesAfterIgnorables();
       }
-      if (isAlreadyDecoded) {
-        return new PredecodedInput(
-            source, code != null ? code : "",
-            allowNonStandardProductions);
+      if (preLexer != null && !allowNonStandardProductions && !editable) {
+        input.tokenTable = preLexer.lex(input);
       }
-      return new TextInput(
-          source, code != null ? code : "", allowNonStandardProductions);
+      return input;
     }
   }
 }
@@ -1,11 +1,13 @@
 package com.mikesamuel.cil.parser;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.mikesamuel.cil.ast.Grammar;
 import com.mikesamuel.cil.ast.NodeType;
 import com.mikesamuel.cil.ast.NodeVariant;
 
@@ -15,39 +17,87 @@ import com.mikesamuel.cil.ast.NodeVariant;
  * same production.
  */
 public final class LeftRecursion {
+  /*
+   * Each entry of a variant is a frame.  Frames are stored in parallel arrays
+   * indexed by depth so that entering and exiting does not allocate.
+   * Many instances are never entered, so the arrays start empty.
+   */
+  private NodeVariant<?, ?>[] frameVariants = new NodeVariant<?, ?>[0];
+  private int[] frameIndices = NO_INTS;
+  private Stage[] frameStages = new Stage[0];
+  /**
+   * The frame of the most recent earlier entry of the same production or -1.
+   */
+  private int[] framePrevSameProduction = NO_INTS;
+  /** The frame of the most recent earlier growing entry or -1. */
+  private int[] framePrevGrowing = NO_INTS;
+  /** The count of frames on the stack. */
+  private int depth;
+  /** The frame of the most recent growing entry or -1. */
+  private int topGrowing = -1;
   /**
-   * The productions on the stack and the input cursor indices at which they
-   * were entered with greater indices earlier in the list.
+   * Maps production ordinals to the frame of the most recent entry of that
+   * production or -1.
+   * Ordinals are only unique within a grammar, so all productions entered
+   * must be from {@link #grammar}.
    */
-  private final Map<NodeType<?, ?>, SList<PositionAndStage>> onStack =
-      new LinkedHashMap<>();
-  private SList<NodeVariant<?, ?>> variantStack;
+  private int[] topFrameByOrdinal = NO_INTS;
+  private @Nullable Grammar<?, ?> grammar;
+
+  private static final int[] NO_INTS = new int[0];
+
+  private final VariantScope scope = new VariantScope() {
+    @SuppressWarnings("synthetic-access")
+    @Override
+    public void close() {
+      exit();
+    }
+  };
 
   /**
    * True if there is a variant with the given node type on the stack.
    */
   public Stage stageForProductionAt(NodeType<?, ?> nodeType, int index) {
-    SList<PositionAndStage> sps = onStack.get(nodeType);
-    for (SList<PositionAndStage> c = sps ; c != null; c = c.prev) {
-      if (c.x.index == index) {
-        return c.x.stage;
+    int ordinal = nodeType.ordinal();
+    if (nodeType.getGrammar() != grammar
+        || ordinal >= topFrameByOrdinal.length) {
+      return Stage.NOT_ON_STACK;
+    }
+    for (int f = topFrameByOrdinal[ordinal]; f >= 0;
+         f = framePrevSameProduction[f]) {
+      if (frameIndices[f] == index) {
+        return frameStages[f];
       }
     }
     return Stage.NOT_ON_STACK;
   }
 
+  /**
+   * True if some production is growing a seed at the given index, so a
+   * left-recursive call there might match the empty string.
+   */
+  public boolean isGrowingAt(int index) {
+    for (int f = topGrowing; f >= 0; f = framePrevGrowing[f]) {
+      if (frameIndices[f] == index) {
+        return true;
+      }
+    }
+    return false;
+  }
+
 
   /**
-   * The variant from the most recent entry of the given production.
+   * The variant from the most recent entry of the given production followed
+   * by the variants entered since.
+   * Only {@linkplain NodeType#isLeftRecursive left-recursive} productions
+   * are entered, so only their variants appear.
    */
   public Optional<ImmutableList<NodeVariant<?, ?>>> getStackFrom(
       NodeType<?, ?> nodeType) {
-    SList<NodeVariant<?, ?>> stackFrom = null;
-    for (SList<NodeVariant<?, ?>> c = variantStack; c != null; c = c.prev) {
-      stackFrom = SList.append(stackFrom, c.x);
-      if (c.x.getNodeType() == nodeType) {
+    for (int f = depth; --f >= 0;) {
+      if (frameVariants[f].getNodeType() == nodeType) {
         return Optional.of(ImmutableList.copyOf(
-            SList.reverseIterable(stackFrom)));
+            Arrays.asList(frameVariants).subList(f, depth)));
       }
     }
     return Optional.absent();
@@ -58,41 +108,65 @@ public final class LeftRecursion {
    * Pushes a variant scope.
    *
    * @return a scope that must be closed to signal the exit of the scope.
+   *     The same scope is returned by every call, and closing it exits the
+   *     most recently entered scope, so scopes must be closed in reverse
+   *     order of entry.
    * @see #getStackFrom
    */
-  public VariantScope enter(
-      final NodeVariant<?, ?> variant,
-      final int index,
-      final Stage stage) {
+  public VariantScope enter(NodeVariant<?, ?> variant, int index, Stage stage) {
     Preconditions.checkArgument(stage != Stage.NOT_ON_STACK, stage);
 
-    final NodeType<?, ?> nodeType = variant.getNodeType();
-
-    final PositionAndStage ps = new PositionAndStage(index, stage);
-    {
-      SList<PositionAndStage> c = onStack.get(nodeType);
-      Preconditions.checkState(c == null || c.x.index < index);
-      onStack.put(nodeType, SList.append(c, ps));
+    NodeType<?, ?> nodeType = variant.getNodeType();
+    if (grammar == null) {
+      grammar = nodeType.getGrammar();
+    } else {
+      Preconditions.checkArgument(grammar == nodeType.getGrammar());
+    }
+    int ordinal = nodeType.ordinal();
+    if (ordinal >= topFrameByOrdinal.length) {
+      int oldLength = topFrameByOrdinal.length;
+      topFrameByOrdinal = Arrays.copyOf(
+          topFrameByOrdinal, Math.max(ordinal + 1, oldLength * 2));
+      Arrays.fill(topFrameByOrdinal, oldLength, topFrameByOrdinal.length, -1);
     }
 
-    variantStack = SList.append(variantStack, variant);
-
-    return new VariantScope() {
-
-      @SuppressWarnings("synthetic-access")
-      @Override
-      public void close() {
-        Preconditions.checkState(variantStack.x == variant);
-
-        {
-          SList<PositionAndStage> c = onStack.get(nodeType);
-          Preconditions.checkState(c != null && c.x == ps);
-          onStack.put(nodeType, c.prev);
-        }
+    int prevSameProduction = topFrameByOrdinal[ordinal];
+    Preconditions.checkState(
+        prevSameProduction < 0 || frameIndices[prevSameProduction] < index);
+
+    if (depth == frameVariants.length) {
+      int newLength = Math.max(16, depth * 2);
+      frameVariants = Arrays.copyOf(frameVariants, newLength);
+      frameIndices = Arrays.copyOf(frameIndices, newLength);
+      frameStages = Arrays.copyOf(frameStages, newLength);
+      framePrevSameProduction = Arrays.copyOf(
+          framePrevSameProduction, newLength);
+      framePrevGrowing = Arrays.copyOf(framePrevGrowing, newLength);
+    }
+    int f = depth++;
+    frameVariants[f] = variant;
+    frameIndices[f] = index;
+    frameStages[f] = stage;
+    framePrevSameProduction[f] = prevSameProduction;
+    topFrameByOrdinal[ordinal] = f;
+    if (stage == Stage.GROWING) {
+      framePrevGrowing[f] = topGrowing;
+      topGrowing = f;
+    }
+    return scope;
+  }
 
-        variantStack = variantStack.prev;
-      }
-    };
+  private void exit() {
+    Preconditions.checkState(depth != 0);
+    int f = --depth;
+    NodeType<?, ?> nodeType = frameVariants[f].getNodeType();
+    topFrameByOrdinal[nodeType.ordinal()] = framePrevSameProduction[f];
+    if (frameStages[f] == Stage.GROWING) {
+      Preconditions.checkState(topGrowing == f);
+      topGrowing = framePrevGrowing[f];
+    }
+    frameVariants[f] = null;
+    frameStages[f] = null;
   }
 
   /**
@@ -119,18 +193,4 @@ public final class LeftRecursion {
     GROWING,
     ;
   }
-
-
-  /**
-   * A stage at a particular parse cursor index.
-   */
-  static final class PositionAndStage {
-    final int index;
-    final Stage stage;
-
-    PositionAndStage(int index, Stage stage) {
-      this.index = index;
-      this.stage = stage;
-    }
-  }
 }
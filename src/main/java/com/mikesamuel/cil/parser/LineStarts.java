@@ -16,29 +16,74 @@ public final class LineStarts {
   private final int[] startsOfLines;
 
   LineStarts(String source, CharSequence content) {
+    this(source, scan(content));
+  }
+
+  LineStarts(String source, int[] startsOfLines) {
     this.source = source;
-    int n = content.length();
-    int[] starts = new int[1 + n / 16];
-    int nLines = 1;
-    for (int i = 0; i < n; ++i) {
-      char ch = content.charAt(i);
-      if (ch == '\n' || ch == '\r') {
-        int startOfNext = i + 1;
-        if (ch == '\r' && startOfNext < n
-            && content.charAt(startOfNext) == '\n') {
-          ++startOfNext;
+    this.startsOfLines = startsOfLines;
+  }
+
+  private static int[] scan(CharSequence content) {
+    Scanner scanner = new Scanner(content.length() / 16);
+    scanner.scan(content, 0, content.length());
+    return scanner.finish();
+  }
+
+  /**
+   * Finds line starts in content that is available a chunk at a time.
+   */
+  static final class Scanner {
+    private int[] starts;
+    private int nLines = 1;
+    /** The index of a CR at the end of the last chunk or -1. */
+    private int pendingCr = -1;
+
+    Scanner(int lineCountEstimate) {
+      this.starts = new int[1 + lineCountEstimate];
+    }
+
+    /**
+     * Looks for line breaks in content between the given indices which must
+     * follow those passed to any previous call.
+     */
+    void scan(CharSequence content, int left, int right) {
+      for (int i = left; i < right; ++i) {
+        char ch = content.charAt(i);
+        if (pendingCr >= 0) {
+          boolean crlf = ch == '\n';
+          addStart(crlf ? pendingCr + 2 : pendingCr + 1);
+          pendingCr = -1;
+          if (crlf) {
+            // The LF is part of the same line break as the CR.
+            continue;
+          }
         }
-        if (nLines == starts.length) {
-          int[] larger = new int[nLines * 2];
-          System.arraycopy(starts, 0, larger, 0, nLines);
-          starts = larger;
+        if (ch == '\r') {
+          // Whether the line starts after this char depends on the next.
+          pendingCr = i;
+        } else if (ch == '\n') {
+          addStart(i + 1);
         }
-        starts[nLines] = startOfNext;
-        ++nLines;
       }
     }
-    this.startsOfLines = new int[nLines];
-    System.arraycopy(starts, 0, this.startsOfLines, 0, nLines);
+
+    /** The start indices of lines in all the content scanned. */
+    int[] finish() {
+      if (pendingCr >= 0) {
+        addStart(pendingCr + 1);
+        pendingCr = -1;
+      }
+      return Arrays.copyOf(starts, nLines);
+    }
+
+    private void addStart(int startOfNext) {
+      if (nLines == starts.length) {
+        starts = Arrays.copyOf(starts, nLines * 2);
+      }
+      starts[nLines] = startOfNext;
+      ++nLines;
+    }
   }
 
   /**
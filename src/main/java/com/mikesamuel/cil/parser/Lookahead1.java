@@ -0,0 +1,98 @@
+package com.mikesamuel.cil.parser;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A conservative approximation of the characters that can start a non-empty
+ * string matched by a grammar variant.
+ * <p>
+ * This lets the parser skip variants that cannot match at the current
+ * position without entering them.
+ */
+public final class Lookahead1 {
+  /** Bits for chars [0, 64). */
+  private final long low;
+  /** Bits for chars [64, 128). */
+  private final long high;
+  /** True if any non-ASCII char might start a match. */
+  private final boolean nonAscii;
+
+  private Lookahead1(long low, long high, boolean nonAscii) {
+    this.low = low;
+    this.high = high;
+    this.nonAscii = nonAscii;
+  }
+
+  /**
+   * @param asciiChars the ASCII characters which can start a match.
+   * @param nonAscii true if any character outside the ASCII range might start
+   *     a match.
+   */
+  public static Lookahead1 of(String asciiChars, boolean nonAscii) {
+    long low = 0, high = 0;
+    for (int i = 0, n = asciiChars.length(); i < n; ++i) {
+      char ch = asciiChars.charAt(i);
+      Preconditions.checkArgument(ch < 0x80, asciiChars);
+      if (ch < 64) {
+        low |= 1L << ch;
+      } else {
+        high |= 1L << (ch - 64);
+      }
+    }
+    return new Lookahead1(low, high, nonAscii);
+  }
+
+  /** A lookahead that allows any character that either allows. */
+  public Lookahead1 union(Lookahead1 other) {
+    return new Lookahead1(
+        low | other.low, high | other.high, nonAscii || other.nonAscii);
+  }
+
+  /** True if a match might start with ch. */
+  public boolean canStartWith(char ch) {
+    if (ch < 64) {
+      return (low & (1L << ch)) != 0;
+    } else if (ch < 128) {
+      return (high & (1L << (ch - 64))) != 0;
+    }
+    return nonAscii;
+  }
+
+  /**
+   * False if the variant definitely cannot match starting at the state's parse
+   * position.
+   */
+  public boolean canFollow(ParseState state) {
+    CharSequence content = state.input.content();
+    int index = state.index;
+    int n = content.length();
+    if (index == n) {
+      return false;
+    }
+    char ch = content.charAt(index);
+    if (canStartWith(ch)) {
+      return true;
+    }
+    // Template directives ("%%") and interpolations ("(%", "{%") can appear
+    // in place of, or before, any production.
+    if (state.input.allowNonStandardProductions
+        && index + 1 < n && content.charAt(index + 1) == '%') {
+      return ch == '%' || ch == '(' || ch == '{';
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (char ch = 0; ch < 128; ++ch) {
+      if (canStartWith(ch)) {
+        sb.append(ch);
+      }
+    }
+    if (nonAscii) {
+      sb.append("\\x80-\\uffff");
+    }
+    return sb.append(']').toString();
+  }
+}
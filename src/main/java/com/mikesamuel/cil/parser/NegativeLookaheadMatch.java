@@ -0,0 +1,41 @@
+package com.mikesamuel.cil.parser;
+
+/**
+ * Reported when the body of a negative lookahead matches, so the lookahead
+ * fails.
+ */
+public final class NegativeLookaheadMatch implements Expectation {
+  /** The index after the body's match. */
+  public final int matchEnd;
+
+  /** @param matchEnd the index after the body's match. */
+  public NegativeLookaheadMatch(int matchEnd) {
+    this.matchEnd = matchEnd;
+  }
+
+  @Override
+  public String getDescription() {
+    return "no match ending at " + matchEnd;
+  }
+
+  @Override
+  public String toMessage(ParseState state) {
+    return "Successfully matched to " + matchEnd;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof NegativeLookaheadMatch
+        && matchEnd == ((NegativeLookaheadMatch) o).matchEnd;
+  }
+
+  @Override
+  public int hashCode() {
+    return matchEnd;
+  }
+
+  @Override
+  public String toString() {
+    return "(NegativeLookaheadMatch " + matchEnd + ")";
+  }
+}
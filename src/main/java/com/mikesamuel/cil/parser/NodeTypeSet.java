@@ -0,0 +1,167 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.mikesamuel.cil.ast.NodeType;
+
+/**
+ * An immutable set of node types from one grammar stored as a bitset over
+ * their ordinals.
+ * <p>
+ * These are cheap to union, which the parser does as it combines the
+ * {@link ParseResult#lrExclusionsTriggered} of sub-parses.
+ */
+public final class NodeTypeSet extends AbstractSet<NodeType<?, ?>> {
+  /** The empty set. */
+  public static final NodeTypeSet EMPTY = new NodeTypeSet(null, new long[0]);
+
+  /** Node types indexed by ordinal. */
+  private static final ClassValue<Object[]> NODE_TYPES_BY_ORDINAL =
+      new ClassValue<Object[]>() {
+        @Override
+        protected Object[] computeValue(Class<?> nodeTypeClass) {
+          return nodeTypeClass.getEnumConstants();
+        }
+      };
+
+  /** The enum class of the members or null if empty. */
+  private final @Nullable Class<?> nodeTypeClass;
+  private final long[] bits;
+
+  private NodeTypeSet(@Nullable Class<?> nodeTypeClass, long[] bits) {
+    this.nodeTypeClass = nodeTypeClass;
+    this.bits = bits;
+  }
+
+  /** A set with only the given node type. */
+  public static NodeTypeSet of(NodeType<?, ?> nodeType) {
+    int ordinal = nodeType.ordinal();
+    long[] bits = new long[(ordinal >>> 6) + 1];
+    bits[ordinal >>> 6] = 1L << ordinal;
+    return new NodeTypeSet(nodeTypeClassOf(nodeType), bits);
+  }
+
+  private static Class<?> nodeTypeClassOf(NodeType<?, ?> nodeType) {
+    return ((Enum<?>) nodeType).getDeclaringClass();
+  }
+
+  @Override
+  public boolean contains(@Nullable Object o) {
+    if (!(o instanceof NodeType<?, ?>) || nodeTypeClass == null) {
+      return false;
+    }
+    NodeType<?, ?> nodeType = (NodeType<?, ?>) o;
+    int word = nodeType.ordinal() >>> 6;
+    return word < bits.length
+        && (bits[word] & (1L << nodeType.ordinal())) != 0
+        && nodeTypeClassOf(nodeType) == nodeTypeClass;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return nodeTypeClass == null;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (long word : bits) {
+      size += Long.bitCount(word);
+    }
+    return size;
+  }
+
+  /**
+   * The set of node types in this or other.
+   * This is this or other when one is a superset of the other.
+   */
+  public NodeTypeSet union(NodeTypeSet other) {
+    if (other.isEmpty() || other == this) { return this; }
+    if (this.isEmpty()) { return other; }
+    Preconditions.checkArgument(
+        nodeTypeClass == other.nodeTypeClass,
+        "Cannot mix node types from different grammars");
+    long[] a = this.bits;
+    long[] b = other.bits;
+    if (a.length < b.length) {
+      long[] t = a;
+      a = b;
+      b = t;
+    }
+    // Now a is at least as long as b.
+    boolean aHasAll = true;
+    boolean bHasAll = a.length == b.length;
+    for (int i = 0, n = b.length; i < n; ++i) {
+      long u = a[i] | b[i];
+      aHasAll &= u == a[i];
+      bHasAll &= u == b[i];
+    }
+    if (aHasAll) {
+      return a == this.bits ? this : other;
+    }
+    if (bHasAll) {
+      return b == this.bits ? this : other;
+    }
+    long[] u = Arrays.copyOf(a, a.length);
+    for (int i = 0, n = b.length; i < n; ++i) {
+      u[i] |= b[i];
+    }
+    return new NodeTypeSet(nodeTypeClass, u);
+  }
+
+  /** The set of node types in this except the given node type. */
+  public NodeTypeSet without(NodeType<?, ?> nodeType) {
+    if (!contains(nodeType)) { return this; }
+    int ordinal = nodeType.ordinal();
+    long[] newBits = Arrays.copyOf(bits, bits.length);
+    newBits[ordinal >>> 6] &= ~(1L << ordinal);
+    for (long word : newBits) {
+      if (word != 0) {
+        return new NodeTypeSet(nodeTypeClass, newBits);
+      }
+    }
+    return EMPTY;
+  }
+
+  @Override
+  public Iterator<NodeType<?, ?>> iterator() {
+    final Object[] universe = nodeTypeClass != null
+        ? NODE_TYPES_BY_ORDINAL.get(nodeTypeClass) : null;
+    return new Iterator<NodeType<?, ?>>() {
+      private int ordinal = nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return ordinal >= 0;
+      }
+
+      @SuppressWarnings("synthetic-access")
+      @Override
+      public NodeType<?, ?> next() {
+        if (ordinal < 0) { throw new NoSuchElementException(); }
+        NodeType<?, ?> nodeType = (NodeType<?, ?>) universe[ordinal];
+        ordinal = nextSetBit(ordinal + 1);
+        return nodeType;
+      }
+    };
+  }
+
+  private int nextSetBit(int from) {
+    int word = from >>> 6;
+    if (word >= bits.length) { return -1; }
+    long w = bits[word] & (-1L << from);
+    while (true) {
+      if (w != 0) {
+        return (word << 6) + Long.numberOfTrailingZeros(w);
+      }
+      if (++word == bits.length) { return -1; }
+      w = bits[word];
+    }
+  }
+}
@@ -13,6 +13,15 @@ public interface ParseErrorReceiver {
   /** Called when an attempt to parse using a particular variant fails. */
   void error(ParseState state, String message);
 
+  /**
+   * Called when a terminal fails to match.
+   * Most such failures are normal backtracking, so receivers that do not
+   * report them can avoid rendering a message.
+   */
+  default void expected(ParseState state, Expectation expectation) {
+    error(state, expectation.toMessage(state));
+  }
+
   /** An error receiver that silently drops all messages. */
   public static final ParseErrorReceiver DEV_NULL = new ParseErrorReceiver() {
 
@@ -21,6 +30,11 @@ public interface ParseErrorReceiver {
       // Ignores state and message
     }
 
+    @Override
+    public void expected(ParseState state, Expectation expectation) {
+      // Ignores state and expectation
+    }
+
     @Override
     public String toString() {
       return "/dev/null";
@@ -1,10 +1,6 @@
 package com.mikesamuel.cil.parser;
 
-import java.util.Set;
-
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
-import com.mikesamuel.cil.ast.NodeType;
 
 /**
  * The result of a parse operation.
@@ -22,11 +18,11 @@ public class ParseResult {
    */
   public final int writeBack;
   /** LR exclusions whose failure contributed to this result. */
-  public final ImmutableSet<NodeType<?, ?>> lrExclusionsTriggered;
+  public final NodeTypeSet lrExclusionsTriggered;
 
   private ParseResult(
       Synopsis synopsis, int writeBack,
-      ImmutableSet<NodeType<?, ?>> lrExclusionsTriggered) {
+      NodeTypeSet lrExclusionsTriggered) {
     this.synopsis = synopsis;
     this.writeBack = writeBack;
     this.lrExclusionsTriggered = lrExclusionsTriggered;
@@ -63,8 +59,8 @@ public class ParseResult {
     Preconditions.checkNotNull(a);
     Preconditions.checkNotNull(b);
 
-    ImmutableSet<NodeType<?, ?>> allLrExcl = union(
-        a.lrExclusionsTriggered, b.lrExclusionsTriggered);
+    NodeTypeSet allLrExcl = a.lrExclusionsTriggered.union(
+        b.lrExclusionsTriggered);
 
     boolean success =
         a.synopsis == b.synopsis && a.synopsis == Synopsis.SUCCESS;
@@ -89,7 +85,7 @@ public class ParseResult {
   public static final int NO_WRITE_BACK_RESTRICTION = Integer.MAX_VALUE;
 
   private static final ParseResult FAILURE_INSTANCE = new ParseResult(
-      Synopsis.FAILURE, NO_WRITE_BACK_RESTRICTION, ImmutableSet.of());
+      Synopsis.FAILURE, NO_WRITE_BACK_RESTRICTION, NodeTypeSet.EMPTY);
 
   /** @see Synopsis#FAILURE */
   public static ParseResult failure() {
@@ -97,13 +93,12 @@ public class ParseResult {
   }
 
   /** @see Synopsis#FAILURE */
-  public static ParseResult failure(Set<NodeType<?, ?>> exclusionsTriggered) {
+  public static ParseResult failure(NodeTypeSet exclusionsTriggered) {
     if (exclusionsTriggered.isEmpty()) {
       return FAILURE_INSTANCE;
     }
     return new ParseResult(
-        Synopsis.FAILURE, NO_WRITE_BACK_RESTRICTION,
-        ImmutableSet.copyOf(exclusionsTriggered));
+        Synopsis.FAILURE, NO_WRITE_BACK_RESTRICTION, exclusionsTriggered);
   }
 
   /**
@@ -112,10 +107,28 @@ public class ParseResult {
    */
   public static ParseResult success(
       ParseState after, int wroteBack,
-      Iterable<NodeType<?, ?>> lrExclusionsTriggered) {
+      NodeTypeSet lrExclusionsTriggered) {
     return new Pass(after, wroteBack, lrExclusionsTriggered);
   }
 
+  /**
+   * A result like this but whose {@link #lrExclusionsTriggered} also include
+   * the given exclusions.
+   */
+  public ParseResult withLrExclusionsTriggered(NodeTypeSet exclusions) {
+    NodeTypeSet all = lrExclusionsTriggered.union(exclusions);
+    if (all == lrExclusionsTriggered) {
+      return this;
+    }
+    switch (synopsis) {
+      case FAILURE:
+        return failure(all);
+      case SUCCESS:
+        return success(next(), writeBack, all);
+    }
+    throw new AssertionError(synopsis);
+  }
+
 
   private static final class Pass extends ParseResult {
     final ParseState next;
@@ -123,10 +136,8 @@ public class ParseResult {
     @SuppressWarnings("synthetic-access")
     Pass(
         ParseState next, int wroteBack,
-        Iterable<NodeType<?, ?>> lrExclusionsTriggereed) {
-      super(
-          Synopsis.SUCCESS, wroteBack,
-          ImmutableSet.copyOf(lrExclusionsTriggereed));
+        NodeTypeSet lrExclusionsTriggereed) {
+      super(Synopsis.SUCCESS, wroteBack, lrExclusionsTriggereed);
       this.next = Preconditions.checkNotNull(next);
     }
 
@@ -135,24 +146,4 @@ public class ParseResult {
       return next;
     }
   }
-
-  /** Convenience for unioning two sets of enum values. */
-  public static ImmutableSet<NodeType<?, ?>> union(
-      ImmutableSet<NodeType<?, ?>> a, ImmutableSet<NodeType<?, ?>> b) {
-    if (!a.isEmpty()) {
-      if (!b.isEmpty()) {
-        Set<NodeType<?, ?>> u = ImmutableSet.<NodeType<?, ?>>builder()
-            .addAll(a)
-            .addAll(b)
-            .build();
-        if (u.size() == a.size()) { return a; }
-        if (u.size() == b.size()) { return b; }
-        return ImmutableSet.copyOf(u);
-      }
-      return a;
-    } else if (!b.isEmpty()) {
-      return b;
-    }
-    return a;
-  }
 }
@@ -46,12 +46,21 @@ public final class ParseState {
    */
   public ParseState advance(int n) {
     Preconditions.checkArgument(n >= 0);
-    int newIndex = input.indexAfterIgnorables(index + n);
+    int newIndex;
+    TokenTable tokens = input.getTokenTable();
+    int token;
+    if (tokens != null && n != 0
+        && (token = tokens.tokenAt(index)) != TokenTable.NO_TOKEN
+        && tokens.end(token) == index + n) {
+      newIndex = tokens.indexAfterIgnorablesFollowing(token);
+    } else {
+      newIndex = input.indexAfterIgnorables(index + n);
+    }
     if (newIndex == index) {
       return this;
     }
     Preconditions.checkState(newIndex <= input.content().length());
-    return withIndex(newIndex);
+    return withTrustedIndex(newIndex);
   }
 
   /** A state like this but with the given event appended. */
@@ -80,6 +89,19 @@ public final class ParseState {
     return new ParseState(input, newIndex, output);
   }
 
+  /**
+   * Like {@link #withIndex} but for callers that already know that newIndex
+   * is not the start of an ignorable token, for example, because it is a
+   * token boundary found by an earlier parse.
+   */
+  public ParseState withTrustedIndex(int newIndex) {
+    assert input.indexAfterIgnorables(newIndex) == newIndex : newIndex;
+    if (index == newIndex) {
+      return this;
+    }
+    return new ParseState(input, newIndex, output);
+  }
+
   /**
    * True iff there is a token at the current parse position with the given
    * text.
@@ -131,11 +153,17 @@ public final class ParseState {
     return "(ParseState index=" + index + ", input=`" + inputFragment + "`)";
   }
 
+  /**
+   * Checks for the end of a before each character instead of up front so
+   * that content an {@linkplain Input.Builder#editable editable} input
+   * tracks as examined covers any index compared against its length.
+   */
   private static boolean regionMatches(
       CharSequence a, int ai, CharSequence b, int bi, int n) {
-    if (ai + n > a.length() || bi + n > b.length()) { return false; }
+    if (bi + n > b.length()) { return false; }
+    int aEnd = a.length();
     for (int i = ai, j = bi, k = n; --k >= 0; ++i, ++j) {
-      if (a.charAt(i) != b.charAt(j)) {
+      if (i == aEnd || a.charAt(i) != b.charAt(j)) {
         return false;
       }
     }
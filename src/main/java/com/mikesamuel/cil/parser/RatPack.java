@@ -1,12 +1,14 @@
 package com.mikesamuel.cil.parser;
 
 import java.io.PrintStream;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import javax.annotation.Nullable;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Maps;
 import com.mikesamuel.cil.ast.NodeType;
 // TODO: Move the checks into Grammar
 import com.mikesamuel.cil.ast.j8.J8NodeType;
@@ -17,37 +19,162 @@ import com.mikesamuel.cil.event.Event;
  * a ParseState with that index whose output ends with a {@link Event#pop}
  * of a {@link Event#push} of that NodeType, so that the events from
  * parsing that production at that index can be reused.
+ * <p>
+ * Entries are only an optimization, so the cache may evict them.
+ * Once the parser passes a {@linkplain #commit commit point}, entries for
+ * earlier indices are evicted when the table would otherwise grow, and
+ * a {@linkplain #setBudget budget} bounds the number of entries kept.
  */
 public final class RatPack {
 
-  private final Map<RatDropping, ParseCacheEntry> parseCache =
-      Maps.newHashMap();
+  /**
+   * The initial number of slots in the table.  Must be a power of 2.
+   */
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  /**
+   * Keys are {@link #key packed} (index, production ordinal) pairs.
+   * A slot is empty iff its entry is null.
+   */
+  private long[] keys = new long[INITIAL_CAPACITY];
+  /**
+   * The production for the corresponding key.
+   * Ordinals are only unique within a grammar, so we compare these by
+   * identity to distinguish productions from different grammars that happen
+   * to share an ordinal.
+   */
+  private NodeType<?, ?>[] nodeTypes = new NodeType<?, ?>[INITIAL_CAPACITY];
+  /** The entries for the corresponding keys or null for an empty slot. */
+  private ParseCacheEntry[] entries = new ParseCacheEntry[INITIAL_CAPACITY];
+  /** Count of non-empty slots. */
+  private int size;
+  /**
+   * Maps the last cell of the output of each production memoized by sharing
+   * its events with the output, or spliced in from a memoized parse, to the
+   * cell before its push, so that
+   * {@link #cacheSuccess} need not walk back over the events of nested
+   * productions.
+   * <p>
+   * This only holds entries added since the parser last passed a commit
+   * point since most are for branches that the parser abandons, and keeping
+   * them would keep those branches' output alive.
+   * Cleared when entries are evicted since it only saves time.
+   */
+  private final IdentityHashMap<SList<Event>, SList<Event>> beforePushes =
+      new IdentityHashMap<>();
+  /**
+   * Like {@link #beforePushes} but for the output of commit point
+   * productions, so that productions that enclose them can skip over them.
+   * These cells are part of the output that the parser committed to.
+   */
+  private final IdentityHashMap<SList<Event>, SList<Event>>
+      committedBeforePushes = new IdentityHashMap<>();
+
+  private long hitCount;
+  private long missCount;
+  private long collisionCount;
+  private long evictionCount;
+  private int peakSize;
+
+  /** The maximum count of entries.  See {@link #setBudget}. */
+  private int budget = Integer.MAX_VALUE;
+  /** False if entries behind the commit point should be kept. */
+  private boolean evictsCommitted = true;
+  /** Entries for indices before this will not be consulted again. */
+  private int commitIndex;
+  /** The count of commit point productions being parsed. */
+  private int commitPointDepth;
+
+  /**
+   * Commit points nested in more than this many other commit points do not
+   * commit, since the enclosing productions might be backtracked over, as
+   * when an anonymous class body is part of an expression.
+   */
+  private static final int MAX_COMMIT_POINT_DEPTH = 1;
+
+  /**
+   * The {@link ParseCacheEntry#getExamined region examined} for entries
+   * from inputs that are not {@linkplain Input.Builder#editable editable}.
+   */
+  public static final long NOT_EXAMINED = -1L;
+
+  /**
+   * Set in an {@link #examinedRegion} if the content length was read.
+   * Indices are never negative so the sign bit of high is free.
+   */
+  private static final long LENGTH_READ_BIT = 0x80000000L;
 
 
   /**
    * Cache the fact that a parse failed at the given index.
    */
   public void cacheFailure(int index, NodeType<?, ?> nodeType) {
-    RatDropping d = new RatDropping(nodeType, index);
-    parseCache.put(d, ParseFailure.INSTANCE);
+    cacheFailure(index, nodeType, NOT_EXAMINED);
+  }
+
+  /**
+   * Cache the fact that a parse failed at the given index after examining
+   * the given {@linkplain Input#endExamining region}.
+   */
+  public void cacheFailure(int index, NodeType<?, ?> nodeType, long examined) {
+    put(
+        index, nodeType,
+        examined == NOT_EXAMINED
+        ? ParseFailure.INSTANCE : new ParseFailure(examined));
   }
 
   /**
+   * @param outputBeforeParse The output event list before parsing the
+   *     production.
    * @param output An output event list after parsing a production that starts
    *     at index.
    */
   public void cacheSuccess(
       int indexBeforeParse, int indexAfterParse,
-      NodeType<?, ?> nodeType, SList<Event> output) {
+      NodeType<?, ?> nodeType,
+      @Nullable SList<Event> outputBeforeParse, SList<Event> output) {
+    cacheSuccess(
+        indexBeforeParse, indexAfterParse, nodeType, outputBeforeParse, output,
+        NOT_EXAMINED);
+  }
+
+  /**
+   * @param outputBeforeParse The output event list before parsing the
+   *     production.
+   * @param output An output event list after parsing a production that starts
+   *     at index.
+   * @param examined the {@linkplain Input#endExamining region} of content
+   *     examined while parsing the production.
+   */
+  public void cacheSuccess(
+      int indexBeforeParse, int indexAfterParse,
+      NodeType<?, ?> nodeType,
+      @Nullable SList<Event> outputBeforeParse, SList<Event> output,
+      long examined) {
     Preconditions.checkArgument(
         output !=  null && output.x.getKind() == Event.Kind.POP);
 
     int popCount = 0;
+    SList<Event> beforePush = null;
+    SList<Event> o = output;
     cache_loop:
-    for (SList<? extends Event> o = output; o != null; o = o.prev) {
+    while (o != null) {
       Event e = o.x;
       switch (e.getKind()) {
         case POP:
+          if (popCount != 0) {
+            SList<Event> beforeNestedPush = beforePushes.get(o);
+            if (beforeNestedPush == null) {
+              beforeNestedPush = committedBeforePushes.get(o);
+            }
+            if (beforeNestedPush != null) {
+              // Skip over the events of a nested production that was
+              // memoized so that memoizing deeply nested productions takes
+              // time linear in the depth of nesting.
+              o = beforeNestedPush;
+              continue cache_loop;
+            }
+          }
           ++popCount;
           break;
         case PUSH:
@@ -61,6 +188,7 @@ public final class RatPack {
                 eNodeType == nodeType
                 || eNodeType == J8NodeType.TemplateInterpolation
                 || eNodeType == J8NodeType.TemplateDirectives);
+            beforePush = o.prev();
             break cache_loop;
           }
           break;
@@ -73,11 +201,34 @@ public final class RatPack {
         case TOKEN:
           break;
       }
+      o = o.prev();
     }
     Preconditions.checkState(popCount == 0);
 
-    RatDropping d = new RatDropping(nodeType, indexBeforeParse);
-    parseCache.put(d, new ParseSuccess(nodeType, indexAfterParse, output));
+    ParseSuccess success;
+    if (beforePush == outputBeforeParse) {
+      // Share the events with the output so that applying the cached
+      // entry is a constant-time splice.
+      success = new ParseSuccess(
+          nodeType, indexAfterParse, output, outputBeforeParse, examined);
+      if (beforePush != null) {
+        beforePushes.put(output, beforePush);
+      }
+    } else {
+      // Something like a borrow or a left-recursion rewrite replaced events
+      // before the push so we cannot identify the start of the slice in the
+      // output.  Copy the events into a standalone list instead.
+      EventBuffer segmentReverse = new EventBuffer();
+      int nEvents = 0;
+      for (o = output; o != beforePush; o = o.prev()) {
+        segmentReverse.add(o.x);
+        ++nEvents;
+      }
+      success = new ParseSuccess(
+          nodeType, indexAfterParse,
+          segmentReverse.appendReversedTo(null, 0, nEvents), null, examined);
+    }
+    put(indexBeforeParse, nodeType, success);
   }
 
   /**
@@ -87,53 +238,318 @@ public final class RatPack {
    * @return absent if nothing in the cache.
    */
   public ParseCacheEntry getCachedParse(NodeType<?, ?> nodeType, int index) {
-    RatDropping d = new RatDropping(nodeType, index);
-    ParseCacheEntry e = parseCache.get(d);
-    if (e == null) { e = ParseUncached.INSTANCE; }
-    return e;
+    long k = key(index, nodeType);
+    int mask = entries.length - 1;
+    for (int slot = slotFor(k, mask); ; slot = (slot + 1) & mask) {
+      ParseCacheEntry e = entries[slot];
+      if (e == null) {
+        ++missCount;
+        return ParseUncached.INSTANCE;
+      }
+      if (keys[slot] == k && nodeTypes[slot] == nodeType) {
+        ++hitCount;
+        return e;
+      }
+      ++collisionCount;
+    }
   }
 
+  /**
+   * Sets the maximum count of entries kept.
+   * When the budget is exceeded, entries for the earliest indices are
+   * evicted until the table is half full so that the cache holds a window
+   * of recent parses.
+   */
+  public void setBudget(int maxEntries) {
+    Preconditions.checkArgument(maxEntries > 0);
+    this.budget = maxEntries;
+    if (size > budget) {
+      makeRoom();
+    }
+  }
 
-  private static final class RatDropping {
-    final NodeType<?, ?> nodeType;
-    final int index;
+  /** The maximum count of entries.  See {@link #setBudget}. */
+  public int getBudget() {
+    return budget;
+  }
 
-    RatDropping(NodeType<?, ?> nodeType, int index) {
-      this.nodeType = nodeType;
-      this.index = index;
+  /**
+   * Called with false to keep entries behind the commit point, as for
+   * {@linkplain Input#edit editable} inputs whose entries are reused after
+   * edits anywhere in the input.
+   */
+  void setEvictsCommitted(boolean newEvictsCommitted) {
+    this.evictsCommitted = newEvictsCommitted;
+  }
+
+  /**
+   * Called when the parser starts parsing a
+   * {@linkplain NodeType#isCommitPoint commit point} production.
+   *
+   * @return a token to pass to {@link #exitCommitPoint}.
+   */
+  public int enterCommitPoint() {
+    return commitPointDepth++;
+  }
+
+  /**
+   * Called when the parser finishes parsing a commit point production.
+   *
+   * @param depth the result of the corresponding {@link #enterCommitPoint}.
+   * @param indexAfterParse the index after the production if it passed or
+   *     -1 if it failed.
+   * @param output the output after the production if it passed.
+   */
+  public void exitCommitPoint(
+      int depth, int indexAfterParse, @Nullable SList<Event> output) {
+    commitPointDepth = depth;
+    if (depth <= MAX_COMMIT_POINT_DEPTH) {
+      if (indexAfterParse >= 0) {
+        commit(indexAfterParse);
+        SList<Event> beforePush = beforePushes.get(output);
+        if (beforePush != null) {
+          committedBeforePushes.put(output, beforePush);
+        }
+      }
+      beforePushes.clear();
     }
+  }
 
-    @Override
-    public int hashCode() {
-      final int prime = 31;
-      int result = 1;
-      result = prime * result + index;
-      result = prime * result + nodeType.hashCode();
-      return result;
+  /**
+   * The count of outputs whose nested productions {@link #cacheSuccess} can
+   * skip.
+   */
+  int getSkippableOutputCount() {
+    return beforePushes.size() + committedBeforePushes.size();
+  }
+
+  /**
+   * Notes that the parser will not need entries for indices before index
+   * so they may be evicted.
+   */
+  public void commit(int index) {
+    if (evictsCommitted && index > commitIndex) {
+      commitIndex = index;
     }
+  }
 
-    @Override
-    public boolean equals(Object obj) {
-      if (this == obj) {
-        return true;
-      }
-      if (obj == null) {
-        return false;
+  /** Entries for indices before this may have been evicted. */
+  public int getCommitIndex() {
+    return commitIndex;
+  }
+
+  private void put(int index, NodeType<?, ?> nodeType, ParseCacheEntry e) {
+    long k = key(index, nodeType);
+    int mask = entries.length - 1;
+    int slot = slotFor(k, mask);
+    for (; entries[slot] != null; slot = (slot + 1) & mask) {
+      if (keys[slot] == k && nodeTypes[slot] == nodeType) {
+        entries[slot] = e;
+        return;
       }
-      if (getClass() != obj.getClass()) {
-        return false;
+      ++collisionCount;
+    }
+    keys[slot] = k;
+    nodeTypes[slot] = nodeType;
+    entries[slot] = e;
+    ++size;
+    // Keep the load factor at or below 1/2 so that probe sequences are short.
+    if (size * 2 > entries.length || size > budget) {
+      makeRoom();
+    }
+    if (size > peakSize) {
+      peakSize = size;
+    }
+  }
+
+  private void makeRoom() {
+    int minIndex = commitIndex;
+    if (size > budget) {
+      minIndex = Math.max(minIndex, indexKeepingLatest(budget / 2));
+    }
+    int capacity = entries.length;
+    if (minIndex > 0) {
+      // Drop entries in place.
+      rehash(capacity, minIndex);
+      beforePushes.clear();
+      committedBeforePushes.clear();
+    }
+    // Grow unless dropping freed at least half the entries.
+    if (size * 4 > capacity) {
+      Preconditions.checkState(capacity * 2 > 0, "RatPack too large");
+      rehash(capacity * 2, 0);
+    }
+  }
+
+  /**
+   * The least index such that there are at most n entries with greater
+   * indices.
+   */
+  private int indexKeepingLatest(int n) {
+    int[] indices = new int[size];
+    int nIndices = 0;
+    for (int i = 0, m = entries.length; i < m; ++i) {
+      if (entries[i] != null) {
+        indices[nIndices++] = (int) (keys[i] >>> 32);
       }
-      RatDropping other = (RatDropping) obj;
-      if (index != other.index) {
-        return false;
+    }
+    Arrays.sort(indices);
+    return n < size ? indices[size - n - 1] + 1 : 0;
+  }
+
+  /**
+   * Reallocates the table with the given capacity, keeping only entries
+   * for indices at or after minIndex.
+   */
+  private void rehash(int capacity, int minIndex) {
+    long[] oldKeys = keys;
+    NodeType<?, ?>[] oldNodeTypes = nodeTypes;
+    ParseCacheEntry[] oldEntries = entries;
+    keys = new long[capacity];
+    nodeTypes = new NodeType<?, ?>[capacity];
+    entries = new ParseCacheEntry[capacity];
+    int mask = capacity - 1;
+    int oldSize = size;
+    size = 0;
+    for (int i = 0, n = oldEntries.length; i < n; ++i) {
+      ParseCacheEntry e = oldEntries[i];
+      if (e != null && (int) (oldKeys[i] >>> 32) >= minIndex) {
+        ++size;
+        long k = oldKeys[i];
+        int slot = slotFor(k, mask);
+        while (entries[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = k;
+        nodeTypes[slot] = oldNodeTypes[i];
+        entries[slot] = e;
       }
-      if (nodeType != other.nodeType) {
-        return false;
+    }
+    evictionCount += oldSize - size;
+  }
+
+  /**
+   * Copies into this cache the entries from the cache of an input whose
+   * content differs from this cache's input's only in a damaged region,
+   * that did not examine the damaged region.
+   * Entries that precede the damaged region are copied as is, and those
+   * that follow it are shifted.
+   *
+   * @param prior the cache for the input before the edit.
+   * @param damageStart the index of the first character that differs.
+   * @param priorDamageEnd the index in prior's input of the first character
+   *     after the damaged region.
+   * @param delta the difference in content length which is also the distance
+   *     that entries after the damaged region shift.
+   * @param minLength the lesser of the two content lengths.
+   */
+  void reuseEntriesOutside(
+      RatPack prior, int damageStart, int priorDamageEnd, int delta,
+      int minLength) {
+    for (int i = 0, n = prior.entries.length; i < n; ++i) {
+      ParseCacheEntry e = prior.entries[i];
+      if (e == null) { continue; }
+      long examined = e.getExamined();
+      if (examined == NOT_EXAMINED) { continue; }
+      int index = (int) (prior.keys[i] >>> 32);
+      NodeType<?, ?> nodeType = prior.nodeTypes[i];
+      int high = examinedHigh(examined);
+      if (high <= damageStart) {
+        // A production that read the length might have found the end of
+        // input where the edited input has more content, or vice versa,
+        // unless it stopped short of both ends.
+        if (!examinedLength(examined) || high < minLength) {
+          put(index, nodeType, e);
+        }
+      } else {
+        int low = examinedLow(examined);
+        // An entry that examined content from the start of input, like one
+        // that looked back at earlier output, may depend on content
+        // inserted there.
+        if (low >= priorDamageEnd && low != 0) {
+          put(index + delta, nodeType, e.shift(delta));
+        }
       }
-      return true;
     }
   }
 
+  /**
+   * Packs the bounds of a region of examined content so that it can be
+   * stored in a memo table entry without allocating.
+   *
+   * @param low inclusive.
+   * @param high exclusive.
+   * @param lengthRead true if the content length was read.
+   */
+  static long examinedRegion(int low, int high, boolean lengthRead) {
+    return (((long) low) << 32) | (high & 0xffffffffL)
+        | (lengthRead ? LENGTH_READ_BIT : 0L);
+  }
+
+  /** The inclusive lower bound of an {@link #examinedRegion}. */
+  static int examinedLow(long region) {
+    return (int) (region >>> 32);
+  }
+
+  /** The exclusive upper bound of an {@link #examinedRegion}. */
+  static int examinedHigh(long region) {
+    return (int) region & Integer.MAX_VALUE;
+  }
+
+  /** True if the content length was read per an {@link #examinedRegion}. */
+  static boolean examinedLength(long region) {
+    return (region & LENGTH_READ_BIT) != 0;
+  }
+
+  /** Packs the input index and production ordinal into one key. */
+  private static long key(int index, NodeType<?, ?> nodeType) {
+    return (((long) index) << 32) | (nodeType.ordinal() & 0xffffffffL);
+  }
+
+  private static int slotFor(long key, int mask) {
+    // Fibonacci hashing spreads the adjacent indices and ordinals that we see
+    // in practice across the table.
+    long h = key * 0x9E3779B97F4A7C15L;
+    return ((int) (h >>> 32)) & mask;
+  }
+
+  /** The count of entries in the cache. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The count of calls to {@link #getCachedParse} that found an entry.
+   */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * The count of calls to {@link #getCachedParse} that found no entry.
+   */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * The count of occupied slots with a different key that were probed past
+   * while looking up or storing entries.
+   */
+  public long getCollisionCount() {
+    return collisionCount;
+  }
+
+  /** The count of entries evicted to stay within budget or after commits. */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /** The greatest {@link #size} after making room for an entry. */
+  public int getPeakSize() {
+    return peakSize;
+  }
+
 
   /**
    * Dumps cache content for debugging.
@@ -141,12 +557,13 @@ public final class RatPack {
   @VisibleForTesting
   public void dump(PrintStream out) {
     out.println("RAT PACK");
-    for (Map.Entry<RatDropping, ParseCacheEntry> e
-        : this.parseCache.entrySet()) {
-      RatDropping k = e.getKey();
-      ParseCacheEntry v = e.getValue();
-      out.println(
-          ". " + k.nodeType + " @ " + k.index + "  =>  " + v.toString());
+    for (int i = 0, n = entries.length; i < n; ++i) {
+      ParseCacheEntry v = entries[i];
+      if (v != null) {
+        out.println(
+            ". " + nodeTypes[i] + " @ " + (int) (keys[i] >>> 32)
+            + "  =>  " + v.toString());
+      }
     }
   }
 
@@ -171,6 +588,16 @@ public final class RatPack {
      * @throws UnsupportedOperationException if not {@link #passed}.
      */
     ParseState apply(ParseState state) throws UnsupportedOperationException;
+    /**
+     * The {@linkplain Input#endExamining region} of content examined by the
+     * parse, or {@link RatPack#NOT_EXAMINED}.
+     */
+    long getExamined();
+    /**
+     * An entry for the same parse of the same content starting delta chars
+     * later.
+     */
+    ParseCacheEntry shift(int delta);
   }
 
   /**
@@ -178,10 +605,12 @@ public final class RatPack {
    */
   static final class ParseFailure implements ParseCacheEntry {
 
-    static final ParseFailure INSTANCE = new ParseFailure();
+    static final ParseFailure INSTANCE = new ParseFailure(NOT_EXAMINED);
 
-    private ParseFailure() {
-      // singleton
+    private final long examined;
+
+    private ParseFailure(long examined) {
+      this.examined = examined;
     }
 
     @Override
@@ -200,6 +629,16 @@ public final class RatPack {
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public long getExamined() {
+      return examined;
+    }
+
+    @Override
+    public ParseFailure shift(int delta) {
+      return new ParseFailure(shiftRegion(examined, delta));
+    }
+
     @Override
     public String toString() {
       return "ParseFailure";
@@ -209,13 +648,22 @@ public final class RatPack {
   static final class ParseSuccess implements ParseCacheEntry {
     final NodeType<?, ?> nodeType;
     final int indexAfterParse;
+    /**
+     * Ends with the events from parsing nodeType that follow
+     * {@link #outputBeforeParse}.
+     */
     final SList<Event> output;
+    final @Nullable SList<Event> outputBeforeParse;
+    final long examined;
 
     ParseSuccess(
-        NodeType<?, ?> nodeType, int indexAfterParse, SList<Event> output) {
+        NodeType<?, ?> nodeType, int indexAfterParse, SList<Event> output,
+        @Nullable SList<Event> outputBeforeParse, long examined) {
       this.nodeType = nodeType;
       this.indexAfterParse = indexAfterParse;
       this.output = output;
+      this.outputBeforeParse = outputBeforeParse;
+      this.examined = examined;
     }
 
     @Override
@@ -231,50 +679,23 @@ public final class RatPack {
     @Override
     public ParseState apply(ParseState state)
     throws UnsupportedOperationException{
-      // Snip off the part of the parse that relates to the last event
-      SList<Event> resultReverse = null;
-      // Consume inputs as we see tokens and content events.
-      {
-        int popCount = 0;
-        apply_loop:
-        for (SList<? extends Event> o = output; o != null; o = o.prev) {
-          Event e = o.x;
-          resultReverse = SList.append(resultReverse, e);
-          switch (e.getKind()) {
-            case POP:
-              ++popCount;
-              break;
-            case PUSH:
-              // popCount should not go negative (module underflow) because of
-              // the argument check above.
-              --popCount;
-              if (popCount == 0) {
-                NodeType<?, ?> ent = e.getNodeType();
-                Preconditions.checkState(
-                    nodeType == ent
-                    || ent == J8NodeType.TemplateInterpolation,
-                    "%s != %s", nodeType, ent);
-                break apply_loop;
-              }
-              break;
-            case CONTENT:
-            case DELAYED_CHECK:
-            case IGNORABLE:
-            case LR_END:
-            case LR_START:
-            case POSITION_MARK:
-            case TOKEN:
-              break;
-          }
-        }
-      }
+      SList<Event> afterParse = SList.appendSlice(
+          state.output, output, outputBeforeParse);
+      // The spliced events run from a push to its pop, so memoizing an
+      // enclosing production can skip them instead of walking back over a
+      // new view of each.
+      state.input.ratPack.beforePushes.put(afterParse, state.output);
+      return state.withOutput(afterParse).withTrustedIndex(indexAfterParse);
+    }
 
-      SList<Event> beforeParse = state.output;
-      SList<Event> afterParse = beforeParse;
-      for (SList<? extends Event> r = resultReverse; r != null; r = r.prev) {
-        afterParse = SList.append(afterParse, r.x);
-      }
-      return state.withOutput(afterParse).withIndex(indexAfterParse);
+    @Override
+    public long getExamined() {
+      return examined;
+    }
+
+    @Override
+    public ParseCacheEntry shift(int delta) {
+      return delta == 0 ? this : new ShiftedParseSuccess(this, delta);
     }
 
     @Override
@@ -292,6 +713,73 @@ public final class RatPack {
     }
   }
 
+  /**
+   * A success whose events are lazily copied from a success for the same
+   * content at a different index.
+   */
+  static final class ShiftedParseSuccess implements ParseCacheEntry {
+    private final ParseSuccess unshifted;
+    private final int delta;
+    private @Nullable ParseSuccess shifted;
+
+    ShiftedParseSuccess(ParseSuccess unshifted, int delta) {
+      this.unshifted = unshifted;
+      this.delta = delta;
+    }
+
+    @Override
+    public boolean wasTried() {
+      return true;
+    }
+
+    @Override
+    public boolean passed() {
+      return true;
+    }
+
+    @Override
+    public ParseState apply(ParseState state) {
+      return getShifted().apply(state);
+    }
+
+    private ParseSuccess getShifted() {
+      if (shifted == null) {
+        EventBuffer segmentReverse = new EventBuffer();
+        for (SList<Event> o = unshifted.output;
+             o != unshifted.outputBeforeParse; o = o.prev()) {
+          segmentReverse.add(o.x.withContentIndexShiftedBy(delta));
+        }
+        shifted = new ParseSuccess(
+            unshifted.nodeType, unshifted.indexAfterParse + delta,
+            segmentReverse.appendReversedTo(null, 0, segmentReverse.size()),
+            null, getExamined());
+      }
+      return shifted;
+    }
+
+    @Override
+    public long getExamined() {
+      return shiftRegion(unshifted.examined, delta);
+    }
+
+    @Override
+    public ParseCacheEntry shift(int moreDelta) {
+      return unshifted.shift(delta + moreDelta);
+    }
+
+    @Override
+    public String toString() {
+      return "ShiftedParseSuccess(" + unshifted + ", " + delta + ")";
+    }
+  }
+
+  private static long shiftRegion(long region, int delta) {
+    if (region == NOT_EXAMINED) { return NOT_EXAMINED; }
+    return examinedRegion(
+        examinedLow(region) + delta, examinedHigh(region) + delta,
+        examinedLength(region));
+  }
+
   static final class ParseUncached implements ParseCacheEntry {
     static final ParseUncached INSTANCE = new ParseUncached();
 
@@ -315,6 +803,16 @@ public final class RatPack {
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public long getExamined() {
+      return NOT_EXAMINED;
+    }
+
+    @Override
+    public ParseCacheEntry shift(int delta) {
+      return this;
+    }
+
     @Override
     public String toString() {
       return "ParseUncached";
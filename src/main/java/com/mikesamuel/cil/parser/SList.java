@@ -1,47 +1,41 @@
 package com.mikesamuel.cil.parser;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
-/** A singly-linked list built in reverse. */
-public final class SList<T> {
+/**
+ * A singly-linked list built in reverse.
+ * <p>
+ * Besides single elements, a list may share a run of elements from another
+ * list via {@link #appendSlice} so that replaying a long run of elements, for
+ * example the events from a memoized parse, takes constant time.
+ */
+public abstract class SList<T> {
   /** The content. */
   public final T x;
-  /** The previous element in the list. */
-  public final @Nullable SList<T> prev;
 
-  private SList(T x, @Nullable SList<T> prev) {
+  private SList(T x) {
     this.x = x;
-    this.prev = prev;
   }
 
+  /** The previous element in the list. */
+  public abstract @Nullable SList<T> prev();
+
   /** Iterates in reverse order. */
   public static <T> Iterable<T> reverseIterable(
       @Nullable final SList<? extends T> c) {
     return new Iterable<T>() {
       @Override
       public Iterator<T> iterator() {
-        return new Iterator<T>() {
-          SList<? extends T> ch = c;
-
-          @Override
-          public boolean hasNext() {
-            return ch != null;
-          }
-
-          @Override
-          public T next() {
-            if (ch == null) { throw new NoSuchElementException(); }
-            T next = ch.x;
-            ch = ch.prev;
-            return next;
-          }
-        };
+        return new ReverseIterator<>(c);
       }
 
       @Override
@@ -55,8 +49,8 @@ public final class SList<T> {
   public static <T> Iterable<T> forwardIterable(
       @Nullable SList<? extends T> c) {
     ImmutableList.Builder<T> b = ImmutableList.builder();
-    for (SList<? extends T> ch = c; ch != null; ch = ch.prev) {
-      b.add(ch.x);
+    for (Iterator<T> it = new ReverseIterator<>(c); it.hasNext();) {
+      b.add(it.next());
     }
     return b.build().reverse();
   }
@@ -65,14 +59,67 @@ public final class SList<T> {
    * The slist with next following prev.
    */
   public static <T> SList<T> append(@Nullable SList<T> prev, T next) {
-    return new SList<>(next, prev);
+    return new Cell<>(next, prev);
+  }
+
+  /**
+   * The slist with all the elements of prev followed by the elements of
+   * sliceEnd that follow sliceStart.
+   * <p>
+   * This takes constant time regardless of the length of the slice.
+   *
+   * @param sliceStart sliceEnd or an slist reachable from sliceEnd via
+   *     {@link #prev()}.  The elements of sliceStart are not part of the slice.
+   */
+  public static <T> SList<T> appendSlice(
+      @Nullable SList<T> prev,
+      @Nullable SList<T> sliceEnd, @Nullable SList<T> sliceStart) {
+    if (sliceEnd == sliceStart) {
+      return prev;
+    }
+    if (sliceStart == prev) {
+      // The slice already follows prev so we can share it wholesale.
+      return sliceEnd;
+    }
+    Preconditions.checkNotNull(sliceEnd);
+    return slice(sliceEnd, sliceStart, prev);
+  }
+
+  /**
+   * The elements of end that follow start, followed by the elements of tail.
+   * <p>
+   * Slices of slices are flattened so that no slice's end is itself a slice.
+   * Otherwise walking back with {@link #prev()} over output spliced from
+   * nested memoized parses, like deeply parenthesized expressions, would
+   * unwrap one view per level of nesting at every step.
+   */
+  private static <T> SList<T> slice(
+      SList<T> end, @Nullable SList<T> start, @Nullable SList<T> tail) {
+    if (!(end instanceof Slice)) {
+      return new Slice<>(end, start, tail);
+    }
+    // The runs of the slices at the end of the chain from end back to start in
+    // order from last to first.
+    List<Slice<T>> runs = new ArrayList<>();
+    SList<T> c = end;
+    do {
+      Slice<T> s = (Slice<T>) c;
+      runs.add(s);
+      c = s.tail;
+    } while (c != start && c instanceof Slice);
+    SList<T> flat = c == start ? tail : new Slice<>(c, start, tail);
+    for (int i = runs.size(); --i >= 0;) {
+      Slice<T> s = runs.get(i);
+      flat = new Slice<>(s.end, s.start, flat);
+    }
+    return flat;
   }
 
   /** An slist of the same length as ls with the elements in reverse order. */
   public static <T> SList<T> reverse(@Nullable SList<T> ls) {
     SList<T> rev = null;
-    for (SList<T> rest = ls; rest != null; rest = rest.prev) {
-      rev = append(rev, rest.x);
+    for (Iterator<T> it = new ReverseIterator<>(ls); it.hasNext();) {
+      rev = append(rev, it.next());
     }
     return rev;
   }
@@ -84,8 +131,8 @@ public final class SList<T> {
   public static <T> SList<T> revAppendAll(
       @Nullable SList<T> prev, @Nullable SList<T> next) {
     SList<T> out = prev;
-    for (SList<T> c = next; c != null; c = c.prev) {
-      out = append(out, c.x);
+    for (Iterator<T> it = new ReverseIterator<>(next); it.hasNext();) {
+      out = append(out, it.next());
     }
     return out;
   }
@@ -94,6 +141,7 @@ public final class SList<T> {
   public int hashCode() {
     final int prime = 31;
     int result = 1;
+    SList<T> prev = prev();
     result = prime * result + ((prev == null) ? 0 : prev.hashCode());
     result = prime * result + ((x == null) ? 0 : x.hashCode());
     return result;
@@ -107,15 +155,16 @@ public final class SList<T> {
     if (obj == null) {
       return false;
     }
-    if (getClass() != obj.getClass()) {
+    if (!(obj instanceof SList)) {
       return false;
     }
     SList<?> other = (SList<?>) obj;
+    SList<T> prev = prev();
     if (prev == null) {
-      if (other.prev != null) {
+      if (other.prev() != null) {
         return false;
       }
-    } else if (!prev.equals(other.prev)) {
+    } else if (!prev.equals(other.prev())) {
       return false;
     }
     if (x == null) {
@@ -127,4 +176,105 @@ public final class SList<T> {
     }
     return true;
   }
+
+
+  private static final class Cell<T> extends SList<T> {
+    private final @Nullable SList<T> prev;
+
+    Cell(T x, @Nullable SList<T> prev) {
+      super(x);
+      this.prev = prev;
+    }
+
+    @Override
+    public @Nullable SList<T> prev() {
+      return prev;
+    }
+  }
+
+  /**
+   * The elements of end that follow start, followed by the elements of tail.
+   * End is never itself a slice.
+   */
+  private static final class Slice<T> extends SList<T> {
+    final SList<T> end;
+    final @Nullable SList<T> start;
+    final @Nullable SList<T> tail;
+
+    Slice(SList<T> end, @Nullable SList<T> start, @Nullable SList<T> tail) {
+      super(end.x);
+      this.end = end;
+      this.start = start;
+      this.tail = tail;
+    }
+
+    @Override
+    public @Nullable SList<T> prev() {
+      SList<T> endPrev = end.prev();
+      if (endPrev == start) {
+        return tail;
+      }
+      return slice(endPrev, start, tail);
+    }
+  }
+
+  /**
+   * Walks from the last element to the first without allocating per element
+   * even when the list contains slices.
+   */
+  private static final class ReverseIterator<T> implements Iterator<T> {
+    private @Nullable SList<? extends T> c;
+    /** Where to resume when c reaches the start of an enclosing slice. */
+    private @Nullable SList<Resume<T>> resumes;
+
+    ReverseIterator(@Nullable SList<? extends T> c) {
+      this.c = c;
+      settle();
+    }
+
+    /**
+     * Steps into slices and out of exhausted slices until c is null or
+     * an element of a cell.
+     */
+    private void settle() {
+      while (true) {
+        if (resumes != null && c == resumes.x.start) {
+          c = resumes.x.tail;
+          resumes = resumes.prev();
+        } else if (c instanceof Slice) {
+          Slice<? extends T> s = (Slice<? extends T>) c;
+          resumes = append(resumes, new Resume<T>(s.start, s.tail));
+          c = s.end;
+        } else {
+          break;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return c != null;
+    }
+
+    @Override
+    public T next() {
+      if (c == null) { throw new NoSuchElementException(); }
+      T next = c.x;
+      c = ((Cell<? extends T>) c).prev;
+      settle();
+      return next;
+    }
+  }
+
+  private static final class Resume<T> {
+    final @Nullable SList<? extends T> start;
+    final @Nullable SList<? extends T> tail;
+
+    Resume(
+        @Nullable SList<? extends T> start,
+        @Nullable SList<? extends T> tail) {
+      this.start = start;
+      this.tail = tail;
+    }
+  }
 }
@@ -13,6 +13,15 @@ public interface SerialErrorReceiver {
   /** Called when an attempt to serialize a particular variant fails. */
   void error(SerialState state, String message);
 
+  /**
+   * Called when something that was expected could not be serialized.
+   * Most such failures are normal backtracking, so receivers that do not
+   * report them can avoid rendering a message.
+   */
+  default void expected(SerialState state, Expectation expectation) {
+    error(state, "Failed to match " + expectation.getDescription());
+  }
+
   /** Silently ignores error reports. */
   public static final SerialErrorReceiver DEV_NULL = new SerialErrorReceiver() {
 
@@ -21,6 +30,11 @@ public interface SerialErrorReceiver {
       // Drop silently.
     }
 
+    @Override
+    public void expected(SerialState state, Expectation expectation) {
+      // Drop silently.
+    }
+
   };
 
 }
@@ -50,6 +50,9 @@ public final class SourcePosition implements Positioned {
    */
   public String getSource() { return starts.source; }
 
+  /** The line structure of the file. */
+  public LineStarts getLineStarts() { return starts; }
+
   /**
    * Index of the character (UTF-16 offset) in file of the start.
    */
@@ -0,0 +1,187 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Bounds the amount of thread stack that parsing an
+ * {@linkplain Input.Builder#stackSegments input} uses so that deeply nested
+ * code parses without overflowing the stack.
+ * <p>
+ * The parser recurses once per production entered, and expressions alone
+ * go through a dozen or so productions per level of parentheses.
+ * Instead of recursing without bound on the calling thread, the parser
+ * {@linkplain #enter enters} each production on the current segment of
+ * stack until that segment is full, and then
+ * {@linkplain #continueOnFreshSegment continues} on a thread with a fresh
+ * stack while the thread that filled the segment waits for its result.
+ * <p>
+ * Only one thread runs at a time so the parser's state needs no
+ * synchronization beyond the hand-offs, and the memo table and
+ * left-recursion bookkeeping behave exactly as in a parse that recurses
+ * on one thread.
+ * The chain of waiting threads is the parser's continuation stack.
+ * <p>
+ * Each instance, and so each parse, starts its own segment threads as it
+ * needs them, so one parse never waits for, or is refused, a segment that
+ * another holds.
+ * A thread that finishes a segment stays idle for a little while so that a
+ * parse that repeatedly crosses the same segment boundary, as it does when
+ * parsing a run of deeply nested statements, reuses it instead of starting
+ * a thread each time.
+ */
+public final class StackSegments {
+  /**
+   * The count of productions entered on the calling thread before the
+   * parse continues on a fresh segment.
+   * Kept small since the calling thread's stack size is not known, though
+   * this fits easily in the 1MB that threads get by default on many
+   * platforms.
+   */
+  public static final int DEFAULT_FIRST_SEGMENT_DEPTH = 128;
+  /** The count of productions entered on each subsequent segment. */
+  public static final int DEFAULT_SEGMENT_DEPTH = 8192;
+  /**
+   * The stack size of threads that run subsequent segments.
+   * Each production entered takes around a kilobyte of stack, so this
+   * leaves ample room for segments of {@link #DEFAULT_SEGMENT_DEPTH}.
+   */
+  static final long SEGMENT_STACK_BYTES = 32L << 20;
+  /** How long a segment thread waits for another segment before exiting. */
+  static final long SEGMENT_THREAD_KEEP_ALIVE_MILLIS = 1000;
+
+  private static final ThreadFactory SEGMENT_THREAD_FACTORY =
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(
+              null, r, "parse-stack-segment-" + count.incrementAndGet(),
+              SEGMENT_STACK_BYTES);
+          t.setDaemon(true);
+          return t;
+        }
+      };
+
+  private final int firstSegmentDepth;
+  private final int segmentDepth;
+  /**
+   * Runs this instance's segments.
+   * There is no queue and no bound on the thread count: a segment is handed
+   * to an idle thread if there is one and otherwise to a new thread.
+   * Created on first use since most inputs are shallow enough that they never
+   * continue on a fresh segment.
+   */
+  private @Nullable ThreadPoolExecutor segmentExecutor;
+  /** The count of productions entered on the current segment. */
+  private int depth;
+  /** The count of segments in use including the calling thread's. */
+  private int segmentsInUse = 1;
+  private int peakSegmentsInUse = 1;
+  private long continuationCount;
+
+  /** Segments of the default depths. */
+  public StackSegments() {
+    this(DEFAULT_FIRST_SEGMENT_DEPTH, DEFAULT_SEGMENT_DEPTH);
+  }
+
+  /**
+   * @param firstSegmentDepth the count of productions entered on the calling
+   *     thread.
+   * @param segmentDepth the count of productions entered on subsequent
+   *     segments.
+   */
+  public StackSegments(int firstSegmentDepth, int segmentDepth) {
+    Preconditions.checkArgument(firstSegmentDepth > 0 && segmentDepth > 0);
+    this.firstSegmentDepth = firstSegmentDepth;
+    this.segmentDepth = segmentDepth;
+  }
+
+  /**
+   * Called by the parser before entering a production.
+   *
+   * @return false if the current segment is full in which case the parser
+   *     should {@link #continueOnFreshSegment} instead of recursing.
+   *     If true, the parser must call {@link #exit} when it leaves the
+   *     production.
+   */
+  public boolean enter() {
+    int limit = segmentsInUse == 1 ? firstSegmentDepth : segmentDepth;
+    if (depth == limit) {
+      return false;
+    }
+    ++depth;
+    return true;
+  }
+
+  /** Called by the parser when it leaves a production it entered. */
+  public void exit() {
+    Preconditions.checkState(depth != 0);
+    --depth;
+  }
+
+  /**
+   * Computes the result of entering a production on a fresh segment while
+   * the current thread waits.
+   *
+   * @param continuation called on a thread with a fresh stack.
+   */
+  public <T> T continueOnFreshSegment(Callable<T> continuation) {
+    if (segmentExecutor == null) {
+      segmentExecutor = new ThreadPoolExecutor(
+          0, Integer.MAX_VALUE,
+          SEGMENT_THREAD_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS,
+          new SynchronousQueue<Runnable>(), SEGMENT_THREAD_FACTORY);
+    }
+    int depthOnOuterSegment = depth;
+    depth = 0;
+    ++segmentsInUse;
+    ++continuationCount;
+    if (segmentsInUse > peakSegmentsInUse) {
+      peakSegmentsInUse = segmentsInUse;
+    }
+    try {
+      // The hand-off to and from the segment thread orders its reads and
+      // writes of parser state after this thread's and before the caller's
+      // subsequent ones.
+      Future<T> result = segmentExecutor.submit(continuation);
+      return Uninterruptibles.getUninterruptibly(result);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      --segmentsInUse;
+      depth = depthOnOuterSegment;
+    }
+  }
+
+  /**
+   * The most segments in use at once, including the calling thread's,
+   * which is one for a parse that never continued on a fresh segment.
+   */
+  public int getPeakSegmentsInUse() {
+    return peakSegmentsInUse;
+  }
+
+  /** The count of times the parse continued on a fresh segment. */
+  public long getContinuationCount() {
+    return continuationCount;
+  }
+}
@@ -0,0 +1,165 @@
+package com.mikesamuel.cil.parser;
+
+/**
+ * Interns the text of tokens so that each distinct identifier or literal is
+ * represented by one string no matter how many times it occurs.
+ * <p>
+ * Looking up a region of content does not allocate unless its text is new to
+ * the table, so parsing code that uses the same names over and over
+ * allocates a string per name instead of one per occurrence, and the leaves
+ * of trees built from the parser's output share those strings.
+ * <p>
+ * Each input gets its own interner by default, but one may be
+ * {@linkplain Input.Builder#interner shared} by a batch of inputs so that
+ * the trees for different files share strings too.
+ * Shared interners grow with the count of distinct texts in the batch.
+ * <p>
+ * Interners made with the public constructor lock so that inputs parsed on
+ * different threads may share them.
+ * An input's own interner does not since it is only used by one parse at a
+ * time, like the input's memo table.
+ */
+public final class TextInterner {
+  /**
+   * Texts longer than this are not interned since long literals and comments
+   * rarely repeat and holding onto them would only retain memory.
+   */
+  public static final int MAX_INTERNED_LENGTH = 64;
+
+  /** Open-addressed with linear probing.  Length is a power of two. */
+  private String[] table = new String[64];
+  private int size;
+  /** True if lookups need to lock since other threads may share this. */
+  private final boolean locks;
+
+  /** An interner that may be shared by inputs parsed on any thread. */
+  public TextInterner() {
+    this(true);
+  }
+
+  private TextInterner(boolean locks) {
+    this.locks = locks;
+  }
+
+  /** An interner for one input that does not lock. */
+  static TextInterner forOneInput() {
+    return new TextInterner(false);
+  }
+
+  /**
+   * The text of the given region.
+   *
+   * @param start inclusive index into chars.
+   * @param end exclusive index into chars.
+   */
+  public String intern(CharSequence chars, int start, int end) {
+    int length = end - start;
+    if (length > MAX_INTERNED_LENGTH) {
+      return chars.subSequence(start, end).toString();
+    }
+    // The same hash as String.hashCode so that the table can be probed for
+    // strings without rehashing them.
+    int hash = 0;
+    for (int i = start; i < end; ++i) {
+      hash = 31 * hash + chars.charAt(i);
+    }
+    if (!locks) {
+      return lookUp(chars, start, end, hash);
+    }
+    synchronized (this) {
+      return lookUp(chars, start, end, hash);
+    }
+  }
+
+  private String lookUp(CharSequence chars, int start, int end, int hash) {
+    int length = end - start;
+    String[] t = table;
+    int mask = t.length - 1;
+    for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+      String s = t[i];
+      if (s == null) {
+        String text = chars.subSequence(start, end).toString();
+        add(i, text);
+        return text;
+      }
+      if (s.length() == length && s.hashCode() == hash
+          && regionMatches(s, chars, start)) {
+        return s;
+      }
+    }
+  }
+
+  /** A string equal to text that is shared with other interned texts. */
+  public String intern(String text) {
+    int length = text.length();
+    if (length > MAX_INTERNED_LENGTH) {
+      return text;
+    }
+    if (!locks) {
+      return lookUp(text);
+    }
+    synchronized (this) {
+      return lookUp(text);
+    }
+  }
+
+  private String lookUp(String text) {
+    int length = text.length();
+    int hash = text.hashCode();
+    String[] t = table;
+    int mask = t.length - 1;
+    for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+      String s = t[i];
+      if (s == null) {
+        add(i, text);
+        return text;
+      }
+      if (s.length() == length && s.hashCode() == hash && s.equals(text)) {
+        return s;
+      }
+    }
+  }
+
+  /** The count of distinct texts interned. */
+  public synchronized int size() {
+    return size;
+  }
+
+  private void add(int i, String text) {
+    table[i] = text;
+    if (++size * 2 > table.length) {
+      rehash();
+    }
+  }
+
+  private void rehash() {
+    String[] old = table;
+    String[] t = new String[old.length * 2];
+    int mask = t.length - 1;
+    for (String s : old) {
+      if (s != null) {
+        int i = spread(s.hashCode()) & mask;
+        while (t[i] != null) {
+          i = (i + 1) & mask;
+        }
+        t[i] = s;
+      }
+    }
+    table = t;
+  }
+
+  private static int spread(int hash) {
+    // Fold the high bits into the low bits that index the table.
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean regionMatches(
+      String s, CharSequence chars, int start) {
+    for (int i = 0, n = s.length(); i < n; ++i) {
+      if (s.charAt(i) != chars.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,15 @@
+package com.mikesamuel.cil.parser;
+
+/**
+ * Recognizes a class of tokens without allocating.
+ * <p>
+ * Since the parser is scannerless, this is only used to speed up matching of
+ * lexical productions at the parse cursor.
+ */
+public interface TokenScanner {
+  /**
+   * The end of the token that starts at start in content or -1 if no token
+   * starts there.
+   */
+  int scan(CharSequence content, int start);
+}
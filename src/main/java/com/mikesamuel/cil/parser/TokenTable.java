@@ -0,0 +1,207 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The maximal tokens in an input, computed once by a pre-lexer, stored as
+ * parallel arrays indexed by token number.
+ * <p>
+ * The parser is scannerless, so it may still look for tokens that do not
+ * start on a boundary in this table, for example the {@code >} in
+ * {@code List<List<T>>}.  Such lookups fall back to examining characters, so
+ * the table only needs to be right about the tokens it does contain.
+ */
+public final class TokenTable {
+  /** Returned by {@link #tokenAt} when no token starts at an index. */
+  public static final int NO_TOKEN = -1;
+  /** The text id of tokens whose text is not in the pre-lexer vocabulary. */
+  public static final int NO_TEXT_ID = -1;
+
+  private final int count;
+  /**
+   * Token starts.  The extra last element is the index after any ignorable
+   * tokens following the last token.
+   */
+  private final int[] starts;
+  private final int[] ends;
+  /** Indices into scanners. */
+  private final byte[] kinds;
+  private final int[] textIds;
+  /** The scanners that found tokens.  Kind zero means no scanner. */
+  private final TokenScanner[] scanners;
+  /** Maps content indices to token numbers. */
+  private final int[] tokenStartingAt;
+
+  private TokenTable(
+      int count, int[] starts, int[] ends, byte[] kinds, int[] textIds,
+      TokenScanner[] scanners, int contentLength) {
+    this.count = count;
+    this.starts = starts;
+    this.ends = ends;
+    this.kinds = kinds;
+    this.textIds = textIds;
+    this.scanners = scanners;
+    this.tokenStartingAt = new int[contentLength + 1];
+    Arrays.fill(tokenStartingAt, NO_TOKEN);
+    for (int i = 0; i < count; ++i) {
+      tokenStartingAt[starts[i]] = i;
+    }
+  }
+
+  /** The count of tokens. */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * The number of the token that starts at the given index into the content
+   * or {@link #NO_TOKEN}.
+   */
+  public int tokenAt(int index) {
+    return tokenStartingAt[index];
+  }
+
+  /** The index into the content of the start of the given token. */
+  public int start(int token) {
+    Preconditions.checkElementIndex(token, count);
+    return starts[token];
+  }
+
+  /** The index into the content past the end of the given token. */
+  public int end(int token) {
+    Preconditions.checkElementIndex(token, count);
+    return ends[token];
+  }
+
+  /**
+   * The index after any ignorable tokens that follow the given token.
+   * This is the start of the next token, or the end of the significant
+   * content if token is the last.
+   */
+  public int indexAfterIgnorablesFollowing(int token) {
+    Preconditions.checkElementIndex(token, count);
+    return starts[token + 1];
+  }
+
+  /**
+   * The pre-lexer's id for the given token's text or {@link #NO_TEXT_ID}.
+   */
+  public int textId(int token) {
+    Preconditions.checkElementIndex(token, count);
+    return textIds[token];
+  }
+
+  /**
+   * The scanner that found the given token, if any.  Since scanners are
+   * deterministic, that scanner would find the same token at
+   * {@link #start}.
+   */
+  public @Nullable TokenScanner scannedBy(int token) {
+    Preconditions.checkElementIndex(token, count);
+    return scanners[kinds[token]];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < count; ++i) {
+      if (i != 0) { sb.append(", "); }
+      sb.append(starts[i]).append('-').append(ends[i]);
+    }
+    return sb.append(']').toString();
+  }
+
+  /**
+   * Breaks an input into tokens for a particular language.
+   * The parser itself is language-agnostic, so the lexer is supplied via
+   * {@link Input.Builder#preLex}.
+   */
+  public interface Lexer {
+    /** A table of the maximal tokens in the input's content. */
+    TokenTable lex(Input input);
+  }
+
+  /** A builder for a table over content of the given length. */
+  @SuppressWarnings("synthetic-access")
+  public static Builder builder(int contentLength) {
+    return new Builder(contentLength);
+  }
+
+  /**
+   * Collects tokens in left-to-right order.
+   */
+  public static final class Builder {
+    private final int contentLength;
+    private int count;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private byte[] kinds = new byte[16];
+    private int[] textIds = new int[16];
+    private TokenScanner[] scanners = new TokenScanner[] { null };
+
+    private Builder(int contentLength) {
+      this.contentLength = contentLength;
+    }
+
+    /**
+     * Adds a token.
+     *
+     * @param start index of the start of the token in the content.
+     *     No earlier than the end of the last token added.
+     * @param end index past the end of the token in the content.
+     * @param scannedBy the scanner that found the token, if any.
+     * @param textId an id for the token's text or
+     *     {@link TokenTable#NO_TEXT_ID}.
+     */
+    public Builder add(
+        int start, int end, @Nullable TokenScanner scannedBy, int textId) {
+      Preconditions.checkArgument(
+          (count == 0 || ends[count - 1] <= start)
+          && start < end && end <= contentLength);
+      if (count + 1 == starts.length) {
+        int newLength = starts.length * 2;
+        starts = Arrays.copyOf(starts, newLength);
+        ends = Arrays.copyOf(ends, newLength);
+        kinds = Arrays.copyOf(kinds, newLength);
+        textIds = Arrays.copyOf(textIds, newLength);
+      }
+      starts[count] = start;
+      ends[count] = end;
+      kinds[count] = kindOf(scannedBy);
+      textIds[count] = textId;
+      ++count;
+      return this;
+    }
+
+    private byte kindOf(@Nullable TokenScanner scanner) {
+      int n = scanners.length;
+      for (int i = 0; i < n; ++i) {
+        if (scanners[i] == scanner) {
+          return (byte) i;
+        }
+      }
+      Preconditions.checkState(n <= Byte.MAX_VALUE);
+      scanners = Arrays.copyOf(scanners, n + 1);
+      scanners[n] = scanner;
+      return (byte) n;
+    }
+
+    /**
+     * @param endOfTokens the index after any ignorable tokens following the
+     *     last token.
+     */
+    @SuppressWarnings("synthetic-access")
+    public TokenTable build(int endOfTokens) {
+      Preconditions.checkArgument(
+          (count == 0 || ends[count - 1] <= endOfTokens)
+          && endOfTokens <= contentLength);
+      starts[count] = endOfTokens;
+      return new TokenTable(
+          count, starts, ends, kinds, textIds, scanners, contentLength);
+    }
+  }
+}
@@ -1,5 +1,8 @@
 package com.mikesamuel.cil.parser;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -13,6 +16,7 @@ import com.mikesamuel.cil.event.DelayedCheckPredicate;
 import com.mikesamuel.cil.event.Event;
 import com.mikesamuel.cil.format.FormattedSource;
 import com.mikesamuel.cil.format.Formatter;
+import com.mikesamuel.cil.format.PositionMapping;
 import com.mikesamuel.cil.format.java.Java8Formatters;
 
 /**
@@ -44,7 +48,10 @@ public final class Unparse {
   throws UnparseVerificationException {
     List<Object> delayedAndIndices = Lists.newArrayList();
     StringBuilder sb = new StringBuilder();
-    List<Event> verifiedTokens = Lists.newArrayList();
+    List<Event> verifiedTokens = unverified instanceof Collection<?>
+        ? Lists.<Event>newArrayListWithCapacity(
+            ((Collection<?>) unverified).size())
+        : Lists.<Event>newArrayList();
     for (Event e : unverified) {
       switch (e.getKind()) {
         case TOKEN: case CONTENT:
@@ -88,36 +95,94 @@ public final class Unparse {
     }
 
     Input inp = Input.builder().source("UnparseVerifier").code(sb).build();
-    final ParseState ps = new ParseState(inp);
-
+    Checker checker = new Checker(new ParseState(inp));
     for (int i = 0, n = delayedAndIndices.size(); i < n; i += 2) {
-      DelayedCheckPredicate p = ((Event) delayedAndIndices.get(i))
-          .getDelayedCheck();
-      final int index = (Integer) delayedAndIndices.get(i + 1);
-      Suffix s = new Suffix() {
+      checker.check(
+          ((Event) delayedAndIndices.get(i)).getDelayedCheck(),
+          (Integer) delayedAndIndices.get(i + 1));
+    }
+
+    @SuppressWarnings("synthetic-access")
+    Verified v = new Verified(
+        ImmutableList.copyOf(verifiedTokens),
+        checker.nRun, checker.nSkipped, checker.nCached);
+    return v;
+  }
 
-        @Override
-        public ParseState asParseState() {
+  /**
+   * Runs delayed checks against one input so that all checks share its
+   * memo table and one left-recursion stack.
+   * <p>
+   * Checks arrive in order of index, and a check that passed is not rerun
+   * at the same index.
+   * A check is skipped when the predicate knows, without reparsing, that the
+   * suffix passes, as when a negative lookahead's body cannot start with
+   * the next token.
+   */
+  private static final class Checker {
+    final ParseState start;
+    final LeftRecursion lr = new LeftRecursion();
+    int nRun;
+    int nSkipped;
+    int nCached;
+    /** The suffix of the most recent check. */
+    private @Nullable CheckedSuffix suffix;
+    /** The predicates that passed at suffix. */
+    private final List<DelayedCheckPredicate> passed = Lists.newArrayList();
+
+    Checker(ParseState start) {
+      this.start = start;
+    }
+
+    void check(DelayedCheckPredicate p, int index)
+    throws UnparseVerificationException {
+      if (suffix == null || suffix.index != index) {
+        suffix = new CheckedSuffix(index);
+        passed.clear();
+      } else if (passed.contains(p)) {
+        ++nCached;
+        return;
+      }
+      if (p.isTriviallySatisfiedBy(suffix)) {
+        ++nSkipped;
+      } else {
+        ++nRun;
+        Optional<String> problem = p.problem(suffix);
+        if (problem.isPresent()) {
+          throw new UnparseVerificationException(
+              "Delayed check " + p + " failed at " + index
+              + " because " + problem.get() + " : " + suffix.asParseState(),
+              null);
+        }
+      }
+      passed.add(p);
+    }
+
+    private final class CheckedSuffix implements Suffix {
+      final int index;
+      private @Nullable ParseState state;
+
+      CheckedSuffix(int index) {
+        this.index = index;
+      }
+
+      @Override
+      public ParseState asParseState() {
+        if (state == null) {
           // It's that index occurs before an ignorable token produced by a
           // Trees.Decorator so advance index over any ignorable tokens.
           int indexAfterIgnorables = Ignorables.scanPastIgnorablesFrom(
-              ps.input.content(), index, null);
-          return ps.withIndex(indexAfterIgnorables);
+              start.input.content(), index, null);
+          state = start.withTrustedIndex(indexAfterIgnorables);
         }
+        return state;
+      }
 
-      };
-      Optional<String> problem = p.problem(s);
-      if (problem.isPresent()) {
-        throw new UnparseVerificationException(
-            "Delayed check " + p + " failed at " + index
-            + " because " + problem.get() + " : " + s.asParseState(),
-            null);
+      @Override
+      public LeftRecursion getLeftRecursion() {
+        return lr;
       }
     }
-
-    @SuppressWarnings("synthetic-access")
-    Verified v = new Verified(ImmutableList.copyOf(verifiedTokens));
-    return v;
   }
 
   /**
@@ -134,6 +199,46 @@ public final class Unparse {
    */
   public static FormattedSource format(
       Verified v, Formatter<SList<NodeVariant<?, ?>>> f) {
+    feedTokens(v, f);
+    return f.format();
+  }
+
+  /**
+   * Formats a verified output writing the formatted source code to out as it
+   * is laid out instead of buffering it all.
+   *
+   * @param positions if not null, receives the input source position ->
+   *     output source position mapping.
+   */
+  public static void formatTo(
+      Verified v, Appendable out,
+      @Nullable PositionMapping.Receiver positions)
+  throws IOException {
+    formatTo(v, Java8Formatters.createFormatter(), out, positions);
+  }
+
+  /**
+   * Formats a verified output writing the formatted source code to out as it
+   * is laid out instead of buffering it all.
+   *
+   * @param positions if not null, receives the input source position ->
+   *     output source position mapping.
+   */
+  public static void formatTo(
+      Verified v, Formatter<SList<NodeVariant<?, ?>>> f, Appendable out,
+      @Nullable PositionMapping.Receiver positions)
+  throws IOException {
+    try {
+      f.streamTo(out, positions);
+      feedTokens(v, f);
+      f.finish();
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  private static void feedTokens(
+      Verified v, Formatter<SList<NodeVariant<?, ?>>> f) {
     SList<NodeVariant<?, ?>> contextStack = null;
     for (Event e : v.events) {
       switch (e.getKind()) {
@@ -149,7 +254,7 @@ public final class Unparse {
           f.context(contextStack);
           break;
         case POP:
-          contextStack = Preconditions.checkNotNull(contextStack).prev;
+          contextStack = Preconditions.checkNotNull(contextStack).prev();
           f.context(contextStack);
           break;
         case DELAYED_CHECK:
@@ -158,8 +263,6 @@ public final class Unparse {
           throw new AssertionError(e.toString());
       }
     }
-
-    return f.format();
   }
 
 
@@ -169,9 +272,26 @@ public final class Unparse {
   public static final class Verified {
     /** Position, token, and content events. */
     public final ImmutableList<Event> events;
+    /** The count of delayed checks that reparsed part of the output. */
+    public final int nChecksRun;
+    /**
+     * The count of delayed checks that passed without reparsing because
+     * the predicate knew they would pass.
+     */
+    public final int nChecksSkipped;
+    /**
+     * The count of delayed checks that passed because an equivalent check
+     * already passed at the same index.
+     */
+    public final int nChecksCached;
 
-    private Verified(ImmutableList<Event> events) {
+    private Verified(
+        ImmutableList<Event> events,
+        int nChecksRun, int nChecksSkipped, int nChecksCached) {
       this.events = events;
+      this.nChecksRun = nChecksRun;
+      this.nChecksSkipped = nChecksSkipped;
+      this.nChecksCached = nChecksCached;
     }
   }
 
@@ -182,6 +302,15 @@ public final class Unparse {
      * the input cursor.
      */
     ParseState asParseState();
+
+    /**
+     * Left-recursion bookkeeping for parsing the suffix.
+     * Checks of the same output may share one since parsing leaves it as it
+     * was found.
+     */
+    default LeftRecursion getLeftRecursion() {
+      return new LeftRecursion();
+    }
   }
 
 
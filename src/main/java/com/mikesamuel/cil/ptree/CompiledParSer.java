@@ -0,0 +1,58 @@
+package com.mikesamuel.cil.ptree;
+
+import com.google.common.base.Optional;
+import com.mikesamuel.cil.parser.ForceFitState;
+import com.mikesamuel.cil.parser.MatchErrorReceiver;
+import com.mikesamuel.cil.parser.MatchState;
+import com.mikesamuel.cil.parser.ParSer;
+import com.mikesamuel.cil.parser.ParSerable;
+import com.mikesamuel.cil.parser.SerialErrorReceiver;
+import com.mikesamuel.cil.parser.SerialState;
+
+/**
+ * A parser for a variant body that the parser generator compiled ahead of
+ * time into straight-line code.
+ * <p>
+ * Only {@link #parse} is compiled.  Unparsing, matching and force fitting
+ * delegate to the ptree that the compiled code was generated from.
+ */
+public abstract class CompiledParSer extends ParSer {
+  private final ParSerable interpreted;
+
+  /**
+   * @param interpreted the ptree which parses the same language and produces
+   *     the same events as the compiled parse method.
+   */
+  protected CompiledParSer(ParSerable interpreted) {
+    this.interpreted = interpreted;
+  }
+
+  /** The ptree that the compiled code was generated from. */
+  public ParSer getInterpreted() {
+    return interpreted.getParSer();
+  }
+
+  @Override
+  public Optional<SerialState> unparse(
+      SerialState state, SerialErrorReceiver err) {
+    return getInterpreted().unparse(state, err);
+  }
+
+  @Override
+  public Optional<MatchState> match(
+      MatchState state, MatchErrorReceiver err) {
+    return getInterpreted().match(state, err);
+  }
+
+  @Override
+  public ForceFitState forceFit(ForceFitState state) {
+    return getInterpreted().forceFit(state);
+  }
+
+  @Override
+  public void appendShallowStructure(StringBuilder sb) {
+    sb.append("(compiled ");
+    getInterpreted().appendShallowStructure(sb);
+    sb.append(")");
+  }
+}
@@ -4,13 +4,13 @@ import java.util.List;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.mikesamuel.cil.ast.NodeType;
 import com.mikesamuel.cil.parser.ForceFitState;
 import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.MatchErrorReceiver;
 import com.mikesamuel.cil.parser.MatchState;
+import com.mikesamuel.cil.parser.NodeTypeSet;
 import com.mikesamuel.cil.parser.ParSer;
 import com.mikesamuel.cil.parser.ParSerable;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
@@ -101,16 +101,16 @@ class Concatenation extends PTParSer {
   public ParseResult parse(
       ParseState start, LeftRecursion lr, ParseErrorReceiver err) {
     ParseState state = start;
-    ImmutableSet.Builder<NodeType<?, ?>> lrExclusionsTriggered =
-        ImmutableSet.builder();
+    NodeTypeSet lrExclusionsTriggered = NodeTypeSet.EMPTY;
     int writeBack = ParseResult.NO_WRITE_BACK_RESTRICTION;
     for (ParSerable p : ps) {
       ParSer parser = p.getParSer();
       ParseResult result = parser.parse(state, lr, err);
-      lrExclusionsTriggered.addAll(result.lrExclusionsTriggered);
+      lrExclusionsTriggered = lrExclusionsTriggered.union(
+          result.lrExclusionsTriggered);
       switch (result.synopsis) {
         case FAILURE:
-          return ParseResult.failure(lrExclusionsTriggered.build());
+          return ParseResult.failure(lrExclusionsTriggered);
         case SUCCESS:
           state = result.next();
           writeBack = Math.min(writeBack, result.writeBack);
@@ -118,8 +118,7 @@ class Concatenation extends PTParSer {
       }
       throw new AssertionError(result.synopsis);
     }
-    return ParseResult.success(
-        state, writeBack, lrExclusionsTriggered.build());
+    return ParseResult.success(state, writeBack, lrExclusionsTriggered);
   }
 
   @Override
@@ -6,33 +6,45 @@ import java.util.regex.Pattern;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
-import com.google.common.collect.ImmutableSet;
+import com.mikesamuel.cil.ast.j8.PreLexer;
 import com.mikesamuel.cil.ast.j8.Tokens;
 import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.Expectation;
 import com.mikesamuel.cil.parser.ForceFitState;
 import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.MatchErrorReceiver;
 import com.mikesamuel.cil.parser.MatchState;
+import com.mikesamuel.cil.parser.NodeTypeSet;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
 import com.mikesamuel.cil.parser.ParseResult;
 import com.mikesamuel.cil.parser.ParseState;
 import com.mikesamuel.cil.parser.SerialErrorReceiver;
 import com.mikesamuel.cil.parser.SerialState;
 import com.mikesamuel.cil.parser.TokenMergeGuard;
+import com.mikesamuel.cil.parser.TokenTable;
 
-final class Literal extends PTParSer {
+final class Literal extends PTParSer implements Expectation {
   final String text;
   final Optional<TokenMergeGuard> tokenMergeGuard;
+  /** Identifies text in {@linkplain TokenTable pre-lexed} inputs. */
+  final int textId;
   final int ln, co, ix;
+  /** Shared by all unparses since it has no index. */
+  private final Event unparsedToken;
+  /** Shared by all matches since it has no index. */
+  private final Event expectedContent;
 
   private Literal(
       String text, Optional<TokenMergeGuard> tokenMergeGuard,
       int ln, int co, int ix) {
     this.text = text;
     this.tokenMergeGuard = tokenMergeGuard;
+    this.textId = PreLexer.textId(text);
     this.ln = ln;
     this.co = co;
     this.ix = ix;
+    this.unparsedToken = Event.token(text, -1);
+    this.expectedContent = Event.content(text, -1);
   }
 
   static PTParSer of(
@@ -62,28 +74,51 @@ final class Literal extends PTParSer {
   @Override
   public ParseResult parse(
       ParseState state, LeftRecursion lr, ParseErrorReceiver err) {
-    if (state.startsWith(text, this.tokenMergeGuard)) {
+    if (matchesAtStart(state)) {
       return ParseResult.success(
           (state
               .advance(text.length())
               .appendOutput(Event.token(text, state.index))),
           ParseResult.NO_WRITE_BACK_RESTRICTION,
-          ImmutableSet.of());
+          NodeTypeSet.EMPTY);
     }
-    err.error(state, "Expected `" + text + "`");
+    err.expected(state, this);
     return ParseResult.failure();
   }
 
+  @Override
+  public String getDescription() {
+    return "`" + text + "`";
+  }
+
+  private boolean matchesAtStart(ParseState state) {
+    TokenTable tokens = state.input.getTokenTable();
+    if (tokens != null && textId != TokenTable.NO_TEXT_ID) {
+      int token = tokens.tokenAt(state.index);
+      if (token != TokenTable.NO_TOKEN) {
+        if (tokens.textId(token) == textId) {
+          return true;
+        }
+        // A guarded literal only matches a whole token, but without a guard
+        // we might match a prefix of a longer punctuation token.
+        if (tokenMergeGuard.isPresent()) {
+          return false;
+        }
+      }
+    }
+    return state.startsWith(text, this.tokenMergeGuard);
+  }
+
   @Override
   public Optional<SerialState> unparse(
       SerialState state, SerialErrorReceiver err) {
-    return Optional.of(state.append(Event.token(text, -1)));
+    return Optional.of(state.append(unparsedToken));
   }
 
   @Override
   public Optional<MatchState> match(
       MatchState state, MatchErrorReceiver err) {
-    return state.expectEvent(Event.content(this.text, -1), err);
+    return state.expectEvent(expectedContent, err);
   }
 
   @Override
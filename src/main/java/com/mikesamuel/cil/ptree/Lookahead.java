@@ -1,13 +1,23 @@
 package com.mikesamuel.cil.ptree;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.mikesamuel.cil.ast.NodeType;
+import com.mikesamuel.cil.ast.NodeVariant;
 import com.mikesamuel.cil.event.DelayedCheckPredicate;
 import com.mikesamuel.cil.event.Event;
 import com.mikesamuel.cil.parser.ForceFitState;
 import com.mikesamuel.cil.parser.LeftRecursion;
+import com.mikesamuel.cil.parser.Lookahead1;
 import com.mikesamuel.cil.parser.MatchErrorReceiver;
 import com.mikesamuel.cil.parser.MatchState;
+import com.mikesamuel.cil.parser.NegativeLookaheadMatch;
 import com.mikesamuel.cil.parser.ParSer;
 import com.mikesamuel.cil.parser.ParSerable;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
@@ -15,6 +25,7 @@ import com.mikesamuel.cil.parser.ParseResult;
 import com.mikesamuel.cil.parser.ParseState;
 import com.mikesamuel.cil.parser.SerialErrorReceiver;
 import com.mikesamuel.cil.parser.SerialState;
+import com.mikesamuel.cil.parser.TokenScanner;
 import com.mikesamuel.cil.parser.Unparse;
 
 final class Lookahead extends PTParSer {
@@ -61,6 +72,14 @@ final class Lookahead extends PTParSer {
 
   final Valence valence;
   final ParSerable body;
+  /**
+   * What body can start with, which lets unparse verification skip checks
+   * that cannot fail.
+   * Computed lazily since only verification uses it, and published through
+   * a volatile field since the grammar is shared between parser threads.
+   * Threads that race to compute it compute equivalent predictions.
+   */
+  private volatile @Nullable BodyPrediction bodyPrediction;
 
   private Lookahead(Valence valence, ParSerable body) {
     this.valence = valence;
@@ -97,7 +116,8 @@ final class Lookahead extends PTParSer {
                 state, ParseResult.NO_WRITE_BACK_RESTRICTION,
                 result.lrExclusionsTriggered);
           case NEGATIVE:
-            err.error(state, "Successfully matched to " + result.next().index);
+            err.expected(
+                state, new NegativeLookaheadMatch(result.next().index));
             return ParseResult.failure(result.lrExclusionsTriggered);
         }
     }
@@ -121,6 +141,167 @@ final class Lookahead extends PTParSer {
     return state;
   }
 
+  /**
+   * True if body definitely cannot match at the start of the suffix.
+   * This only looks at the first character of the suffix and, if body starts
+   * with a token like an identifier, the character after that token.
+   */
+  private boolean bodyCannotMatchAt(ParseState state) {
+    BodyPrediction p = bodyPrediction;
+    if (p == null) {
+      bodyPrediction = p = new BodyPrediction(body);
+    }
+    if (p.bodyLookahead1 != null && !p.bodyLookahead1.canFollow(state)) {
+      return true;
+    }
+    if (p.leadingToken != null && p.afterLeadingToken != null) {
+      int end = p.leadingToken.scan(state.input.content(), state.index);
+      if (end < 0) {
+        return true;
+      }
+      ParseState afterToken = state.withTrustedIndex(
+          state.input.indexAfterIgnorables(end));
+      return !p.afterLeadingToken.canFollow(afterToken);
+    }
+    return false;
+  }
+
+  /** What a lookahead's body can start with. */
+  private static final class BodyPrediction {
+    /**
+     * The characters that can start a match of body, or null if body might
+     * match the empty string or its first character is not known
+     * statically.
+     */
+    final @Nullable Lookahead1 bodyLookahead1;
+    /**
+     * Recognizes the single token, like an identifier, that body starts with
+     * if body is such a token followed by something that starts with one of
+     * {@link #afterLeadingToken}.
+     */
+    final @Nullable TokenScanner leadingToken;
+    final @Nullable Lookahead1 afterLeadingToken;
+
+    BodyPrediction(ParSerable body) {
+      this.bodyLookahead1 = firstChars(body, new HashSet<NodeType<?, ?>>());
+      TokenScanner scanner = null;
+      Lookahead1 after = null;
+      ImmutableList<ParSerable> els = sequenceOf(body);
+      if (els != null && els.size() > 1) {
+        scanner = scannerOf(els.get(0));
+        if (scanner != null) {
+          after = firstChars(els.get(1), new HashSet<NodeType<?, ?>>());
+        }
+      }
+      this.leadingToken = scanner;
+      this.afterLeadingToken = after;
+    }
+  }
+
+  /**
+   * The elements of the concatenation that p is, looking through
+   * references to productions with one variant, or null if p is not a
+   * concatenation.
+   */
+  private static @Nullable ImmutableList<ParSerable> sequenceOf(
+      ParSerable p) {
+    ParSer ps = p.getParSer();
+    if (ps instanceof Reference) {
+      ImmutableList<NodeVariant<?, ?>> variants =
+          ((Reference) ps).getVariants();
+      return variants.size() == 1 ? sequenceOf(variants.get(0)) : null;
+    } else if (ps instanceof Concatenation) {
+      ImmutableList<ParSerable> els = ((Concatenation) ps).ps;
+      return els.size() == 1 ? sequenceOf(els.get(0)) : els;
+    }
+    return null;
+  }
+
+  /**
+   * The scanner for the single token that p matches, or null if p does not
+   * match exactly one token recognized by a {@link TokenScanner}.
+   */
+  private static @Nullable TokenScanner scannerOf(ParSerable p) {
+    ParSer ps = p.getParSer();
+    if (ps instanceof PatternMatch) {
+      return ((PatternMatch) ps).scanner;
+    } else if (ps instanceof Reference) {
+      ImmutableList<NodeVariant<?, ?>> variants =
+          ((Reference) ps).getVariants();
+      return variants.size() == 1 ? scannerOf(variants.get(0)) : null;
+    } else if (ps instanceof Concatenation) {
+      ImmutableList<ParSerable> els = ((Concatenation) ps).ps;
+      return els.size() == 1 ? scannerOf(els.get(0)) : null;
+    }
+    return null;
+  }
+
+  /**
+   * A conservative approximation of the characters that can start a match
+   * of p at the start of an unparse {@link Unparse.Suffix suffix}.
+   * <p>
+   * This uses the {@link NodeVariant#getLookahead1 lookaheads} that the
+   * grammar generator computes for each variant where it can.
+   * The generator gives up on variants that start with {@code "."} since
+   * {@link MagicDotIdentifierHandler} may match a dot by borrowing one that
+   * was already parsed, but a suffix has no already parsed tokens to borrow
+   * from, and a scanned token like an identifier is not a dot that can be
+   * borrowed, so we look inside those variants.
+   *
+   * @param entered node types whose variants are being examined, used to
+   *     give up on left-recursive references instead of looping.
+   * @return null if p might match the empty string or its first character is
+   *     not known statically.
+   */
+  private static @Nullable Lookahead1 firstChars(
+      ParSerable p, Set<NodeType<?, ?>> entered) {
+    ParSer ps = p.getParSer();
+    if (ps instanceof Literal) {
+      String text = ((Literal) ps).text;
+      if (text.isEmpty()) {
+        return null;
+      }
+      char ch = text.charAt(0);
+      return ch < 0x80
+          ? Lookahead1.of(String.valueOf(ch), false)
+          : Lookahead1.of("", true);
+    } else if (ps instanceof Reference) {
+      Reference ref = (Reference) ps;
+      if (!entered.add(ref.nodeType)) {
+        return null;
+      }
+      Lookahead1 union = null;
+      for (NodeVariant<?, ?> v : ref.getVariants()) {
+        Lookahead1 la1 = v.getLookahead1();
+        if (la1 == null) {
+          la1 = firstChars(v.getParSer(), entered);
+          if (la1 == null) {
+            return null;
+          }
+        }
+        union = union != null ? union.union(la1) : la1;
+      }
+      entered.remove(ref.nodeType);
+      return union;
+    } else if (ps instanceof Concatenation) {
+      ImmutableList<ParSerable> els = ((Concatenation) ps).ps;
+      // A non-null result for the first element means it cannot match the
+      // empty string so it alone determines the first character.
+      return els.isEmpty() ? null : firstChars(els.get(0), entered);
+    } else if (ps instanceof Alternation) {
+      Lookahead1 union = null;
+      for (ParSerable option : ((Alternation) ps).ps) {
+        Lookahead1 la1 = firstChars(option, entered);
+        if (la1 == null) {
+          return null;
+        }
+        union = union != null ? union.union(la1) : la1;
+      }
+      return union;
+    }
+    return null;
+  }
+
   @Override
   public void appendShallowStructure(StringBuilder sb) {
     sb.append((valence == Valence.POSITIVE ? "=(" : "!("));
@@ -152,7 +333,7 @@ final class Lookahead extends PTParSer {
       DCErrorReceiver dcer = new DCErrorReceiver();
       ParseState ps = suffix.asParseState();
       ParseResult result = getLookahead().parse(
-          ps, new LeftRecursion(), dcer);
+          ps, suffix.getLeftRecursion(), dcer);
       switch (result.synopsis) {
         case FAILURE:
           StringBuilder sb = new StringBuilder();
@@ -175,6 +356,18 @@ final class Lookahead extends PTParSer {
       throw new AssertionError(result.synopsis);
     }
 
+    /**
+     * A negative lookahead trivially passes when its body cannot start with
+     * the first characters of the suffix.
+     */
+    @Override
+    public boolean isTriviallySatisfiedBy(Unparse.Suffix suffix) {
+      if (valence != Valence.NEGATIVE) {
+        return false;
+      }
+      return bodyCannotMatchAt(suffix.asParseState());
+    }
+
     private Lookahead getLookahead() {
       return Lookahead.this;
     }
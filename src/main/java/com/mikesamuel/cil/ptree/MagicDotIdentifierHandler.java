@@ -7,6 +7,7 @@ import com.mikesamuel.cil.ast.NodeVariant;
 import com.mikesamuel.cil.ast.j8.ContextFreeNameNode;
 import com.mikesamuel.cil.event.Debug;
 import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.EventBuffer;
 import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.ParSerable;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
@@ -49,15 +50,17 @@ final class MagicDotIdentifierHandler extends Concatenation {
     // Look for the preceding diamond.
     BitSet textAfterPop = new BitSet();
     int popDepth = 0;
+    // The count of pops walked over whose push has not yet been reached.
+    int nUnmatchedPops = 0;
     boolean sawText = false;
-    SList<Event> tailInReverse = null;
+    EventBuffer tailInReverse = new EventBuffer();
 
     // If there is not a pop that completes a variant we can borrow from then we
     // can early out.
     borrow_loop:
-    for (SList<Event> c = state.output; c != null; c = c.prev) {
+    for (SList<Event> c = state.output; c != null; c = c.prev()) {
       Event e = c.x;
-      tailInReverse = SList.append(tailInReverse, e);
+      tailInReverse.add(e);
       switch (e.getKind()) {
         case POP:
           if (sawText) {
@@ -65,20 +68,24 @@ final class MagicDotIdentifierHandler extends Concatenation {
             textAfterPop.set(popIndex);
           }
           ++popDepth;
+          ++nUnmatchedPops;
           break;
         case PUSH:
           // We allow things to go negative.
           --popDepth;
+          if (nUnmatchedPops != 0) {
+            --nUnmatchedPops;
+          }
           NodeVariant<?, ?> pushVariant = e.getNodeVariant();
           if (pushVariant == ContextFreeNameNode.Variant.Name) {
             int popIndex = popDepth >= 0 ? popDepth * 2 : (~popDepth * 2) + 1;
             if (!textAfterPop.get(popIndex)) {
-              if (c.prev != null
-                  && c.prev.x.getKind() == Event.Kind.TOKEN) {
-                Event prevTok = c.prev.x;
+              if (c.prev() != null
+                  && c.prev().x.getKind() == Event.Kind.TOKEN) {
+                Event prevTok = c.prev().x;
                 if (".".equals(prevTok.getContent())) {
                   ParseState borrowState = borrow(
-                      state, c.prev.prev, prevTok.getContentIndex(),
+                      state, c.prev().prev(), prevTok.getContentIndex(),
                       tailInReverse);
                   ParseResult borrowResult = super.parse(borrowState, lr, err);
                   switch (borrowResult.synopsis) {
@@ -88,8 +95,7 @@ final class MagicDotIdentifierHandler extends Concatenation {
                       return ParseResult.success(
                           borrowResult.next(),
                           prevTok.getContentIndex(),
-                          ParseResult.union(
-                              failure.lrExclusionsTriggered,
+                          failure.lrExclusionsTriggered.union(
                               borrowResult.lrExclusionsTriggered));
                   }
                 }
@@ -110,19 +116,25 @@ final class MagicDotIdentifierHandler extends Concatenation {
           }
           break;
       }
+      if (sawText && nUnmatchedPops == 0) {
+        // Any name further back is either followed by the text seen or
+        // encloses the dot being parsed, so cannot lend its identifier.
+        // Stopping here keeps this walk from visiting every link in a long
+        // chain of method calls or field accesses each time the chain grows.
+        break;
+      }
     }
     return failure;
   }
 
   private static ParseState borrow(
       ParseState state, SList<Event> beforeDot, int dotIndex,
-      SList<Event> contextFreeNamePushAndAfterInReverse) {
+      EventBuffer contextFreeNamePushAndAfterInReverse) {
     SList<Event> outputWithoutLastIdentifierOrDot = beforeDot;
     int pushDepth = 0;
     boolean skippedOverContextFreeName = false;
-    for (SList<Event> c = contextFreeNamePushAndAfterInReverse; c != null;
-         c = c.prev) {
-      Event e = c.x;
+    for (int i = contextFreeNamePushAndAfterInReverse.size(); --i >= 0;) {
+      Event e = contextFreeNamePushAndAfterInReverse.get(i);
       if (skippedOverContextFreeName) {
         outputWithoutLastIdentifierOrDot = SList.append(
             outputWithoutLastIdentifierOrDot, e);
@@ -148,7 +160,7 @@ final class MagicDotIdentifierHandler extends Concatenation {
       }
     }
 
-    return state.withIndex(dotIndex)
+    return state.withTrustedIndex(dotIndex)
         .withOutput(outputWithoutLastIdentifierOrDot);
   }
 }
@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableList;
 import com.mikesamuel.cil.ast.NodeType;
 import com.mikesamuel.cil.parser.ParSer;
 import com.mikesamuel.cil.parser.ParSerable;
+import com.mikesamuel.cil.parser.TokenScanner;
 
 /**
  * ParSers that work based on a JLS style grammar.
@@ -65,7 +66,20 @@ public final class PTree {
    * @param diagnostic string for error messages.
    */
   public static ParSer patternMatch(String pattern, String diagnostic) {
-    return new PatternMatch(pattern, diagnostic);
+    return new PatternMatch(pattern, diagnostic, null);
+  }
+
+  /**
+   * Like {@link #patternMatch(String, String)} but parses using scanner which
+   * must find the same token as pattern at any position in any input.
+   *
+   * @param pattern a regex string used to unparse and match.
+   * @param diagnostic string for error messages.
+   * @param scanner used to parse.
+   */
+  public static ParSer patternMatch(
+      String pattern, String diagnostic, TokenScanner scanner) {
+    return new PatternMatch(pattern, diagnostic, scanner);
   }
 
   /**
@@ -3,27 +3,36 @@ package com.mikesamuel.cil.ptree;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.Expectation;
 import com.mikesamuel.cil.parser.ForceFitState;
 import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.MatchErrorReceiver;
 import com.mikesamuel.cil.parser.MatchState;
+import com.mikesamuel.cil.parser.NodeTypeSet;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
 import com.mikesamuel.cil.parser.ParseResult;
 import com.mikesamuel.cil.parser.ParseState;
 import com.mikesamuel.cil.parser.SerialErrorReceiver;
 import com.mikesamuel.cil.parser.SerialState;
+import com.mikesamuel.cil.parser.TokenScanner;
+import com.mikesamuel.cil.parser.TokenTable;
 
-final class PatternMatch extends PTParSer {
+final class PatternMatch extends PTParSer implements Expectation {
   final Pattern p;
   final String diagnostic;
+  final @Nullable TokenScanner scanner;
 
-  PatternMatch(String regex, String diagnostic) {
+  PatternMatch(
+      String regex, String diagnostic, @Nullable TokenScanner scanner) {
     this.p = Pattern.compile("^(?:" + regex + ")");
     this.diagnostic = diagnostic;
+    this.scanner = scanner;
   }
 
   @Override
@@ -34,39 +43,70 @@ final class PatternMatch extends PTParSer {
   @Override
   public ParseResult parse(
       ParseState state, LeftRecursion lr, ParseErrorReceiver err) {
-    Matcher m = state.matcherAtStart(p);
-    if (m.find()) {
-      Preconditions.checkState(m.start() == state.index);
-      Event content = Event.content(m.group(), state.index);
-      ParseState stateAfter = state.advance(m.end() - m.start())
-          .appendOutput(content);
-      return ParseResult.success(
-          stateAfter, ParseResult.NO_WRITE_BACK_RESTRICTION, ImmutableSet.of());
+    int end;
+    if (scanner != null) {
+      TokenTable tokens = state.input.getTokenTable();
+      int token;
+      if (tokens != null
+          && (token = tokens.tokenAt(state.index)) != TokenTable.NO_TOKEN
+          && tokens.scannedBy(token) == scanner) {
+        end = tokens.end(token);
+      } else {
+        end = scanner.scan(state.input.content(), state.index);
+      }
     } else {
-      String message;
-      if (state.isEmpty()) {
-        message = "Expected Literal but found end of file";
+      Matcher m = state.matcherAtStart(p);
+      if (m.find()) {
+        Preconditions.checkState(m.start() == state.index);
+        end = m.end();
       } else {
-        int snippetIndex = state.index;
-        int snippetEnd = snippetIndex + 10;
-        CharSequence content = state.input.content();
-        int contentEnd = content.length();
-        boolean needsEllipsis = contentEnd > snippetEnd;
-        if (!needsEllipsis) {
-          snippetEnd = contentEnd;
-        }
-        message = "Expected Literal but found `"
-            + (content.subSequence(snippetIndex, snippetEnd).toString()
-                .replace("\\", "\\\\")
-                .replace("\r", "\\r")
-                .replace("\n", "\\n"))
-            + (needsEllipsis ? "..." : "") + "`";
+        end = -1;
       }
-      err.error(state, message);
+      if (m.hitEnd()) {
+        state.input.noteExaminedEnd(state.index);
+      }
+    }
+    if (end >= 0) {
+      Event content = Event.content(
+          state.input.getInterner().intern(
+              state.input.content(), state.index, end),
+          state.index);
+      ParseState stateAfter = state.advance(end - state.index)
+          .appendOutput(content);
+      return ParseResult.success(
+          stateAfter, ParseResult.NO_WRITE_BACK_RESTRICTION, NodeTypeSet.EMPTY);
+    } else {
+      err.expected(state, this);
       return ParseResult.failure();
     }
   }
 
+  @Override
+  public String getDescription() {
+    return diagnostic;
+  }
+
+  @Override
+  public String toMessage(ParseState state) {
+    if (state.isEmpty()) {
+      return "Expected Literal but found end of file";
+    }
+    int snippetIndex = state.index;
+    int snippetEnd = snippetIndex + 10;
+    CharSequence content = state.input.content();
+    int contentEnd = content.length();
+    boolean needsEllipsis = contentEnd > snippetEnd;
+    if (!needsEllipsis) {
+      snippetEnd = contentEnd;
+    }
+    return "Expected Literal but found `"
+        + (content.subSequence(snippetIndex, snippetEnd).toString()
+            .replace("\\", "\\\\")
+            .replace("\r", "\\r")
+            .replace("\n", "\\n"))
+        + (needsEllipsis ? "..." : "") + "`";
+  }
+
   @Override
   public Optional<SerialState> unparse(
       SerialState state, SerialErrorReceiver err) {
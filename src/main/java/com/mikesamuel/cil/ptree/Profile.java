@@ -1,65 +1,406 @@
 package com.mikesamuel.cil.ptree;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
+import javax.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.google.common.collect.ImmutableMap;
 import com.mikesamuel.cil.ast.NodeType;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.SList;
 
-@SuppressWarnings("javadoc")
-@VisibleForTesting
+/**
+ * Collects per-production measurements of parser activity.
+ * <p>
+ * A profile started via {@link #startCounting} only sees parses on the
+ * thread that started it.  One started via {@link #startCountingAllThreads}
+ * sees parses on every thread.  Each thread records into its own counters
+ * which are summed when the profile is queried, so parses on different
+ * threads do not contend.
+ * <p>
+ * Results are complete once the parses being profiled finish.  They may be
+ * queried before or after {@link #close}.
+ * <p>
+ * When no profile is open, the parser checks a single field per production
+ * it enters.
+ */
 public final class Profile implements AutoCloseable {
-  private Map<NodeType<?, ?>, Integer> profileCount = new LinkedHashMap<>();
+  /** Count of open profiles so the parser can skip thread-local lookups. */
+  private static final AtomicInteger OPEN = new AtomicInteger();
   private static final ThreadLocal<Profile> local = new ThreadLocal<>();
+  private static volatile @Nullable Profile allThreads;
+  /**
+   * Recorders {@linkplain #adopt adopted} by threads that continue parses
+   * started on other threads.
+   */
+  private static final ThreadLocal<Recorder> adopted = new ThreadLocal<>();
+
+  private final boolean isForAllThreads;
+  private final ThreadLocal<Recorder> recorderForThread =
+      new ThreadLocal<>();
+  private final ConcurrentLinkedQueue<Recorder> recorders =
+      new ConcurrentLinkedQueue<>();
+  /** Read without synchronization by threads recording parses. */
+  private volatile boolean closed;
+
+  private Profile(boolean isForAllThreads) {
+    this.isForAllThreads = isForAllThreads;
+  }
 
+  /**
+   * Starts counting parses on the current thread or returns the profile
+   * already counting them.
+   */
   public static Profile startCounting() {
     Profile d = local.get();
     if (d == null) {
-      local.set(d = new Profile());
+      local.set(d = new Profile(false));
+      OPEN.incrementAndGet();
+    }
+    return d;
+  }
+
+  /**
+   * Starts counting parses on all threads or returns the profile already
+   * counting them.
+   */
+  public static synchronized Profile startCountingAllThreads() {
+    Profile d = allThreads;
+    if (d == null) {
+      allThreads = d = new Profile(true);
+      OPEN.incrementAndGet();
     }
     return d;
   }
 
+  /** Stops counting.  The results remain available. */
   @Override
   public void close() {
-    if (local.get() != this) {
-      throw new IllegalStateException();
+    if (isForAllThreads) {
+      synchronized (Profile.class) {
+        if (allThreads != this) {
+          throw new IllegalStateException();
+        }
+        allThreads = null;
+      }
+    } else {
+      if (local.get() != this) {
+        throw new IllegalStateException();
+      }
+      local.set(null);
+    }
+    closed = true;
+    OPEN.decrementAndGet();
+  }
+
+  /** The count of variants whose body the parser entered. */
+  public long getVariantsTried() {
+    long n = 0;
+    for (Recorder r : recorders) {
+      n += r.variantsTried;
+    }
+    return n;
+  }
+
+  /**
+   * The count of variants that the parser did not enter because the next
+   * character could not start them.
+   */
+  public long getVariantsSkipped() {
+    long n = 0;
+    for (Recorder r : recorders) {
+      n += r.variantsSkipped;
     }
-    local.set(null);
-    List<Map.Entry<NodeType<?, ?>, Integer>> ls =
-        Lists.newArrayList(profileCount.entrySet());
-    Collections.sort(ls, new Comparator<Map.Entry<NodeType<?, ?>, Integer>>() {
+    return n;
+  }
+
+  /** The measurements for the given production. */
+  public ProductionProfile getProduction(NodeType<?, ?> nodeType) {
+    ProductionProfile p = getProductions().get(nodeType);
+    return p != null ? p : new ProductionProfile(nodeType, new Counters());
+  }
+
+  /**
+   * Measurements for each production that the parser entered, most time
+   * spent first.
+   */
+  public ImmutableMap<NodeType<?, ?>, ProductionProfile> getProductions() {
+    Map<NodeType<?, ?>, Counters> totals = new IdentityHashMap<>();
+    for (Recorder r : recorders) {
+      for (Map.Entry<NodeType<?, ?>, Counters> e : r.counters.entrySet()) {
+        Counters total = totals.get(e.getKey());
+        if (total == null) {
+          totals.put(e.getKey(), total = new Counters());
+        }
+        total.add(e.getValue());
+      }
+    }
+    List<ProductionProfile> ls = new ArrayList<>();
+    for (Map.Entry<NodeType<?, ?>, Counters> e : totals.entrySet()) {
+      ls.add(new ProductionProfile(e.getKey(), e.getValue()));
+    }
+    Collections.sort(ls, new Comparator<ProductionProfile>() {
       @Override
-      public int compare(
-          Map.Entry<NodeType<?, ?>, Integer> a,
-          Map.Entry<NodeType<?, ?>, Integer> b) {
-        int delta = a.getValue() - b.getValue();
+      public int compare(ProductionProfile a, ProductionProfile b) {
+        int delta = Long.compare(b.nanos, a.nanos);
+        if (delta == 0) {
+          delta = Long.compare(b.invocations, a.invocations);
+        }
         if (delta == 0) {
-          delta = a.getKey().ordinal() - b.getKey().ordinal();
+          delta = a.nodeType.ordinal() - b.nodeType.ordinal();
         }
         return delta;
       }
     });
-    for (Map.Entry<NodeType<?, ?>, Integer> e : ls) {
-      NodeType<?, ?> t = e.getKey();
-      int count = e.getValue();
-      if (count != 0) {
-        System.err.println(t + "\t" + count);
-      }
+    ImmutableMap.Builder<NodeType<?, ?>, ProductionProfile> b =
+        ImmutableMap.builder();
+    for (ProductionProfile p : ls) {
+      b.put(p.nodeType, p);
+    }
+    return b.build();
+  }
+
+  /**
+   * The measurements as JSON of the form
+   * <pre>
+   * {
+   *   "variantsTried": 123,
+   *   "variantsSkipped": 45,
+   *   "productions": [
+   *     { "nodeType": "Expression", "invocations": 6, ... },
+   *     ...
+   *   ]
+   * }
+   * </pre>
+   * where productions are ordered as by {@link #getProductions}.
+   */
+  public JSONObject toJson() {
+    JSONArray productions = new JSONArray();
+    for (ProductionProfile p : getProductions().values()) {
+      productions.put(p.toJson());
+    }
+    JSONObject json = new JSONObject();
+    json.put("variantsTried", getVariantsTried());
+    json.put("variantsSkipped", getVariantsSkipped());
+    json.put("productions", productions);
+    return json;
+  }
+
+  @Override
+  public String toString() {
+    return toJson().toString();
+  }
+
+
+  /** Measurements for one production. */
+  public static final class ProductionProfile {
+    /** The production measured. */
+    public final NodeType<?, ?> nodeType;
+    /** The count of times the parser tried the production at some index. */
+    public final long invocations;
+    /** The count of invocations answered from the memo table. */
+    public final long memoHits;
+    /** The count of invocations that parsed and memoized the result. */
+    public final long memoMisses;
+    /**
+     * The count of invocations that parsed but could not memoize the result
+     * because it depended on left-recursion in progress.
+     */
+    public final long uncacheable;
+    /**
+     * The count of invocations that returned without parsing because the
+     * production was already being parsed at the same index by left
+     * recursion that was seeding or growing.
+     */
+    public final long lrReentries;
+    /**
+     * Nanoseconds spent in invocations that were not answered from the memo
+     * table, including time spent in nested productions.
+     */
+    public final long nanos;
+    /** The count of times the parser tried to grow a left-recursive seed. */
+    public final long lrGrowIterations;
+    /**
+     * The count of events that were produced while trying one of the
+     * production's variants and then discarded because the variant failed.
+     * Events are counted up to the last nested production that succeeded.
+     */
+    public final long eventsDiscarded;
+
+    ProductionProfile(NodeType<?, ?> nodeType, Counters c) {
+      this.nodeType = nodeType;
+      this.invocations = c.invocations;
+      this.memoHits = c.memoHits;
+      this.memoMisses = c.memoMisses;
+      this.uncacheable = c.uncacheable;
+      this.lrReentries = c.lrReentries;
+      this.nanos = c.nanos;
+      this.lrGrowIterations = c.lrGrowIterations;
+      this.eventsDiscarded = c.eventsDiscarded;
+    }
+
+    /** The measurements as a JSON object. */
+    public JSONObject toJson() {
+      JSONObject json = new JSONObject();
+      json.put("nodeType", nodeType.name());
+      json.put("invocations", invocations);
+      json.put("memoHits", memoHits);
+      json.put("memoMisses", memoMisses);
+      json.put("uncacheable", uncacheable);
+      json.put("lrReentries", lrReentries);
+      json.put("nanos", nanos);
+      json.put("lrGrowIterations", lrGrowIterations);
+      json.put("eventsDiscarded", eventsDiscarded);
+      return json;
+    }
+
+    @Override
+    public String toString() {
+      return toJson().toString();
     }
   }
 
-  static void count(NodeType<?, ?> nodeType) {
-    @SuppressWarnings("resource")
+
+  /**
+   * The recorder for the current thread or null if no profile is counting
+   * parses on it.
+   */
+  static @Nullable Recorder recorder() {
+    if (OPEN.get() == 0) { return null; }
+    Recorder a = adopted.get();
+    if (a != null) {
+      return a.profile.closed ? null : a;
+    }
     Profile p = local.get();
-    if (p != null) {
-      Integer oldCount = p.profileCount.get(nodeType);
-      int newCount = (oldCount != null ? oldCount : 0) + 1;
-      p.profileCount.put(nodeType, newCount);
+    if (p == null) {
+      p = allThreads;
+      if (p == null) { return null; }
+    }
+    Recorder r = p.recorderForThread.get();
+    if (r == null) {
+      r = new Recorder(p);
+      p.recorderForThread.set(r);
+      p.recorders.add(r);
+    }
+    return p.closed ? null : r;
+  }
+
+  /**
+   * Makes the given recorder the current thread's until the returned
+   * adoption is closed, so that a parse that continues on a fresh
+   * {@linkplain com.mikesamuel.cil.parser.StackSegments stack segment}
+   * counts towards the recorder of the thread that started it.
+   *
+   * @param r null if the parse is not being profiled.
+   */
+  static Adoption adopt(@Nullable Recorder r) {
+    Adoption adoption = new Adoption(adopted.get());
+    adopted.set(r);
+    return adoption;
+  }
+
+  /** Restores the recorder adopted before. */
+  static final class Adoption {
+    private final @Nullable Recorder previous;
+
+    Adoption(@Nullable Recorder previous) {
+      this.previous = previous;
+    }
+
+    void close() {
+      if (previous != null) {
+        adopted.set(previous);
+      } else {
+        adopted.remove();
+      }
+    }
+  }
+
+  /** Counts parser activity for one thread. */
+  static final class Recorder {
+    final Profile profile;
+    final Map<NodeType<?, ?>, Counters> counters = new IdentityHashMap<>();
+    long variantsTried;
+    long variantsSkipped;
+    /**
+     * The output after the last production that succeeded or the output
+     * before the last variant tried, whichever came later.
+     */
+    private @Nullable SList<Event> lastOutput;
+
+    Recorder(Profile profile) {
+      this.profile = profile;
+    }
+
+    Counters countersFor(NodeType<?, ?> nodeType) {
+      Counters c = counters.get(nodeType);
+      if (c == null) {
+        counters.put(nodeType, c = new Counters());
+      }
+      return c;
+    }
+
+    /** Called before trying a variant at the given output. */
+    void variantStarted(@Nullable SList<Event> output) {
+      lastOutput = output;
+    }
+
+    /** Called when a production succeeds producing the given output. */
+    void produced(@Nullable SList<Event> output) {
+      lastOutput = output;
+    }
+
+    /**
+     * Called when a variant fails.
+     *
+     * @param output the output passed to {@link #variantStarted}.
+     * @return the count of events produced since then that are discarded.
+     */
+    int backtracked(@Nullable SList<Event> output) {
+      int n = 0;
+      for (SList<Event> c = lastOutput; c != output; c = c.prev()) {
+        if (c == null) {
+          // Rewritten, so not a descendant of output.
+          n = 0;
+          break;
+        }
+        ++n;
+      }
+      lastOutput = output;
+      return n;
+    }
+  }
+
+  /** Mutable measurements for a production. */
+  static final class Counters {
+    long invocations;
+    long memoHits;
+    long memoMisses;
+    long uncacheable;
+    long lrReentries;
+    long nanos;
+    long lrGrowIterations;
+    long eventsDiscarded;
+
+    void add(Counters c) {
+      invocations += c.invocations;
+      memoHits += c.memoHits;
+      memoMisses += c.memoMisses;
+      uncacheable += c.uncacheable;
+      lrReentries += c.lrReentries;
+      nanos += c.nanos;
+      lrGrowIterations += c.lrGrowIterations;
+      eventsDiscarded += c.eventsDiscarded;
     }
   }
-}
\ No newline at end of file
+}
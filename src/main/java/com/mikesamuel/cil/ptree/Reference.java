@@ -5,8 +5,11 @@ import java.util.Deque;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
@@ -25,27 +28,33 @@ import com.mikesamuel.cil.ast.NodeVariant;
 import com.mikesamuel.cil.ast.j8.J8NodeType;
 import com.mikesamuel.cil.event.Debug;
 import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.EventBuffer;
 import com.mikesamuel.cil.parser.ForceFitState;
 import com.mikesamuel.cil.parser.ForceFitState.FixedNode;
 import com.mikesamuel.cil.parser.ForceFitState.InterpolatedValue;
 import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.LeftRecursion.Stage;
+import com.mikesamuel.cil.parser.Lookahead1;
 import com.mikesamuel.cil.parser.MatchErrorReceiver;
 import com.mikesamuel.cil.parser.MatchState;
+import com.mikesamuel.cil.parser.NodeTypeSet;
 import com.mikesamuel.cil.parser.ParSer;
 import com.mikesamuel.cil.parser.ParSerable;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
 import com.mikesamuel.cil.parser.ParseResult;
 import com.mikesamuel.cil.parser.ParseState;
-import com.mikesamuel.cil.parser.RatPack;
 import com.mikesamuel.cil.parser.RatPack.ParseCacheEntry;
 import com.mikesamuel.cil.parser.SList;
 import com.mikesamuel.cil.parser.SerialErrorReceiver;
 import com.mikesamuel.cil.parser.SerialState;
+import com.mikesamuel.cil.parser.StackSegments;
 
 final class Reference extends PTParSer {
   final NodeType<?, ?> nodeType;
-  private ImmutableList<NodeVariant<?, ?>> variants;
+  /**
+   * Lazily computed.  Volatile since the grammar is shared between threads.
+   */
+  private volatile ImmutableList<NodeVariant<?, ?>> variants;
 
   Reference(NodeType<?, ?> nodeType) {
     this.nodeType = nodeType;
@@ -85,38 +94,50 @@ final class Reference extends PTParSer {
     return Kind.REF;
   }
 
-  // HACK DEBUG: Not thread safe
+  // HACK DEBUG: Trace state is per thread since parses may run concurrently.
   private static final boolean DEBUG = false;
   private static final boolean DEBUG_LR = false;
   private static final boolean DEBUG_UP = false;
-  private static int depth = 0;
+  private static final class DebugTrace {
+    int depth = 0;
+    String lastInputSeen = "";
+    ImmutableList<Event> lastOutputSeen = ImmutableList.of();
+  }
+  private static final ThreadLocal<DebugTrace> DEBUG_TRACE =
+      new ThreadLocal<DebugTrace>() {
+        @Override
+        protected DebugTrace initialValue() {
+          return new DebugTrace();
+        }
+      };
   private static String indent() {
     StringBuilder sb = new StringBuilder();
-    for (int i = 0; i < depth; ++i) {
+    for (int i = 0, depth = DEBUG_TRACE.get().depth; i < depth; ++i) {
       sb.append("  ");
     }
     return sb.toString();
   }
   private static void indent(int delta) {
-    Preconditions.checkState(depth + delta >= 0);
-    depth += delta;
+    DebugTrace trace = DEBUG_TRACE.get();
+    Preconditions.checkState(trace.depth + delta >= 0);
+    trace.depth += delta;
   }
-  private static String lastInputSeen = "";
   private static String dumpInput(String inp) {
-    if (inp.equals(lastInputSeen)) {
+    DebugTrace trace = DEBUG_TRACE.get();
+    if (inp.equals(trace.lastInputSeen)) {
       return null;
     }
-    lastInputSeen = inp;
+    trace.lastInputSeen = inp;
     return inp;
   }
   // END HACK
 
-  private static ImmutableList<Event> lastOutputSeen = ImmutableList.of();
   private static String dumpOutput(SList<Event> out) {
-    ImmutableList<Event> lastList = lastOutputSeen;
+    DebugTrace trace = DEBUG_TRACE.get();
+    ImmutableList<Event> lastList = trace.lastOutputSeen;
     ImmutableList<Event> outList = ImmutableList.copyOf(
         SList.forwardIterable(out));
-    lastOutputSeen = outList;
+    trace.lastOutputSeen = outList;
     if (!lastList.isEmpty() && outList.size() >= lastList.size()
         && outList.subList(0, lastList.size()).equals(lastList)) {
       if (lastList.size() == outList.size()) {
@@ -132,24 +153,68 @@ final class Reference extends PTParSer {
     return outList.toString();
   }
 
-  @SuppressWarnings("unused")
   @Override
   public ParseResult parse(
+      final ParseState start, final LeftRecursion lr,
+      final ParseErrorReceiver err) {
+    StackSegments segments = start.input.getStackSegments();
+    if (segments == null) {
+      return parseOnCurrentSegment(start, lr, err);
+    }
+    if (segments.enter()) {
+      try {
+        return parseOnCurrentSegment(start, lr, err);
+      } finally {
+        segments.exit();
+      }
+    }
+    final Profile.Recorder recorder = Profile.recorder();
+    return segments.continueOnFreshSegment(new Callable<ParseResult>() {
+      @Override
+      public ParseResult call() {
+        Profile.Adoption adoption = Profile.adopt(recorder);
+        try {
+          return parse(start, lr, err);
+        } finally {
+          adoption.close();
+        }
+      }
+    });
+  }
+
+  @SuppressWarnings("unused")
+  private ParseResult parseOnCurrentSegment(
       ParseState start, LeftRecursion lr, ParseErrorReceiver err) {
-    LeftRecursion.Stage stage = lr.stageForProductionAt(nodeType, start.index);
+    Profile.Recorder recorder = Profile.recorder();
+    Profile.Counters counters = null;
+    if (recorder != null) {
+      counters = recorder.countersFor(nodeType);
+      ++counters.invocations;
+    }
+    boolean isLeftRecursive = nodeType.isLeftRecursive();
+    LeftRecursion.Stage stage = isLeftRecursive
+        ? lr.stageForProductionAt(nodeType, start.index)
+        : LeftRecursion.Stage.NOT_ON_STACK;
+    if (counters != null && stage != LeftRecursion.Stage.NOT_ON_STACK) {
+      ++counters.lrReentries;
+    }
     switch (stage) {
       case GROWING:
         if (DEBUG) {
           System.err.println(
               indent() + "Found LR Growing " + nodeType + " @ " + start.index);
         }
+        ParseState afterSuffixEnd = start.appendOutput(
+            Event.leftRecursionSuffixEnd(nodeType, start.index));
+        if (recorder != null) {
+          recorder.produced(afterSuffixEnd.output);
+        }
         return ParseResult.success(
-            start.appendOutput(
-                Event.leftRecursionSuffixEnd(nodeType, start.index)),
+            afterSuffixEnd,
             ParseResult.NO_WRITE_BACK_RESTRICTION,
             // Checked to make sure that the growing does not accidentally take
             // a non-left recursing path.
-            ImmutableSet.of(nodeType)
+            NodeTypeSet.of(nodeType)
             );
       case NOT_ON_STACK:
         break;
@@ -159,21 +224,29 @@ final class Reference extends PTParSer {
           System.err.println(
               indent() + "Found LR seeding " + nodeType + " @ " + start.index);
         }
-        return ParseResult.failure(ImmutableSet.of(nodeType));
+        return ParseResult.failure(NodeTypeSet.of(nodeType));
     }
 
     ParseCacheEntry cachedParse = start.input.ratPack.getCachedParse(
         nodeType, start.index);
     if (cachedParse.wasTried()) {
+      if (counters != null) {
+        ++counters.memoHits;
+      }
+      start.input.noteExamined(cachedParse.getExamined());
       if (cachedParse.passed()) {
         if (DEBUG) {
           System.err.println(
               indent() + "Using cached success for " + nodeType
               + " @ " + start.index);
         }
+        ParseState afterCached = cachedParse.apply(start);
+        if (recorder != null) {
+          recorder.produced(afterCached.output);
+        }
         return ParseResult.success(
-            cachedParse.apply(start),
-            ParseResult.NO_WRITE_BACK_RESTRICTION, ImmutableSet.of());
+            afterCached,
+            ParseResult.NO_WRITE_BACK_RESTRICTION, NodeTypeSet.EMPTY);
       } else {
         if (DEBUG) {
           System.err.println(
@@ -184,7 +257,11 @@ final class Reference extends PTParSer {
       }
     }
 
-    Profile.count(nodeType);
+    long startNanos = counters != null ? System.nanoTime() : 0L;
+    long outerExamined = start.input.startExamining(start.index);
+    boolean isCommitPoint = nodeType.isCommitPoint();
+    int commitPointDepth = isCommitPoint
+        ? start.input.ratPack.enterCommitPoint() : 0;
 
     ParseState state = start;
     state = maybeParseInterstitialNonstandard(stage, state, err);
@@ -204,14 +281,14 @@ final class Reference extends PTParSer {
       }
     }
 
-    Set<NodeType<?, ?>> allExclusionsTriggered = Sets.newLinkedHashSet();
     ParseResult result = parseVariants(
-        state, lr, err, LeftRecursion.Stage.SEEDING,
-        allExclusionsTriggered);
-    allExclusionsTriggered.addAll(result.lrExclusionsTriggered);
+        state, lr, err, LeftRecursion.Stage.SEEDING, isLeftRecursive,
+        recorder);
+    NodeTypeSet allExclusionsTriggered = result.lrExclusionsTriggered;
     int writeBack = result.writeBack;
 
-    boolean wasLrTriggered = allExclusionsTriggered.remove(nodeType);
+    boolean wasLrTriggered = allExclusionsTriggered.contains(nodeType);
+    allExclusionsTriggered = allExclusionsTriggered.without(nodeType);
 
     if (wasLrTriggered && result.synopsis == ParseResult.Synopsis.SUCCESS) {
       ParseState afterSeed = result.next();
@@ -232,13 +309,16 @@ final class Reference extends PTParSer {
 
       grow_the_seed:
       while (true) {
+        if (counters != null) {
+          ++counters.lrGrowIterations;
+        }
         ParseState beforeGrow = grown.appendOutput(
             Event.leftRecursionSuffixStart());
         ParseResult growResult = parseVariants(
             beforeGrow,
-            lr, err, LeftRecursion.Stage.GROWING,
-            allExclusionsTriggered);
-        allExclusionsTriggered.addAll(growResult.lrExclusionsTriggered);
+            lr, err, LeftRecursion.Stage.GROWING, isLeftRecursive, recorder);
+        allExclusionsTriggered = allExclusionsTriggered.union(
+            growResult.lrExclusionsTriggered);
         switch (growResult.synopsis) {
           case FAILURE:
             // Use the last successful growing.
@@ -268,11 +348,19 @@ final class Reference extends PTParSer {
         }
       }
 
-      allExclusionsTriggered.remove(nodeType);
-      LRRewriter rewriter = new LRRewriter(nodeType);
+      allExclusionsTriggered = allExclusionsTriggered.without(nodeType);
+      // If the seed did not grow, there are no LR suffix events to rewrite,
+      // and rewriting would only copy the seed's output which, when the seed
+      // is a long chain of some tighter binding operator, is most of the
+      // output so far.
+      SList<Event> grownOutput = grown.output;
+      if (grown != afterSeed) {
+        LRRewriter rewriter = new LRRewriter(nodeType);
+        grownOutput = rewriter.rewrite(grownOutput);
+      }
       // TODO: do we need to reapply the postcondition here?
       result = ParseResult.success(
-          grown.withOutput(rewriter.rewrite(grown.output)),
+          grown.withOutput(grownOutput),
           writeBack,
           allExclusionsTriggered);
     }
@@ -292,12 +380,24 @@ final class Reference extends PTParSer {
       }
     }
 
+    long examined = start.input.endExamining(outerExamined);
+
+    if (counters != null) {
+      if (canCache) {
+        ++counters.memoMisses;
+      } else {
+        ++counters.uncacheable;
+      }
+      counters.nanos += System.nanoTime() - startNanos;
+    }
+
     switch (result.synopsis) {
       case FAILURE:
-        RatPack.ParseCacheEntry e = state.input.ratPack.getCachedParse(
-            nodeType, state.index);
         if (canCache) {
-          state.input.ratPack.cacheFailure(state.index, nodeType);
+          state.input.ratPack.cacheFailure(state.index, nodeType, examined);
+        }
+        if (isCommitPoint) {
+          state.input.ratPack.exitCommitPoint(commitPointDepth, -1, null);
         }
         if (DEBUG) {
           System.err.println(
@@ -308,7 +408,12 @@ final class Reference extends PTParSer {
         ParseState next = result.next();
         if (canCache) {
           state.input.ratPack.cacheSuccess(
-              state.index, next.index, nodeType, next.output);
+              state.index, next.index, nodeType, state.output, next.output,
+              examined);
+        }
+        if (isCommitPoint) {
+          state.input.ratPack.exitCommitPoint(
+              commitPointDepth, next.index, next.output);
         }
         if (DEBUG) {
           System.err.println(
@@ -316,32 +421,58 @@ final class Reference extends PTParSer {
               + " -> " + next.index);
         }
         next = maybeParseInterstitialNonstandard(stage, next, err);
+        if (recorder != null) {
+          recorder.produced(next.output);
+        }
         return ParseResult.success(next, writeBack, allExclusionsTriggered);
     }
     throw new AssertionError(result.synopsis);
   }
 
+  /**
+   * @param recorder null when not profiling.
+   * @return a result whose exclusions include those triggered by variants
+   *     that failed before one passed.
+   */
   private ParseResult parseVariants(
       ParseState state, LeftRecursion lr, ParseErrorReceiver err, Stage stage,
-      Set<NodeType<?, ?>> failureExclusionsTriggered) {
+      boolean isLeftRecursive, @Nullable Profile.Recorder recorder) {
+    NodeTypeSet failureExclusionsTriggered = NodeTypeSet.EMPTY;
     if (DEBUG) { indent(1); }
 
+    // While growing a seed, a left-recursive call matches the empty string so
+    // a variant might start with any of its suffixes.
+    boolean predict = stage == Stage.SEEDING && !lr.isGrowingAt(state.index);
+    int nTried = 0, nSkipped = 0;
     try {
       for (NodeVariant<?, ?> variant : getVariants()) {
-        if (stage == Stage.SEEDING) {
-          //Lookahead1 la1 = variant.getLookahead1();
-          //if (!(la1 == null || la1.canFollow(state))) {
-          //  continue;
-          //}
+        if (predict) {
+          Lookahead1 la1 = variant.getLookahead1();
+          if (!(la1 == null || la1.canFollow(state))) {
+            ++nSkipped;
+            continue;
+          }
         }
 
-        try (LeftRecursion.VariantScope scope = lr.enter(
-                 variant, state.index, stage)) {
+        ++nTried;
+        if (recorder != null) {
+          recorder.variantStarted(state.output);
+        }
+        // Null resources are not closed.
+        try (LeftRecursion.VariantScope scope = isLeftRecursive
+                 ? lr.enter(variant, state.index, stage) : null) {
           ParseState beforeBody = state.appendOutput(Event.push(variant));
-          ParseResult result = variant.getParSer().parse(beforeBody, lr, err);
+          ParSer body = state.input.interpretsGrammar()
+              ? variant.getParSer() : variant.getCompiledParSer();
+          ParseResult result = body.parse(beforeBody, lr, err);
           switch (result.synopsis) {
             case FAILURE:
-              failureExclusionsTriggered.addAll(result.lrExclusionsTriggered);
+              failureExclusionsTriggered = failureExclusionsTriggered.union(
+                  result.lrExclusionsTriggered);
+              if (recorder != null) {
+                recorder.countersFor(nodeType).eventsDiscarded +=
+                    recorder.backtracked(state.output);
+              }
               continue;
             case SUCCESS:
               ParseState afterBody = result.next();
@@ -351,9 +482,17 @@ final class Reference extends PTParSer {
               if (postcond.apply(afterVariant.output)) {
                 return ParseResult.success(
                     afterVariant,
-                    result.writeBack, result.lrExclusionsTriggered);
+                    result.writeBack,
+                    failureExclusionsTriggered.union(
+                        result.lrExclusionsTriggered));
               } else {
-                failureExclusionsTriggered.addAll(result.lrExclusionsTriggered);
+                failureExclusionsTriggered = failureExclusionsTriggered.union(
+                    result.lrExclusionsTriggered);
+                if (recorder != null) {
+                  recorder.produced(afterVariant.output);
+                  recorder.countersFor(nodeType).eventsDiscarded +=
+                      recorder.backtracked(state.output);
+                }
                 continue;
               }
           }
@@ -368,19 +507,25 @@ final class Reference extends PTParSer {
         if (replacementParser.isPresent()) {
           ParseResult nonStandardResult = replacementParser.get()
               .parse(state, new LeftRecursion(), err);
-          failureExclusionsTriggered.addAll(
+          failureExclusionsTriggered = failureExclusionsTriggered.union(
               nonStandardResult.lrExclusionsTriggered);
           switch (nonStandardResult.synopsis) {
             case FAILURE: break;
-            case SUCCESS: return nonStandardResult;
+            case SUCCESS:
+              return nonStandardResult.withLrExclusionsTriggered(
+                  failureExclusionsTriggered);
           }
         }
       }
     } finally {
+      if (recorder != null) {
+        recorder.variantsTried += nTried;
+        recorder.variantsSkipped += nSkipped;
+      }
       if (DEBUG) { indent(-1); }
     }
 
-    return ParseResult.failure();
+    return ParseResult.failure(failureExclusionsTriggered);
   }
 
   private ParseState maybeParseInterstitialNonstandard(
@@ -461,7 +606,7 @@ final class Reference extends PTParSer {
               System.err.println(
                   indent() + "Same variant " + variant + " failed");
             }
-            err.error(state, "Failed to match " + variant);
+            err.expected(state, variant);
             return Optional.absent();
           }
           break;
@@ -598,7 +743,7 @@ final class Reference extends PTParSer {
 
   private boolean growReachedLR(int startIndex, ParseState s) {
     int nOtherLREndsSeen = 0;
-    for (SList<Event> o = s.output; o != null; o = o.prev) {
+    for (SList<Event> o = s.output; o != null; o = o.prev()) {
       Event e = o.x;
       switch (e.getKind()) {
         case LR_END:
@@ -623,7 +768,12 @@ final class Reference extends PTParSer {
 
   private static final class LRRewriter {
     private final NodeType<?, ?> nodeTypeToPushback;
-    private final List<List<Event>> pushback = Lists.newArrayList();
+    /**
+     * Groups of pushes and pops to push back, each in reverse, starting at the
+     * corresponding mark in pushbackStarts.
+     */
+    private final EventBuffer pushback = new EventBuffer();
+    private final List<Integer> pushbackStarts = Lists.newArrayList();
     private int popDepth;
 
     LRRewriter(NodeType<?, ?> nodeType) {
@@ -637,7 +787,7 @@ final class Reference extends PTParSer {
         Debug.dumpEvents(indent, SList.forwardIterable(out), System.err);
       }
       SList<Event> withPushbackAndPops = pushback(out);
-      Preconditions.checkState(pushback.isEmpty());
+      Preconditions.checkState(pushback.size() == 0);
       if (DEBUG_LR) {
         String indent = indent();
         System.err.println(indent + "after rewriteLR " + nodeTypeToPushback);
@@ -661,7 +811,7 @@ final class Reference extends PTParSer {
       }
 
       // Accumulates, in reverse, events that do not need to be pushed back.
-      SList<Event> pbReverse = null;
+      EventBuffer pbReverse = new EventBuffer();
 
       outer_loop:
       for (SList<Event> out = outWithLR; true;
@@ -673,12 +823,12 @@ final class Reference extends PTParSer {
            // replaced with
            //     { out = recursiveOut; continue outer_loop; }
            // so instead of
-           //     return SList.append(pushback(out.prev), e);
+           //     return SList.append(pushback(out.prev()), e);
            // the non-recursive
-           //     pbReverse = SList.append(pbReverse, e);
-           //     out = out.prev;
+           //     pbReverse.add(e);
+           //     out = out.prev();
            //     continue outer_loop;
-           // with a revAppend on the final return.
+           // with a reversed append on the final return.
            //
            // The original recursive algo was abandoned because it made the
            // max parsable input size dependent on the VM's max stack size.
@@ -690,8 +840,8 @@ final class Reference extends PTParSer {
         switch (e.getKind()) {
           case POP:
             ++popDepth;
-            pbReverse = SList.append(pbReverse, e);
-            out = out.prev;
+            pbReverse.add(e);
+            out = out.prev();
             continue outer_loop;
           case PUSH:
             Preconditions.checkState(popDepth != 0);  // pop required above.
@@ -701,21 +851,24 @@ final class Reference extends PTParSer {
                   nodeTypeToPushback == e.getNodeType()
                   // TODO: Allow any non-standard replacement.
                   || e.getNodeType() == J8NodeType.TemplateInterpolation);
-              SList<Event> pushedBack = out.prev;
+              SList<Event> pushedBack = out.prev();
               if (DEBUG_LR) {
                 System.err.println(indent() + "Pushback = " + pushback);
               }
-              for (List<Event> onePb : pushback) {
-                for (Event pb : Lists.reverse(onePb)) {
-                  pushedBack = SList.append(pushedBack, pb);
-                }
+              for (int i = 0, n = pushbackStarts.size(); i < n; ++i) {
+                int end = i + 1 < n
+                    ? pushbackStarts.get(i + 1) : pushback.size();
+                pushedBack = pushback.appendReversedTo(
+                    pushedBack, pushbackStarts.get(i), end);
               }
-              pushback.clear();
+              pushback.truncate(0);
+              pushbackStarts.clear();
               pushedBack = SList.append(pushedBack, e);
-              return SList.revAppendAll(pushedBack, pbReverse);
+              return pbReverse.appendReversedTo(
+                  pushedBack, 0, pbReverse.size());
             } else {
-              out = out.prev;
-              pbReverse = SList.append(pbReverse, e);
+              out = out.prev();
+              pbReverse.add(e);
               continue outer_loop;
             }
           case LR_END:
@@ -723,23 +876,22 @@ final class Reference extends PTParSer {
               int pushCount = 0;
               int popCount = 0;
 
-              List<Event> onePb = Lists.newArrayList();
-              pushback.add(onePb);
-              for (SList<Event> c = out.prev; c != null; c = c.prev) {
+              pushbackStarts.add(pushback.mark());
+              for (SList<Event> c = out.prev(); c != null; c = c.prev()) {
                 Event ce = c.x;
                 switch (ce.getKind()) {
                   case LR_START:
                     Preconditions.checkState(pushCount >= popCount);
                     popDepth += popCount - pushCount;
                     Preconditions.checkState(popDepth >= 0);
-                    out = c.prev;
+                    out = c.prev();
                     continue outer_loop;
                   case POP:
-                    onePb.add(ce);
+                    pushback.add(ce);
                     ++popCount;
                     continue;
                   case PUSH:
-                    onePb.add(ce);
+                    pushback.add(ce);
                     ++pushCount;
                     continue;
                   case CONTENT:
@@ -761,8 +913,8 @@ final class Reference extends PTParSer {
           case LR_START:
           case POSITION_MARK:
           case TOKEN:
-            pbReverse = SList.append(pbReverse, e);
-            out = out.prev;
+            pbReverse.add(e);
+            out = out.prev();
             continue outer_loop;
         }
         throw new AssertionError(e);
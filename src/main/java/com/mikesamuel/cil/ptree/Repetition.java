@@ -4,12 +4,11 @@ import java.util.LinkedHashSet;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
-import com.mikesamuel.cil.ast.NodeType;
 import com.mikesamuel.cil.parser.ForceFitState;
 import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.MatchErrorReceiver;
 import com.mikesamuel.cil.parser.MatchState;
+import com.mikesamuel.cil.parser.NodeTypeSet;
 import com.mikesamuel.cil.parser.ParSer;
 import com.mikesamuel.cil.parser.ParSerable;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
@@ -57,12 +56,12 @@ final class Repetition extends PTParSer {
       ParseState start, LeftRecursion lr, ParseErrorReceiver err) {
     ParseState state = start;
     ParSer parser = p.getParSer();
-    ImmutableSet<NodeType<?, ?>> lrExclusionsTriggered = ImmutableSet.of();
+    NodeTypeSet lrExclusionsTriggered = NodeTypeSet.EMPTY;
     int writeBack = ParseResult.NO_WRITE_BACK_RESTRICTION;
     while (true) {
       ParseResult result = parser.parse(state, lr, err);
-      lrExclusionsTriggered = ParseResult.union(
-          lrExclusionsTriggered, result.lrExclusionsTriggered);
+      lrExclusionsTriggered = lrExclusionsTriggered.union(
+          result.lrExclusionsTriggered);
 
       switch (result.synopsis) {
         case FAILURE:
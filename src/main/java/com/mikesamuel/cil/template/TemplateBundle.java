@@ -15,9 +15,9 @@ import com.mikesamuel.cil.ast.j8.SingleStaticImportDeclarationNode;
 import com.mikesamuel.cil.ast.meta.TypeInfoResolver;
 import com.mikesamuel.cil.ast.passes.CommonPassRunner;
 import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.FarthestFailure;
 import com.mikesamuel.cil.parser.Input;
 import com.mikesamuel.cil.parser.LeftRecursion;
-import com.mikesamuel.cil.parser.ParseErrorReceiver;
 import com.mikesamuel.cil.parser.ParseResult;
 import com.mikesamuel.cil.parser.ParseState;
 import com.mikesamuel.cil.parser.SList;
@@ -100,20 +100,7 @@ public class TemplateBundle {
   public TemplateBundle addCompilationUnit(Input inp) {
     Preconditions.checkArgument(inp.allowNonStandardProductions);
 
-    class ParseErrorReceiverImpl implements ParseErrorReceiver {
-      int greatestIndex = 0;
-      String bestMessage;
-
-      @Override
-      public void error(ParseState state, String message) {
-        if (state.index >= greatestIndex) {
-          greatestIndex = state.index;
-          bestMessage = message;
-        }
-      }
-    }
-
-    ParseErrorReceiverImpl err = new ParseErrorReceiverImpl();
+    FarthestFailure err = new FarthestFailure();
 
     ParseResult result = PTree.complete(J8NodeType.CompilationUnit).getParSer()
         .parse(new ParseState(inp), new LeftRecursion(), err);
@@ -129,10 +116,13 @@ public class TemplateBundle {
         return this;
       }
       case FAILURE:
-        String message = err.bestMessage != null
-            ? err.bestMessage : "Failed to parse compilation unit";
+        String message = err.getMessage();
+        if (message == null) {
+          message = "Failed to parse compilation unit";
+        }
         LogUtils.log(
-            logger, Level.SEVERE, inp.getSourcePosition(err.greatestIndex),
+            logger, Level.SEVERE,
+            inp.getSourcePosition(Math.max(0, err.getIndex())),
             message, null);
         return this;
     }
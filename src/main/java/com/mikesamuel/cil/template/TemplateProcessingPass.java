@@ -876,7 +876,7 @@ extends AbstractRewritingPass {
     }
 
     // Next, add whole siblings of the containing TemplateDirectivesNode.
-    SList<AbstractRewritingPass.Parent> grandparent = pathFromRootToStart.prev;
+    SList<AbstractRewritingPass.Parent> grandparent = pathFromRootToStart.prev();
     J8BaseNode container = grandparent.x.parent;
     for (int i = grandparent.x.indexInParent + 1, n = container.getNChildren();
         i < n; ++i) {
@@ -1,5 +1,6 @@
 #!/usr/bin/python2.7
 
+import itertools
 import json
 import re
 
@@ -220,7 +221,8 @@ def process_grammar(
         source_file_exists,
         emit_java_file,
         dot_out=None,
-        verbose=True):
+        verbose=True,
+        compile_parsers=False):
     """
     grammar_name : string -- Specifies the subpackage under _JAVA_BASE_PACKAGE
         and a common prefix for node, node type, and node variant classes.
@@ -229,7 +231,8 @@ def process_grammar(
           "tokens": "foo.bar.Tokens",
           "postconds": "foo.bar.Postconds",
           "mixins": {...},
-          "custom_node_content": {...}
+          "custom_node_content": {...},
+          "commit_points": [...]
         }
 
         The "tokens" value is the name of a class that includes a ParSer for
@@ -250,12 +253,19 @@ def process_grammar(
 
         The "custom_node_content" map maps production names to extra body
         content, and extra imports.
+
+        The "commit_points" list names productions that, once parsed, the
+        parser never backtracks into, so memoized results for earlier
+        input can be evicted.  Names of productions that are not in the
+        grammar are ignored so that one file can customize several grammars.
     grammar_text : string -- See ../resources/jsl-19.txt.
     source_file_exists : function --
         given a java file true iff it exists under the source directory in the
         right sub-directory for the output package
     emit_java_file : function -- given unqualified name and java_source_code
         writes to a .java file in the generated source directory.
+    compile_parsers : bool -- true to generate straight-line Java parse
+        methods for each variant's ptree.
     """
 
     java_package = '%s.%s' % (_JAVA_BASE_PACKAGE, grammar_name)
@@ -265,6 +275,7 @@ def process_grammar(
 
     mixin_defs = grammar_customizations.get('mixins', {})
     custom_node_content = grammar_customizations.get("custom_node_content", {})
+    commit_points = grammar_customizations.get('commit_points', ())
     tokens_full_class_name, tokens_class_name = _split_class(
         grammar_customizations.get('tokens', '%s.Tokens' % java_package))
     postconds_full_class_name, postconds_class_name = _split_class(
@@ -1002,6 +1013,16 @@ implements NodeType<%(cn_prefix)sBaseNode, %(cn_prefix)sNodeType> {
     return IdentifierWrappers.isIdentifierWrapper(this);
   }
 
+  @Override
+  public boolean isLeftRecursive() {
+    return %(cn_prefix)sNodeTypeTables.LEFT_RECURSIVE.contains(this);
+  }
+
+  @Override
+  public boolean isCommitPoint() {
+    return %(cn_prefix)sNodeTypeTables.COMMIT_POINTS.contains(this);
+  }
+
   /** The grammar for %(cn_prefix)s nodes. */
   public static final Grammar<%(cn_prefix)sBaseNode, %(cn_prefix)sNodeType> GRAMMAR =
       GrammarImpl.INSTANCE;
@@ -1216,6 +1237,168 @@ implements NodeType<%(cn_prefix)sBaseNode, %(cn_prefix)sNodeType> {
                 print '\t%s.%s -> %r' % (pn, vn, lcs)
         print
 
+    # The parser only does left-recursion bookkeeping for productions that
+    # might be reached from themselves without consuming input, so this has
+    # to be conservative.  Unlike find_left_recursion above, it looks through
+    # negative lookaheads and builtins, which might not consume input, and
+    # does not stop at the first left call found.
+    def compute_may_left_recurse():
+        calls_at_start = {}
+
+        def add_start_calls(pts, out):
+            # Returns whether pts might match without consuming input.
+            for pt in pts:
+                ptn = pt['name']
+                if ptn == 'ref':
+                    name = pt['pleaf'][0]
+                    if name in BUILTINS:
+                        continue
+                    out.add(name)
+                    if name not in empty_matching:
+                        return False
+                elif ptn == 'lit':
+                    if pt['pleaf'][0] != '':
+                        return False
+                elif ptn == '()':
+                    if not add_start_calls(pt['ptree'], out):
+                        return False
+                elif ptn in ('[]', '{}', 'nla'):
+                    add_start_calls(pt['ptree'], out)
+                else:
+                    raise Exception('Unexpected ptree %r' % ptn)
+            return True
+
+        def find_start_calls(_, p, v):
+            add_start_calls(
+                v['ptree'], calls_at_start.setdefault(p['name'], set()))
+        for_each_variant(find_start_calls)
+
+        may_left_recurse = set()
+        for pn in prods_by_name:
+            reached = set()
+            unprocessed = list(calls_at_start.get(pn, ()))
+            while unprocessed:
+                callee = unprocessed.pop()
+                if callee in reached:
+                    continue
+                reached.add(callee)
+                unprocessed.extend(calls_at_start.get(callee, ()))
+            if pn in reached:
+                may_left_recurse.add(pn)
+        return may_left_recurse
+
+    may_left_recurse = compute_may_left_recurse()
+
+    # Compute, for each variant, the set of characters that can start a string
+    # it matches so that the parser can skip variants that cannot match at the
+    # current position without entering them.
+    # This is an over-approximation.  A variant that can match the empty string
+    # gets no lookahead since what follows it is not known until runtime.
+    # While growing the seed of a left-recursive production, the left-recursive
+    # call matches the empty string, so the parser does not use these sets at
+    # an index where a seed is growing.
+    def compute_first_sets():
+        first_any = 'any'
+        first_non_ascii = 'non-ascii'
+        ident_start = frozenset(
+            [chr(c) for c in xrange(0, 0x80) if _is_ident_start(chr(c))]
+            + [first_non_ascii])
+        digits = frozenset('0123456789')
+        # The characters that can start the builtin for a production.
+        builtin_firsts = {
+            'Identifier': ident_start,
+            'IdentifierChars': ident_start,
+            'IntegerLiteral': digits,
+            'FloatingPointLiteral': digits | frozenset('.'),
+            'CharacterLiteral': frozenset("'"),
+            'StringLiteral': frozenset('"'),
+        }
+        # Builtins that look back at ignorable tokens instead of consuming
+        # input.
+        lookbehind_builtins = ('JavaDocComment',)
+
+        firsts = {}
+        # Start from empty_matching and iterate to a fixed point.
+        nullable = set(empty_matching)
+        for_each_prod(lambda c, p: assignforlambda(firsts, p['name'], set()))
+
+        def first_of(pt, pn):
+            # Returns (chars, may_be_empty).
+            name = pt['name']
+            if name == 'lit':
+                text = pt['pleaf'][0][1:-1]
+                if text == '':
+                    return (frozenset(), True)
+                if text == '.':
+                    # MagicDotIdentifierHandler may re-parse ("." Identifier)
+                    # by borrowing a dot from already parsed names.
+                    return (frozenset([first_any]), False)
+                return (frozenset(text[0]), False)
+            if name == 'ref':
+                target = pt['pleaf'][0]
+                if target == 'builtin':
+                    if pn in lookbehind_builtins:
+                        return (frozenset(), True)
+                    if pn in builtin_firsts:
+                        return (builtin_firsts[pn], False)
+                if target in BUILTINS:
+                    return (frozenset([first_any]), False)
+                return (frozenset(firsts[target]), target in nullable)
+            if name == '()':
+                return first_of_seq(pt['ptree'], pn)
+            if name in ('[]', '{}'):
+                return (first_of_seq(pt['ptree'], pn)[0], True)
+            if name == 'nla':
+                # Lookahead consumes no input.
+                return (frozenset(), True)
+            raise Exception(name)
+
+        def first_of_seq(pts, pn):
+            chars = set()
+            for pt in pts:
+                pt_chars, pt_empty = first_of(pt, pn)
+                chars.update(pt_chars)
+                if not pt_empty:
+                    return (chars, False)
+            return (chars, True)
+
+        changed = True
+        while changed:
+            changed = False
+            for p in prods_by_name.itervalues():
+                pn = p['name']
+                for v in p['variants']:
+                    chars, empty = first_of_seq(v['ptree'], pn)
+                    if not chars.issubset(firsts[pn]):
+                        firsts[pn].update(chars)
+                        changed = True
+                    if empty and pn not in nullable:
+                        nullable.add(pn)
+                        changed = True
+
+        variant_firsts = {}
+        def compute_variant_first(_, p, v):
+            chars, empty = first_of_seq(v['ptree'], p['name'])
+            if empty or first_any in chars:
+                la1 = None
+            else:
+                la1 = (
+                    ''.join(sorted(c for c in chars if c != first_non_ascii)),
+                    first_non_ascii in chars)
+            variant_firsts[(p['name'], v['name'])] = la1
+        for_each_variant(compute_variant_first)
+        return variant_firsts
+
+    # Maps (prod_name, variant_name) to None or a pair of
+    # (ascii_chars, may_start_with_non_ascii).
+    variant_firsts = compute_first_sets()
+
+    if verbose:
+        print '\nVARIANT FIRSTS'
+        for ((pn, vn), la1) in sorted(variant_firsts.iteritems()):
+            print '\t%s.%s -> %r' % (pn, vn, la1)
+        print
+
     if dot_out is not None:
         def write_dot():
             prod_name_to_referents = {}
@@ -1301,6 +1484,141 @@ implements NodeType<%(cn_prefix)sBaseNode, %(cn_prefix)sNodeType> {
             ), extra_imports
         )
 
+    def compute_identifier_wrappers():
+        wrappers = set(('Identifier',))
+        def find_wrapper(c, p):
+            variants = p['variants']
+            if len(variants) == 1:
+                v = variants[0]
+                pt = v['ptree']
+                if len(pt) == 1:
+                    pt0 = pt[0]
+                    if pt0['name'] == 'ref' and pt0['pleaf'][0] == 'Identifier':
+                        wrappers.add(p['name'])
+
+        for_each_prod(find_wrapper)
+        return wrappers
+
+    identifier_wrappers = compute_identifier_wrappers()
+
+    # The ptree factories in com.mikesamuel.cil.ptree simplify as they build.
+    # To compile a variant, we first apply the same simplifications so that
+    # the compiled code has exactly the structure of the interpreted ptree.
+    # Simplified ptrees are tuples:
+    #   ('cat', (el, ...))    -- Concatenation
+    #   ('alt', (el, ...))    -- Alternation
+    #   ('rep', body)         -- Repetition
+    #   ('la', valence, body) -- Lookahead
+    #   ('magic', (el, ...))  -- MagicDotIdentifierHandler
+    #   ('lit', text, ignore_merge_hazards, ln, co, ci) -- Literal
+    #   ('ref', prod_name)    -- Reference
+    #   ('tok', field_name)   -- A ParSer from the tokens class
+    empty_pt = ('cat', ())
+    null_pt = ('alt', ())
+
+    def is_option_pt(spt):
+        return spt[0] == 'alt' and len(spt[1]) != 0 and spt[1][-1] == empty_pt
+
+    def alt_of(els):
+        flat = []
+        for el in els:
+            if el[0] == 'alt':
+                flat.extend(el[1])
+            else:
+                flat.append(el)
+        if len(flat) == 0:
+            return null_pt
+        if len(flat) == 1:
+            return flat[0]
+        return ('alt', tuple(flat))
+
+    def magic_of(els):
+        if null_pt in els:
+            return null_pt
+        return ('magic', tuple(els))
+
+    def flatten_cat_onto(flat, els):
+        for el in els:
+            if el[0] in ('cat', 'magic'):
+                flatten_cat_onto(flat, el[1])
+            elif el[0] == 'ref' and el[1] in identifier_wrappers:
+                # Mirrors the grouping of ("." Identifier) in Concatenation.
+                maybe_dot_index = len(flat) - 1
+                while (maybe_dot_index >= 0
+                       and (flat[maybe_dot_index][0] == 'rep'
+                            or is_option_pt(flat[maybe_dot_index]))):
+                    maybe_dot_index -= 1
+                if (maybe_dot_index >= 0
+                    and flat[maybe_dot_index][0] == 'lit'
+                    and flat[maybe_dot_index][1] == '.'):
+                    magic = magic_of(flat[maybe_dot_index:] + [el])
+                    del flat[maybe_dot_index:]
+                    flat.append(magic)
+                else:
+                    flat.append(el)
+            else:
+                flat.append(el)
+
+    def cat_of(els):
+        flat = []
+        flatten_cat_onto(flat, els)
+        if null_pt in flat:
+            return null_pt
+        if len(flat) == 0:
+            return empty_pt
+        if len(flat) == 1:
+            return flat[0]
+        return ('cat', tuple(flat))
+
+    def rep_of(body):
+        if body in (empty_pt, null_pt) or body[0] == 'la':
+            return empty_pt
+        if body[0] == 'rep':
+            return body
+        if is_option_pt(body):
+            return rep_of(alt_of(body[1][:-1]))
+        return ('rep', body)
+
+    def la_of(valence, body):
+        la_valence = valence
+        if body[0] == 'la':
+            if body[1] == 'NEGATIVE':
+                la_valence = la_valence == 'NEGATIVE' and 'POSITIVE' or 'NEGATIVE'
+            body = body[2]
+        if body == empty_pt or is_option_pt(body):
+            return valence == 'NEGATIVE' and null_pt or empty_pt
+        if body == null_pt:
+            return valence == 'NEGATIVE' and empty_pt or null_pt
+        return ('la', la_valence, body)
+
+    def simplify_ptree(prod, pt):
+        name = pt['name']
+        if 'ptree' in pt:
+            els = [simplify_ptree(prod, child) for child in pt['ptree']]
+            body = cat_of(els)
+            if name == '[]':
+                return alt_of([body, empty_pt])
+            if name == '{}':
+                return rep_of(body)
+            if name == 'nla':
+                return la_of('NEGATIVE', body)
+            return body
+        (leaf_text, (leaf_ln, leaf_co, leaf_ci)) = pt['pleaf']
+        if name == 'ref':
+            if leaf_text in BUILTINS:
+                return ('tok', _camel_to_underscores(prod['name']))
+            return ('ref', leaf_text)
+        text = leaf_text[1:-1]
+        if text == '':
+            return empty_pt
+        ignore_merge_hazards = (
+            text == '>' and prod['name'] in ('TypeArguments', 'TypeParameters'))
+        return ('lit', text, ignore_merge_hazards, leaf_ln, leaf_co, leaf_ci)
+
+    # (node_class_name, variant_name, simplified_ptree) for each variant in
+    # the order of their indices into the compiled parser's switch.
+    compiled_variants = []
+
     mixins_used = set()
 
     # For each production, produce a Node subclass.
@@ -1313,6 +1631,7 @@ implements NodeType<%(cn_prefix)sBaseNode, %(cn_prefix)sNodeType> {
         extra_imports = set((
             'com.mikesamuel.cil.ast.NodeI',
             'com.mikesamuel.cil.ast.meta.MetadataBridge',
+            'com.mikesamuel.cil.parser.Lookahead1',
             'com.mikesamuel.cil.parser.ParSer',
             'com.mikesamuel.cil.parser.ParSerable',
             'com.mikesamuel.cil.ptree.PTree',
@@ -1361,6 +1680,30 @@ implements NodeType<%(cn_prefix)sBaseNode, %(cn_prefix)sNodeType> {
     }
 ''' % { 'node_class_name': node_class_name }
 
+        # Index of this production's first variant in the compiled parser.
+        compiled_index = len(compiled_variants)
+        if compile_parsers:
+            for v in variants:
+                compiled_variants.append((
+                    node_class_name, v['name'],
+                    simplify_ptree(prod, { 'name': None, 'ptree': v['ptree'] })))
+            compiled_parser_field = '''
+    private final ParSer compiledParSer;'''
+            compiled_parser_init = '''
+      this.compiledParSer = new %(cn_prefix)sCompiledParSer(
+          parSerable, %(compiled_index)d + ordinal());''' % {
+              'cn_prefix': cn_prefix,
+              'compiled_index': compiled_index,
+          }
+            compiled_parser_getter = '''
+    @Override
+    public ParSer getCompiledParSer() { return compiledParSer; }
+'''
+        else:
+            compiled_parser_field = ''
+            compiled_parser_init = ''
+            compiled_parser_getter = ''
+
         def create_variant_members():
             variant_code = []
             prod_matches_empty = prod['name'] in empty_matching
@@ -1419,13 +1762,24 @@ implements NodeType<%(cn_prefix)sBaseNode, %(cn_prefix)sNodeType> {
                                 '      }\n'
                             ) % override)
 
+                la1 = variant_firsts[(prod['name'], v['name'])]
+                if la1 is None:
+                    la1_code = 'null'
+                else:
+                    la1_chars, la1_non_ascii = la1
+                    la1_code = 'Lookahead1.of(%s, %s)' % (
+                        _java_str_lit(la1_chars),
+                        la1_non_ascii and 'true' or 'false')
+
                 variant_code.append(
                     (
                         '    /** */\n'
-                        '    %(variant_name)s(%(ptree)s)%(overrides)s,'
+                        '    %(variant_name)s(%(ptree)s,\n'
+                        '        %(la1)s)%(overrides)s,'
                     ) % {
                         'variant_name': v['name'],
                         'ptree': ptree_builder,
+                        'la1': la1_code,
                         'overrides': (
                             overridden_methods
                             and '{\n%s    }' % '\n'.join(overridden_methods)
@@ -1582,13 +1936,18 @@ public final class %(node_class_name)s extends %(base_node_class)s%(mixin_ifaces
     ;
 
     private final ParSerable parSerable;
+    private final Lookahead1 lookahead1;%(compiled_parser_field)s
 
-    Variant(ParSerable parSerable) {
+    Variant(ParSerable parSerable, Lookahead1 lookahead1) {
       this.parSerable = parSerable;
+      this.lookahead1 = lookahead1;%(compiled_parser_init)s
     }
 
     @Override
     public ParSer getParSer() { return parSerable.getParSer(); }
+%(compiled_parser_getter)s
+    @Override
+    public Lookahead1 getLookahead1() { return lookahead1; }
 
     @Override
     public %(cn_prefix)sNodeType getNodeType() { return %(cn_prefix)sNodeType.%(name)s; }
@@ -1618,10 +1977,316 @@ public final class %(node_class_name)s extends %(base_node_class)s%(mixin_ifaces
     'copy_code': '\n'.join(copy_code),
     'mixin_ifaces': mixin_ifaces,
     'build_node_calls': build_node_calls,
+    'compiled_parser_field': compiled_parser_field,
+    'compiled_parser_init': compiled_parser_init,
+    'compiled_parser_getter': compiled_parser_getter,
     })
 
     for_each_prod(write_node_class_for_production)
 
+    def write_compiled_parser():
+        fields = []  # Java field declarations in Bodies
+        field_names = {}  # Maps leaf ptrees to field names
+        methods = []  # Java method declarations in Bodies
+
+        def field_for(spt):
+            """
+            The name of a static field that holds a ParSer for a leaf or for
+            a ptree that is better interpreted.
+            """
+            name = field_names.get(spt)
+            if name is not None:
+                return name
+            kind = spt[0]
+            if kind == 'ref':
+                name = 'REF_%s' % spt[1]
+                init = '%sNodeType.%s.getParSer()' % (cn_prefix, spt[1])
+            elif kind == 'tok':
+                name = 'TOK_%s' % spt[1]
+                init = '%s.%s.getParSer()' % (tokens_class_name, spt[1])
+            else:
+                name = '%s_%d' % (
+                    kind == 'lit' and 'LIT' or 'PTREE', len(field_names))
+                init = '%s\n        .getParSer()' % builder_for(spt, '    ')
+            field_names[spt] = name
+            fields.append(
+                '    private static final ParSer %s =\n        %s;' % (
+                    name, init))
+            return name
+
+        def builder_for(spt, prefix):
+            """
+            A PTree.builder expression that the ptree factories simplify to
+            spt.
+            """
+            prefix_plus = '    %s' % prefix
+            kind = spt[0]
+            if kind == 'lit':
+                (_, text, ignore_merge_hazards, ln, co, ci) = spt
+                return (
+                    '\n%(pp)sPTree.builder(PTree.Kind.LITERAL)'
+                    '\n%(pp)s    .leaf(%(text)s%(hazard)s, %(ln)d, %(co)d, %(ci)d)'
+                    '\n%(pp)s.build()'
+                ) % {
+                    'pp': prefix_plus,
+                    'text': _java_str_lit(text),
+                    'hazard': ignore_merge_hazards and ', true' or '',
+                    'ln': ln,
+                    'co': co,
+                    'ci': ci,
+                }
+            if kind == 'ref':
+                child = '%sNodeType.%s' % (cn_prefix, spt[1])
+                return (
+                    '\n%(pp)sPTree.builder(PTree.Kind.REFERENCE)'
+                    '\n%(pp)s.add(%(child)s)'
+                    '\n%(pp)s.build()'
+                ) % { 'pp': prefix_plus, 'child': child }
+            if kind == 'tok':
+                child = '%s.%s' % (tokens_class_name, spt[1])
+                return (
+                    '\n%(pp)sPTree.builder(PTree.Kind.REFERENCE)'
+                    '\n%(pp)s.add(%(child)s)'
+                    '\n%(pp)s.build()'
+                ) % { 'pp': prefix_plus, 'child': child }
+            if kind in ('cat', 'magic'):
+                ptree_kind, children = 'SEQUENCE', spt[1]
+            elif kind == 'alt':
+                ptree_kind, children = 'ALTERNATION', spt[1]
+            elif kind == 'rep':
+                ptree_kind, children = 'REPEATED', (spt[1],)
+            elif kind == 'la':
+                ptree_kind, children = 'NEGATIVE_LOOKAHEAD', (spt[2],)
+                if spt[1] == 'POSITIVE':
+                    # A negative lookahead of a negative lookahead.
+                    children = (('la', 'NEGATIVE', spt[2]),)
+            else:
+                raise Exception(repr(spt))
+            return (
+                '\n%(pp)sPTree.builder(PTree.Kind.%(kind)s)%(adds)s'
+                '\n%(pp)s.build()'
+            ) % {
+                'pp': prefix_plus,
+                'kind': ptree_kind,
+                'adds': ''.join(
+                    '\n%s.add(%s)' % (prefix_plus, builder_for(c, prefix_plus))
+                    for c in children),
+            }
+
+        def call(spt, method_name, state, err='err', scope=''):
+            """
+            A Java expression that parses spt starting at state.
+            method_name is used if spt needs a method of its own.
+            scope qualifies names of members of Bodies.
+            """
+            kind = spt[0]
+            if spt == empty_pt:
+                return (
+                    'ParseResult.success(%s, '
+                    'ParseResult.NO_WRITE_BACK_RESTRICTION, NodeTypeSet.EMPTY)'
+                ) % state
+            if spt == null_pt:
+                return 'ParseResult.failure()'
+            if kind in ('lit', 'ref', 'tok', 'magic'):
+                return '%s%s.parse(%s, lr, %s)' % (
+                    scope, field_for(spt), state, err)
+            write_method(spt, method_name)
+            return '%s%s(%s, lr, %s)' % (scope, method_name, state, err)
+
+        def write_method(spt, method_name):
+            kind = spt[0]
+            # Subtrees that need methods get names derived from this one.
+            child_names = (
+                '%s_%d' % (method_name, i) for i in itertools.count(1))
+            body = []
+            if kind == 'cat':
+                state_param = 'start'
+                body.append(
+                    '    ParseState state = start;\n'
+                    '    NodeTypeSet lrExclusionsTriggered = NodeTypeSet.EMPTY;\n'
+                    '    int writeBack = ParseResult.NO_WRITE_BACK_RESTRICTION;\n'
+                    '    ParseResult result;')
+                for el in spt[1]:
+                    body.append(
+                        (
+                            '    result = %s;\n'
+                            '    lrExclusionsTriggered = lrExclusionsTriggered.union(\n'
+                            '        result.lrExclusionsTriggered);\n'
+                            '    if (result.synopsis == ParseResult.Synopsis.FAILURE) {\n'
+                            '      return ParseResult.failure(lrExclusionsTriggered);\n'
+                            '    }\n'
+                            '    state = result.next();\n'
+                            '    writeBack = Math.min(writeBack, result.writeBack);'
+                        ) % call(el, next(child_names), 'state'))
+                body.append(
+                    '    return ParseResult.success(\n'
+                    '        state, writeBack, lrExclusionsTriggered);')
+            elif kind == 'alt':
+                # Like Alternation, fail with the last alternative's result.
+                state_param = 'state'
+                body.append('    ParseResult result;')
+                for el in spt[1][:-1]:
+                    body.append(
+                        (
+                            '    result = %s;\n'
+                            '    if (result.synopsis == ParseResult.Synopsis.SUCCESS) {\n'
+                            '      return result;\n'
+                            '    }'
+                        ) % call(el, next(child_names), 'state'))
+                body.append(
+                    '    return %s;' % call(spt[1][-1], next(child_names), 'state'))
+            elif kind == 'rep':
+                state_param = 'start'
+                body.append(
+                    (
+                        '    ParseState state = start;\n'
+                        '    NodeTypeSet lrExclusionsTriggered = NodeTypeSet.EMPTY;\n'
+                        '    int writeBack = ParseResult.NO_WRITE_BACK_RESTRICTION;\n'
+                        '    while (true) {\n'
+                        '      ParseResult result = %s;\n'
+                        '      lrExclusionsTriggered = lrExclusionsTriggered.union(\n'
+                        '          result.lrExclusionsTriggered);\n'
+                        '      if (result.synopsis == ParseResult.Synopsis.FAILURE) {\n'
+                        '        return ParseResult.success(\n'
+                        '            state, writeBack, lrExclusionsTriggered);\n'
+                        '      }\n'
+                        '      ParseState nextState = result.next();\n'
+                        '      // Guarantee termination\n'
+                        '      if (nextState.index == state.index) {\n'
+                        '        return ParseResult.success(\n'
+                        '            state, writeBack, lrExclusionsTriggered);\n'
+                        '      }\n'
+                        '      Preconditions.checkState(nextState.index > state.index);\n'
+                        '      state = nextState;\n'
+                        '      writeBack = Math.min(writeBack, result.writeBack);\n'
+                        '    }'
+                    ) % call(spt[1], next(child_names), 'state'))
+            elif kind == 'la' and spt[1] == 'NEGATIVE':
+                state_param = 'state'
+                body.append(
+                    (
+                        '    ParseResult result = %s;\n'
+                        '    if (result.synopsis == ParseResult.Synopsis.FAILURE) {\n'
+                        '      return ParseResult.success(\n'
+                        '          state, ParseResult.NO_WRITE_BACK_RESTRICTION,\n'
+                        '          result.lrExclusionsTriggered);\n'
+                        '    }\n'
+                        '    err.expected(\n'
+                        '        state, new NegativeLookaheadMatch(result.next().index));\n'
+                        '    return ParseResult.failure(result.lrExclusionsTriggered);'
+                    ) % call(
+                        spt[2], next(child_names), 'state',
+                        err='ParseErrorReceiver.DEV_NULL'))
+            elif kind == 'la':
+                state_param = 'state'
+                body.append(
+                    (
+                        '    ParseResult result = %s;\n'
+                        '    if (result.synopsis == ParseResult.Synopsis.FAILURE) {\n'
+                        '      return result;\n'
+                        '    }\n'
+                        '    return ParseResult.success(\n'
+                        '        state, ParseResult.NO_WRITE_BACK_RESTRICTION,\n'
+                        '        result.lrExclusionsTriggered);'
+                    ) % call(spt[2], next(child_names), 'state'))
+            else:
+                raise Exception(repr(spt))
+            methods.append(
+                (
+                    '    static ParseResult %(name)s(\n'
+                    '        ParseState %(state)s, LeftRecursion lr,'
+                    ' ParseErrorReceiver err) {\n'
+                    '%(body)s\n'
+                    '    }'
+                ) % {
+                    'name': method_name,
+                    'state': state_param,
+                    'body': '\n'.join(
+                        '  %s' % line
+                        for line in '\n'.join(body).split('\n')),
+                })
+
+        cases = []
+        for (index, (node_class_name, variant_name, spt)) in enumerate(
+                compiled_variants):
+            method_name = '%s_%s' % (node_class_name[:-len('Node')], variant_name)
+            cases.append(
+                (
+                    '      case %(index)d:  // %(node_class_name)s.Variant.%(variant_name)s\n'
+                    '        return %(call)s;'
+                ) % {
+                    'index': index,
+                    'node_class_name': node_class_name,
+                    'variant_name': variant_name,
+                    'call': call(spt, method_name, 'state', scope='Bodies.'),
+                })
+
+        emit_java_file(
+            '%sCompiledParSer' % cn_prefix,
+            '''
+package %(package)s;
+
+import com.google.common.base.Preconditions;
+import com.mikesamuel.cil.parser.LeftRecursion;
+import com.mikesamuel.cil.parser.NegativeLookaheadMatch;
+import com.mikesamuel.cil.parser.NodeTypeSet;
+import com.mikesamuel.cil.parser.ParSer;
+import com.mikesamuel.cil.parser.ParSerable;
+import com.mikesamuel.cil.parser.ParseErrorReceiver;
+import com.mikesamuel.cil.parser.ParseResult;
+import com.mikesamuel.cil.parser.ParseState;
+import com.mikesamuel.cil.ptree.CompiledParSer;
+import com.mikesamuel.cil.ptree.PTree;
+import %(tokens_full_class_name)s;
+
+/**
+ * Parsers for variant bodies compiled from their ptrees.
+ * <p>
+ * Each ptree is compiled to static methods that call the parsers for
+ * literals, tokens and referenced productions directly, so the calls are
+ * monomorphic where walking the ptree makes megamorphic calls.
+ */
+@javax.annotation.Generated(%(generator)s)
+final class %(cn_prefix)sCompiledParSer extends CompiledParSer {
+  private final int variantIndex;
+
+  %(cn_prefix)sCompiledParSer(ParSerable interpreted, int variantIndex) {
+    super(interpreted);
+    this.variantIndex = variantIndex;
+  }
+
+  @Override
+  public ParseResult parse(
+      ParseState state, LeftRecursion lr, ParseErrorReceiver err) {
+    switch (variantIndex) {
+%(cases)s
+    }
+    throw new AssertionError(variantIndex);
+  }
+
+  /**
+   * Separate from the outer class so that variants can be initialized before
+   * the parsers that their bodies use.
+   */
+  private static final class Bodies {
+%(fields)s
+
+%(methods)s
+  }
+}
+''' % {
+    'package': java_package,
+    'tokens_full_class_name': tokens_full_class_name,
+    'generator': generator,
+    'cn_prefix': cn_prefix,
+    'cases': '\n'.join(cases),
+    'fields': '\n'.join(fields),
+    'methods': '\n\n'.join(methods),
+})
+
+    if compile_parsers:
+        write_compiled_parser()
+
     def write_bound_mixins():
         for mixin in mixins_used:
             super_mixins = mixin_defs[mixin].get("extends", ())
@@ -1710,18 +2375,7 @@ public final class TokenStrings {
     write_literal_tokens()
 
     def write_identifier_wrappers():
-        wrappers = set(('Identifier',))
-        def find_wrapper(c, p):
-            variants = p['variants']
-            if len(variants) == 1:
-                v = variants[0]
-                pt = v['ptree']
-                if len(pt) == 1:
-                    pt0 = pt[0]
-                    if pt0['name'] == 'ref' and pt0['pleaf'][0] == 'Identifier':
-                        wrappers.add(p['name'])
-
-        for_each_prod(find_wrapper)
+        wrappers = identifier_wrappers
 
         # TODO: maybe just add annotations instead and let it be handled in
         # NodeTypeTables.
@@ -1865,6 +2519,49 @@ final class IdentifierWrappers {
     })
 
 
+        imports.add('com.google.common.collect.ImmutableSet')
+        imports.add('com.google.common.collect.Sets')
+        imports.add('java.util.EnumSet')
+        if may_left_recurse:
+            left_recursive_set = 'EnumSet.of(%s)' % (
+                ', '.join(['%sNodeType.%s' % (cn_prefix, pn)
+                           for pn in sorted(may_left_recurse)]))
+        else:
+            left_recursive_set = 'EnumSet.noneOf(%sNodeType.class)' % cn_prefix
+        table_defs.append(
+            '''
+  /**
+   * Productions that might be reached from themselves without consuming
+   * input, so need left-recursion bookkeeping while parsing.
+   */
+  public static final ImmutableSet<%(cn_prefix)sNodeType> LEFT_RECURSIVE =
+      Sets.immutableEnumSet(%(left_recursive_set)s);
+''' % {
+    'cn_prefix': cn_prefix,
+    'left_recursive_set': left_recursive_set,
+    })
+
+        commit_point_names = sorted(
+            [pn for pn in commit_points if pn in prods_by_name])
+        if commit_point_names:
+            commit_point_set = 'EnumSet.of(%s)' % (
+                ', '.join(['%sNodeType.%s' % (cn_prefix, pn)
+                           for pn in commit_point_names]))
+        else:
+            commit_point_set = 'EnumSet.noneOf(%sNodeType.class)' % cn_prefix
+        table_defs.append(
+            '''
+  /**
+   * Productions that the parser does not backtrack into once they have
+   * been parsed, per the "commit_points" grammar customization.
+   */
+  public static final ImmutableSet<%(cn_prefix)sNodeType> COMMIT_POINTS =
+      Sets.immutableEnumSet(%(commit_point_set)s);
+''' % {
+    'cn_prefix': cn_prefix,
+    'commit_point_set': commit_point_set,
+    })
+
         import_stmts = '\n'.join(['import %s;' % cl for cl in sorted(imports)])
 
         if not table_defs:
@@ -1978,6 +2675,11 @@ if __name__ == '__main__':
         '--dotout',
         help=('Path to graphviz .dot file that receives the non-terminal graph'
         ))
+    argparser.add_argument(
+        '--compile_parsers',
+        help=('Generate ahead-of-time compiled parsers for variants instead'
+              ' of only interpreting their ptrees'),
+        action='store_true')
     argparser.add_argument(
         '-v',
         help='verbose',
@@ -2014,4 +2716,5 @@ if __name__ == '__main__':
         source_file_exists=source_file_exists,
         emit_java_file=emit_java_file,
         dot_out=args.dotout,
-        verbose=args.v)
+        verbose=args.v,
+        compile_parsers=args.compile_parsers)
@@ -174,6 +174,37 @@ public abstract class AbstractParSerTestCase extends TestCase {
   protected void parseSanityCheck(
       NodeVariant<?, ?> variant, String content, Fuzz... fuzzes) {
     parseSanityCheck(variant, input(content), fuzzes);
+    assertCompiledParseMatchesInterpreted(variant.getNodeType(), content);
+  }
+
+  /**
+   * Checks that parsing with the grammar's compiled parsers produces the same
+   * events as walking its ptrees.
+   */
+  protected void assertCompiledParseMatchesInterpreted(
+      NodeType<?, ?> nodeType, String content) {
+    ParSer parSer = PTree.complete(nodeType).getParSer();
+    Input compiledInput = input(content);
+    Input interpretedInput = Input.builder()
+        .source(getName())
+        .code(content)
+        .interpretGrammar(true)
+        .build();
+    ParseResult compiled = parSer.parse(
+        new ParseState(compiledInput), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    ParseResult interpreted = parSer.parse(
+        new ParseState(interpretedInput), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    assertEquals(content, interpreted.synopsis, compiled.synopsis);
+    if (compiled.synopsis == ParseResult.Synopsis.SUCCESS) {
+      assertEquals(
+          content,
+          ImmutableList.copyOf(
+              SList.forwardIterable(interpreted.next().output)),
+          ImmutableList.copyOf(
+              SList.forwardIterable(compiled.next().output)));
+    }
   }
 
   protected void parseSanityCheck(
@@ -21,6 +21,7 @@ import com.mikesamuel.cil.parser.LeftRecursion;
 import com.mikesamuel.cil.parser.ParseErrorReceiver;
 import com.mikesamuel.cil.parser.ParseResult;
 import com.mikesamuel.cil.parser.ParseState;
+import com.mikesamuel.cil.parser.SList;
 import com.mikesamuel.cil.parser.SourcePosition;
 
 import junit.framework.TestCase;
@@ -150,4 +151,128 @@ public final class TreesTest extends TestCase {
               }
             }));
   }
+
+  private static String treeWithPositions(J8BaseNode root) {
+    return root.toAsciiArt(
+        "",
+        new Function<NodeI<?, ?, ?>, String>() {
+          @Override
+          public String apply(@Nonnull NodeI<?, ?, ?> node) {
+            SourcePosition pos = node.getSourcePosition();
+            if (pos != null) {
+              return pos.toString();
+            }
+            return null;
+          }
+        });
+  }
+
+  @Test
+  public static final void testReversedOutputBuildsSameTreeAsEvents() {
+    String code = Joiner.on('\n').join(
+        "package foo;",
+        "/** A \\u2124 comment. */",
+        "public final class C<T> extends Object {",
+        "  /** Doc. */",
+        "  int f(int x) {",
+        "    // Not doc.",
+        "    return x.y(a.b.c, new int[] { 1, 2, }) + ~x * (x - 1);",
+        "  }",
+        "}");
+    Input input = Input.builder().source("test").code(code).build();
+    ParseResult result = J8NodeType.CompilationUnit.getParSer().parse(
+        new ParseState(input), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+    SList<Event> output = result.next().output;
+    Trees<J8BaseNode> trees = Trees.forGrammar(J8NodeType.GRAMMAR);
+    J8BaseNode fromEvents = trees.of(input, SList.forwardIterable(output));
+    J8BaseNode fromOutput = trees.of(input, output);
+    assertEquals(fromEvents, fromOutput);
+    assertEquals(treeWithPositions(fromEvents), treeWithPositions(fromOutput));
+  }
+
+  @Test
+  public static final void testVeryDeepTreeFromReversedOutput() {
+    int depth = 100000;
+    Input input = Input.builder().code("x").build();
+    SList<Event> output = null;
+    for (int i = 0; i < depth; ++i) {
+      output = SList.append(
+          output, Event.push(NumericTypeNode.Variant.IntegralType));
+    }
+    output = SList.append(output, Event.push(IdentifierNode.Variant.Builtin));
+    output = SList.append(output, Event.content("x", 0));
+    for (int i = 0; i <= depth; ++i) {
+      output = SList.append(output, Event.pop());
+    }
+    J8BaseNode node = Trees.forGrammar(J8NodeType.GRAMMAR).of(input, output);
+    for (int i = 0; i < depth; ++i) {
+      assertEquals(
+          NumericTypeNode.Variant.IntegralType, node.getVariant());
+      assertEquals(1, node.getNChildren());
+      assertEquals(0, node.getSourcePosition().startCharInFile());
+      assertEquals(1, node.getSourcePosition().endCharInFile());
+      node = node.getChild(0);
+    }
+    assertEquals("x", node.getValue());
+  }
+
+  @Test
+  public static final void testShareUnchangedVeryDeepTree() {
+    int depth = 100000;
+    J8BaseNode previous = veryDeepTree(depth, "x");
+    J8BaseNode same = veryDeepTree(depth, "x");
+    assertSame(previous, Trees.shareUnchanged(previous, same, 1));
+
+    J8BaseNode different = veryDeepTree(depth, "y");
+    assertSame(different, Trees.shareUnchanged(previous, different, 1));
+    J8BaseNode node = different;
+    for (int i = 0; i < depth; ++i) {
+      node = node.getChild(0);
+    }
+    assertEquals("y", node.getValue());
+  }
+
+  private static J8BaseNode veryDeepTree(int depth, String name) {
+    Input input = Input.builder().code(name).build();
+    SList<Event> output = null;
+    for (int i = 0; i < depth; ++i) {
+      output = SList.append(
+          output, Event.push(NumericTypeNode.Variant.IntegralType));
+    }
+    output = SList.append(output, Event.push(IdentifierNode.Variant.Builtin));
+    output = SList.append(output, Event.content(name, 0));
+    for (int i = 0; i <= depth; ++i) {
+      output = SList.append(output, Event.pop());
+    }
+    return Trees.forGrammar(J8NodeType.GRAMMAR).of(input, output);
+  }
+
+  @Test
+  public static final void testSourcePositionsOfSynthesizedNodes() {
+    Input input = Input.builder().source("test-file").code("  foo").build();
+    J8BaseNode parsed = Trees.forGrammar(J8NodeType.GRAMMAR)
+        .of(input, ImmutableList.of(
+            Event.push(IdentifierNode.Variant.Builtin),
+            Event.content("foo", 2),
+            Event.pop()));
+    SourcePosition pos = parsed.getSourcePosition();
+
+    IdentifierNode synthesized =
+        IdentifierNode.Variant.Builtin.buildNode("bar");
+    assertNull(synthesized.getSourcePosition());
+    synthesized.setSourcePosition(pos);
+    assertEquals(pos, synthesized.getSourcePosition());
+    assertEquals("test-file:1+2-5", synthesized.getSourcePosition().toString());
+    synthesized.setSourcePosition(pos.end());
+    assertEquals(5, synthesized.getSourcePosition().startCharInFile());
+    assertEquals(5, synthesized.getSourcePosition().endCharInFile());
+    synthesized.setSourcePosition(null);
+    assertNull(synthesized.getSourcePosition());
+
+    IdentifierNode copy = IdentifierNode.Variant.Builtin.buildNode("foo");
+    copy.copyMetadataFrom(parsed);
+    assertEquals(pos, copy.getSourcePosition());
+  }
 }
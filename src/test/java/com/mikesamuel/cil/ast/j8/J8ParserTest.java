@@ -0,0 +1,190 @@
+package com.mikesamuel.cil.ast.j8;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import com.mikesamuel.cil.parser.Input;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class J8ParserTest extends TestCase {
+
+  private static final ImmutableList<String> SOURCES = ImmutableList.of(
+      "/com/mikesamuel/cil/ast/j8/Tokens.java",
+      "/com/mikesamuel/cil/ast/j8/TokenScanners.java",
+      "/com/mikesamuel/cil/ast/j8/PreLexer.java",
+      "/com/mikesamuel/cil/parser/RatPack.java",
+      "/com/mikesamuel/cil/parser/Input.java",
+      "/com/mikesamuel/cil/ptree/Reference.java");
+
+  private static List<Input> inputs() throws IOException {
+    List<Input> inputs = Lists.newArrayList();
+    // Parse each source several times so that threads share the grammar
+    // while parsing the same productions.
+    for (int i = 0; i < 3; ++i) {
+      for (String source : SOURCES) {
+        inputs.add(Input.builder()
+            .source(source)
+            .code(Resources.toString(
+                Resources.getResource(J8ParserTest.class, source),
+                Charsets.UTF_8))
+            .build());
+      }
+    }
+    inputs.add(Input.builder().source("bad").code("class {").build());
+    return inputs;
+  }
+
+  @Test
+  public static void testParseAllMatchesSequentialParse() throws Exception {
+    Logger logger = Logger.getAnonymousLogger();
+    logger.setUseParentHandlers(false);
+    final List<String> messages = Lists.newArrayList();
+    logger.addHandler(new Handler() {
+      @Override
+      public void publish(LogRecord r) {
+        synchronized (messages) {
+          messages.add(r.getMessage());
+        }
+      }
+
+      @Override
+      public void flush() {
+        // Nothing buffered
+      }
+
+      @Override
+      public void close() {
+        // Nothing to release
+      }
+    });
+
+    List<Optional<J8FileNode>> sequential = Lists.newArrayList();
+    J8Parser sequentialParser = new J8Parser(logger);
+    for (Input input : inputs()) {
+      sequential.add(sequentialParser.parse(input));
+    }
+    assertEquals(1, messages.size());
+    assertTrue(messages.get(0), messages.get(0).startsWith("bad:"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Optional<J8FileNode>> parallel =
+          new J8Parser(executor, logger).parseAll(inputs());
+      assertEquals(sequential.size(), parallel.size());
+      for (int i = 0, n = sequential.size(); i < n; ++i) {
+        Optional<J8FileNode> want = sequential.get(i);
+        Optional<J8FileNode> got = parallel.get(i);
+        assertEquals(want.isPresent(), got.isPresent());
+        if (want.isPresent()) {
+          assertEquals(
+              ((J8BaseNode) want.get()).toAsciiArt(""),
+              ((J8BaseNode) got.get()).toAsciiArt(""));
+        }
+      }
+      assertFalse(parallel.get(parallel.size() - 1).isPresent());
+      assertEquals(2, messages.size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public static void testLeavesShareText() {
+    J8BaseNode root = (J8BaseNode) new J8Parser(Logger.getAnonymousLogger())
+        .parse(Input.builder()
+            .code("class C { int f(int x) { return x; } }")
+            .build())
+        .get();
+    List<String> xs = Lists.newArrayList();
+    for (IdentifierNode id : root.finder(IdentifierNode.class).find()) {
+      if ("x".equals(id.getValue())) {
+        xs.add(id.getValue());
+      }
+    }
+    assertEquals(2, xs.size());
+    assertSame(xs.get(0), xs.get(1));
+  }
+
+  @Test
+  public static void testReparseSharesUnchangedSubtrees() throws Exception {
+    String source = "/com/mikesamuel/cil/parser/RatPack.java";
+    String code = Resources.toString(
+        Resources.getResource(J8ParserTest.class, source), Charsets.UTF_8);
+    Input input = Input.builder()
+        .source(source).code(code).editable(true).build();
+    J8Parser parser = new J8Parser(Logger.getAnonymousLogger());
+    J8BaseNode previous = (J8BaseNode) parser.parse(input).get();
+
+    String name = "getCollisionCount";
+    int offset = code.indexOf(name) + name.length();
+    Input edited = input.edit(offset, 0, "s");
+    J8BaseNode reparsed = (J8BaseNode) parser.reparse(
+        edited, (J8FileNode) previous).get();
+
+    J8BaseNode fresh = (J8BaseNode) parser.parse(
+        Input.builder()
+        .source(source)
+        .code(code.substring(0, offset) + "s" + code.substring(offset))
+        .build())
+        .get();
+    assertEquals(fresh.toAsciiArt(""), reparsed.toAsciiArt(""));
+    assertNotSame(previous, reparsed);
+
+    // The package declaration and imports are shared.
+    assertTrue(reparsed.getNChildren() > 1);
+    assertSame(previous.getChild(0), reparsed.getChild(0));
+    // The class declaration spans the edit.
+    J8BaseNode previousClass = previous.getChild(
+        previous.getNChildren() - 1);
+    J8BaseNode reparsedClass = reparsed.getChild(
+        reparsed.getNChildren() - 1);
+    assertNotSame(previousClass, reparsedClass);
+    assertEquals(
+        previousClass.getSourcePosition().startCharInFile(),
+        reparsedClass.getSourcePosition().startCharInFile());
+  }
+
+  private static void assertReparseMatchesFreshParse(
+      String code, int offset, int removedLength, String inserted) {
+    Input input = Input.builder()
+        .source("before").code(code).editable(true).build();
+    J8Parser parser = new J8Parser(Logger.getAnonymousLogger());
+    J8FileNode previous = parser.parse(input).get();
+    Input edited = input.edit(offset, removedLength, inserted);
+    J8BaseNode reparsed = (J8BaseNode) parser.reparse(edited, previous).get();
+
+    String editedCode = code.substring(0, offset) + inserted
+        + code.substring(offset + removedLength);
+    J8BaseNode fresh = (J8BaseNode) parser.parse(
+        Input.builder().source("fresh").code(editedCode).build())
+        .get();
+    assertEquals(editedCode, fresh.toAsciiArt(""), reparsed.toAsciiArt(""));
+  }
+
+  @Test
+  public static void testReparseAfterEditHidesJavaDoc() {
+    String code = "class C { int x; /** doc */ void f() {} }";
+    // The JavaDoc comment becomes part of a block comment that starts
+    // right after the token that the method's lookback found before it.
+    assertReparseMatchesFreshParse(code, code.indexOf(';') + 1, 0, "/*");
+    // Or one that starts before that token.
+    assertReparseMatchesFreshParse(code, code.indexOf("int"), 0, "/*");
+    // Removing the block comment reveals the JavaDoc comment again.
+    String hidden = "class C { int x;/* /** doc */ void f() {} }";
+    assertReparseMatchesFreshParse(hidden, hidden.indexOf("/*"), 2, "");
+  }
+}
@@ -0,0 +1,116 @@
+package com.mikesamuel.cil.ast.j8;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.LeftRecursion;
+import com.mikesamuel.cil.parser.ParseErrorReceiver;
+import com.mikesamuel.cil.parser.ParseResult;
+import com.mikesamuel.cil.parser.ParseState;
+import com.mikesamuel.cil.parser.SList;
+import com.mikesamuel.cil.parser.TokenTable;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class PreLexerTest extends TestCase {
+
+  private static Input preLexed(String code) {
+    return Input.builder()
+        .source("PreLexerTest")
+        .code(code)
+        .preLex(PreLexer.LEXER)
+        .build();
+  }
+
+  private static ImmutableList<String> tokenTexts(Input input) {
+    TokenTable tokens = input.getTokenTable();
+    assertNotNull(tokens);
+    CharSequence content = input.content();
+    ImmutableList.Builder<String> b = ImmutableList.builder();
+    for (int i = 0, n = tokens.size(); i < n; ++i) {
+      assertEquals(i, tokens.tokenAt(tokens.start(i)));
+      b.add(content.subSequence(tokens.start(i), tokens.end(i)).toString());
+    }
+    return b.build();
+  }
+
+  @Test
+  public static void testTokenBoundaries() {
+    assertEquals(
+        ImmutableList.of(
+            "x", ">>>=", "0x1.8p-3d", "+", ".5f", "-", "1_000L", ";",
+            "List", "<", "List", "<", "T", ">>", "l", "=", "\"a'b\"", "+",
+            "'\\''", ";", "if", "iff", "instanceof", "\u00e9", "..."),
+        tokenTexts(preLexed(
+            "x >>>= 0x1.8p-3d+.5f-1_000L; /* comment */\n"
+            + "List<List<T>> l = \"a'b\"+'\\''; // comment\n"
+            + "if iff instanceof \u00e9...")));
+  }
+
+  @Test
+  public static void testNextTokenIndex() {
+    Input input = preLexed("  a /* b */ c  ");
+    TokenTable tokens = input.getTokenTable();
+    assertEquals(2, tokens.size());
+    assertEquals(0, tokens.tokenAt(2));
+    assertEquals(TokenTable.NO_TOKEN, tokens.tokenAt(3));
+    assertEquals(12, tokens.indexAfterIgnorablesFollowing(0));
+    assertEquals(15, tokens.indexAfterIgnorablesFollowing(1));
+  }
+
+  @Test
+  public static void testTextIds() {
+    TokenTable tokens = preLexed("int integer >>").getTokenTable();
+    assertEquals(PreLexer.textId("int"), tokens.textId(0));
+    assertEquals(TokenTable.NO_TEXT_ID, tokens.textId(1));
+    assertEquals(PreLexer.textId(">>"), tokens.textId(2));
+    assertEquals(TokenTable.NO_TEXT_ID, PreLexer.textId("integer"));
+  }
+
+  @Test
+  public static void testTemplatesAreNotPreLexed() {
+    Input input = Input.builder()
+        .code("int x = (%y);")
+        .allowNonStandardProductions(true)
+        .preLex(PreLexer.LEXER)
+        .build();
+    assertNull(input.getTokenTable());
+  }
+
+  private static List<Event> parseEvents(Input input) {
+    ParseResult result = J8NodeType.CompilationUnit.getParSer().parse(
+        new ParseState(input), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+    return Lists.newArrayList(SList.forwardIterable(result.next().output));
+  }
+
+  private static void assertSameParse(String sourceFileRelPath)
+      throws IOException {
+    String code = Resources.toString(
+        Resources.getResource(PreLexerTest.class, sourceFileRelPath),
+        Charsets.UTF_8);
+    List<Event> want = parseEvents(
+        Input.builder().source(sourceFileRelPath).code(code).build());
+    List<Event> got = parseEvents(
+        Input.builder().source(sourceFileRelPath).code(code)
+        .preLex(PreLexer.LEXER).build());
+    assertEquals(sourceFileRelPath, want, got);
+  }
+
+  @Test
+  public static void testSameParseAsScannerless() throws IOException {
+    assertSameParse("/com/mikesamuel/cil/ast/j8/Tokens.java");
+    assertSameParse("/com/mikesamuel/cil/ast/j8/TokenScanners.java");
+    assertSameParse("/com/mikesamuel/cil/parser/RatPack.java");
+  }
+}
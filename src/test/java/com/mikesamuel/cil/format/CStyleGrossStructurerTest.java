@@ -1,9 +1,13 @@
 package com.mikesamuel.cil.format;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
 import com.mikesamuel.cil.ast.NodeVariant;
 import com.mikesamuel.cil.ast.j8.J8NodeType;
 import com.mikesamuel.cil.format.java.Java8Formatters;
@@ -46,6 +50,75 @@ public final class CStyleGrossStructurerTest extends TestCase {
   }
 
 
+  @Test
+  public void testSeveralTypes() throws Exception {
+    assertReformattedJava(
+        ""
+        + "package foo;\n"
+        + "import java.util.List;\n"
+        + "import java.util.Map;\n"
+        + "class A {}\n"
+        + "/** B */\n"
+        + "interface B {\n"
+        + "  void f(int a, int b, int c, int d,\n"
+        + "      int e);\n"
+        + "};\n"
+        + "enum E { X, Y, }",
+        ""
+        + "package foo; import java.util.List; import java.util.Map;"
+        + " class A {} /** B */ interface B {"
+        + " void f(int a, int b, int c, int d, int e); } ;"
+        + " enum E { X, Y, }");
+  }
+
+  @Test
+  public void testBlockThatOverflowedOneLineRoot() throws Exception {
+    // The enum would fit on its own line, but it is where the attempt to fit
+    // everything on one line failed.
+    assertReformattedJava(
+        ""
+        + "package foo;\n"
+        + "enum Stage {\n"
+        + "  AAA, BBB, CCC, DDD,\n"
+        + "}",
+        "package foo; enum Stage { AAA, BBB, CCC, DDD, }");
+  }
+
+  @Test
+  public void testStreamedOutputIsWrittenBeforeFinish() throws Exception {
+    Formatter<SList<NodeVariant<?, ?>>> formatter =
+        Java8Formatters.createFormatter();
+    formatter.setSoftColumnLimit(40);
+    StringBuilder out = new StringBuilder();
+    formatter.streamTo(out, null);
+    String[] tokens = {
+        "class", "Alpha", "{", "int", "x", ";", "}",
+        "class", "Beta", "{", "int", "y", ";", "}",
+        "class", "C", "{", "}",
+    };
+    for (String token : tokens) {
+      formatter.token(token);
+    }
+    // Once the third class starts, the first two are known not to fit on one
+    // line, so they are written.
+    assertEquals(
+        ""
+        + "class Alpha { int x; }\n"
+        + "class Beta {\n"
+        + "  int y;\n"
+        + "}",
+        out.toString());
+    formatter.finish();
+    String want = ""
+        + "class Alpha { int x; }\n"
+        + "class Beta {\n"
+        + "  int y;\n"
+        + "}\n"
+        + "class C {}";
+    assertEquals(want, out.toString());
+    assertFormattedJava(want, tokens);
+  }
+
   @Test
   public void testSimpleClass() throws Exception {
     assertReformattedJava("class C {}", "class C {}");
@@ -144,12 +217,40 @@ public final class CStyleGrossStructurerTest extends TestCase {
             result.next().output));
         FormattedSource code = Unparse.format(v, formatter);
         assertEquals(input, want, code.code);
+        assertStreamedSame(v, code);
         break;
       default:
         fail(result.synopsis.name());
     }
   }
 
+  private static void assertStreamedSame(
+      Unparse.Verified v, FormattedSource formatted)
+  throws IOException {
+    Formatter<SList<NodeVariant<?, ?>>> formatter =
+        Java8Formatters.createFormatter();
+    formatter.setSoftColumnLimit(40);
+    StringWriter out = new StringWriter();
+    final List<String> entries = Lists.newArrayList();
+    Unparse.formatTo(v, formatter, out, new PositionMapping.Receiver() {
+      @Override
+      public void entry(PositionMapping.Entry e) {
+        entries.add(entryToString(e));
+      }
+    });
+    assertEquals(formatted.code, out.toString());
+    List<String> want = Lists.newArrayList();
+    for (PositionMapping.Entry e : formatted.positionMapping.entries) {
+      want.add(entryToString(e));
+    }
+    assertEquals(want, entries);
+  }
+
+  private static String entryToString(PositionMapping.Entry e) {
+    return e.positionInOriginal + " -> "
+        + e.startIndexInDerived + ":" + e.endIndexInDerived;
+  }
+
   private static void assertFormattedJava(String want, String... tokens) {
     Formatter<SList<NodeVariant<?, ?>>> formatter =
         Java8Formatters.createFormatter();
@@ -161,6 +262,17 @@ public final class CStyleGrossStructurerTest extends TestCase {
      assertEquals(
          Arrays.toString(tokens),
          want, code.code);
+
+     Formatter<SList<NodeVariant<?, ?>>> streaming =
+         Java8Formatters.createFormatter();
+     streaming.setSoftColumnLimit(40);
+     StringBuilder out = new StringBuilder();
+     streaming.streamTo(out, null);
+     for (String token : tokens) {
+       streaming.token(token);
+     }
+     streaming.finish();
+     assertEquals(Arrays.toString(tokens), want, out.toString());
   }
 
 }
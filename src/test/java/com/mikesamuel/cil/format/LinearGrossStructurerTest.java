@@ -0,0 +1,207 @@
+package com.mikesamuel.cil.format;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.mikesamuel.cil.ast.NodeVariant;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.format.java.Java8Formatters;
+import com.mikesamuel.cil.parser.Input;
+import com.mikesamuel.cil.parser.LeftRecursion;
+import com.mikesamuel.cil.parser.ParSerable;
+import com.mikesamuel.cil.parser.ParseErrorReceiver;
+import com.mikesamuel.cil.parser.ParseResult;
+import com.mikesamuel.cil.parser.ParseState;
+import com.mikesamuel.cil.parser.SList;
+import com.mikesamuel.cil.parser.Unparse;
+import com.mikesamuel.cil.ptree.PTree;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class LinearGrossStructurerTest extends TestCase {
+
+  @Test
+  public void testEmptyCompilationUnit() throws Exception {
+    assertReformattedJava("", "");
+  }
+
+  @Test
+  public void testSimpleClass() throws Exception {
+    assertReformattedJava("class C {}", "class C {}");
+  }
+
+  @Test
+  public void testPackageThenClass() throws Exception {
+    assertReformattedJava(
+        ""
+        + "package foo.bar;\n"
+        + "interface I extends Runnable {}");
+  }
+
+  @Test
+  public void testTypeParameters() throws Exception {
+    assertReformattedJava(
+        ""
+        + "class Bar {\n"
+        + "  static class T {}\n"
+        + "  static <P extends T, T> void f() {}\n"
+        + "}");
+  }
+
+  @Test
+  public void testCommaWrapping() throws Exception {
+    assertReformattedJava(
+        ""
+        + "{\n"
+        + "  0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11,\n"
+        + "  12, 13, 14, 15,\n"
+        + "}",
+        "{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, }",
+       J8NodeType.ArrayInitializer);
+  }
+
+  @Test
+  public void testBlockThatFitsOnceParentIsBroken() throws Exception {
+    // CStyleGrossStructurer breaks the enum body since that is where the
+    // attempt to fit everything on one line failed.
+    assertReformattedJava(
+        ""
+        + "package foo;\n"
+        + "enum Stage { AAA, BBB, CCC, DDD, }",
+        "package foo; enum Stage { AAA, BBB, CCC, DDD, }");
+  }
+
+  @Test
+  public void testNestedBlocks() throws Exception {
+    assertReformattedJava(
+        ""
+        + "class C {\n"
+        + "  int x = f(g(1, 2, 3, 4, 5, 6, 7, 8),\n"
+        + "      h(1, 2));\n"
+        + "}",
+        "class C { int x = f(g(1, 2, 3, 4, 5, 6, 7, 8), h(1, 2)); }");
+  }
+
+  @Test
+  public static void testLineCommentBreaksBlock() {
+    assertFormattedJava(
+        ""
+        + "{\n"
+        + "  // Hi\n"
+        + "  x\n"
+        + "}",
+        "{", "// Hi", "x", "}");
+  }
+
+  @Test
+  public static void testDeeplyNestedParentheses() {
+    int depth = 10000;
+    String[] tokens = new String[depth * 2 + 1];
+    for (int i = 0; i < depth; ++i) {
+      tokens[i] = "(";
+      tokens[depth * 2 - i] = ")";
+    }
+    tokens[depth] = "x";
+    Formatter<SList<NodeVariant<?, ?>>> formatter =
+        Java8Formatters.createLinearFormatter();
+    for (String token : tokens) {
+      formatter.token(token);
+    }
+    String code = formatter.format().code;
+    assertEquals(
+        Strings.repeat("(", depth) + "x" + Strings.repeat(")", depth),
+        code.replaceAll("\\s", ""));
+  }
+
+  @Test
+  public static void testStreamedOutputIsWrittenBeforeFinish() {
+    Formatter<SList<NodeVariant<?, ?>>> formatter =
+        Java8Formatters.createLinearFormatter();
+    formatter.setSoftColumnLimit(40);
+    StringBuilder out = new StringBuilder();
+    formatter.streamTo(out, null);
+    String[] tokens = {
+        "class", "Alpha", "{", "int", "x", ";", "}",
+        "class", "Beta", "{", "int", "y", ";", "}",
+        "class", "C", "{", "}",
+    };
+    for (String token : tokens) {
+      formatter.token(token);
+    }
+    assertEquals(
+        ""
+        + "class Alpha { int x; }\n"
+        + "class Beta { int y; }",
+        out.toString());
+    formatter.finish();
+    String want = ""
+        + "class Alpha { int x; }\n"
+        + "class Beta { int y; }\n"
+        + "class C {}";
+    assertEquals(want, out.toString());
+    assertFormattedJava(want, tokens);
+  }
+
+  private void assertReformattedJava(String canon)
+  throws Exception {
+    assertReformattedJava(canon, canon, J8NodeType.CompilationUnit);
+  }
+
+  private void assertReformattedJava(String want, String input)
+  throws Exception {
+    assertReformattedJava(want, input, J8NodeType.CompilationUnit);
+  }
+
+  private void assertReformattedJava(String want, String input, ParSerable ps)
+  throws Exception {
+    Input inp = Input.builder().source(getName()).code(input).build();
+    ParseResult result = PTree.complete(ps).getParSer().parse(
+        new ParseState(inp), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    switch (result.synopsis) {
+      case SUCCESS:
+        Formatter<SList<NodeVariant<?, ?>>> formatter =
+           Java8Formatters.createLinearFormatter();
+        formatter.setSoftColumnLimit(40);
+        Unparse.Verified v = Unparse.verify(SList.forwardIterable(
+            result.next().output));
+        FormattedSource code = Unparse.format(v, formatter);
+        assertEquals(input, want, code.code);
+
+        Formatter<SList<NodeVariant<?, ?>>> streaming =
+            Java8Formatters.createLinearFormatter();
+        streaming.setSoftColumnLimit(40);
+        StringBuilder out = new StringBuilder();
+        Unparse.formatTo(v, streaming, out, null);
+        assertEquals(input, want, out.toString());
+        break;
+      default:
+        fail(result.synopsis.name());
+    }
+  }
+
+  private static void assertFormattedJava(String want, String... tokens) {
+    Formatter<SList<NodeVariant<?, ?>>> formatter =
+        Java8Formatters.createLinearFormatter();
+    formatter.setSoftColumnLimit(40);
+    for (String token : tokens) {
+      formatter.token(token);
+    }
+    FormattedSource code = formatter.format();
+    assertEquals(Arrays.toString(tokens), want, code.code);
+
+    Formatter<SList<NodeVariant<?, ?>>> streaming =
+        Java8Formatters.createLinearFormatter();
+    streaming.setSoftColumnLimit(40);
+    StringBuilder out = new StringBuilder();
+    streaming.streamTo(out, null);
+    for (String token : tokens) {
+      streaming.token(token);
+    }
+    streaming.finish();
+    assertEquals(Arrays.toString(tokens), want, out.toString());
+  }
+}
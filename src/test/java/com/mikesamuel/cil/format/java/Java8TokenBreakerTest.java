@@ -194,7 +194,7 @@ public final class Java8TokenBreakerTest extends TestCase {
           break;
         case POP:
           Preconditions.checkNotNull(stack);
-          stack = stack.prev;
+          stack = stack.prev();
           break;
         case PUSH:
           stack = SList.append(stack, e.getNodeVariant());
@@ -46,4 +46,23 @@ public final class DecodedContentTest extends TestCase {
       assertEquals(corr[1], di.indexInEncoded(corr[0]));
     }
   }
+
+  @Test
+  public static void testNoEscapes() {
+    String code = "class C { String s = \"\\\\u0041\"; }";
+    DecodedContent di = new DecodedContent(code);
+    assertSame(code, di.toString());
+    assertEquals(code.length(), di.length());
+    assertEquals("String", di.subSequence(10, 16).toString());
+    assertEquals(10, di.indexInEncoded(10));
+  }
+
+  @Test
+  public static void testSubSequence() {
+    DecodedContent di = new DecodedContent("a\\\\u0041\\u0042\\u005cu0043d");
+    assertEquals("a\\\\u0041B\\u0043d", di.toString());
+    assertEquals("B\\u0043", di.subSequence(8, 15).toString());
+    assertEquals('B', di.charAt(8));
+    assertEquals(14, di.indexInEncoded(9));
+  }
 }
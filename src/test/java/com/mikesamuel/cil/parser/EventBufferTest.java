@@ -0,0 +1,67 @@
+package com.mikesamuel.cil.parser;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.mikesamuel.cil.event.Event;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class EventBufferTest extends TestCase {
+
+  private static final Event A = Event.token("a", 0);
+  private static final Event B = Event.token("b", 1);
+  private static final Event C = Event.token("c", 2);
+  private static final Event D = Event.token("d", 3);
+
+  private static ImmutableList<Event> forward(SList<Event> ls) {
+    return ImmutableList.copyOf(SList.forwardIterable(ls));
+  }
+
+  @Test
+  public static void testMarkAndTruncate() {
+    EventBuffer b = new EventBuffer();
+    b.add(A);
+    int mark = b.mark();
+    b.add(B);
+    b.add(C);
+    assertEquals(3, b.size());
+    b.truncate(mark);
+    assertEquals(1, b.size());
+    b.add(D);
+    assertEquals(ImmutableList.of(A, D), ImmutableList.of(b.get(0), b.get(1)));
+    try {
+      b.get(2);
+      fail();
+    } catch (IndexOutOfBoundsException ex) {
+      // ok
+    }
+  }
+
+  @Test
+  public static void testGrows() {
+    EventBuffer b = new EventBuffer();
+    for (int i = 0; i < 100; ++i) {
+      b.add(Event.token("t", i));
+    }
+    assertEquals(100, b.size());
+    assertEquals(42, b.get(42).getContentIndex());
+  }
+
+  @Test
+  public static void testAppendTo() {
+    EventBuffer b = new EventBuffer();
+    b.add(B);
+    b.add(C);
+    b.add(D);
+    SList<Event> a = SList.append(null, A);
+    assertEquals(ImmutableList.of(A, B, C, D), forward(b.appendTo(a, 0, 3)));
+    assertEquals(ImmutableList.of(A, C), forward(b.appendTo(a, 1, 2)));
+    assertEquals(ImmutableList.of(A), forward(b.appendTo(a, 1, 1)));
+    assertEquals(
+        ImmutableList.of(A, D, C, B), forward(b.appendReversedTo(a, 0, 3)));
+    assertEquals(
+        ImmutableList.of(D, C), forward(b.appendReversedTo(null, 1, 3)));
+  }
+}
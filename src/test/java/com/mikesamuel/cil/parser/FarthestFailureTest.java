@@ -0,0 +1,103 @@
+package com.mikesamuel.cil.parser;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.ptree.PTree;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class FarthestFailureTest extends TestCase {
+
+  private static Expectation expectation(final String description) {
+    return new Expectation() {
+      @Override
+      public String getDescription() {
+        return description;
+      }
+
+      @Override
+      public String toString() {
+        return description;
+      }
+    };
+  }
+
+  @Test
+  public static void testKeepsOnlyFarthest() {
+    ParseState start = new ParseState(
+        Input.builder().code("foo bar").build());
+    ParseState later = start.advance(3);
+    Expectation a = expectation("a");
+    Expectation b = expectation("b");
+    Expectation c = expectation("c");
+
+    FarthestFailure err = new FarthestFailure();
+    assertEquals(-1, err.getIndex());
+    assertNull(err.getMessage());
+
+    err.expected(start, a);
+    assertEquals(0, err.getIndex());
+    assertEquals("Expected a", err.getMessage());
+
+    err.error(later, "Oops");
+    err.expected(start, b);
+    assertEquals(4, err.getIndex());
+    assertEquals(ImmutableSet.of(), err.getExpected());
+    assertEquals("Oops", err.getMessage());
+
+    err.expected(later, b);
+    err.expected(later, c);
+    err.expected(later, b);
+    assertEquals(ImmutableList.of(b, c), err.getExpected().asList());
+    assertEquals("Expected one of b, c", err.getMessage());
+  }
+
+  @Test
+  public static void testParseFailure() {
+    String code = "class C { int x = 1 }";
+    FarthestFailure err = new FarthestFailure();
+    ParSer parser = PTree.complete(J8NodeType.CompilationUnit).getParSer();
+    ParseResult result = parser.parse(
+        new ParseState(Input.builder().code(code).build()),
+        new LeftRecursion(), err);
+    assertEquals(ParseResult.Synopsis.FAILURE, result.synopsis);
+    assertEquals(code.indexOf('}'), err.getIndex());
+    String message = err.getMessage();
+    assertTrue(message, message.startsWith("Expected one of "));
+    assertTrue(message, message.contains("`;`"));
+  }
+
+  @Test
+  public static void testNegativeLookaheadMatch() {
+    ParseState start = new ParseState(
+        Input.builder().code("foo bar").build());
+    FarthestFailure err = new FarthestFailure();
+    err.expected(start, new NegativeLookaheadMatch(3));
+    err.expected(start, new NegativeLookaheadMatch(3));
+    assertEquals(1, err.getExpected().size());
+    assertEquals("Successfully matched to 3", err.getMessage());
+  }
+
+  @Test
+  public static void testDevNullIgnoresExpectations() {
+    final StringBuilder rendered = new StringBuilder();
+    Expectation e = new Expectation() {
+      @Override
+      public String getDescription() {
+        rendered.append("rendered");
+        return "x";
+      }
+    };
+    ParseErrorReceiver.DEV_NULL.expected(
+        new ParseState(Input.builder().code("").build()), e);
+    assertEquals("", rendered.toString());
+    SerialErrorReceiver.DEV_NULL.expected(
+        new SerialState(ImmutableList.<Event>of()), e);
+    assertEquals("", rendered.toString());
+  }
+}
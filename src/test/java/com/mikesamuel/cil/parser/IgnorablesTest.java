@@ -83,4 +83,21 @@ public final class IgnorablesTest extends TestCase {
     }
   }
 
+  @Test
+  public static void testIndicesAfterIgnorables() {
+    ImmutableList<String> corpus = ImmutableList.of(
+        "", " ", "x", "/", "//", "/*", "/**/", "/*/", " /* * **/x",
+        "a // b\r\n c", "// a */ b\n/* c // d */ e", "/* a /* b */ c */",
+        "x/y", "x//\n//\n\n/**/ /*", "/*x*//*y*/z", "\t\f //\r");
+    for (String code : corpus) {
+      int[] after = Ignorables.indicesAfterIgnorables(code);
+      assertEquals(code.length() + 1, after.length);
+      for (int i = 0; i <= code.length(); ++i) {
+        assertEquals(
+            code + " @ " + i,
+            Ignorables.scanPastIgnorablesFrom(code, i, null), after[i]);
+      }
+    }
+  }
+
 }
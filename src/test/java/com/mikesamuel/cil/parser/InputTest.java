@@ -1,14 +1,22 @@
 package com.mikesamuel.cil.parser;
 
+import java.io.File;
 import java.util.List;
 
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
 import com.mikesamuel.cil.ast.Trees;
 import com.mikesamuel.cil.ast.j8.J8BaseNode;
 import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.event.Event;
 import com.mikesamuel.cil.parser.Unparse.Verified;
+import com.mikesamuel.cil.ptree.PTree;
 
 import junit.framework.TestCase;
 
@@ -91,4 +99,195 @@ public final class InputTest extends TestCase {
             .build()
             .content().toString());
   }
+
+  @Test
+  public static void testFileInput() throws Exception {
+    String code = "class C {\r\n  String s = \"\u00e9\\u00e9\";\r"
+        + "  // \u2028 \ud83d\ude00\n"
+        // Long enough that multi-byte chars straddle decoded chunks.
+        + Strings.repeat("/* \u00e9\u0800 */\r\n", 20000)
+        + "}\r";
+    File f = File.createTempFile("InputTest", ".java");
+    try {
+      Files.asCharSink(f, Charsets.UTF_8).write(code);
+      Input fromString = Input.builder().source("test").code(code).build();
+      Input fromFile = Input.builder()
+          .source("test").file(f.toPath(), Charsets.UTF_8).build();
+      String content = fromString.content().toString();
+      assertEquals(content, fromFile.content().toString());
+      for (int i = 0, n = content.length(); i <= n; i += 7) {
+        assertEquals(
+            fromString.getSourcePosition(i).toString(),
+            fromFile.getSourcePosition(i).toString());
+      }
+      assertEquals(
+          fromString.getSourcePosition(content.length()).toString(),
+          fromFile.getSourcePosition(content.length()).toString());
+    } finally {
+      assertTrue(f.delete());
+    }
+  }
+
+  private static final String EDITABLE_CODE = Joiner.on('\n').join(
+      "package p;",
+      "",
+      "class C {",
+      "  int x = 1 + 2;",
+      "",
+      "  /** Doc */",
+      "  int f(int a) {",
+      "    return a * x;",
+      "  }",
+      "",
+      "  // Comment",
+      "  String g() {",
+      "    return \"\\u0067\" + this.f(1);",
+      "  }",
+      "}",
+      "");
+
+  /** The events with their content indices. */
+  private static ImmutableList<String> eventsFrom(ParseState state) {
+    ImmutableList.Builder<String> b = ImmutableList.builder();
+    for (Event e : SList.forwardIterable(state.output)) {
+      b.add(e + "@" + e.getContentIndex());
+    }
+    return b.build();
+  }
+
+  private String assertEditParsesLikeFreshInput(
+      Input before, String code, int offset, int removedLength,
+      String inserted) {
+    ParSer ps = PTree.complete(J8NodeType.CompilationUnit).getParSer();
+
+    Input edited = before.edit(offset, removedLength, inserted);
+    int nReused = edited.ratPack.size();
+
+    String editedCode = code.substring(0, offset) + inserted
+        + code.substring(offset + removedLength);
+    Input fresh = Input.builder().source(getName()).code(editedCode).build();
+
+    ParseResult editedResult = ps.parse(
+        new ParseState(edited), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    ParseResult freshResult = ps.parse(
+        new ParseState(fresh), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    assertEquals(freshResult.synopsis, editedResult.synopsis);
+    if (freshResult.synopsis == ParseResult.Synopsis.SUCCESS) {
+      assertEquals(
+          editedCode,
+          Joiner.on('\n').join(eventsFrom(freshResult.next())),
+          Joiner.on('\n').join(eventsFrom(editedResult.next())));
+      Trees<J8BaseNode> trees = Trees.forGrammar(J8NodeType.GRAMMAR);
+      J8BaseNode freshRoot = trees.of(freshResult.next());
+      J8BaseNode editedRoot = trees.of(editedResult.next());
+      assertEquals(freshRoot, editedRoot);
+      compareSourcePositionsRecursively(freshRoot, editedRoot);
+      // Some of the work was reused.
+      assertTrue(editedCode, nReused != 0);
+      assertTrue(
+          editedCode,
+          edited.ratPack.size() - nReused < fresh.ratPack.size());
+    }
+    return editedCode;
+  }
+
+  @Test
+  public void testEdit() {
+    Input input = Input.builder()
+        .source(getName())
+        .code(EDITABLE_CODE)
+        .editable(true)
+        .build();
+    ParseResult result = PTree.complete(J8NodeType.CompilationUnit)
+        .getParSer().parse(
+            new ParseState(input), new LeftRecursion(),
+            ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+
+    int xInit = EDITABLE_CODE.indexOf("1 + 2");
+    int fBody = EDITABLE_CODE.indexOf("a * x");
+    int doc = EDITABLE_CODE.indexOf("Doc");
+    int comment = EDITABLE_CODE.indexOf("// Comment");
+    int end = EDITABLE_CODE.length();
+
+    // Replace with the same length.
+    assertEditParsesLikeFreshInput(input, EDITABLE_CODE, xInit, 1, "3");
+    // Grow and shrink an expression.
+    assertEditParsesLikeFreshInput(
+        input, EDITABLE_CODE, xInit, 5, "(1 + 2) * 3");
+    assertEditParsesLikeFreshInput(input, EDITABLE_CODE, fBody, 5, "a");
+    // Edit comments that precede a declaration.
+    assertEditParsesLikeFreshInput(
+        input, EDITABLE_CODE, doc, 3, "Documentation");
+    assertEditParsesLikeFreshInput(
+        input, EDITABLE_CODE, comment, 10, "/* Comment */");
+    // Introduce an escape sequence.
+    assertEditParsesLikeFreshInput(input, EDITABLE_CODE, fBody, 1, "\\u0061");
+    // Edit at the ends.
+    assertEditParsesLikeFreshInput(
+        input, EDITABLE_CODE, 0, 0, "/* Header */\n");
+    assertEditParsesLikeFreshInput(
+        input, EDITABLE_CODE, end, 0, "class D {}\n");
+    assertEditParsesLikeFreshInput(input, EDITABLE_CODE, end - 3, 3, "");
+    // Edits can be chained.
+    Input edited = input.edit(xInit, 1, "11");
+    String editedCode = assertEditParsesLikeFreshInput(
+        input, EDITABLE_CODE, xInit, 1, "11");
+    assertEquals(
+        ParseResult.Synopsis.SUCCESS,
+        PTree.complete(J8NodeType.CompilationUnit).getParSer().parse(
+            new ParseState(edited), new LeftRecursion(),
+            ParseErrorReceiver.DEV_NULL).synopsis);
+    assertEditParsesLikeFreshInput(edited, editedCode, fBody + 1, 1, "b");
+  }
+
+  @Test
+  public static void testBoundsChecksExamineContentThroughEnd() {
+    Input input = Input.builder()
+        .source("test").code("x = ab").editable(true).build();
+    ParseState state = new ParseState(input).advance(4);
+    long outer = input.startExamining(state.index);
+    assertFalse(state.startsWith("abc", Optional.<TokenMergeGuard>absent()));
+    long region = input.endExamining(outer);
+    assertEquals(4, RatPack.examinedLow(region));
+    assertEquals(6, RatPack.examinedHigh(region));
+    assertTrue(RatPack.examinedLength(region));
+
+    outer = input.startExamining(state.index);
+    assertFalse(state.startsWith("xy", Optional.<TokenMergeGuard>absent()));
+    region = input.endExamining(outer);
+    assertEquals(4, RatPack.examinedLow(region));
+    assertEquals(5, RatPack.examinedHigh(region));
+  }
+
+  @Test
+  public void testEditAfterTokenThatRanIntoEnd() {
+    // The prior parse found the end of input inside the literal.
+    String code = "class C { char c = 'a'; }";
+    Input input = Input.builder()
+        .source(getName()).code(code.substring(0, code.length() - 4))
+        .editable(true).build();
+    ParseResult result = PTree.complete(J8NodeType.CompilationUnit)
+        .getParSer().parse(
+            new ParseState(input), new LeftRecursion(),
+            ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.FAILURE, result.synopsis);
+    assertEditParsesLikeFreshInput(
+        input, code.substring(0, code.length() - 4), code.length() - 4, 0,
+        "'; }");
+  }
+
+  @Test
+  public static void testOnlyEditableInputsCanBeEdited() {
+    Input input = Input.builder().source("test").code("class C {}").build();
+    assertFalse(input.isEditable());
+    try {
+      input.edit(0, 0, "final ");
+      fail();
+    } catch (IllegalStateException ex) {
+      // OK
+    }
+  }
 }
@@ -1,5 +1,7 @@
 package com.mikesamuel.cil.parser;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 
 import junit.framework.TestCase;
@@ -43,4 +45,71 @@ public final class LineStartsTest extends TestCase {
     assertEquals("foo", ls.source);
   }
 
+  private static void assertLines(LineStarts ls, int... lineNumbers) {
+    for (int i = 0; i < lineNumbers.length; ++i) {
+      assertEquals("char #" + i, lineNumbers[i], ls.getLineNumber(i));
+    }
+  }
+
+  @Test
+  public static void testCrLf() {
+    String code = "a\r\nb\r\nc";
+    //             0 1 2 3 4 5 6
+    LineStarts ls = new LineStarts("crlf", code);
+    assertLines(ls, 1, 1, 1, 2, 2, 2, 3);
+    assertEquals(2, ls.charInLine(2));
+    assertEquals(0, ls.charInLine(3));
+    assertEquals(0, ls.charInLine(6));
+  }
+
+  @Test
+  public static void testLoneCr() {
+    String code = "a\rb\r\rc\n\rd";
+    //             0 1 2 3 4 5 6 7 8
+    LineStarts ls = new LineStarts("cr", code);
+    assertLines(ls, 1, 1, 2, 2, 3, 4, 4, 5, 6);
+  }
+
+  @Test
+  public static void testCrAtEndOfChunk() {
+    String code = "a\r\nb\rc\r";
+    //             0 1 2 3 4 5 6
+    for (int split = 0; split <= code.length(); ++split) {
+      LineStarts.Scanner scanner = new LineStarts.Scanner(0);
+      scanner.scan(code, 0, split);
+      scanner.scan(code, split, code.length());
+      LineStarts ls = new LineStarts("chunked", scanner.finish());
+      String msg = "split at " + split;
+      assertEquals(msg, 1, ls.getLineNumber(1));
+      assertEquals(msg, 1, ls.getLineNumber(2));
+      assertEquals(msg, 2, ls.getLineNumber(3));
+      assertEquals(msg, 2, ls.getLineNumber(4));
+      assertEquals(msg, 3, ls.getLineNumber(5));
+      assertEquals(msg, 3, ls.getLineNumber(6));
+      // The CR at the end of input starts an empty last line.
+      assertEquals(msg, 4, ls.getLineNumber(7));
+    }
+  }
+
+  @Test
+  public static void testCrLfLineStarts() {
+    // A CRLF pair is one line break.  Before, the CR and the LF each
+    // recorded a start after the pair, so lines after it were numbered one
+    // too high.
+    String code = "a\r\nb\nc\rd\r\n\r\ne";
+    //             0 1 2 3 4 5 6 7 8 9 0 1 2
+    LineStarts.Scanner scanner = new LineStarts.Scanner(0);
+    scanner.scan(code, 0, code.length());
+    assertEquals(
+        "[0, 3, 5, 7, 10, 12]", Arrays.toString(scanner.finish()));
+
+    Input input = Input.builder().source("crlf").code(code).build();
+    SourcePosition e = input.getSourcePosition(12, 13);
+    assertEquals(6, e.startLineInFile());
+    assertEquals(0, e.startCharInLine());
+    SourcePosition d = input.getSourcePosition(7, 8);
+    assertEquals(4, d.startLineInFile());
+    assertEquals(0, d.startCharInLine());
+  }
+
 }
@@ -0,0 +1,80 @@
+package com.mikesamuel.cil.parser;
+
+import org.junit.Test;
+
+import com.mikesamuel.cil.ast.j8.CompilationUnitNode;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.ast.j8.LiteralNode;
+import com.mikesamuel.cil.ast.j8.StatementNode;
+import com.mikesamuel.cil.ptree.PTree;
+import com.mikesamuel.cil.ptree.Profile;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class Lookahead1Test extends TestCase {
+
+  private static ParseState stateAt(String code, boolean allowNonStandard) {
+    return new ParseState(
+        Input.builder()
+        .source("Lookahead1Test")
+        .code(code)
+        .allowNonStandardProductions(allowNonStandard)
+        .build());
+  }
+
+  @Test
+  public static void testCanStartWith() {
+    Lookahead1 la1 = Lookahead1.of("\0?@_z\u007f", false);
+    for (char ch : new char[] { '\0', '?', '@', '_', 'z', '\u007f' }) {
+      assertTrue(la1.canStartWith(ch));
+    }
+    for (char ch : new char[] { '\1', '>', 'A', '`', 'y', '\u0080', 'é' }) {
+      assertFalse(la1.canStartWith(ch));
+    }
+    assertTrue(Lookahead1.of("", true).canStartWith('é'));
+    assertFalse(Lookahead1.of("", true).canStartWith('e'));
+  }
+
+  @Test
+  public static void testCanFollow() {
+    Lookahead1 la1 = Lookahead1.of("(", false);
+    assertTrue(la1.canFollow(stateAt("  (x)", false)));
+    assertFalse(la1.canFollow(stateAt("  x", false)));
+    // End of input.
+    assertFalse(la1.canFollow(stateAt("  ", false)));
+    // Template instructions can appear anywhere.
+    Lookahead1 x = Lookahead1.of("x", false);
+    assertFalse(x.canFollow(stateAt("%%}", false)));
+    assertTrue(x.canFollow(stateAt("%%}", true)));
+    assertTrue(x.canFollow(stateAt("(%y)", true)));
+    assertTrue(x.canFollow(stateAt("{%y}", true)));
+    assertFalse(x.canFollow(stateAt("(y)", true)));
+  }
+
+  @Test
+  public static void testGeneratedLookaheads() {
+    assertEquals(
+        "[i]", StatementNode.Variant.IfStatement.getLookahead1().toString());
+    assertEquals(
+        "[\"]", LiteralNode.Variant.StringLiteral.getLookahead1().toString());
+    // Could be empty.
+    assertNull(
+        CompilationUnitNode.Variant.PackageDeclarationImportDeclarationTypeDeclaration
+        .getLookahead1());
+  }
+
+  @Test
+  public static void testVariantsSkipped() {
+    ParseResult result;
+    try (Profile p = Profile.startCounting()) {
+      result = PTree.complete(J8NodeType.CompilationUnit).getParSer().parse(
+          stateAt("class C { void f() { if (x) { return; } g(1, \"s\"); } }",
+                  false),
+          new LeftRecursion(), ParseErrorReceiver.DEV_NULL);
+      assertTrue(p.getVariantsTried() > 0);
+      assertTrue(p.getVariantsSkipped() > 0);
+    }
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+  }
+}
@@ -0,0 +1,58 @@
+package com.mikesamuel.cil.parser;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class NodeTypeSetTest extends TestCase {
+
+  @Test
+  public static void testEmpty() {
+    assertTrue(NodeTypeSet.EMPTY.isEmpty());
+    assertEquals(0, NodeTypeSet.EMPTY.size());
+    assertFalse(NodeTypeSet.EMPTY.contains(J8NodeType.Expression));
+    assertFalse(NodeTypeSet.EMPTY.iterator().hasNext());
+  }
+
+  @Test
+  public static void testUnion() {
+    NodeTypeSet a = NodeTypeSet.of(J8NodeType.Primary);
+    NodeTypeSet b = NodeTypeSet.of(J8NodeType.UnannType);
+    NodeTypeSet ab = a.union(b);
+    assertEquals(2, ab.size());
+    assertTrue(ab.contains(J8NodeType.Primary));
+    assertTrue(ab.contains(J8NodeType.UnannType));
+    assertFalse(ab.contains(J8NodeType.Expression));
+    assertEquals(ImmutableSet.of(J8NodeType.Primary, J8NodeType.UnannType), ab);
+    // Ordinal order.
+    assertEquals(
+        ImmutableList.copyOf(ImmutableSet.copyOf(ab)),
+        J8NodeType.Primary.ordinal() < J8NodeType.UnannType.ordinal()
+        ? ImmutableList.of(J8NodeType.Primary, J8NodeType.UnannType)
+        : ImmutableList.of(J8NodeType.UnannType, J8NodeType.Primary));
+  }
+
+  @Test
+  public static void testUnionReusesSupersets() {
+    NodeTypeSet a = NodeTypeSet.of(J8NodeType.Primary);
+    NodeTypeSet ab = a.union(NodeTypeSet.of(J8NodeType.UnannType));
+    assertSame(ab, ab.union(a));
+    assertSame(ab, a.union(ab));
+    assertSame(a, a.union(NodeTypeSet.EMPTY));
+    assertSame(a, NodeTypeSet.EMPTY.union(a));
+  }
+
+  @Test
+  public static void testWithout() {
+    NodeTypeSet a = NodeTypeSet.of(J8NodeType.Primary);
+    NodeTypeSet ab = a.union(NodeTypeSet.of(J8NodeType.UnannType));
+    assertEquals(a, ab.without(J8NodeType.UnannType));
+    assertSame(ab, ab.without(J8NodeType.Expression));
+    assertSame(NodeTypeSet.EMPTY, a.without(J8NodeType.Primary));
+  }
+}
@@ -20,6 +20,13 @@ public final class ParseStateTest extends TestCase {
     ParseState ps1 = new ParseState(
         Input.builder().source("test").code("xyz" + content).build());
     assertEquals(content, idxNext + 3, ps1.advance(3).index);
+
+    ParseState ps2 = new ParseState(
+        Input.builder().source("test").code("xyz" + content)
+        .eagerlySkipIgnorables(true).build());
+    assertEquals(content, idxNext + 3, ps2.advance(3).index);
+    // Answered from the table.
+    assertEquals(content, idxNext + 3, ps2.advance(3).index);
   }
 
   @Test
@@ -54,6 +61,15 @@ public final class ParseStateTest extends TestCase {
     assertFalse(ps.advance(1).startsWith("f", Optional.absent()));
   }
 
+  @Test
+  public static void testWithTrustedIndex() {
+    ParseState ps = new ParseState(Input.builder().code("foo /**/ bar").build());
+    ParseState bar = ps.withTrustedIndex(9);
+    assertEquals(9, bar.index);
+    assertTrue(bar.startsWith("bar", Optional.absent()));
+    assertSame(bar, bar.withTrustedIndex(9));
+  }
+
   @Test
   public static void testMatcherAt() {
     ParseState ps = new ParseState(Input.builder().code("foo").build());
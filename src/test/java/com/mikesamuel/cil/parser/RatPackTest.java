@@ -0,0 +1,298 @@
+package com.mikesamuel.cil.parser;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import com.mikesamuel.cil.ast.j8.ExpressionNode;
+import com.mikesamuel.cil.ast.j8.IdentifierNode;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.ast.jmin.JminNodeType;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.ptree.PTree;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class RatPackTest extends TestCase {
+
+  @Test
+  public static void testEmpty() {
+    RatPack rp = new RatPack();
+    assertFalse(rp.getCachedParse(J8NodeType.Expression, 0).wasTried());
+    assertEquals(0, rp.size());
+    assertEquals(0, rp.getHitCount());
+    assertEquals(1, rp.getMissCount());
+  }
+
+  @Test
+  public static void testFailuresSurviveGrowth() {
+    RatPack rp = new RatPack();
+    J8NodeType[] types = J8NodeType.values();
+    int n = 5000;
+    for (int i = 0; i < n; ++i) {
+      rp.cacheFailure(i, types[i % types.length]);
+    }
+    assertEquals(n, rp.size());
+    for (int i = 0; i < n; ++i) {
+      RatPack.ParseCacheEntry e = rp.getCachedParse(
+          types[i % types.length], i);
+      assertTrue(e.wasTried());
+      assertFalse(e.passed());
+      assertFalse(
+          rp.getCachedParse(types[(i + 1) % types.length], i).wasTried());
+    }
+    assertEquals(n, rp.getHitCount());
+    assertEquals(n, rp.getMissCount());
+
+    // Overwriting does not add entries.
+    rp.cacheFailure(0, types[0]);
+    assertEquals(n, rp.size());
+  }
+
+  @Test
+  public static void testProductionsFromDifferentGrammarsDistinct() {
+    RatPack rp = new RatPack();
+    JminNodeType jt = JminNodeType.values()[0];
+    J8NodeType j8t = J8NodeType.values()[0];
+    assertEquals(jt.ordinal(), j8t.ordinal());
+    rp.cacheFailure(3, j8t);
+    assertTrue(rp.getCachedParse(j8t, 3).wasTried());
+    assertFalse(rp.getCachedParse(jt, 3).wasTried());
+  }
+
+  @Test
+  public static void testSuccessSplicedOntoOtherPrefix() {
+    Input inp = Input.builder().source("RatPackTest").code("foo bar").build();
+    RatPack rp = inp.ratPack;
+    SList<Event> before = SList.append(
+        null, Event.push(ExpressionNode.Variant.ConditionalExpression));
+    SList<Event> after = SList.append(
+        SList.append(
+            SList.append(before, Event.push(IdentifierNode.Variant.Builtin)),
+            Event.content("foo", 0)),
+        Event.pop());
+    rp.cacheSuccess(0, 4, J8NodeType.Identifier, before, after);
+
+    RatPack.ParseCacheEntry e = rp.getCachedParse(J8NodeType.Identifier, 0);
+    assertTrue(e.passed());
+
+    ParseState start = new ParseState(inp).appendOutput(Event.token("(", 0));
+    ParseState applied = e.apply(start);
+    assertEquals(4, applied.index);
+    assertEquals(
+        ImmutableList.of(
+            Event.token("(", 0),
+            Event.push(IdentifierNode.Variant.Builtin),
+            Event.content("foo", 0),
+            Event.pop()),
+        ImmutableList.copyOf(SList.forwardIterable(applied.output)));
+    // The cached events are shared, not copied.
+    assertSame(after.x, applied.output.x);
+  }
+
+  @Test
+  public static void testEnclosingSplicedSuccess() {
+    Input inp = Input.builder().source("RatPackTest").code("foo bar").build();
+    RatPack rp = inp.ratPack;
+    SList<Event> before = SList.append(
+        null, Event.push(ExpressionNode.Variant.ConditionalExpression));
+    SList<Event> after = SList.append(
+        SList.append(
+            SList.append(before, Event.push(IdentifierNode.Variant.Builtin)),
+            Event.content("foo", 0)),
+        Event.pop());
+    rp.cacheSuccess(0, 4, J8NodeType.Identifier, before, after);
+
+    // Memoize a production whose output includes a splice of the first.
+    ParseState start = new ParseState(inp).appendOutput(Event.token("(", 0));
+    ParseState outerStart = start.appendOutput(
+        Event.push(ExpressionNode.Variant.ConditionalExpression));
+    ParseState outerEnd = rp.getCachedParse(J8NodeType.Identifier, 0)
+        .apply(outerStart)
+        .appendOutput(Event.pop());
+    rp.cacheSuccess(
+        0, 4, J8NodeType.Expression, start.output, outerEnd.output);
+
+    ParseState applied = rp.getCachedParse(J8NodeType.Expression, 0)
+        .apply(new ParseState(inp));
+    assertEquals(4, applied.index);
+    assertEquals(
+        ImmutableList.of(
+            Event.push(ExpressionNode.Variant.ConditionalExpression),
+            Event.push(IdentifierNode.Variant.Builtin),
+            Event.content("foo", 0),
+            Event.pop(),
+            Event.pop()),
+        ImmutableList.copyOf(SList.forwardIterable(applied.output)));
+    assertSame(outerEnd.output.x, applied.output.x);
+  }
+
+  @Test
+  public static void testCountersAfterParse() {
+    Input inp = Input.builder()
+        .source("RatPackTest")
+        .code("class C { int f() { return (a + b) * c.d(e[0]); } }")
+        .build();
+    ParseResult result = PTree.complete(J8NodeType.CompilationUnit)
+        .getParSer()
+        .parse(
+            new ParseState(inp), new LeftRecursion(),
+            ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+    RatPack rp = inp.ratPack;
+    assertTrue(rp.size() > 0);
+    assertTrue(rp.getHitCount() > 0);
+    assertTrue(rp.getMissCount() >= rp.size());
+  }
+
+  @Test
+  public static void testCountersAfterFailedParse() {
+    Input inp = Input.builder()
+        .source("RatPackTest")
+        .code("1")
+        .build();
+    ParSer identifier = PTree.complete(J8NodeType.Identifier).getParSer();
+    ParseResult result = identifier.parse(
+        new ParseState(inp), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.FAILURE, result.synopsis);
+    RatPack rp = inp.ratPack;
+    // Each production was looked up once before failing and caching the
+    // failure.
+    assertEquals(0, rp.getHitCount());
+    assertEquals(rp.size(), rp.getMissCount());
+
+    long misses = rp.getMissCount();
+    result = identifier.parse(
+        new ParseState(inp), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.FAILURE, result.synopsis);
+    assertEquals(1, rp.getHitCount());
+    assertEquals(misses, rp.getMissCount());
+  }
+
+  @Test
+  public static void testSkippableOutputsClearedAtCommitPoints()
+  throws Exception {
+    String source = "/com/mikesamuel/cil/parser/RatPack.java";
+    Input inp = Input.builder()
+        .source(source)
+        .code(Resources.toString(
+            Resources.getResource(RatPackTest.class, source),
+            Charsets.UTF_8))
+        .build();
+    ParseResult result = PTree.complete(J8NodeType.CompilationUnit)
+        .getParSer()
+        .parse(
+            new ParseState(inp), new LeftRecursion(),
+            ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+    RatPack rp = inp.ratPack;
+    // Entries for branches the parser abandoned are dropped at commit points.
+    assertTrue(
+        String.valueOf(rp.getSkippableOutputCount()),
+        rp.getSkippableOutputCount() < 32);
+  }
+
+  @Test
+  public static void testBudget() {
+    RatPack rp = new RatPack();
+    rp.setBudget(100);
+    for (int i = 0; i < 1000; ++i) {
+      rp.cacheFailure(i, J8NodeType.Expression);
+    }
+    assertTrue(rp.size() <= 100);
+    assertEquals(1000, rp.size() + rp.getEvictionCount());
+    assertEquals(100, rp.getPeakSize());
+    // The latest entries are kept.
+    assertTrue(rp.getCachedParse(J8NodeType.Expression, 999).wasTried());
+    assertFalse(rp.getCachedParse(J8NodeType.Expression, 0).wasTried());
+  }
+
+  @Test
+  public static void testCommitEvictsEarlierEntries() {
+    RatPack rp = new RatPack();
+    int n = 400;
+    for (int i = 0; i < n; ++i) {
+      rp.cacheFailure(i, J8NodeType.Expression);
+    }
+    rp.commit(n);
+    assertEquals(n, rp.getCommitIndex());
+    // Evicted only when the table would otherwise grow.
+    assertEquals(0, rp.getEvictionCount());
+    for (int i = n; i < 2 * n; ++i) {
+      rp.cacheFailure(i, J8NodeType.Expression);
+    }
+    assertTrue(rp.getEvictionCount() > 0);
+    assertFalse(rp.getCachedParse(J8NodeType.Expression, 0).wasTried());
+    for (int i = n; i < 2 * n; ++i) {
+      assertTrue(rp.getCachedParse(J8NodeType.Expression, i).wasTried());
+    }
+  }
+
+  @Test
+  public static void testNestedCommitPointsDoNotCommit() {
+    RatPack rp = new RatPack();
+    int outer = rp.enterCommitPoint();
+    int middle = rp.enterCommitPoint();
+    int inner = rp.enterCommitPoint();
+    rp.exitCommitPoint(inner, 10, null);
+    assertEquals(0, rp.getCommitIndex());
+    rp.exitCommitPoint(middle, 20, null);
+    assertEquals(20, rp.getCommitIndex());
+    // Failures do not commit.
+    rp.exitCommitPoint(outer, -1, null);
+    assertEquals(20, rp.getCommitIndex());
+  }
+
+  @Test
+  public static void testCommitPointsBoundMemory() {
+    StringBuilder code = new StringBuilder("class C {\n");
+    for (int i = 0; i < 200; ++i) {
+      code.append("  int f").append(i).append("(int x) { return x * ")
+          .append(i).append(" + this.f").append(i).append("(x - 1); }\n");
+    }
+    code.append("}\n");
+
+    ParSer ps = PTree.complete(J8NodeType.CompilationUnit).getParSer();
+    Input committing = Input.builder()
+        .source("RatPackTest").code(code).build();
+    ParseResult committed = ps.parse(
+        new ParseState(committing), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    // Editable inputs keep all their entries.
+    Input keeping = Input.builder()
+        .source("RatPackTest").code(code).editable(true).build();
+    ParseResult kept = ps.parse(
+        new ParseState(keeping), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    Input budgeted = Input.builder()
+        .source("RatPackTest").code(code).memoBudget(2000).build();
+    ParseResult withinBudget = ps.parse(
+        new ParseState(budgeted), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+
+    assertEquals(ParseResult.Synopsis.SUCCESS, kept.synopsis);
+    assertEquals(ParseResult.Synopsis.SUCCESS, committed.synopsis);
+    assertEquals(ParseResult.Synopsis.SUCCESS, withinBudget.synopsis);
+    ImmutableList<Event> want = ImmutableList.copyOf(
+        SList.forwardIterable(kept.next().output));
+    assertEquals(
+        want,
+        ImmutableList.copyOf(SList.forwardIterable(committed.next().output)));
+    assertEquals(
+        want,
+        ImmutableList.copyOf(
+            SList.forwardIterable(withinBudget.next().output)));
+
+    assertEquals(0, keeping.ratPack.getEvictionCount());
+    assertTrue(committing.ratPack.getCommitIndex() > code.length() / 2);
+    assertTrue(committing.ratPack.getEvictionCount() > 0);
+    assertTrue(
+        committing.ratPack.getPeakSize() * 2
+        < keeping.ratPack.getPeakSize());
+    assertTrue(budgeted.ratPack.getPeakSize() <= 2000);
+  }
+}
@@ -0,0 +1,113 @@
+package com.mikesamuel.cil.parser;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class SListTest extends TestCase {
+
+  private static SList<String> of(String... els) {
+    SList<String> ls = null;
+    for (String el : els) {
+      ls = SList.append(ls, el);
+    }
+    return ls;
+  }
+
+  private static ImmutableList<String> forward(SList<String> ls) {
+    return ImmutableList.copyOf(SList.forwardIterable(ls));
+  }
+
+  private static ImmutableList<String> forwardViaPrev(SList<String> ls) {
+    ImmutableList.Builder<String> b = ImmutableList.builder();
+    for (SList<String> c = ls; c != null; c = c.prev()) {
+      b.add(c.x);
+    }
+    return b.build().reverse();
+  }
+
+  @Test
+  public static void testAppendSlice() {
+    SList<String> abc = of("a", "b", "c");
+    SList<String> abcde = SList.append(SList.append(abc, "d"), "e");
+    SList<String> xy = of("x", "y");
+
+    SList<String> xyde = SList.appendSlice(xy, abcde, abc);
+    assertEquals(ImmutableList.of("x", "y", "d", "e"), forward(xyde));
+    assertEquals(ImmutableList.of("x", "y", "d", "e"), forwardViaPrev(xyde));
+    assertEquals("e", xyde.x);
+
+    // Slicing onto the same prefix shares the whole list.
+    assertSame(abcde, SList.appendSlice(abc, abcde, abc));
+    // An empty slice is a no-op.
+    assertSame(xy, SList.appendSlice(xy, abc, abc));
+    // A slice from the start.
+    assertEquals(
+        ImmutableList.of("x", "y", "a", "b", "c"),
+        forward(SList.appendSlice(xy, abc, null)));
+    assertEquals(
+        ImmutableList.of("a", "b", "c"),
+        forward(SList.appendSlice(null, abc, null)));
+  }
+
+  @Test
+  public static void testNestedSlices() {
+    SList<String> ab = of("a", "b");
+    SList<String> abcd = SList.append(SList.append(ab, "c"), "d");
+    // [x, c, d, e]
+    SList<String> xcde = SList.append(
+        SList.appendSlice(of("x"), abcd, ab), "e");
+    SList<String> x = xcde.prev().prev().prev();
+    assertEquals("x", x.x);
+    // [p, q, c, d, e, f]
+    SList<String> pqcdef = SList.append(
+        SList.appendSlice(of("p", "q"), xcde, x), "f");
+    ImmutableList<String> want = ImmutableList.of("p", "q", "c", "d", "e", "f");
+    assertEquals(want, forward(pqcdef));
+    assertEquals(want, forwardViaPrev(pqcdef));
+    assertEquals(want.reverse(), ImmutableList.copyOf(
+        SList.reverseIterable(pqcdef)));
+    assertEquals(want.reverse(), forward(SList.reverse(pqcdef)));
+    assertEquals(
+        ImmutableList.of("z", "f", "e", "d", "c", "q", "p"),
+        forward(SList.revAppendAll(of("z"), pqcdef)));
+    assertEquals(of("p", "q", "c", "d", "e", "f"), pqcdef);
+    assertEquals(
+        of("p", "q", "c", "d", "e", "f").hashCode(), pqcdef.hashCode());
+  }
+
+  @Test
+  public static void testWalkingSliceBackwards() {
+    SList<String> ab = of("a", "b");
+    SList<String> abcde = SList.append(
+        SList.append(SList.append(ab, "c"), "d"), "e");
+    SList<String> xyzcde = SList.appendSlice(of("x", "y", "z"), abcde, ab);
+    SList<String> xyzc = xyzcde.prev().prev();
+    assertEquals("c", xyzc.x);
+    assertEquals(of("x", "y", "z"), xyzc.prev());
+  }
+
+  @Test
+  public static void testDeeplyNestedSlices() {
+    // Like the output of a deeply parenthesized expression where each level
+    // splices in the memoized output of the level within.
+    SList<String> ls = of("x");
+    int depth = 1000;
+    for (int i = 0; i < depth; ++i) {
+      ls = SList.append(SList.appendSlice(of("("), ls, null), ")");
+    }
+    ImmutableList.Builder<String> want = ImmutableList.builder();
+    for (int i = 0; i < depth; ++i) {
+      want.add("(");
+    }
+    want.add("x");
+    for (int i = 0; i < depth; ++i) {
+      want.add(")");
+    }
+    assertEquals(want.build(), forward(ls));
+    assertEquals(want.build(), forwardViaPrev(ls));
+  }
+}
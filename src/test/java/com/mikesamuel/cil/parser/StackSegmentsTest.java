@@ -0,0 +1,216 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.ptree.PTree;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class StackSegmentsTest extends TestCase {
+
+  @Test
+  public static void testEnterUntilSegmentFull() {
+    final StackSegments segments = new StackSegments(2, 3);
+    assertTrue(segments.enter());
+    assertTrue(segments.enter());
+    assertFalse(segments.enter());
+    int nEnteredOnFreshSegment = segments.continueOnFreshSegment(
+        new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int n = 0;
+            while (segments.enter()) {
+              ++n;
+            }
+            for (int i = 0; i < n; ++i) {
+              segments.exit();
+            }
+            return n;
+          }
+        });
+    assertEquals(3, nEnteredOnFreshSegment);
+    // Back on the first segment which is still full.
+    assertFalse(segments.enter());
+    segments.exit();
+    assertTrue(segments.enter());
+    assertEquals(2, segments.getPeakSegmentsInUse());
+    assertEquals(1, segments.getContinuationCount());
+  }
+
+  @Test
+  public static void testExceptionsPropagate() {
+    StackSegments segments = new StackSegments();
+    final IllegalArgumentException thrown = new IllegalArgumentException();
+    try {
+      segments.continueOnFreshSegment(new Callable<Void>() {
+        @Override
+        public Void call() {
+          throw thrown;
+        }
+      });
+      fail();
+    } catch (IllegalArgumentException ex) {
+      assertSame(thrown, ex);
+    }
+    assertTrue(segments.enter());
+  }
+
+  @Test
+  public static void testConcurrentParsesDoNotShareSegments()
+  throws Exception {
+    // Each parse starts its own segment threads, so many parses can each
+    // nest many segments deep at once without any being refused a segment.
+    final int nParses = 8;
+    final int nestingDepth = 100;
+    final CountDownLatch allNested = new CountDownLatch(nParses);
+    final int[] deepest = new int[nParses];
+    final Throwable[] thrown = new Throwable[nParses];
+    Thread[] threads = new Thread[nParses];
+    for (int i = 0; i < nParses; ++i) {
+      final int parseIndex = i;
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          StackSegments segments = new StackSegments(1, 1);
+          try {
+            continueNested(
+                segments, 0, nestingDepth, allNested, deepest, parseIndex);
+            assertEquals(
+                nestingDepth + 1, segments.getPeakSegmentsInUse());
+          } catch (Throwable th) {
+            thrown[parseIndex] = th;
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    for (int i = 0; i < nParses; ++i) {
+      if (thrown[i] != null) {
+        throw new AssertionError(thrown[i]);
+      }
+      assertEquals(nestingDepth, deepest[i]);
+    }
+  }
+
+  /**
+   * Continues on fresh segments until maxDepth deep and then waits for every
+   * other parse to get as deep so that all hold their segments at once.
+   */
+  private static Void continueNested(
+      final StackSegments segments, final int depth, final int maxDepth,
+      final CountDownLatch allNested, final int[] deepest,
+      final int parseIndex) {
+    deepest[parseIndex] = depth;
+    if (depth == maxDepth) {
+      allNested.countDown();
+      Uninterruptibles.awaitUninterruptibly(allNested);
+      return null;
+    }
+    return segments.continueOnFreshSegment(new Callable<Void>() {
+      @Override
+      public Void call() {
+        return continueNested(
+            segments, depth + 1, maxDepth, allNested, deepest, parseIndex);
+      }
+    });
+  }
+
+  private static final int NESTING_DEPTH = 2000;
+
+  /** A method body with blocks nested {@link #NESTING_DEPTH} deep. */
+  private static final String DEEPLY_NESTED_CODE =
+      "class C { void f(int x) { "
+      + Strings.repeat("{ ", NESTING_DEPTH)
+      + "x++;"
+      + Strings.repeat(" }", NESTING_DEPTH)
+      + " } }";
+
+  /**
+   * Parses deeply nested code on a thread with the given stack size.
+   * @return the events or null if the stack overflowed.
+   */
+  private static ImmutableList<Event> parseDeeplyNestedCode(
+      final boolean stackSegments, long stackSize) throws Exception {
+    final Object[] result = new Object[1];
+    Thread t = new Thread(
+        null,
+        new Runnable() {
+          @Override
+          public void run() {
+            Input input = Input.builder()
+                .source("StackSegmentsTest")
+                .code(DEEPLY_NESTED_CODE)
+                .stackSegments(stackSegments)
+                .build();
+            ParSer ps = PTree.complete(J8NodeType.CompilationUnit).getParSer();
+            try {
+              result[0] = ps.parse(
+                  new ParseState(input), new LeftRecursion(),
+                  ParseErrorReceiver.DEV_NULL);
+            } catch (StackOverflowError err) {
+              result[0] = err;
+            }
+          }
+        },
+        "parseDeeplyNestedCode", stackSize);
+    t.start();
+    t.join();
+    if (result[0] instanceof StackOverflowError) {
+      return null;
+    }
+    ParseResult parseResult = (ParseResult) result[0];
+    assertEquals(ParseResult.Synopsis.SUCCESS, parseResult.synopsis);
+    return ImmutableList.copyOf(
+        SList.forwardIterable(parseResult.next().output));
+  }
+
+  @Test
+  public static void testDeeplyNestedCodeParsesOnSmallStack()
+  throws Exception {
+    // Recursing on a large stack first initializes the classes the parser
+    // needs so that overflowing the stack below does not leave any of them
+    // half initialized.
+    ImmutableList<Event> recursive = parseDeeplyNestedCode(false, 256 << 20);
+    assertNotNull(recursive);
+    // The default stack size on many platforms.
+    long smallStack = 1 << 20;
+    assertNull(parseDeeplyNestedCode(false, smallStack));
+    assertEquals(recursive, parseDeeplyNestedCode(true, smallStack));
+  }
+
+  @Test
+  public static void testDeeplyParenthesizedExpressionParsesQuickly() {
+    int parenDepth = 1000;
+    Input input = Input.builder()
+        .source("StackSegmentsTest")
+        .code(
+            "class C { int x = " + Strings.repeat("(", parenDepth) + "1"
+            + Strings.repeat(")", parenDepth) + "; }")
+        .stackSegments(true)
+        .build();
+    ParSer ps = PTree.complete(J8NodeType.CompilationUnit).getParSer();
+    long t0 = System.nanoTime();
+    ParseResult result = ps.parse(
+        new ParseState(input), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+    // Each level of parentheses walks back over the output of the levels
+    // within it, so the time grows with the square of the depth, but should
+    // not grow faster than that.  This takes a few seconds.
+    assertTrue(elapsedMillis + "ms", elapsedMillis < 30000);
+  }
+}
@@ -0,0 +1,96 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.ast.j8.PreLexer;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.ptree.PTree;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class TextInternerTest extends TestCase {
+
+  @Test
+  public static void testRegionsWithSameTextShareString() {
+    TextInterner interner = new TextInterner();
+    String content = "foo bar foo";
+    String foo = interner.intern(content, 0, 3);
+    assertEquals("foo", foo);
+    assertSame(foo, interner.intern(content, 8, 11));
+    assertSame(foo, interner.intern(new StringBuilder("(foo)"), 1, 4));
+    assertSame(foo, interner.intern(new String("foo")));
+    assertEquals("bar", interner.intern(content, 4, 7));
+    assertEquals("", interner.intern(content, 3, 3));
+    assertEquals(3, interner.size());
+  }
+
+  @Test
+  public static void testManyTexts() {
+    assertManyTextsInterned(new TextInterner());
+    assertManyTextsInterned(TextInterner.forOneInput());
+  }
+
+  private static void assertManyTextsInterned(TextInterner interner) {
+    List<String> interned = Lists.newArrayList();
+    for (int i = 0; i < 10000; ++i) {
+      interned.add(interner.intern("x" + i));
+    }
+    assertEquals(10000, interner.size());
+    for (int i = 0; i < 10000; ++i) {
+      String text = "(x" + i + ")";
+      assertSame(
+          interned.get(i), interner.intern(text, 1, text.length() - 1));
+    }
+    assertEquals(10000, interner.size());
+  }
+
+  @Test
+  public static void testLongTextsAreNotRetained() {
+    TextInterner interner = new TextInterner();
+    String longText = Strings.repeat("x", TextInterner.MAX_INTERNED_LENGTH + 1);
+    assertEquals(
+        longText, interner.intern(longText + ";", 0, longText.length()));
+    assertSame(longText, interner.intern(longText));
+    assertEquals(0, interner.size());
+  }
+
+  private static List<String> parsedContent(Input input) {
+    ParseResult result = PTree.complete(J8NodeType.CompilationUnit).getParSer()
+        .parse(
+            new ParseState(input), new LeftRecursion(),
+            ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+    List<String> content = Lists.newArrayList();
+    for (Event e : SList.forwardIterable(result.next().output)) {
+      if (e.getKind() == Event.Kind.CONTENT) {
+        content.add(e.getContent());
+      }
+    }
+    return content;
+  }
+
+  @Test
+  public static void testParsedIdentifiersShareText() {
+    TextInterner shared = new TextInterner();
+    String code = "class C { int f(int x) { return x + x * 42; } }";
+    List<String> a = parsedContent(
+        Input.builder().code(code).interner(shared).build());
+    List<String> b = parsedContent(
+        Input.builder().code(code).interner(shared).preLex(PreLexer.LEXER)
+        .build());
+    assertEquals(
+        Lists.newArrayList("C", "f", "x", "x", "x", "42"), a);
+    assertEquals(a, b);
+    assertSame(a.get(2), a.get(3));
+    assertSame(a.get(2), a.get(4));
+    for (int i = 0; i < a.size(); ++i) {
+      assertSame(a.get(i), b.get(i));
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package com.mikesamuel.cil.parser;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.mikesamuel.cil.ast.Trees;
+import com.mikesamuel.cil.ast.j8.J8BaseNode;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.event.DelayedCheckPredicate;
+import com.mikesamuel.cil.event.Event;
+import com.mikesamuel.cil.ptree.PTree;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class UnparseTest extends TestCase {
+
+  private static final class CountingPredicate
+  implements DelayedCheckPredicate {
+    final boolean trivial;
+    final Optional<String> problem;
+    int nRun;
+
+    CountingPredicate(boolean trivial, Optional<String> problem) {
+      this.trivial = trivial;
+      this.problem = problem;
+    }
+
+    @Override
+    public Optional<String> problem(Unparse.Suffix suffix) {
+      ++nRun;
+      return problem;
+    }
+
+    @Override
+    public boolean isTriviallySatisfiedBy(Unparse.Suffix suffix) {
+      return trivial;
+    }
+  }
+
+  @Test
+  public static void testCheckCounts() throws Exception {
+    CountingPredicate p = new CountingPredicate(
+        false, Optional.<String>absent());
+    CountingPredicate q = new CountingPredicate(
+        true, Optional.<String>absent());
+    Unparse.Verified v = Unparse.verify(ImmutableList.of(
+        Event.delayedCheck(p),
+        Event.delayedCheck(q),
+        Event.delayedCheck(p),
+        Event.token("x", -1),
+        Event.delayedCheck(p),
+        Event.delayedCheck(q),
+        Event.token("y", -1)));
+    assertEquals(2, p.nRun);
+    assertEquals(0, q.nRun);
+    assertEquals(2, v.nChecksRun);
+    assertEquals(2, v.nChecksSkipped);
+    assertEquals(1, v.nChecksCached);
+    assertEquals(2, v.events.size());
+  }
+
+  @Test
+  public static void testFailingCheck() {
+    CountingPredicate p = new CountingPredicate(
+        false, Optional.of("bad"));
+    try {
+      Unparse.verify(ImmutableList.of(
+          Event.token("x", -1),
+          Event.delayedCheck(p),
+          Event.token("y", -1)));
+      fail();
+    } catch (Unparse.UnparseVerificationException ex) {
+      assertTrue(ex.getMessage(), ex.getMessage().contains("because bad"));
+    }
+  }
+
+  /** Runs a check even when it claims to be trivially satisfied. */
+  private static final class SkipAuditor implements DelayedCheckPredicate {
+    final DelayedCheckPredicate p;
+    final List<String> unsound;
+
+    SkipAuditor(DelayedCheckPredicate p, List<String> unsound) {
+      this.p = p;
+      this.unsound = unsound;
+    }
+
+    @Override
+    public Optional<String> problem(Unparse.Suffix suffix) {
+      boolean trivial = p.isTriviallySatisfiedBy(suffix);
+      Optional<String> problem = p.problem(suffix);
+      if (trivial && problem.isPresent()) {
+        unsound.add(p + " at " + suffix.asParseState());
+      }
+      return problem;
+    }
+  }
+
+  @Test
+  public static void testSkippedChecksWouldPass() throws Exception {
+    String code = ""
+        + "@Deprecated class C<T> extends java.util.ArrayList<T> {\n"
+        + "  static final int[] A = new int[] { 1, -2, +3 };\n"
+        + "  public @Override boolean add(T x) {\n"
+        + "    if (x == null) { return false; } else { f(a.b, C.this); }\n"
+        + "    Object o = (Object) -A[0] + (int) +A.length;\n"
+        + "    Runnable r = C.super::clear;\n"
+        + "    return super.add(x) && C.class.getName().length() > 0;\n"
+        + "  }\n"
+        + "}\n";
+    Input input = Input.builder().source("test").code(code).build();
+    ParSer ps = PTree.complete(J8NodeType.CompilationUnit).getParSer();
+    ParseResult result = ps.parse(
+        new ParseState(input), new LeftRecursion(),
+        ParseErrorReceiver.DEV_NULL);
+    assertEquals(ParseResult.Synopsis.SUCCESS, result.synopsis);
+    J8BaseNode root = Trees.forGrammar(J8NodeType.GRAMMAR)
+        .of(input, result.next().output);
+    Optional<SerialState> unparsed = ps.unparse(
+        new SerialState(
+            SList.forwardIterable(Trees.startUnparse(null, root, null))),
+        SerialErrorReceiver.DEV_NULL);
+    assertTrue(unparsed.isPresent());
+    ImmutableList<Event> events = ImmutableList.copyOf(
+        SList.forwardIterable(unparsed.get().output));
+
+    Unparse.Verified v = Unparse.verify(events);
+    assertTrue(v.nChecksSkipped > 0);
+
+    List<String> unsound = Lists.newArrayList();
+    List<Event> audited = Lists.newArrayList();
+    int nChecks = 0;
+    for (Event e : events) {
+      if (e.getKind() == Event.Kind.DELAYED_CHECK) {
+        ++nChecks;
+        audited.add(Event.delayedCheck(
+            new SkipAuditor(e.getDelayedCheck(), unsound)));
+      } else {
+        audited.add(e);
+      }
+    }
+    assertEquals(
+        nChecks, v.nChecksRun + v.nChecksSkipped + v.nChecksCached);
+    Unparse.Verified auditedV = Unparse.verify(audited);
+    assertEquals(ImmutableList.of(), unsound);
+    assertEquals(v.events, auditedV.events);
+  }
+}
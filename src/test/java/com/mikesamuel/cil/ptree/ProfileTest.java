@@ -0,0 +1,164 @@
+package com.mikesamuel.cil.ptree;
+
+import java.util.logging.Logger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.mikesamuel.cil.ast.NodeType;
+import com.mikesamuel.cil.ast.j8.J8NodeType;
+import com.mikesamuel.cil.ast.j8.J8Parser;
+import com.mikesamuel.cil.parser.Input;
+
+import junit.framework.TestCase;
+
+@SuppressWarnings("javadoc")
+public final class ProfileTest extends TestCase {
+
+  private static final String CODE = Joiner.on('\n').join(
+      "class C {",
+      "  int f(int[] a, int x) {",
+      "    return a[x] + this.g(x).h + (int) x;",
+      "  }",
+      "}");
+
+  private static void parse() {
+    Input input = Input.builder().source("ProfileTest").code(CODE).build();
+    assertTrue(
+        new J8Parser(Logger.getLogger(ProfileTest.class.getName()))
+        .parse(input).isPresent());
+  }
+
+  @Test
+  public static void testProductionMeasurements() {
+    ImmutableMap<NodeType<?, ?>, Profile.ProductionProfile> productions;
+    try (Profile p = Profile.startCounting()) {
+      parse();
+      productions = p.getProductions();
+      assertTrue(p.getVariantsTried() > 0);
+    }
+
+    Profile.ProductionProfile cu = productions.get(
+        J8NodeType.CompilationUnit);
+    assertEquals(1, cu.invocations);
+    assertEquals(1, cu.memoMisses + cu.uncacheable);
+    assertTrue(cu.nanos > 0);
+
+    Profile.ProductionProfile primary = productions.get(J8NodeType.Primary);
+    assertTrue(primary.lrGrowIterations > 0);
+    assertTrue(primary.lrReentries > 0);
+
+    long memoHits = 0;
+    long eventsDiscarded = 0;
+    long lastNanos = Long.MAX_VALUE;
+    for (Profile.ProductionProfile pp : productions.values()) {
+      assertEquals(
+          pp.nodeType.name(),
+          pp.invocations,
+          pp.memoHits + pp.memoMisses + pp.uncacheable + pp.lrReentries);
+      memoHits += pp.memoHits;
+      eventsDiscarded += pp.eventsDiscarded;
+      assertTrue(pp.nanos <= lastNanos);
+      lastNanos = pp.nanos;
+    }
+    assertTrue(memoHits > 0);
+    assertTrue(eventsDiscarded > 0);
+  }
+
+  @Test
+  public static void testJson() {
+    try (Profile p = Profile.startCounting()) {
+      parse();
+      JSONObject json = p.toJson();
+      assertEquals(p.getVariantsTried(), json.getLong("variantsTried"));
+      assertEquals(p.getVariantsSkipped(), json.getLong("variantsSkipped"));
+      JSONArray productions = json.getJSONArray("productions");
+      assertEquals(p.getProductions().size(), productions.length());
+      JSONObject first = productions.getJSONObject(0);
+      Profile.ProductionProfile pp =
+          p.getProductions().values().iterator().next();
+      assertEquals(pp.nodeType.name(), first.getString("nodeType"));
+      assertEquals(pp.invocations, first.getLong("invocations"));
+      assertEquals(pp.eventsDiscarded, first.getLong("eventsDiscarded"));
+    }
+  }
+
+  @Test
+  public static void testCountingStopsOnClose() {
+    Profile p = Profile.startCounting();
+    parse();
+    p.close();
+    long invocations = p.getProduction(J8NodeType.Primary).invocations;
+    assertTrue(invocations > 0);
+    parse();
+    assertEquals(
+        invocations, p.getProduction(J8NodeType.Primary).invocations);
+  }
+
+  @Test
+  public static void testOtherThreads() throws InterruptedException {
+    long invocations;
+    try (Profile p = Profile.startCounting()) {
+      parse();
+      invocations = p.getProduction(J8NodeType.Primary).invocations;
+    }
+
+    Runnable parse = new Runnable() {
+      @Override
+      public void run() {
+        parse();
+      }
+    };
+
+    // Parses on other threads are not seen by a thread's profile.
+    try (Profile p = Profile.startCounting()) {
+      Thread t = new Thread(parse);
+      t.start();
+      t.join();
+      assertEquals(0, p.getProduction(J8NodeType.Primary).invocations);
+    }
+
+    Thread[] threads = { new Thread(parse), new Thread(parse) };
+    try (Profile p = Profile.startCountingAllThreads()) {
+      for (Thread t : threads) {
+        t.start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      assertEquals(
+          invocations * threads.length,
+          p.getProduction(J8NodeType.Primary).invocations);
+    }
+  }
+
+  @Test
+  public static void testParsesContinuedOnStackSegments() {
+    // Deep enough to continue on fresh stack segments.
+    String code = "class C { void f() { "
+        + Strings.repeat("{ ", 100) + Strings.repeat("} ", 100) + "} }";
+    ImmutableMap.Builder<Boolean, Profile.ProductionProfile> blocks =
+        ImmutableMap.builder();
+    for (boolean stackSegments : new boolean[] { false, true }) {
+      Input input = Input.builder().source("ProfileTest").code(code)
+          .stackSegments(stackSegments).build();
+      try (Profile p = Profile.startCounting()) {
+        assertTrue(
+            new J8Parser(Logger.getLogger(ProfileTest.class.getName()))
+            .parse(input).isPresent());
+        blocks.put(stackSegments, p.getProduction(J8NodeType.Block));
+      }
+      if (stackSegments) {
+        assertTrue(input.getStackSegments().getContinuationCount() != 0);
+      }
+    }
+    ImmutableMap<Boolean, Profile.ProductionProfile> byMode = blocks.build();
+    assertEquals(101, byMode.get(false).memoMisses);
+    assertEquals(byMode.get(false).invocations, byMode.get(true).invocations);
+    assertEquals(byMode.get(false).memoMisses, byMode.get(true).memoMisses);
+  }
+}
@@ -1,5 +1,6 @@
 package com.mikesamuel.cil.ptree;
 
+import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -8,6 +9,7 @@ import org.junit.Test;
 import com.google.common.collect.ImmutableList;
 import com.mikesamuel.cil.ast.j8.TokenStrings;
 import com.mikesamuel.cil.ast.j8.Tokens;
+import com.mikesamuel.cil.parser.ParSer;
 
 import junit.framework.TestCase;
 
@@ -140,4 +142,62 @@ public final class TokensTest extends TestCase {
     }
   }
 
+  private static final ImmutableList<String> SCANNER_CORPUS = ImmutableList.of(
+      "0", "00", "09", "0_7", "07_", "0x", "0x_1", "0x1_F", "0xCAFEbabeL",
+      "0b", "0b102", "0B1_0l", "1_000L", "1__0", "12L3", "1Lx", "1e", "1e+",
+      "1e+2", "1.", "1.e3", ".5", ".5e+2f", "..5", "1.2.3", "0x1.8p-3d",
+      "0x.8p1", "0x1p", "0x1.", "0xp1", "1f", "1_f", "1d.", "3.14159D",
+      "1F_", "09.5", "09e1", "0_9.", "\u0031",
+      "''", "'a'", "'\\'", "'\\''", "'\\123'", "'\\400'", "'\\u0061'",
+      "'\n'", "'ab'", "'\uD834\uDD1E'", "'\uD834'",
+      "\"\"", "\"a'b\"", "\"a\\\"b\"", "\"\\q\"", "\"\n\"",
+      "\"\\777\"", "\"unterminated",
+      "if", "iff", "if_", "_", "$", "int1", "instanceof", "True", "true",
+      "null", "nullx", "x\u00e9y", "\u00e9t\u00e9", "\uD835\uDC00x",
+      "a\uD834", "\u0661\u0662", "x\u0000y", "goto", "const", "Class",
+      "a.b", "a+b", "f(1,2)"
+      );
+
+  private static final ImmutableList<ParSer> SCANNED_TOKENS = ImmutableList.of(
+      Tokens.IDENTIFIER, Tokens.IDENTIFIER_CHARS,
+      Tokens.INTEGER_LITERAL, Tokens.FLOATING_POINT_LITERAL,
+      Tokens.STRING_LITERAL, Tokens.CHARACTER_LITERAL);
+
+  private static void assertScannerAgreesWithPattern(String s) {
+    for (ParSer token : SCANNED_TOKENS) {
+      PatternMatch pm = (PatternMatch) token;
+      assertNotNull(pm.diagnostic, pm.scanner);
+      for (int i = 0, n = s.length(); i <= n; ++i) {
+        Matcher m = pm.p.matcher(s);
+        m.region(i, n);
+        m.useTransparentBounds(false);
+        m.useAnchoringBounds(true);
+        int want = m.find() ? m.end() : -1;
+        int got = pm.scanner.scan(s, i);
+        assertEquals(pm.diagnostic + " in " + s + " @ " + i, want, got);
+      }
+    }
+  }
+
+  @Test
+  public static void testScannersAgreeWithPatterns() {
+    for (String s : SCANNER_CORPUS) {
+      assertScannerAgreesWithPattern(s);
+    }
+  }
+
+  @Test
+  public static void testScannersAgreeWithPatternsOnRandomInput() {
+    String alphabet = "0123456789abcdefxXpPeElLdDfF_.+-'\"\\\n \u00e9\u0661";
+    Random r = new Random(0x5ca77e4L);
+    StringBuilder sb = new StringBuilder();
+    for (int k = 0; k < 5000; ++k) {
+      sb.setLength(0);
+      for (int j = r.nextInt(12); --j >= 0;) {
+        sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+      }
+      assertScannerAgreesWithPattern(sb.toString());
+    }
+  }
+
 }